@@ -0,0 +1,71 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.http.RecordedFeed;
+
+/**
+ * 受信スレッドの受け渡し（DropOldestQueueSink#accept と SpscRingBuffer#overwrite）。
+ * full=true は常に満杯（offer 失敗→poll→offer／リングは head を進めて上書き）、
+ * false は空きあり（offer のみ。都度1件捨てて空ける）。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DropOldestOfferBenchmark {
+    @Param({"10000"})
+    public int capacity;
+
+    @Param({"true", "false"})
+    public boolean full;
+
+    private LinkedBlockingDeque<RecvOutputDTO> queue;
+    private DropOldestQueueSink sink;
+    private SpscRingBuffer<RecvOutputDTO> ring;
+    private final List<RecvOutputDTO> drained = new ArrayList<>(1);
+    private List<RecvOutputDTO> messages;
+    private int next;
+
+    @Setup public void setUp() {
+        messages = RecordedFeed.messages(RecordedFeed.lines(4_096, 5_000));
+        queue = new LinkedBlockingDeque<>(capacity);
+        sink = new DropOldestQueueSink(queue);
+        int prefill = full ? capacity : capacity / 2;
+        for (int i = 0; i < prefill; i++) queue.offer(messages.get(i % messages.size()));
+        ring = new SpscRingBuffer<>(capacity);
+        for (int i = 0, n = full ? ring.capacity() : ring.capacity() / 2; i < n; i++) ring.overwrite(messages.get(i % messages.size()));
+    }
+
+    @Benchmark public void accept() {
+        RecvOutputDTO msg = messages.get(next);
+        if (++next == messages.size()) next = 0;
+        if (!full) queue.pollFirst();
+        sink.accept(msg);
+    }
+
+    @Benchmark public void ringOverwrite() {
+        RecvOutputDTO msg = messages.get(next);
+        if (++next == messages.size()) next = 0;
+        if (!full) { drained.clear(); ring.drainTo(drained, 1); }
+        ring.overwrite(msg);
+    }
+}
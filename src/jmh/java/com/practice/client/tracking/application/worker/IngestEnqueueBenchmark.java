@@ -0,0 +1,70 @@
+package com.practice.client.tracking.application.worker;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.http.NdjsonLineParser;
+import com.practice.client.tracking.infrastructure.http.RecordedFeed;
+
+/**
+ * 受信1行の解析→キュー投入（満杯で最古ドロップが起き続ける状態）。
+ * queue は DTO＋DropOldestQueueSink、compact は Fields＋CompactMessageQueue。-prof gc の alloc/op を比べる。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestEnqueueBenchmark {
+    @Param({"10000"})
+    public int capacity;
+
+    private final NdjsonLineParser parser = new NdjsonLineParser(NdjsonLineParser.Mode.STREAMING);
+    private final NdjsonLineParser.Fields fields = new NdjsonLineParser.Fields();
+    private byte[][] lines;
+    private int next;
+    private DropOldestQueueSink queue;
+    private CompactMessageQueue compact;
+
+    @Setup public void setUp() {
+        lines = RecordedFeed.lines(4_096, 5_000).stream().map(s -> s.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+        queue = new DropOldestQueueSink(new LinkedBlockingDeque<>(capacity));
+        compact = new CompactMessageQueue(capacity, 4 << 20);
+    }
+
+    @Benchmark public void queue() {
+        byte[] line = nextLine();
+        var b = new RecvOutputDTO.Builder().rawJson(line, 0, line.length).receivedAt(Instant.now());
+        parser.parse(line, 0, line.length, b);
+        queue.accept(b.build());
+    }
+
+    @Benchmark public void compact() {
+        byte[] line = nextLine();
+        parser.parse(line, 0, line.length, fields);
+        Instant now = Instant.now();
+        compact.accept(line, 0, line.length, now.getEpochSecond() * 1_000_000_000L + now.getNano(), fields);
+    }
+
+    private byte[] nextLine() {
+        byte[] line = lines[next];
+        if (++next == lines.length) next = 0;
+        return line;
+    }
+}
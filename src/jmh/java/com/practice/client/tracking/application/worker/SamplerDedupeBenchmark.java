@@ -0,0 +1,59 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.http.RecordedFeed;
+
+/**
+ * IntervalSampler#run の間引き（drain→ICAO24 ごと最新→upsertAll）。1 op = 1窓。
+ * バッチ件数と機数（重複の度合い）を変えて比較する。キューの詰め直しは計測外。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SamplerDedupeBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int batchSize;
+
+    @Param({"100", "5000"})
+    public int aircraft;
+
+    private List<RecvOutputDTO> messages;
+    private LinkedBlockingDeque<RecvOutputDTO> queue;
+    private IntervalSampler sampler;
+    private long written;
+
+    @Setup(Level.Trial) public void setUp() {
+        messages = RecordedFeed.messages(RecordedFeed.lines(batchSize, aircraft));
+        queue = new LinkedBlockingDeque<>(batchSize);
+        sampler = IntervalSampler.builder(new DatabaseWriter() {
+            @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) { written++; }
+            @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) { written += dtos.size(); }
+        }).queue(queue).windowMillis(30_000).build();
+    }
+
+    @Setup(Level.Invocation) public void fill() { queue.addAll(messages); }
+
+    @Benchmark public long run() { sampler.run(); return written; }
+}
@@ -0,0 +1,75 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.http.RecordedFeed;
+
+/**
+ * ShardedSampler#flush の1窓分（各シャードの drain→間引き→upsertAll を並列に）。shards=1 が単一スレッドの基準。
+ * キューへの振り分け（ShardedSink）は計測外。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedSamplerBenchmark {
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    @Param({"100000"})
+    public int batchSize;
+
+    @Param({"5000"})
+    public int aircraft;
+
+    private List<RecvOutputDTO> messages;
+    private ShardedSink sink;
+    private ShardedSampler sampler;
+    private final LongAdder written = new LongAdder();
+
+    @Setup(Level.Trial) public void setUp() {
+        messages = RecordedFeed.messages(RecordedFeed.lines(batchSize, aircraft));
+        DatabaseWriter writer = new DatabaseWriter() {
+            @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) { written.increment(); }
+            @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) { written.add(dtos.size()); }
+        };
+        List<IngestSink> sinks = new ArrayList<>();
+        List<IntervalSampler> samplers = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            var queue = new LinkedBlockingDeque<RecvOutputDTO>(batchSize);
+            sinks.add(queue::offer);
+            samplers.add(IntervalSampler.builder(writer).queue(queue).windowMillis(30_000).build());
+        }
+        sink = ShardedSink.of(sinks);
+        sampler = new ShardedSampler(samplers);
+    }
+
+    @Setup(Level.Invocation) public void fill() { messages.forEach(sink::accept); }
+
+    @Benchmark public long run() { sampler.run(); return written.sum(); }
+
+    @TearDown(Level.Trial) public void tearDown() { sampler.close(); }
+}
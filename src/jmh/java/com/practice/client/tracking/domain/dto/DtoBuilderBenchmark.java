@@ -0,0 +1,48 @@
+package com.practice.client.tracking.domain.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** DTO の組み立て（受信1行ごと・position_token ごとに発生する） */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoBuilderBenchmark {
+    private final String line = "{\"target\":{\"icao_address\":\"A1B2C3\",\"latitude\":35.1,\"longitude\":139.7}}";
+    private final byte[] buf = ("xx" + line + "\n").getBytes(StandardCharsets.UTF_8);
+    private final int len = line.getBytes(StandardCharsets.UTF_8).length;
+    private final Instant now = Instant.now();
+    private final RecvInputDTO input = new RecvInputDTO.Builder()
+            .streamUrl("https://api.example.com/v2/targets/stream").bearerToken("token")
+            .extraParams(Map.of("country", "JP")).build();
+
+    @Benchmark public RecvOutputDTO outputFromString() {
+        return new RecvOutputDTO.Builder().rawJson(line).receivedAt(now)
+                .messageType("target").icao24("A1B2C3").build();
+    }
+
+    @Benchmark public RecvOutputDTO outputFromBytes() {
+        return new RecvOutputDTO.Builder().rawJson(buf, 2, len).receivedAt(now)
+                .messageType("target").icao24("A1B2C3").build();
+    }
+
+    /** 受信した position_token ごとの ctx 更新 */
+    @Benchmark public RecvInputDTO inputWithPositionToken() {
+        return input.withPositionToken("tok-1");
+    }
+}
@@ -0,0 +1,47 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+
+/** 再接続ごとの URL 組み立て（追加クエリ数と position_token の有無で比較） */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildUrlBenchmark {
+    @Param({"0", "4"})
+    public int extraParams;
+
+    @Param({"false", "true"})
+    public boolean withToken;
+
+    private RecvInputDTO input;
+
+    @Setup public void setUp() {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 0; i < extraParams; i++) params.put("filter_" + i, "value " + i + "/" + i);
+        var b = new RecvInputDTO.Builder().streamUrl("https://api.example.com/v2/targets/stream")
+                .bearerToken("token").extraParams(params);
+        if (withToken) b.positionToken("eyJwb3NpdGlvbiI6IjIwMjUtMDktMjFUMDA6MDA6MDBaIn0=");
+        input = b.build();
+    }
+
+    @Benchmark public String buildUrl() { return TrackingStreamClient.buildUrl(input); }
+}
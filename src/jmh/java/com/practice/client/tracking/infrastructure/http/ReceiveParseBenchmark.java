@@ -0,0 +1,72 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * TrackingStreamClient#receive の HTTP 以外の部分（行切り→解析→DTO 化）。1 op = 1行。
+ * frameAndParse が receive 相当、parseLine は String 化済みの行からの解析だけ。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiveParseBenchmark {
+    private static final int LINES = 10_000;         // jmh.feed が短くても RecordedFeed が繰り返してこの行数にする
+
+    @Param({"TREE", "STREAMING"})
+    public NdjsonLineParser.Mode mode;
+
+    private NdjsonLineParser parser;
+    private List<String> lines;
+    private byte[] body;
+
+    @Setup public void setUp() {
+        parser = new NdjsonLineParser(mode);
+        lines = RecordedFeed.lines(LINES, 5_000);
+        body = RecordedFeed.body(lines);
+    }
+
+    @Benchmark @OperationsPerInvocation(LINES)
+    public void frameAndParse(Blackhole bh) throws IOException {
+        try (var framer = new NdjsonLineFramer(new ByteArrayInputStream(body))) {
+            while (framer.next()) {
+                byte[] buf = framer.buffer();
+                int off = framer.start(), len = framer.length();
+                var b = new RecvOutputDTO.Builder().rawJson(buf, off, len).receivedAt(Instant.now());
+                parser.parse(buf, off, len, b);
+                bh.consume(b.build());
+            }
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(LINES)
+    public void parseLine(Blackhole bh) {
+        for (String line : lines) {
+            var b = new RecvOutputDTO.Builder().rawJson(line).receivedAt(Instant.now());
+            parser.parse(line, b);
+            bh.consume(b.build());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * ベンチマーク用の NDJSON 入力。-Djmh.feed=パス で実ストリームを録ったファイルを使い、
+ * 無ければ実フィードに近い形（target 96% / status 2% / position_token 2%）を固定シードで生成する。
+ * どちらでも常に count 行を返す（録ったファイルが短ければ先頭から繰り返す）。@OperationsPerInvocation の件数と合わせるため。
+ */
+public final class RecordedFeed {
+    private RecordedFeed() {}
+
+    public static List<String> lines(int count, int aircraft) {
+        String recorded = System.getProperty("jmh.feed");
+        if (recorded != null && !recorded.isBlank()) {
+            List<String> file;
+            try (var s = Files.lines(Path.of(recorded), StandardCharsets.UTF_8)) {
+                file = s.filter(l -> !l.isBlank()).limit(count).toList();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read jmh.feed: " + recorded, e);
+            }
+            if (file.isEmpty()) throw new IllegalArgumentException("jmh.feed has no lines: " + recorded);
+            List<String> out = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) out.add(file.get(i % file.size()));
+            return out;
+        }
+        Random r = new Random(42);
+        List<String> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = r.nextInt(100);
+            if (kind < 2) {
+                out.add("{\"position_token\":\"tok-" + i + "\"}");
+            } else if (kind < 4) {
+                out.add("{\"status\":{\"code\":\"ok\",\"message\":\"heartbeat\"}}");
+            } else {
+                int icao = 0x400000 + r.nextInt(aircraft);
+                out.add("{\"target\":{\"icao_address\":\"" + Integer.toHexString(icao).toUpperCase()
+                        + "\",\"timestamp\":\"2025-09-21T00:00:" + String.format("%02d", i % 60) + "Z\""
+                        + ",\"latitude\":" + (r.nextDouble() * 180 - 90)
+                        + ",\"longitude\":" + (r.nextDouble() * 360 - 180)
+                        + ",\"altitude_baro\":" + r.nextInt(45_000)
+                        + ",\"speed\":" + r.nextInt(600)
+                        + ",\"heading\":" + r.nextInt(360)
+                        + ",\"callsign\":\"JAL" + r.nextInt(1000) + "\""
+                        + ",\"squawk\":\"" + r.nextInt(7777) + "\""
+                        + ",\"on_ground\":false,\"vertical_rate\":" + (r.nextInt(4000) - 2000)
+                        + ",\"collection_type\":\"terrestrial\",\"ingestion_time\":\"2025-09-21T00:00:00Z\"}}");
+            }
+        }
+        return out;
+    }
+
+    /** 改行で連結した受信ボディ */
+    public static byte[] body(List<String> lines) {
+        return (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** 受信済み DTO（STREAMING で解析） */
+    public static List<RecvOutputDTO> messages(List<String> lines) {
+        var parser = new NdjsonLineParser(NdjsonLineParser.Mode.STREAMING);
+        List<RecvOutputDTO> out = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            var b = new RecvOutputDTO.Builder().rawJson(line);
+            parser.parse(line, b);
+            out.add(b.build());
+        }
+        return out;
+    }
+}
@@ -0,0 +1,59 @@
+package com.practice.client.tracking.application.query;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+
+/**
+ * 間引きの出力で {@link LivePositionIndex} を更新してから delegate へ渡す書き込み段（query.index）。
+ * 書き込み段の一番外側に置き、書き込み抑止で DB へ行かない行も索引には入れる。
+ * ttl 切れの掃除は ttl の 1/4 ごとに、その時 flush したスレッドが行う。
+ */
+public class IndexingWriter implements DatabaseWriter {
+    private final DatabaseWriter delegate;
+    private final LivePositionIndex index;
+    private final long sweepMillis;
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    public IndexingWriter(DatabaseWriter delegate, LivePositionIndex index) {
+        this.delegate = delegate; this.index = index;
+        this.sweepMillis = Math.max(1, index.ttlMillis() / 4);
+    }
+
+    @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+        WindowSnapshot s = new WindowSnapshot(1);
+        s.clear(bucketStartMillis);
+        s.add(icao24, dto);
+        upsertSnapshot(s);
+    }
+
+    @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+        if (dtos.isEmpty()) return;
+        WindowSnapshot s = new WindowSnapshot(dtos.size());
+        s.clear(bucketStartMillis);
+        for (var dto : dtos) s.add(dto.getIcao24().orElseThrow(), dto);
+        upsertSnapshot(s);
+    }
+
+    @Override public void upsertSnapshot(WindowSnapshot s) {
+        index.update(s);
+        sweep(System.currentTimeMillis());
+        delegate.upsertSnapshot(s);
+    }
+
+    @Override public void touch(String icao24, long bucketStartMillis, long receivedAtMillis) {
+        delegate.touch(icao24, bucketStartMillis, receivedAtMillis);
+    }
+
+    @Override public void touchAll(int n, String[] icao24, long[] bucketStartMillis, long[] receivedAtMillis) {
+        delegate.touchAll(n, icao24, bucketStartMillis, receivedAtMillis);
+    }
+
+    private void sweep(long nowMillis) {
+        long last = lastSweep.get();
+        if (nowMillis - last >= sweepMillis && lastSweep.compareAndSet(last, nowMillis)) index.expire(nowMillis);
+    }
+}
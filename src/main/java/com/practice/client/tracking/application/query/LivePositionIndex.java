@@ -0,0 +1,215 @@
+package com.practice.client.tracking.application.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.StampedLock;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * 機体ごとの最新位置をメモリに持ち、緯度経度の格子（cellDegrees 四方のセル）で引けるようにした索引（query.index）。
+ * 間引きの出力（{@link IndexingWriter}）から更新し、DB を通さずに矩形・ICAO24 で引く。
+ * <p>
+ * 機体は ICAO24 のハッシュで stripes 個に分け、各ストライプが「ICAO24→位置」と「セル→そのセルの機体」を
+ * StampedLock で守る。機体の移動（古いセルから消して新しいセルへ入れる）はストライプの書きロック内で行うので、
+ * 読み手には各機体がちょうど1回、いずれか1時点の位置で見える（同じ機体が2つのセルに見えることも消えることもない）。
+ * ストライプ間で同時刻に揃った写しではない。
+ * <p>
+ * 位置は target.fields の緯度・経度の値を使う（無い・範囲外の行は索引に入れない）。
+ * 受信時刻が保持中より古い行は採らない。ttlMillis 更新の無い機体は引かず、{@link #expire} で消す。
+ */
+public final class LivePositionIndex {
+    /** ServletContext の属性名 */
+    public static final String ATTRIBUTE = LivePositionIndex.class.getName();
+
+    /** 1機体の最新位置（不変）。dto は target.fields の値と生の行を持つ */
+    public record Position(String icao24, double latitude, double longitude, long receivedAtMillis, RecvOutputDTO dto) {}
+
+    private final TargetFields fields;
+    private final int latitudeColumn, longitudeColumn;
+    private final double cellDegrees;
+    private final int latCells, lonCells;
+    private final long ttlMillis;
+    private final Stripe[] stripes;
+
+    public LivePositionIndex(TargetFields fields, String latitudeField, String longitudeField,
+                             double cellDegrees, long ttlMillis) {
+        this(fields, latitudeField, longitudeField, cellDegrees, ttlMillis, 16);
+    }
+
+    /** stripes は 2 の冪に切り上げる */
+    public LivePositionIndex(TargetFields fields, String latitudeField, String longitudeField,
+                             double cellDegrees, long ttlMillis, int stripes) {
+        this.latitudeColumn = fields.indexOf(latitudeField);
+        this.longitudeColumn = fields.indexOf(longitudeField);
+        if (latitudeColumn < 0 || longitudeColumn < 0) {
+            throw new IllegalArgumentException("target.fields must include " + latitudeField + " and " + longitudeField + ": " + fields);
+        }
+        if (!(cellDegrees > 0 && cellDegrees <= 90)) throw new IllegalArgumentException("cellDegrees must be in (0, 90]: " + cellDegrees);
+        if (Math.ceil(180 / cellDegrees) * Math.ceil(360 / cellDegrees) > Integer.MAX_VALUE) {     // セル番号は int
+            throw new IllegalArgumentException("cellDegrees too small (more than " + Integer.MAX_VALUE + " cells): " + cellDegrees);
+        }
+        if (ttlMillis <= 0) throw new IllegalArgumentException("ttlMillis must be > 0: " + ttlMillis);
+        if (stripes < 1) throw new IllegalArgumentException("stripes must be >= 1: " + stripes);
+        this.fields = fields;
+        this.cellDegrees = cellDegrees;
+        this.latCells = (int) Math.ceil(180 / cellDegrees);
+        this.lonCells = (int) Math.ceil(360 / cellDegrees);
+        this.ttlMillis = ttlMillis;
+        int n = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new Stripe();
+    }
+
+    public TargetFields fields() { return fields; }
+    public String latitudeField() { return fields.name(latitudeColumn); }
+    public String longitudeField() { return fields.name(longitudeColumn); }
+    public long ttlMillis() { return ttlMillis; }
+
+    /** 1窓分の行をまとめて入れる（間引きの各シャードから同時に呼んでよい） */
+    public void update(WindowSnapshot s) {
+        if (s.columnCount() <= Math.max(latitudeColumn, longitudeColumn)) return;   // 数値項目を取り出していない
+        for (int i = 0; i < s.size(); i++) {
+            update(s.icao24(i), s.value(latitudeColumn, i), s.value(longitudeColumn, i), s.receivedAtMillis(i), s.dto(i));
+        }
+    }
+
+    /** 1機体の位置を入れる。緯度経度が無効、または保持中より古ければ何もせず false */
+    public boolean update(String icao24, double latitude, double longitude, long receivedAtMillis, RecvOutputDTO dto) {
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) return false;  // NaN も落とす
+        Position p = new Position(icao24, latitude, longitude, receivedAtMillis, dto);
+        int cell = cellOf(latitude, longitude);
+        Stripe st = stripe(icao24);
+        long stamp = st.lock.writeLock();
+        try {
+            Position old = st.byIcao.get(icao24);
+            if (old != null && old.receivedAtMillis > receivedAtMillis) return false;
+            st.byIcao.put(icao24, p);
+            if (old != null) {
+                int oldCell = cellOf(old.latitude, old.longitude);
+                if (oldCell != cell) st.removeFromCell(oldCell, icao24);
+            }
+            st.cells.computeIfAbsent(cell, c -> new HashMap<>()).put(icao24, p);
+            return true;
+        } finally {
+            st.lock.unlockWrite(stamp);
+        }
+    }
+
+    /** ICAO24 の最新位置（無い・ttl 切れなら empty） */
+    public Optional<Position> get(String icao24, long nowMillis) {
+        Stripe st = stripe(icao24);
+        Position p;
+        long stamp = st.lock.readLock();
+        try { p = st.byIcao.get(icao24); }
+        finally { st.lock.unlockRead(stamp); }
+        return p != null && live(p, nowMillis) ? Optional.of(p) : Optional.empty();
+    }
+
+    /**
+     * 矩形内の機体（ttl 切れを除く。順不同、最大 limit 件）。minLon > maxLon なら日付変更線をまたぐ矩形。
+     * 矩形にかかるセルだけを見る（セル数がストライプ内のセル数より多ければ、ストライプ内のセルを順に見る）。
+     */
+    public List<Position> within(double minLat, double minLon, double maxLat, double maxLon, long nowMillis, int limit) {
+        if (minLat > maxLat) throw new IllegalArgumentException("bbox minLat > maxLat: " + minLat + " > " + maxLat);
+        int r0 = row(Math.max(-90, minLat)), r1 = row(Math.min(90, maxLat));
+        int c0 = col(minLon), c1 = col(maxLon);
+        boolean wraps = minLon > maxLon;
+        long width = Math.min(lonCells, wraps ? (lonCells - c0) + c1 + 1L : c1 - c0 + 1L);  // 同じ列で折り返す矩形は全列
+        long rangeCells = (r1 - r0 + 1L) * width;
+        List<Position> out = new ArrayList<>();
+        for (Stripe st : stripes) {
+            long stamp = st.lock.readLock();
+            try {
+                if (rangeCells <= st.cells.size()) {
+                    for (int r = r0; r <= r1; r++) {
+                        for (long k = 0; k < width; k++) {
+                            Map<String, Position> cell = st.cells.get(r * lonCells + (int) ((c0 + k) % lonCells));
+                            if (cell != null && !collect(cell, minLat, minLon, maxLat, maxLon, nowMillis, limit, out)) return out;
+                        }
+                    }
+                } else {
+                    for (var e : st.cells.entrySet()) {
+                        int r = e.getKey() / lonCells, c = e.getKey() % lonCells;
+                        if (r < r0 || r > r1 || !(wraps ? c >= c0 || c <= c1 : c >= c0 && c <= c1)) continue;
+                        if (!collect(e.getValue(), minLat, minLon, maxLat, maxLon, nowMillis, limit, out)) return out;
+                    }
+                }
+            } finally {
+                st.lock.unlockRead(stamp);
+            }
+        }
+        return out;
+    }
+
+    /** セル内の矩形に入る機体を out に足す。limit に達したら false */
+    private boolean collect(Map<String, Position> cell, double minLat, double minLon, double maxLat, double maxLon,
+                            long nowMillis, int limit, List<Position> out) {
+        for (Position p : cell.values()) {
+            if (p.latitude < minLat || p.latitude > maxLat || !live(p, nowMillis)) continue;
+            boolean inLon = minLon <= maxLon ? p.longitude >= minLon && p.longitude <= maxLon
+                    : p.longitude >= minLon || p.longitude <= maxLon;
+            if (!inLon) continue;
+            if (out.size() >= limit) return false;
+            out.add(p);
+        }
+        return true;
+    }
+
+    /** ttl 切れの機体を消し、消した件数を返す */
+    public int expire(long nowMillis) {
+        int removed = 0;
+        for (Stripe st : stripes) {
+            long stamp = st.lock.writeLock();
+            try {
+                for (Iterator<Position> it = st.byIcao.values().iterator(); it.hasNext();) {
+                    Position p = it.next();
+                    if (live(p, nowMillis)) continue;
+                    it.remove();
+                    st.removeFromCell(cellOf(p.latitude, p.longitude), p.icao24);
+                    removed++;
+                }
+            } finally {
+                st.lock.unlockWrite(stamp);
+            }
+        }
+        return removed;
+    }
+
+    /** 保持している機体数（ttl 切れでまだ消していないものを含む） */
+    public int size() {
+        int n = 0;
+        for (Stripe st : stripes) {
+            long stamp = st.lock.readLock();
+            try { n += st.byIcao.size(); }
+            finally { st.lock.unlockRead(stamp); }
+        }
+        return n;
+    }
+
+    private boolean live(Position p, long nowMillis) { return nowMillis - p.receivedAtMillis < ttlMillis; }
+
+    private Stripe stripe(String icao24) { return stripes[(icao24.hashCode() * 0x9E3779B9 >>> 16) & (stripes.length - 1)]; }
+
+    private int cellOf(double lat, double lon) { return row(lat) * lonCells + col(lon); }
+    private int row(double lat) { return Math.min(latCells - 1, Math.max(0, (int) ((lat + 90) / cellDegrees))); }
+    private int col(double lon) { return Math.min(lonCells - 1, Math.max(0, (int) ((lon + 180) / cellDegrees))); }
+
+    /** ICAO24 のハッシュで分けた1区画。フィールドは lock で守る */
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        final Map<String, Position> byIcao = new HashMap<>();
+        final Map<Integer, Map<String, Position>> cells = new HashMap<>();
+
+        void removeFromCell(int cell, String icao24) {
+            Map<String, Position> m = cells.get(cell);
+            if (m != null && m.remove(icao24) != null && m.isEmpty()) cells.remove(cell);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.practice.client.tracking.application.query;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.practice.client.tracking.domain.TargetFields;
+
+/**
+ * {@link LivePositionIndex.Position} を JSON で書く。Jackson の JsonGenerator で出力先へ直接流す（文字列を組み立てない）。
+ * <pre>
+ * {"count":N,"positions":[{"icao24":"4ca2b1","latitude":..,"longitude":..,"received_at":"..Z",&lt;target.fields&gt;..,"raw":{..}}]}
+ * </pre>
+ * target.fields の値は緯度経度以外を同名で書き、無い値は null。raw は指定したときだけ受信した行をそのまま入れる。
+ * 出力先は閉じない（サーブレットのコンテナに任せる）。
+ */
+public final class PositionJsonWriter {
+    private static final JsonFactory FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final TargetFields fields;
+    private final int latitudeColumn, longitudeColumn;
+
+    public PositionJsonWriter(LivePositionIndex index) {
+        this.fields = index.fields();
+        this.latitudeColumn = fields.indexOf(index.latitudeField());
+        this.longitudeColumn = fields.indexOf(index.longitudeField());
+    }
+
+    /** 矩形検索の結果 */
+    public void writeAll(OutputStream out, List<LivePositionIndex.Position> positions, boolean raw) throws IOException {
+        try (JsonGenerator g = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            g.writeStartObject();
+            g.writeNumberField("count", positions.size());
+            g.writeArrayFieldStart("positions");
+            for (var p : positions) write(g, p, raw);
+            g.writeEndArray();
+            g.writeEndObject();
+        }
+    }
+
+    /** ICAO24 で引いた1機 */
+    public void writeOne(OutputStream out, LivePositionIndex.Position p, boolean raw) throws IOException {
+        try (JsonGenerator g = FACTORY.createGenerator(out, JsonEncoding.UTF8)) { write(g, p, raw); }
+    }
+
+    private void write(JsonGenerator g, LivePositionIndex.Position p, boolean raw) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("icao24", p.icao24());
+        g.writeNumberField("latitude", p.latitude());
+        g.writeNumberField("longitude", p.longitude());
+        g.writeStringField("received_at", Instant.ofEpochMilli(p.receivedAtMillis()).toString());
+        var dto = p.dto();
+        for (int c = 0; c < fields.size(); c++) {
+            if (c == latitudeColumn || c == longitudeColumn) continue;
+            double v = dto != null && c < dto.getTargetValueCount() ? dto.getTargetValue(c) : Double.NaN;
+            if (Double.isNaN(v)) g.writeNullField(fields.name(c));
+            else g.writeNumberField(fields.name(c), v);
+        }
+        byte[] line = raw && dto != null ? dto.getRawUtf8() : null;
+        if (line != null) {
+            g.writeFieldName("raw");
+            g.writeRawValue(new String(line, StandardCharsets.UTF_8));
+        }
+        g.writeEndObject();
+    }
+}
@@ -0,0 +1,157 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 負荷に合わせて間引きの間隔・1回に取り出す件数・DB のバッチ件数を決め直す（sampling.adaptive）。
+ * 窓の長さと境界（bucket_start）は変えない。変えるのは flush の頻度だけ。
+ * <p>
+ * flush のたびに、直前のキュー深さ・取りこぼし（queueDropped の増分）・flush にかかった時間・書いた行数を見て
+ * <ul>
+ *   <li>取りこぼしがあったか、キューが半分以上埋まっていた → 間隔を半分に（下限まで）</li>
+ *   <li>flush が間隔の半分以上かかった（書き込みが重い） → 間隔を 1.5 倍に（まとめて書く）</li>
+ *   <li>キューが 1/8 以下 → 間隔を 1.25 倍に（小さいバッチを減らす。上限で鮮度を保つ）</li>
+ *   <li>取り出し件数はキュー深さの 1/4（1回の flush で数回に分けて取る）、DB のバッチ件数は書いた行数に合わせる</li>
+ * </ul>
+ * 次の flush は窓の終わりを越えない（窓の終わり少し前に1回書く）。sampler スレッドで自分を予約し直す。
+ */
+public class AdaptiveFlushController implements Runnable {
+    private static final long GUARD_MILLIS = 20;   // 窓の終わりの何ms前に書くか
+
+    private final Runnable sampler;
+    private final IntSupplier queueDepth;
+    private final int queueCapacity;
+    private final long windowMillis;
+    private final long minFlushMillis, maxFlushMillis;
+    private final int minChunk, maxChunk, minBatch, maxBatch;
+    private final IntConsumer chunkSink, batchSink;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopped;
+    private long lastDropped;
+
+    // 現在値（sampler スレッドが書き、監視用に読む）
+    private volatile long flushMillis;
+    private volatile int drainChunk, writerBatch;
+
+    private AdaptiveFlushController(Builder b) {
+        if (b.minFlushMillis < 1 || b.maxFlushMillis < b.minFlushMillis) {
+            throw new IllegalArgumentException("flush millis bounds invalid: " + b.minFlushMillis + ".." + b.maxFlushMillis);
+        }
+        if (b.minChunk < 1 || b.maxChunk < b.minChunk) throw new IllegalArgumentException("drain chunk bounds invalid: " + b.minChunk + ".." + b.maxChunk);
+        if (b.minBatch < 1 || b.maxBatch < b.minBatch) throw new IllegalArgumentException("batch size bounds invalid: " + b.minBatch + ".." + b.maxBatch);
+        this.sampler = SamplerTask.guard(b.sampler); this.queueDepth = b.queueDepth; this.queueCapacity = Math.max(1, b.queueCapacity);
+        this.windowMillis = b.windowMillis;
+        this.minFlushMillis = b.minFlushMillis; this.maxFlushMillis = b.maxFlushMillis;
+        this.minChunk = b.minChunk; this.maxChunk = b.maxChunk; this.minBatch = b.minBatch; this.maxBatch = b.maxBatch;
+        this.chunkSink = b.chunkSink; this.batchSink = b.batchSink;
+        this.flushMillis = clamp(b.initialFlushMillis, minFlushMillis, maxFlushMillis);
+        this.drainChunk = maxChunk;
+        this.writerBatch = clamp(b.initialBatch, minBatch, maxBatch);
+        this.lastDropped = metrics.getQueueDropped();
+    }
+
+    public static Builder builder(Runnable sampler) { return new Builder(sampler); }
+
+    /** scheduler で最初の flush を予約する（以後は flush のたびに次を予約する） */
+    public void start(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        chunkSink.accept(drainChunk);
+        batchSink.accept(writerBatch);
+        publish();
+        schedule(System.currentTimeMillis());
+    }
+
+    /** 次の予約をしない（実行中の flush は最後まで行う） */
+    public void stop() { stopped = true; }
+
+    @Override public void run() {
+        if (stopped) return;
+        int depth = queueDepth.getAsInt();
+        long t0 = System.nanoTime();
+        try {
+            sampler.run();                      // 失敗は SamplerTask が数えて記録する
+        } finally {
+            long dropped = metrics.getQueueDropped();
+            adjust(depth, System.nanoTime() - t0, dropped - lastDropped, metrics.getLastSampledRows());
+            lastDropped = dropped;
+            if (!stopped && scheduler != null && !scheduler.isShutdown()) schedule(System.currentTimeMillis());
+        }
+    }
+
+    /** flush 1回分の観測から次の設定を決める（flush の直前のキュー深さ・所要時間・取りこぼし件数・書いた行数） */
+    void adjust(int depth, long flushNanos, long droppedSinceLast, int rowsWritten) {
+        long interval = flushMillis;
+        long flushTook = TimeUnit.NANOSECONDS.toMillis(flushNanos);
+        if (droppedSinceLast > 0 || depth * 2L >= queueCapacity) interval = interval / 2;
+        else if (flushTook * 2 >= interval) interval = interval * 3 / 2;
+        else if (depth * 8L <= queueCapacity) interval = interval * 5 / 4 + 1;
+        flushMillis = clamp(interval, minFlushMillis, maxFlushMillis);
+
+        int chunk = clamp(depth / 4, minChunk, maxChunk);
+        if (chunk != drainChunk) chunkSink.accept(drainChunk = chunk);
+        if (rowsWritten > 0) {
+            int batch = clamp(rowsWritten, minBatch, maxBatch);
+            if (batch != writerBatch) batchSink.accept(writerBatch = batch);
+        }
+        publish();
+    }
+
+    /** 今から次の flush までの待ち時間。窓の終わり（GUARD_MILLIS 前）を越える場合はそこまでに縮める */
+    long nextDelayMillis(long nowMillis) {
+        long guard = Math.min(GUARD_MILLIS, windowMillis / 10);
+        long end = IntervalSampler.floorTo(windowMillis, nowMillis) + windowMillis - guard;
+        if (end - nowMillis <= 0) end += windowMillis;            // 今が窓の最後の書き込み。次の窓の終わりを見る
+        return Math.max(1, Math.min(flushMillis, end - nowMillis));
+    }
+
+    public long getFlushMillis() { return flushMillis; }
+    public int getDrainChunk() { return drainChunk; }
+    public int getWriterBatch() { return writerBatch; }
+
+    private void schedule(long nowMillis) { scheduler.schedule(this, nextDelayMillis(nowMillis), TimeUnit.MILLISECONDS); }
+
+    private void publish() { metrics.adaptiveFlush(flushMillis, drainChunk, writerBatch); }
+
+    private static long clamp(long v, long min, long max) { return Math.max(min, Math.min(max, v)); }
+    private static int clamp(int v, int min, int max) { return Math.max(min, Math.min(max, v)); }
+
+    public static class Builder {
+        private final Runnable sampler;
+        private IntSupplier queueDepth = () -> 0;
+        private int queueCapacity = 1;
+        private long windowMillis = 30_000;
+        private long minFlushMillis = 1_000, maxFlushMillis = 30_000, initialFlushMillis = 30_000;
+        private int minChunk = 256, maxChunk = Integer.MAX_VALUE;
+        private int minBatch = 100, maxBatch = 5_000, initialBatch = 500;
+        private IntConsumer chunkSink = v -> {}, batchSink = v -> {};
+
+        Builder(Runnable sampler) { this.sampler = sampler; }
+
+        /** 窓の長さ（境界をまたがないよう flush を予約するのに使う） */
+        public Builder windowMillis(long v) {
+            if (v < 1) throw new IllegalArgumentException("windowMillis must be >= 1: " + v);
+            this.windowMillis = v; return this;
+        }
+        /** 受け渡し口の深さ（全シャード合計）と容量 */
+        public Builder queue(IntSupplier depth, int capacity) { this.queueDepth = depth; this.queueCapacity = capacity; return this; }
+        /** flush 間隔の下限・初期値・上限 */
+        public Builder flushMillis(long min, long initial, long max) {
+            this.minFlushMillis = min; this.initialFlushMillis = initial; this.maxFlushMillis = max; return this;
+        }
+        /** 1回の drainTo で取る件数の範囲と、決めた値の渡し先（例：各 IntervalSampler#setDrainChunk） */
+        public Builder drainChunk(int min, int max, IntConsumer sink) {
+            this.minChunk = min; this.maxChunk = max; this.chunkSink = sink; return this;
+        }
+        /** DB のバッチ件数の範囲・初期値と、決めた値の渡し先（例：JdbcDatabaseWriter#setBatchSize） */
+        public Builder writerBatch(int min, int initial, int max, IntConsumer sink) {
+            this.minBatch = min; this.initialBatch = initial; this.maxBatch = max; this.batchSink = sink; return this;
+        }
+        public AdaptiveFlushController build() { return new AdaptiveFlushController(this); }
+    }
+}
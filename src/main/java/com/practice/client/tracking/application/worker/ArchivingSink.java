@@ -0,0 +1,33 @@
+package com.practice.client.tracking.application.worker;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.archive.SegmentArchiveWriter;
+import com.practice.client.tracking.infrastructure.http.AsyncTrackingStreamClient;
+
+/** 受信した全行をアーカイブに残してから本来の受け渡し口へ渡す（間引きで捨てる前の記録） */
+public class ArchivingSink implements IngestSink {
+    private final SegmentArchiveWriter archive;
+    private final IngestSink delegate;
+
+    public ArchivingSink(SegmentArchiveWriter archive, IngestSink delegate) {
+        this.archive = archive; this.delegate = delegate;
+    }
+
+    @Override public void accept(RecvOutputDTO msg) {
+        archive.append(msg);
+        delegate.accept(msg);
+    }
+
+    /**
+     * 非同期受信版。下流に断られた行は再送されるので、受け取られたときだけ記録する
+     * （同じ行を二重に残さない）。
+     */
+    public static AsyncTrackingStreamClient.Downstream wrap(SegmentArchiveWriter archive,
+                                                            AsyncTrackingStreamClient.Downstream delegate) {
+        return msg -> {
+            if (!delegate.offer(msg)) return false;
+            archive.append(msg);
+            return true;
+        };
+    }
+}
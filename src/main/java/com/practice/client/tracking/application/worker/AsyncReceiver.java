@@ -0,0 +1,105 @@
+package com.practice.client.tracking.application.worker;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.infrastructure.http.AsyncTrackingStreamClient;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+import com.practice.client.tracking.infrastructure.persistence.token.TokenStore;
+
+/**
+ * ReceiverWorker の非同期版。専用スレッドを持たず、購読の完了（切断）を契機に再購読する。
+ * 下流が受け取った行の position_token だけを保存するので、背圧で保留中の行を飛ばして再開することはない。
+ * 再購読までの待ち時間と致命的エラーの判定は ReconnectPolicy に従う。
+ */
+public class AsyncReceiver implements AutoCloseable {
+    private final AsyncTrackingStreamClient client;
+    private final AsyncTrackingStreamClient.Downstream target;
+    private final TokenStore tokenStore;
+    private final ReconnectPolicy reconnect;
+    private volatile RecvInputDTO ctx;
+    private volatile AsyncTrackingStreamClient.Subscription current;
+    private volatile boolean stopped;
+
+    private volatile int failures;                 // 連続失敗回数（stableMillis 以上つながってから切れたら数え直す）
+    private volatile long disconnectedAtNanos;
+    private volatile long connectedAtNanos = -1;   // 今の購読で最初の1行を受け取った時刻（まだなら -1）
+    private volatile long reconnects;
+    private volatile long lastRecoveryMillis = -1;
+
+    public AsyncReceiver(AsyncTrackingStreamClient client, RecvInputDTO initialCtx,
+                         AsyncTrackingStreamClient.Downstream target, TokenStore store) {
+        this(client, initialCtx, target, store, ReconnectPolicy.defaults());
+    }
+
+    public AsyncReceiver(AsyncTrackingStreamClient client, RecvInputDTO initialCtx,
+                         AsyncTrackingStreamClient.Downstream target, TokenStore store, ReconnectPolicy reconnect) {
+        this.client = client; this.ctx = initialCtx; this.target = target; this.tokenStore = store;
+        this.reconnect = reconnect;
+        // 起動時に保存済みトークンがあれば“続きから”
+        tokenStore.load().ifPresent(t -> this.ctx = this.ctx.withPositionToken(t));
+    }
+
+    public void start() {
+        if (stopped) return;
+        var sub = client.subscribe(ctx, msg -> {
+            if (!target.offer(msg)) return false;
+            if (connectedAtNanos < 0) connected();
+            msg.getPositionToken().ifPresent(this::savePosition);
+            return true;
+        });
+        current = sub;
+        sub.done().whenComplete((v, err) -> {
+            if (stopped) return;
+            Throwable cause = err != null ? err : new IOException("Stream closed by server");
+            if (reconnect.isFatal(cause)) {
+                System.err.println("[AsyncReceiver] fatal: " + cause.getMessage());
+                stopped = true;
+                return;
+            }
+            disconnected();
+            long delay = reconnect.delayMillis(failures, cause);
+            System.err.println("[AsyncReceiver] " + cause.getMessage() + " -> reconnect #" + failures + " in " + delay + " ms");
+            CompletableFuture.runAsync(this::start, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    /** 保存に失敗しても受信は続ける（ctx は進めるので、再購読の位置は失われない） */
+    private void savePosition(String token) {
+        try { tokenStore.save(token); }
+        catch (RuntimeException e) { System.err.println("[AsyncReceiver] token save failed: " + e.getMessage()); }
+        ctx = ctx.withPositionToken(token);
+    }
+
+    /** 購読後の最初の1行。切断後なら復旧として記録する（failures は切れたときに数え直す） */
+    private void connected() {
+        long now = System.nanoTime();
+        connectedAtNanos = now;
+        if (failures == 0) return;
+        lastRecoveryMillis = TimeUnit.NANOSECONDS.toMillis(now - disconnectedAtNanos);
+        reconnects++;
+        PipelineMetrics.global().reconnected(lastRecoveryMillis);
+        System.err.println("[AsyncReceiver] recovered in " + lastRecoveryMillis + " ms after " + failures + " attempt(s)");
+    }
+
+    private void disconnected() {
+        long now = System.nanoTime();
+        long upMillis = connectedAtNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(now - connectedAtNanos);
+        failures = reconnect.attemptAfter(failures, upMillis);
+        if (failures == 1 || upMillis >= 0) disconnectedAtNanos = now;   // 復旧時間は直近に切れた時点から測る
+        connectedAtNanos = -1;
+    }
+
+    /** 切断から復旧した回数 */
+    public long getReconnects() { return reconnects; }
+    /** 直近の切断から最初の1行を受け取るまでの時間（未切断なら -1） */
+    public long getLastRecoveryMillis() { return lastRecoveryMillis; }
+
+    @Override public void close() {
+        stopped = true;
+        var sub = current;
+        if (sub != null) sub.cancel();
+    }
+}
@@ -0,0 +1,29 @@
+package com.practice.client.tracking.application.worker;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * IntervalSampler の窓の決め方（処理時刻／イベント時刻）。受け渡し口（SamplerSource）から行を受け取って
+ * ICAO24 ごとに間引き、write で書く。sampler スレッド専用。
+ */
+interface Bucketing {
+    /** flush の開始（nowMillis は処理時刻の窓を決める現在時刻） */
+    void begin(long nowMillis);
+
+    /** 受信順に渡す target 行（同じ ICAO24 は後から来た方、イベント時刻なら受信時刻が新しい方を採る） */
+    void offer(RecvOutputDTO msg);
+
+    /** 受け渡し口で ICAO24 ごとに1行へまとめ済みの行（conflate）。icao は受け渡し口のキー */
+    void offerLatest(String icao, RecvOutputDTO dto);
+
+    /** 新しい順に見る列形式の行（compact）の事前判定。採るなら true（DTO はまだ作らない） */
+    boolean claim(int code, String icao, long epochNanos);
+
+    /** claim の走査を終えたら呼ぶ。続けて true だった行を古い順（claim と逆順）に put する */
+    void endClaims();
+
+    void put(int code, String icao, long epochNanos, RecvOutputDTO dto);
+
+    /** 溜めた行を書く（inputs は受け渡し口から取り出した件数、t0 は取り出しを始めた時刻） */
+    void write(int inputs, long t0);
+}
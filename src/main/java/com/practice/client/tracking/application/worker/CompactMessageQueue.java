@@ -0,0 +1,219 @@
+package com.practice.client.tracking.application.worker;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.MessageType;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.http.NdjsonLineParser;
+import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 受信行を DTO にせず、プリミティブ配列（ICAO24 コード・受信時刻・種別1バイト・target の数値項目）と
+ * 共有のバイト領域（生の行）に詰めて持つ有界キュー。1行あたりのオブジェクト生成は
+ * ICAO24 が6桁16進でない行と position_token 行の文字列（と、種別を列挙値にできない DTO の元の messageType）だけになる。
+ * <p>
+ * 満杯（件数か生の行の合計バイト数）なら最古の 1/8 をまとめて捨てて詰める（DropOldestQueueSink と同じく最新優先）。
+ * drain() は溜まっている分を丸ごと差し替えて返す。DTO が必要な箇所では {@link Batch#toDto(int)} で都度作る。
+ */
+public class CompactMessageQueue implements IngestSink, TrackingStreamClient.LineConsumer {
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private Batch active, spare;                   // active は lock で保護。spare は直近に drain した側
+
+    /** capacity 件・生の行 payloadBytes バイトまで保持する（両方とも 2面分確保する） */
+    public CompactMessageQueue(int capacity, int payloadBytes) { this(capacity, payloadBytes, 0); }
+
+    /** 1行あたり valueCount 個の数値項目（受信時に取り出した TargetFields の値）も持つ */
+    public CompactMessageQueue(int capacity, int payloadBytes, int valueCount) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        this.capacity = capacity;
+        this.active = new Batch(capacity, payloadBytes, valueCount);
+        this.spare = new Batch(capacity, payloadBytes, valueCount);
+    }
+
+    /** 受信スレッドから直接積む（buf のスライスはここでコピーする） */
+    @Override public void accept(byte[] buf, int off, int len, long receivedAtEpochNanos, NdjsonLineParser.Fields f) {
+        lock.lock();
+        try {
+            if (!hasRoom(len)) makeRoom(len);
+            int i = active.add(buf, off, len, receivedAtEpochNanos, f.type(), null, f.icaoCode(), f.icaoText(), f.positionToken());
+            for (int j = 0, n = f.valueCount(); j < active.stride; j++) active.setValue(i, j, j < n ? f.value(j) : Double.NaN);
+        } finally { lock.unlock(); }
+    }
+
+    /** DTO で受け取る経路（アーカイブ経由・非同期受信）。満杯なら最古を捨てる */
+    @Override public void accept(RecvOutputDTO msg) { offer(msg, true); }
+
+    /** 非同期受信用：満杯なら捨てずに false（背圧をかける） */
+    public boolean tryOffer(RecvOutputDTO msg) { return offer(msg, false); }
+
+    private boolean offer(RecvOutputDTO msg, boolean dropOldest) {
+        byte[] raw = msg.getRawUtf8();
+        if (raw == null) raw = new byte[0];
+        int code = msg.getIcao24Code();
+        String text = code == Icao24.NONE ? msg.getIcao24().orElse(null) : null;
+        Instant at = msg.getReceivedAt();
+        long nanos = at.getEpochSecond() * 1_000_000_000L + at.getNano();
+        lock.lock();
+        try {
+            if (!hasRoom(raw.length)) {
+                if (!dropOldest) { fitLongLine(raw.length); if (!hasRoom(raw.length)) return false; }
+                else makeRoom(raw.length);
+            }
+            String otherType = msg.getType() == MessageType.UNKNOWN ? msg.getMessageType().orElse(null) : null;
+            int i = active.add(raw, 0, raw.length, nanos, msg.getType(), otherType, code, text, msg.getPositionToken().orElse(null));
+            for (int j = 0, n = msg.getTargetValueCount(); j < active.stride; j++) {
+                active.setValue(i, j, j < n ? msg.getTargetValue(j) : Double.NaN);
+            }
+            return true;
+        } finally { lock.unlock(); }
+    }
+
+    /**
+     * 溜まっている分を返し、空の面と差し替える。戻り値は次の drain() まで有効
+     * （サンプラースレッド専用。同時に2か所から呼ばないこと）。
+     */
+    public Batch drain() {
+        spare.clear();
+        lock.lock();
+        try {
+            Batch out = active;
+            active = spare;
+            spare = out;
+            return out;
+        } finally { lock.unlock(); }
+    }
+
+    public int size() {
+        lock.lock();
+        try { return active.size; } finally { lock.unlock(); }
+    }
+
+    public int capacity() { return capacity; }
+
+    private boolean hasRoom(int len) { return active.size < capacity && active.used + len <= active.payload.length; }
+
+    /** 最古の 1/8 ずつ捨てる */
+    private void makeRoom(int len) {
+        fitLongLine(len);
+        while (!hasRoom(len) && active.size > 0) {
+            int n = Math.max(1, active.size / 8);
+            active.dropFirst(n);
+            for (int i = 0; i < n; i++) metrics.queueDropped();
+        }
+    }
+
+    /** 領域の 1/8 を超える長い行なら先に領域を広げる（長い1行のために全件を捨てない・背圧が解けなくならない） */
+    private void fitLongLine(int len) {
+        if (len > active.payload.length / 8) active.payload = Arrays.copyOf(active.payload, Math.max(len * 8, active.payload.length * 2));
+    }
+
+    /**
+     * 1面分の列指向の格納領域。i 番目の行の各項目を配列から直接読む。
+     * 行は受信順（0 が最古）。文字列の列は該当する行だけ非 null。
+     */
+    public static final class Batch {
+        private final int[] icaoCode;
+        private final long[] receivedAtNanos;
+        private final byte[] type;
+        private final int[] payloadOff, payloadLen;
+        private final String[] icaoText, token;
+        private final String[] otherType;          // UNKNOWN 行の元の messageType（列挙にない種別。DTO から積んだ行だけ）
+        private final int stride;                  // 1行あたりの数値項目数
+        private final double[] values, scratch;    // values[i * stride + j]
+        private byte[] payload;
+        private int size, used;
+
+        Batch(int capacity, int payloadBytes, int valueCount) {
+            stride = valueCount;
+            values = new double[capacity * valueCount];
+            scratch = new double[valueCount];
+            icaoCode = new int[capacity];
+            receivedAtNanos = new long[capacity];
+            type = new byte[capacity];
+            payloadOff = new int[capacity];
+            payloadLen = new int[capacity];
+            icaoText = new String[capacity];
+            token = new String[capacity];
+            otherType = new String[capacity];
+            payload = new byte[Math.max(payloadBytes, 1024)];
+        }
+
+        public int size() { return size; }
+        public boolean isEmpty() { return size == 0; }
+        public MessageType type(int i) { return MessageType.ofCode(type[i]); }
+        /** Icao24.encode 済みのコード（符号化できない・ICAO24 なしは Icao24.NONE） */
+        public int icaoCode(int i) { return icaoCode[i]; }
+        /** icaoCode が NONE の行の ICAO24 文字列（ICAO24 なしなら null） */
+        public String icaoText(int i) { return icaoText[i]; }
+        public String positionToken(int i) { return token[i]; }
+        public long receivedAtEpochNanos(int i) { return receivedAtNanos[i]; }
+        public int valueCount() { return stride; }
+        /** i 行目の j 番目の数値項目（無い・数値でなければ NaN） */
+        public double value(int i, int j) { return values[i * stride + j]; }
+        public String rawJson(int i) { return new String(payload, payloadOff[i], payloadLen[i], StandardCharsets.UTF_8); }
+
+        /** i 番目の行を従来の DTO として作る（生の行はコピーされるので drain 後も使える） */
+        public RecvOutputDTO toDto(int i) {
+            long n = receivedAtNanos[i];
+            var b = new RecvOutputDTO.Builder()
+                    .rawJson(payload, payloadOff[i], payloadLen[i])
+                    .receivedAt(Instant.ofEpochSecond(Math.floorDiv(n, 1_000_000_000L), Math.floorMod(n, 1_000_000_000L)));
+            MessageType t = type(i);
+            if (t != MessageType.UNKNOWN) b.messageType(t);
+            else if (otherType[i] != null) b.messageType(otherType[i]);
+            if (token[i] != null) b.positionToken(token[i]);
+            if (icaoCode[i] != Icao24.NONE) b.icao24(Icao24.decode(icaoCode[i]));
+            else if (icaoText[i] != null) b.icao24(icaoText[i]);
+            if (stride > 0 && t == MessageType.TARGET) {
+                System.arraycopy(values, i * stride, scratch, 0, stride);
+                b.targetValues(scratch);
+            }
+            return b.build();
+        }
+
+        private int add(byte[] buf, int off, int len, long nanos, MessageType t, String other, int code, String text, String tok) {
+            int i = size++;
+            System.arraycopy(buf, off, payload, used, len);
+            payloadOff[i] = used; payloadLen[i] = len; used += len;
+            receivedAtNanos[i] = nanos; type[i] = t.code(); otherType[i] = other;
+            icaoCode[i] = code; icaoText[i] = text; token[i] = tok;
+            return i;
+        }
+
+        private void setValue(int i, int j, double v) { values[i * stride + j] = v; }
+
+        /** 先頭 n 行を捨てて前へ詰める（生の行は受信順に並んでいるので1回のコピーで済む） */
+        private void dropFirst(int n) {
+            int rest = size - n, shift = n < size ? payloadOff[n] : used;
+            System.arraycopy(payload, shift, payload, 0, used - shift);
+            used -= shift;
+            System.arraycopy(icaoCode, n, icaoCode, 0, rest);
+            System.arraycopy(receivedAtNanos, n, receivedAtNanos, 0, rest);
+            System.arraycopy(type, n, type, 0, rest);
+            System.arraycopy(payloadLen, n, payloadLen, 0, rest);
+            System.arraycopy(values, n * stride, values, 0, rest * stride);
+            System.arraycopy(icaoText, n, icaoText, 0, rest);
+            System.arraycopy(token, n, token, 0, rest);
+            System.arraycopy(otherType, n, otherType, 0, rest);
+            for (int i = 0; i < rest; i++) payloadOff[i] = payloadOff[i + n] - shift;
+            Arrays.fill(icaoText, rest, size, null);
+            Arrays.fill(token, rest, size, null);
+            Arrays.fill(otherType, rest, size, null);
+            size = rest;
+        }
+
+        private void clear() {
+            Arrays.fill(icaoText, 0, size, null);
+            Arrays.fill(token, 0, size, null);
+            Arrays.fill(otherType, 0, size, null);
+            size = 0; used = 0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.Arrays;
+
+import com.practice.client.tracking.domain.MessageType;
+
+/**
+ * compact モードの受け渡し口。DTO を作らずに積まれた行を新しい順に見て、ICAO24 ごとに採る行
+ * （Bucketing#claim が true）だけを DTO にする。
+ */
+final class CompactSource implements SamplerSource {
+    private final CompactMessageQueue compact;
+    private int[] winners = new int[4096];            // 採った行番号（flush 間で使い回す）
+
+    CompactSource(CompactMessageQueue compact) { this.compact = compact; }
+
+    @Override public int drainInto(Bucketing buckets) {
+        CompactMessageQueue.Batch b = compact.drain();
+        if (b.isEmpty()) return 0;
+        int n = 0;
+        for (int i = b.size() - 1; i >= 0; i--) {
+            if (b.type(i) != MessageType.TARGET) continue;
+            if (!buckets.claim(b.icaoCode(i), b.icaoText(i), b.receivedAtEpochNanos(i))) continue;
+            if (n == winners.length) winners = Arrays.copyOf(winners, n * 2);
+            winners[n++] = i;
+        }
+        buckets.endClaims();
+        while (n > 0) {                                // 古い順に入れる（書き込み順を受信順に揃える）
+            int i = winners[--n];
+            buckets.put(b.icaoCode(i), b.icaoText(i), b.receivedAtEpochNanos(i), b.toDto(i));
+        }
+        return b.size();
+    }
+}
@@ -0,0 +1,23 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.Map;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/** conflate モードの受け渡し口。受信側で ICAO24 ごとに上書き済みの表を丸ごと差し替えて受け取る */
+final class ConflatedSource implements SamplerSource {
+    private final LatestByIcaoBuffer conflated;
+    private long accepted;                            // 前回までの accepted()
+
+    ConflatedSource(LatestByIcaoBuffer conflated) { this.conflated = conflated; }
+
+    @Override public int drainInto(Bucketing buckets) {
+        Map<String, RecvOutputDTO> latest = conflated.swap();
+        long now = conflated.accepted();
+        int inputs = (int) Math.min(Integer.MAX_VALUE, now - accepted);
+        accepted = now;
+        if (latest.isEmpty()) return 0;
+        latest.forEach(buckets::offerLatest);
+        return Math.max(inputs, 1);                    // accepted の加算が swap より遅れても書く
+    }
+}
@@ -0,0 +1,10 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.concurrent.BlockingQueue;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/** 有界キューへ投入。満杯なら最古を捨てて最新を優先（“最新だけ使う”要件に整合） */
+public class DropOldestQueueSink extends OverflowQueueSink {
+    public DropOldestQueueSink(BlockingQueue<RecvOutputDTO> queue) { super(queue, OverflowPolicy.dropOldest()); }
+}
@@ -0,0 +1,48 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.ArrayList;
+
+import com.practice.client.tracking.domain.MessageType;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * DTO を1件ずつ積む受け渡し口（queue / ring）の共通部分。“flush 開始時点で溜まっている分だけ”を
+ * chunk 件ずつ取り出し（受信スレッドを長く待たせない）、target 行を受信順に渡す。
+ */
+abstract class DtoBatchSource implements SamplerSource {
+    private final ArrayList<RecvOutputDTO> batch = new ArrayList<>(1024);   // flush 間で使い回す
+    private volatile int drainChunk = Integer.MAX_VALUE;  // 1回の drainTo で取る上限
+    private volatile RecvOutputDTO lastPositionToken;     // 取り出し済みの最後の position_token 行
+
+    /** 先頭から max 件まで into へ移し、移した件数を返す */
+    abstract int drainTo(ArrayList<RecvOutputDTO> into, int max);
+
+    /** 溜まっている件数 */
+    abstract int depth();
+
+    /** 1回取り出すごとに呼ぶ */
+    void afterDrain() {}
+
+    @Override public int drainInto(Bucketing buckets) {
+        int chunk = drainChunk;
+        int backlog = chunk == Integer.MAX_VALUE ? 0 : depth();
+        int inputs = 0;
+        do {
+            batch.clear();
+            int n = drainTo(batch, chunk);             // 先頭1件ではなく全件
+            afterDrain();
+            if (n == 0) break;
+            inputs += n;
+            for (var msg : batch) {
+                if (msg.getType() == MessageType.TARGET) buckets.offer(msg);   // 必要に応じて種別フィルタ
+                else if (msg.getType() == MessageType.POSITION_TOKEN) lastPositionToken = msg;
+            }
+        } while (inputs < backlog);                    // flush 開始後に届いた分は次回へ
+        batch.clear();  // DTO 参照を次回まで握らない
+        return inputs;
+    }
+
+    void setDrainChunk(int chunk) { this.drainChunk = chunk < 1 ? Integer.MAX_VALUE : chunk; }
+    int getDrainChunk() { return drainChunk; }
+    RecvOutputDTO lastPositionToken() { return lastPositionToken; }
+}
@@ -0,0 +1,75 @@
+package com.practice.client.tracking.application.worker;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * イベント時刻の窓：各行の受信時刻で EventTimeWindows の窓へ振り分け、開いている窓の変わった行だけを書く
+ * （書けなかった差分は EventTimeWindows が持ち越す）。
+ */
+final class EventTimeBucketing implements Bucketing {
+    private final EventTimeWindows windows;
+    private final DatabaseWriter dbWriter;
+    private final PipelineMetrics metrics;
+    private final WindowSnapshot snapshot = new WindowSnapshot(4096);
+    private EventTimeWindows.Bucket[] claimed = new EventTimeWindows.Bucket[4096];  // claim が true だった行の窓（claim 順）
+    private int claims;
+    private long lateReported;                        // 前回までの lateDropped()
+
+    EventTimeBucketing(EventTimeWindows windows, DatabaseWriter writer, PipelineMetrics metrics) {
+        this.windows = windows; this.dbWriter = writer; this.metrics = metrics;
+    }
+
+    EventTimeWindows windows() { return windows; }
+
+    @Override public void begin(long nowMillis) { claims = 0; }
+
+    @Override public void offer(RecvOutputDTO msg) {
+        int code = msg.getIcao24Code();
+        String icao = code != Icao24.NONE ? null : msg.getIcao24().orElse(null);
+        if (code == Icao24.NONE && icao == null) return;
+        offer(code, icao, msg);
+    }
+
+    /** 上書き済みの最新行を、その行の受信時刻の窓へ入れる（flush 間隔内で窓をまたいだ古い方は残らない） */
+    @Override public void offerLatest(String icao, RecvOutputDTO dto) { offer(dto.getIcao24Code(), icao, dto); }
+
+    private void offer(int code, String icao, RecvOutputDTO dto) {
+        Instant at = dto.getReceivedAt();
+        EventTimeWindows.Bucket bucket = windows.bucketFor(at.toEpochMilli());
+        if (bucket != null) bucket.offer(code, icao, at.getEpochSecond() * 1_000_000_000L + at.getNano(), dto);
+    }
+
+    @Override public boolean claim(int code, String icao, long epochNanos) {
+        if (code == Icao24.NONE && icao == null) return false;
+        EventTimeWindows.Bucket bucket = windows.bucketFor(Math.floorDiv(epochNanos, 1_000_000L));
+        if (bucket == null || !bucket.claim(code, icao, epochNanos)) return false;
+        if (claims == claimed.length) claimed = Arrays.copyOf(claimed, claims * 2);
+        claimed[claims++] = bucket;
+        return true;
+    }
+
+    @Override public void endClaims() { windows.endDrain(); }
+
+    @Override public void put(int code, String icao, long epochNanos, RecvOutputDTO dto) {
+        EventTimeWindows.Bucket bucket = claimed[--claims];
+        claimed[claims] = null;
+        bucket.put(code, icao, epochNanos, dto);
+    }
+
+    /** 開いている窓の差分を書き、ウォーターマークを過ぎた窓を閉じる */
+    @Override public void write(int inputs, long t0) {
+        int written = windows.flush(snapshot, dbWriter::upsertSnapshot);
+        long late = windows.lateDropped();
+        metrics.lateDropped(late - lateReported);
+        lateReported = late;
+        metrics.eventWindows(windows.openBuckets(), windows.watermark());
+        metrics.sampled(inputs, written, System.nanoTime() - t0);
+    }
+}
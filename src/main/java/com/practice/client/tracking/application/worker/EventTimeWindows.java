@@ -0,0 +1,195 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * イベント時刻（受信時刻）で窓を割り当てる間引きの状態。サンプラースレッド専用。
+ * <p>
+ * 複数の窓を同時に開いておき、各窓で ICAO24 ごとの最新（イベント時刻が最大）の行を保持する。
+ * flush のたびに「前回から変わった行」だけを窓ごとに書くので、窓の長さより短い間隔で書いても
+ * 各行のキー (icao24, bucket_start) は正しいまま DB の鮮度だけが上がる。
+ * <p>
+ * ウォーターマーク＝これまでの最大イベント時刻−allowedLateness。終わりがウォーターマーク以前の窓は
+ * 最後の差分を書いてから閉じ、以後その窓に属する行は遅着として捨てる。
+ * 新しい行が来ない間はウォーターマークが進まないので窓も閉じない（書き込みは済んでいる）。
+ */
+public final class EventTimeWindows {
+    private final long windowMillis, allowedLatenessMillis;
+    private final TreeMap<Long, Bucket> open = new TreeMap<>();
+    private long maxEventMillis = Long.MIN_VALUE;
+    private long closedBefore = Long.MIN_VALUE;     // これより前に始まる窓は閉じた
+    private long lateDropped;
+
+    public EventTimeWindows(long windowMillis, long allowedLatenessMillis) {
+        if (windowMillis <= 0) throw new IllegalArgumentException("windowMillis must be > 0: " + windowMillis);
+        if (allowedLatenessMillis < 0) throw new IllegalArgumentException("allowedLateness must be >= 0: " + allowedLatenessMillis);
+        this.windowMillis = windowMillis; this.allowedLatenessMillis = allowedLatenessMillis;
+    }
+
+    public long windowMillis() { return windowMillis; }
+    public long allowedLatenessMillis() { return allowedLatenessMillis; }
+    /** 現在のウォーターマーク（まだ1行も無ければ Long.MIN_VALUE） */
+    public long watermark() { return maxEventMillis == Long.MIN_VALUE ? Long.MIN_VALUE : maxEventMillis - allowedLatenessMillis; }
+    public int openBuckets() { return open.size(); }
+    /** 閉じた窓に属していたため捨てた行数（累計） */
+    public long lateDropped() { return lateDropped; }
+    /** これまでの最大イベント時刻と、閉じた窓の境界（これより前に始まる窓は閉じた）。どちらも無ければ Long.MIN_VALUE */
+    public long maxEventMillis() { return maxEventMillis; }
+    public long closedBefore() { return closedBefore; }
+
+    /** 開いている窓の1行（pending はまだ書いていない行。書いた後は null で時刻だけ） */
+    public interface EntryVisitor {
+        void accept(long bucketStart, String icao, long eventNanos, RecvOutputDTO pending);
+    }
+
+    /** チェックポイント用：開いている窓の全行を古い窓から渡す */
+    public void forEachEntry(EntryVisitor visitor) {
+        for (Bucket b : open.values()) b.forEachEntry(visitor);
+    }
+
+    /** チェックポイントから時計を戻す（今の値より進んでいる場合だけ） */
+    public void restoreClock(long maxEventMillis, long closedBefore) {
+        this.maxEventMillis = Math.max(this.maxEventMillis, maxEventMillis);
+        this.closedBefore = Math.max(this.closedBefore, closedBefore);
+    }
+
+    /** チェックポイントから1行戻す。pending があれば次の flush で書く。閉じた窓の行は捨てる */
+    public void restoreEntry(long bucketStart, String icao, long eventNanos, RecvOutputDTO pending) {
+        if (bucketStart < closedBefore) return;
+        Bucket b = open.computeIfAbsent(bucketStart, Bucket::new);
+        int code = Icao24.encode(icao);
+        Entry e = b.entry(code, code != Icao24.NONE ? null : icao);
+        if (eventNanos < e.eventNanos) return;
+        if (pending != null) b.set(e, eventNanos, pending);
+        else e.eventNanos = eventNanos;
+    }
+
+    /**
+     * イベント時刻の窓を返す（無ければ開く）。閉じた窓なら遅着として数えて null。
+     * 受け取った行の時刻でウォーターマークも進める。
+     */
+    Bucket bucketFor(long eventMillis) {
+        long start = IntervalSampler.floorTo(windowMillis, eventMillis);
+        if (start < closedBefore) { lateDropped++; return null; }
+        if (eventMillis > maxEventMillis) maxEventMillis = eventMillis;
+        Bucket b = open.get(start);
+        if (b == null) open.put(start, b = new Bucket(start));
+        return b;
+    }
+
+    /** 新しい順の走査（Bucket#claim）を終えたら呼ぶ */
+    void endDrain() { for (Bucket b : open.values()) b.endDrain(); }
+
+    /**
+     * 変わった行を窓ごとに snapshot に詰めて sink へ渡し、ウォーターマークを過ぎた窓を閉じる。
+     * 書いた行数を返す。
+     */
+    int flush(WindowSnapshot snapshot, Consumer<WindowSnapshot> sink) {
+        int written = 0;
+        long wm = watermark();
+        for (Iterator<Bucket> it = open.values().iterator(); it.hasNext();) {
+            Bucket b = it.next();
+            written += b.flushDirty(snapshot, sink);
+            if (wm != Long.MIN_VALUE && b.start + windowMillis <= wm) {
+                it.remove();
+                closedBefore = Math.max(closedBefore, b.start + windowMillis);
+            }
+        }
+        return written;
+    }
+
+    /** 1窓分：ICAO24 ごとの最新行と、前回 flush から変わった行の一覧 */
+    static final class Bucket {
+        final long start;
+        private final IcaoLatestMap<Entry> byCode = new IcaoLatestMap<>(256);
+        private final Map<String, Entry> byOther = new HashMap<>();  // 6桁16進でない ICAO 用
+        private final ArrayList<Entry> dirty = new ArrayList<>();
+        private final IcaoLatestMap<Boolean> seenCodes = new IcaoLatestMap<>(64);  // 新しい順に見るときの採用済み
+        private final Map<String, Boolean> seenOther = new HashMap<>();
+
+        Bucket(long start) { this.start = start; }
+
+        /**
+         * 受信順に渡す版。イベント時刻が保持中の行以上なら置き換える（同時刻は後着を採る）。
+         * 置き換えたら true。
+         */
+        boolean offer(int code, String icao, long eventNanos, RecvOutputDTO dto) {
+            Entry e = entry(code, icao);
+            if (eventNanos < e.eventNanos) return false;
+            set(e, eventNanos, dto);
+            return true;
+        }
+
+        /**
+         * 新しい順に渡す版の事前判定。この drain で同じ ICAO24 を既に採っていれば false、
+         * 以前の drain で採った行より古くても false（どちらも DTO を作らずに済む）。
+         */
+        boolean claim(int code, String icao, long eventNanos) {
+            if (code != Icao24.NONE) {
+                if (seenCodes.get(code) != null) return false;
+                seenCodes.put(code, Boolean.TRUE);
+            } else if (seenOther.putIfAbsent(icao, Boolean.TRUE) != null) {
+                return false;
+            }
+            Entry e = code != Icao24.NONE ? byCode.get(code) : byOther.get(icao);
+            return e == null || eventNanos >= e.eventNanos;
+        }
+
+        /** claim が true だった行を入れる */
+        void put(int code, String icao, long eventNanos, RecvOutputDTO dto) { set(entry(code, icao), eventNanos, dto); }
+
+        /** 新しい順の走査が終わったら呼ぶ */
+        void endDrain() { seenCodes.clear(); seenOther.clear(); }
+
+        void forEachEntry(EntryVisitor visitor) {
+            byCode.forEachValue(e -> visitor.accept(start, e.icao, e.eventNanos, e.dto));
+            byOther.values().forEach(e -> visitor.accept(start, e.icao, e.eventNanos, e.dto));
+        }
+
+        private Entry entry(int code, String icao) {
+            if (code != Icao24.NONE) {
+                Entry e = byCode.get(code);
+                if (e == null) byCode.put(code, e = new Entry(Icao24.decode(code)));
+                return e;
+            }
+            return byOther.computeIfAbsent(icao, Entry::new);
+        }
+
+        private void set(Entry e, long eventNanos, RecvOutputDTO dto) {
+            e.eventNanos = eventNanos; e.dto = dto;
+            if (!e.dirty) { e.dirty = true; dirty.add(e); }
+        }
+
+        private int flushDirty(WindowSnapshot snapshot, Consumer<WindowSnapshot> sink) {
+            if (dirty.isEmpty()) return 0;
+            snapshot.clear(start);
+            for (Entry e : dirty) snapshot.add(e.icao, e.dto);
+            try { sink.accept(snapshot); }             // 失敗したら差分を残し、次の flush で書き直す
+            finally { snapshot.clear(0); }
+            for (Entry e : dirty) {
+                e.dto = null;                          // 書いた後は時刻だけ残す（次の行との比較用）
+                e.dirty = false;
+            }
+            int n = dirty.size();
+            dirty.clear();
+            return n;
+        }
+    }
+
+    private static final class Entry {
+        final String icao;
+        long eventNanos = Long.MIN_VALUE;
+        RecvOutputDTO dto;
+        boolean dirty;
+        Entry(String icao) { this.icao = icao; }
+    }
+}
@@ -0,0 +1,81 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * ICAO24 コード（int, 0以上）→ 最新値 のオープンアドレス法マップ。
+ * ボクシング・エントリ生成なしで put でき、clear() 後も配列を使い回す（窓ごとの再確保をしない）。
+ * スレッドセーフではない（サンプラースレッド専用）。
+ */
+public final class IcaoLatestMap<V> {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private Object[] vals;
+    private int[] order;      // 挿入順のスロット番号（走査・clear を使用分だけで済ませる）
+    private int size, mask;
+
+    public IcaoLatestMap(int expectedSize) {
+        int cap = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        allocate(cap);
+    }
+
+    /** 既存キーなら上書き（最新で置き換え） */
+    public void put(int key, V value) {
+        if (key < 0) throw new IllegalArgumentException("negative key: " + key);
+        int i = slot(key);
+        if (keys[i] == key) { vals[i] = value; return; }
+        keys[i] = key; vals[i] = value; order[size++] = i;
+        if (size * 2 > keys.length) rehash();
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int i = slot(key);
+        return keys[i] == key ? (V) vals[i] : null;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    /** 挿入順に値を渡す */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int n = 0; n < size; n++) action.accept((V) vals[order[n]]);
+    }
+
+    /** 使ったスロットだけを戻す（容量は維持） */
+    public void clear() {
+        for (int n = 0; n < size; n++) { int i = order[n]; keys[i] = EMPTY; vals[i] = null; }
+        size = 0;
+    }
+
+    private int slot(int key) {
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private static int mix(int k) {
+        int h = k * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys; Object[] oldVals = vals; int[] oldOrder = order; int n = size;
+        allocate(oldKeys.length * 2);
+        for (int j = 0; j < n; j++) {
+            int from = oldOrder[j];
+            int i = slot(oldKeys[from]);
+            keys[i] = oldKeys[from]; vals[i] = oldVals[from]; order[size++] = i;
+        }
+    }
+
+    private void allocate(int cap) {
+        keys = new int[cap]; Arrays.fill(keys, EMPTY);
+        vals = new Object[cap];
+        order = new int[cap / 2 + 1];
+        size = 0; mask = cap - 1;
+    }
+}
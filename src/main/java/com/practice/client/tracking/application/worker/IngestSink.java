@@ -0,0 +1,8 @@
+package com.practice.client.tracking.application.worker;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/** 受信スレッド → 間引きスレッドへの受け渡し口（キュー投入・最新上書き等を差し替える） */
+public interface IngestSink {
+    void accept(RecvOutputDTO msg);
+}
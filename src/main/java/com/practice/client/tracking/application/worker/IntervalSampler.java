@@ -1,44 +1,107 @@
 package com.practice.client.tracking.application.worker;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 
 import com.practice.client.tracking.domain.dto.RecvOutputDTO;
 import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
 
+/**
+ * 受け渡し口に溜まった行を ICAO24 ごとの最新1行に間引いて書く。
+ * 受け渡し口（queue / ring / compact / conflate）ごとの取り出しは SamplerSource、窓の決め方は Bucketing が持つ。
+ * 既定は flush 時点の壁時計で窓を決める（処理時刻）。EventTimeWindows を渡すと各行の受信時刻で窓を決め、
+ * 複数の窓を開いたまま変わった行だけを書く（窓より短い間隔で呼んでよい）。
+ * <pre>
+ * IntervalSampler.builder(writer).queue(queue).windowMillis(30_000).build();
+ * IntervalSampler.builder(writer).compact(compact).eventTime(new EventTimeWindows(30_000, 5_000)).build();
+ * </pre>
+ */
 public class IntervalSampler implements Runnable {
-    private final BlockingQueue<RecvOutputDTO> queue; // 有界推奨
-    private final long windowMillis;
-    private final DatabaseWriter dbWriter;
+    private final SamplerSource source;
+    private final Bucketing buckets;
 
-    public IntervalSampler(BlockingQueue<RecvOutputDTO> queue, long windowMillis, DatabaseWriter writer) {
-        this.queue = queue; this.windowMillis = windowMillis; this.dbWriter = writer;
+    private IntervalSampler(SamplerSource source, Bucketing buckets) {
+        this.source = source; this.buckets = buckets;
     }
 
-    @Override public void run() {
-        // 1) “今キューに溜まっている分だけ”を drain（投入中はロック待ち→次回に回る）
-        var batch = new ArrayList<RecvOutputDTO>(Math.max(queue.size(), 16));
-        queue.drainTo(batch);  // ← 要件「先頭1件ではなく、全件」を満たす
+    public static Builder builder(DatabaseWriter writer) { return new Builder(writer); }
 
-        if (batch.isEmpty()) return;
+    @Override public void run() { flush(System.currentTimeMillis()); }
 
-        // 2) ICAO24ごとに“最新上書き”で間引き
-        Map<String, RecvOutputDTO> latestByIcao = new HashMap<>();
-        for (var msg : batch) {
-            if (!"target".equals(msg.getMessageType().orElse(""))) continue;  // 必要に応じて種別フィルタ
-            msg.getIcao24().ifPresent(icao -> latestByIcao.put(icao, msg));
-        }
+    /**
+     * nowMillis を現在時刻として1窓分を書く（アーカイブの再生では記録時の時刻を渡す）。
+     * 処理時刻モードで書き込みに失敗した窓は、次の flush で（元の窓開始時刻のまま）先に書き直す。
+     */
+    public void flush(long nowMillis) {
+        buckets.begin(nowMillis);
+        long t0 = System.nanoTime();
+        int inputs = source.drainInto(buckets);
+        if (inputs > 0) buckets.write(inputs, t0);
+    }
 
-        // 3) 現在の窓開始時刻をキー化（UTC壁時計ベース）
-        long bucketStart = floorTo(windowMillis, System.currentTimeMillis());
+    /**
+     * queue/ring モードで1回に取り出す件数の上限（既定は無制限）。flush は開始時点で溜まっていた分を
+     * chunk 件ずつ取り出して畳み込むので、間引きの結果は変わらない。他のモードでは使わない。
+     */
+    public void setDrainChunk(int chunk) { if (source instanceof DtoBatchSource s) s.setDrainChunk(chunk); }
+    public int getDrainChunk() { return source instanceof DtoBatchSource s ? s.getDrainChunk() : Integer.MAX_VALUE; }
 
-        // 4) DBへUPSERT
-        latestByIcao.forEach((icao, dto) -> dbWriter.upsert(icao, bucketStart, dto));
-    }
+    /** queue/ring モードで取り出し済みの最後の position_token 行（無ければ null。チェックポイント用） */
+    public RecvOutputDTO lastPositionToken() { return source instanceof DtoBatchSource s ? s.lastPositionToken() : null; }
+    /** イベント時刻モードの窓（処理時刻モードでは null） */
+    EventTimeWindows windows() { return buckets instanceof EventTimeBucketing e ? e.windows() : null; }
 
     static long floorTo(long unitMillis, long epochMillis) {
         return (epochMillis / unitMillis) * unitMillis;
     }
+
+    /** 受け渡し口を1つと、窓の決め方（windowMillis か eventTime）を1つ選ぶ */
+    public static class Builder {
+        private final DatabaseWriter writer;
+        private BlockingQueue<RecvOutputDTO> queue;
+        private SpscRingBuffer<RecvOutputDTO> ring;
+        private CompactMessageQueue compact;
+        private LatestByIcaoBuffer conflated;
+        private SpillToDiskPolicy<RecvOutputDTO> spill;
+        private long windowMillis;
+        private EventTimeWindows windows;
+        private PipelineMetrics metrics = PipelineMetrics.global();
+
+        Builder(DatabaseWriter writer) { this.writer = writer; }
+
+        /** queue モード：有界キューから全件を取り出す */
+        public Builder queue(BlockingQueue<RecvOutputDTO> v) { this.queue = v; return this; }
+        /** ring モード：ロックなしのリングから全件を取り出し、queue モードと同じ間引きで書く */
+        public Builder ring(SpscRingBuffer<RecvOutputDTO> v) { this.ring = v; return this; }
+        /** compact モード：DTO を作らずに積まれた行から、ICAO24 ごとの最新行だけを DTO にして書く */
+        public Builder compact(CompactMessageQueue v) { this.compact = v; return this; }
+        /** conflate モード：受信側で ICAO24 ごとに上書き済みの表を窓ごとに差し替えて書く */
+        public Builder conflated(LatestByIcaoBuffer v) { this.conflated = v; return this; }
+        /** queue モード：ingest.overflow=spill で逃がした行を、取り出すたびにキューの空きへ戻す */
+        public Builder replayFrom(SpillToDiskPolicy<RecvOutputDTO> v) { this.spill = v; return this; }
+
+        /** 処理時刻モード：flush 時点の壁時計で windowMillis の窓を決める */
+        public Builder windowMillis(long v) {
+            if (v < 1) throw new IllegalArgumentException("windowMillis must be >= 1: " + v);
+            this.windowMillis = v; return this;
+        }
+        /** イベント時刻モード（窓の長さは windows が持つ） */
+        public Builder eventTime(EventTimeWindows v) { this.windows = v; return this; }
+        /** 指定した集計先へ記録する（アーカイブの再生など、受信中の指標に混ぜたくない場合） */
+        public Builder metrics(PipelineMetrics v) { this.metrics = v; return this; }
+
+        public IntervalSampler build() {
+            int handoffs = (queue != null ? 1 : 0) + (ring != null ? 1 : 0) + (compact != null ? 1 : 0) + (conflated != null ? 1 : 0);
+            if (handoffs != 1) throw new IllegalArgumentException("exactly one of queue, ring, compact or conflated is required");
+            if ((windowMillis > 0) == (windows != null)) throw new IllegalArgumentException("exactly one of windowMillis or eventTime is required");
+            if (spill != null && queue == null) throw new IllegalArgumentException("spill replay needs queue mode");
+            SamplerSource source = queue != null ? new QueueSource(queue, spill)
+                    : ring != null ? new RingSource(ring)
+                    : compact != null ? new CompactSource(compact)
+                    : new ConflatedSource(conflated);
+            Bucketing buckets = windows != null ? new EventTimeBucketing(windows, writer, metrics)
+                    : new ProcessingTimeBucketing(windowMillis, writer, metrics);
+            return new IntervalSampler(source, buckets);
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import com.practice.client.tracking.domain.MessageType;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 間引き（conflate）モードの受け渡し口。受信時に ICAO24 ごとの最新で上書きし、
+ * サンプラーは swap() で窓の中身を丸ごと受け取る。
+ * メモリは機数に比例（メッセージ数×窓ではない）し、バーストでも機体の更新が押し出されない。
+ */
+public class LatestByIcaoBuffer implements IngestSink {
+    private final StampedLock lock = new StampedLock();
+    private volatile ConcurrentHashMap<String, RecvOutputDTO> active;
+    private ConcurrentHashMap<String, RecvOutputDTO> spare;
+    private final LongAdder accepted = new LongAdder();
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    public LatestByIcaoBuffer(int expectedAircraft) {
+        this.active = new ConcurrentHashMap<>(expectedAircraft);
+        this.spare = new ConcurrentHashMap<>(expectedAircraft);
+    }
+
+    /** target かつ ICAO24 付きのみ保持（間引き対象外の行はサンプラーでも捨てていた） */
+    @Override public void accept(RecvOutputDTO msg) {
+        if (msg.getType() != MessageType.TARGET) return;
+        String icao = msg.getIcao24().orElse(null);
+        if (icao == null) return;
+        // 読みロック＝“put 中”の印。swap は書きロックで in-flight の put を待ってから差し替える
+        long stamp = lock.readLock();
+        try { if (active.put(icao, msg) != null) metrics.conflated(); }
+        finally { lock.unlockRead(stamp); }
+        accepted.increment();
+    }
+
+    /**
+     * 現在の中身を取り出し、空の表に差し替える。
+     * 戻り値は次回 swap() まで有効（内部で再利用するため、サンプラースレッドからのみ呼ぶこと）。
+     */
+    public Map<String, RecvOutputDTO> swap() {
+        spare.clear();
+        long stamp = lock.writeLock();
+        try {
+            var filled = active;
+            active = spare;
+            spare = filled;
+            return filled;
+        } finally { lock.unlockWrite(stamp); }
+    }
+
+    public int size() { return active.size(); }
+
+    /** 起動以降に保持した（上書き分を含む）行数。間引き前の件数として使う */
+    public long accepted() { return accepted.sum(); }
+}
@@ -0,0 +1,76 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 有界キューが満杯のときの扱い。受信スレッドが {@link #offer} で積み、空きがあればそのまま入る。
+ * 捨てた行は PipelineMetrics の queueDropped（conflate で置き換えた行は conflated）に数える。
+ * <p>
+ * キューの型に依らず、最古は queue.poll() で捨てる（FIFO の先頭＝最古）。
+ * ディスクへ逃がす方針は {@link SpillToDiskPolicy}。
+ */
+public interface OverflowPolicy<E> {
+
+    /** e を queue に入れる（後で入れる分も含む）なら true、捨てたら false */
+    boolean offer(BlockingQueue<E> queue, E e);
+
+    /** 最古を捨てて最新を入れる（既定。“最新だけ使う”要件に整合） */
+    static <E> OverflowPolicy<E> dropOldest() {
+        return (queue, e) -> {
+            PipelineMetrics metrics = PipelineMetrics.global();
+            while (!queue.offer(e)) {
+                if (queue.poll() != null) metrics.queueDropped();   // 消費者が先に取った場合は空きができている
+            }
+            return true;
+        };
+    }
+
+    /** 入らなければ新しい方を捨てる（キューの中身は変えない） */
+    static <E> OverflowPolicy<E> dropNewest() {
+        return (queue, e) -> {
+            if (queue.offer(e)) return true;
+            PipelineMetrics.global().queueDropped();
+            return false;
+        };
+    }
+
+    /** 空きが出るまで最大 timeoutMillis 受信を止め、それでも入らなければ新しい方を捨てる */
+    static <E> OverflowPolicy<E> block(long timeoutMillis) {
+        if (timeoutMillis < 0) throw new IllegalArgumentException("timeoutMillis must be >= 0: " + timeoutMillis);
+        return (queue, e) -> {
+            try {
+                if (queue.offer(e) || queue.offer(e, timeoutMillis, TimeUnit.MILLISECONDS)) return true;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();      // 停止要求。受信ループ側で抜ける
+            }
+            PipelineMetrics.global().queueDropped();
+            return false;
+        };
+    }
+
+    /**
+     * 満杯なら、キュー内で key が同じ最古の行を取り除いてから末尾に入れる（同じ機体の古い位置だけが消える）。
+     * 同じ key が無い・key が null（ICAO24 の無い行）なら最古を捨てる。走査は満杯のときだけ。
+     */
+    static <E> OverflowPolicy<E> conflate(Function<? super E, ?> key) {
+        OverflowPolicy<E> fallback = dropOldest();
+        return (queue, e) -> {
+            if (queue.offer(e)) return true;
+            Object k = key.apply(e);
+            if (k != null) {
+                for (E old : queue) {
+                    if (!Objects.equals(k, key.apply(old)) || !queue.remove(old)) continue;
+                    PipelineMetrics.global().conflated();
+                    if (queue.offer(e)) return true;
+                    break;                               // 別の生産者に空きを取られた
+                }
+            }
+            return fallback.offer(queue, e);
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.concurrent.BlockingQueue;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/** 有界キューへ投入。満杯時の扱いは OverflowPolicy に任せる（キューの実装は問わない） */
+public class OverflowQueueSink implements IngestSink {
+    private final BlockingQueue<RecvOutputDTO> queue;
+    private final OverflowPolicy<RecvOutputDTO> policy;
+
+    public OverflowQueueSink(BlockingQueue<RecvOutputDTO> queue, OverflowPolicy<RecvOutputDTO> policy) {
+        this.queue = queue; this.policy = policy;
+    }
+
+    @Override public void accept(RecvOutputDTO msg) { policy.offer(queue, msg); }
+}
@@ -0,0 +1,222 @@
+package com.practice.client.tracking.application.worker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.MessageType;
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.ChangeSuppressingWriter;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 受信→間引き→書き込みの途中状態を、再開トークンと揃えて1つのバイナリにまとめる／戻す（queue モード・受信1本）。
+ * 中身はキューに残っている行・イベント時刻の窓（書いていない行と ICAO24 ごとの時刻）・ChangeSuppressingWriter の記録。
+ * <p>
+ * トークンはシャード 0 のキューにある最後の position_token 行（無ければ間引き済みの最後の行）。
+ * キューの行はその行までを残す（他のシャードは受信時刻がその行以前のもの）。それより後の行は再開後に
+ * サーバから受け直すので二重にならない。トークンより後で既に間引いた行は受け直して二重に入るが、
+ * 同じ機体の最新上書きなので結果は変わらない。
+ * <p>
+ * {@link #capture} は間引きと同じ sampler スレッドから flush の合間に呼ぶ（窓と作業領域はそのスレッド専用）。
+ * キューは toArray で写すだけで、受信スレッドは止めない。{@link #restore} は受信を始める前に呼ぶ。
+ */
+public class PipelineCheckpoint {
+    private final List<BlockingQueue<RecvOutputDTO>> queues;      // シャード順
+    private final List<IntervalSampler> samplers;                 // 同上
+    private final ChangeSuppressingWriter suppress;               // writer.suppress=off なら null
+    private final SpillToDiskPolicy.Codec<RecvOutputDTO> codec;   // 行は受信時刻と生の行だけを書き、戻すときに解析し直す
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    /** 戻した結果。positionToken はチェックポイント時点の再開トークン（無ければ null） */
+    public record Restored(String positionToken, int queuedLines, int windowRows, int writerEntries) {}
+
+    public PipelineCheckpoint(List<BlockingQueue<RecvOutputDTO>> queues, List<IntervalSampler> samplers,
+                              ChangeSuppressingWriter suppress, TargetFields targetFields) {
+        if (queues.isEmpty() || queues.size() != samplers.size()) {
+            throw new IllegalArgumentException("queues and samplers must have the same non-zero size");
+        }
+        this.queues = List.copyOf(queues); this.samplers = List.copyOf(samplers); this.suppress = suppress;
+        this.codec = SpillToDiskPolicy.recvOutputCodec(targetFields);
+    }
+
+    /** 今の状態をバイト列にする（sampler スレッドから呼ぶ） */
+    public byte[] capture() {
+        var bytes = new ByteArrayOutputStream(64 * 1024);
+        try (var out = new DataOutputStream(bytes)) {
+            List<RecvOutputDTO> lines = new ArrayList<>();
+            RecvOutputDTO token = cutQueues(lines);
+            writeNullableUtf(out, token == null ? null : token.getPositionToken().orElse(null));
+            out.writeInt(lines.size());
+            for (var dto : lines) writeLine(out, dto);
+
+            out.writeInt(samplers.size());
+            for (var s : samplers) writeWindows(out, s.windows());
+
+            out.writeBoolean(suppress != null);
+            if (suppress != null) writeSuppress(out, suppress);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode checkpoint", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * キューを写し、再開トークンの行を決めて、それ以前の行を lines に入れる。トークンの行を返す。
+     * トークンがどこにも無ければ全行を残す。
+     */
+    private RecvOutputDTO cutQueues(List<RecvOutputDTO> lines) {
+        Object[][] snap = new Object[queues.size()][];
+        for (int k = 0; k < snap.length; k++) snap[k] = queues.get(k).toArray();
+        Object[] first = snap[0];
+        int cut = -1;
+        for (int i = first.length - 1; i >= 0 && cut < 0; i--) {
+            if (((RecvOutputDTO) first[i]).getType() == MessageType.POSITION_TOKEN) cut = i;
+        }
+        RecvOutputDTO token = cut >= 0 ? (RecvOutputDTO) first[cut] : samplers.get(0).lastPositionToken();
+        int keep = cut >= 0 ? cut + 1 : token != null ? 0 : first.length;   // 間引き済みのトークンより後は受け直す
+        for (int i = 0; i < keep; i++) lines.add((RecvOutputDTO) first[i]);
+        long cutNanos = token == null ? Long.MAX_VALUE : epochNanos(token.getReceivedAt());
+        for (int k = 1; k < snap.length; k++) {
+            for (Object o : snap[k]) {
+                RecvOutputDTO dto = (RecvOutputDTO) o;
+                if (epochNanos(dto.getReceivedAt()) <= cutNanos) lines.add(dto);
+            }
+        }
+        return token;
+    }
+
+    private void writeWindows(DataOutputStream out, EventTimeWindows w) throws IOException {
+        out.writeBoolean(w != null);
+        if (w == null) return;
+        out.writeLong(w.maxEventMillis());
+        out.writeLong(w.closedBefore());
+        var bytes = new ByteArrayOutputStream();
+        var body = new DataOutputStream(bytes);
+        int[] n = {0};
+        w.forEachEntry((bucketStart, icao, eventNanos, pending) -> {
+            try {
+                body.writeLong(bucketStart);
+                body.writeUTF(icao);
+                body.writeLong(eventNanos);
+                body.writeBoolean(pending != null);
+                if (pending != null) writeLine(body, pending);
+                n[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.writeInt(n[0]);
+        bytes.writeTo(out);
+    }
+
+    private static void writeSuppress(DataOutputStream out, ChangeSuppressingWriter w) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var body = new DataOutputStream(bytes);
+        int[] n = {0};
+        w.forEachEntry((icao, fp, bucketStart, writtenAt, touchedAt, seenAt) -> {
+            try {
+                body.writeUTF(icao);
+                body.writeLong(fp); body.writeLong(bucketStart);
+                body.writeLong(writtenAt); body.writeLong(touchedAt); body.writeLong(seenAt);
+                n[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.writeInt(n[0]);
+        bytes.writeTo(out);
+    }
+
+    /**
+     * capture したバイト列を戻す（受信を始める前に呼ぶ）。キューの行と窓の行は今のシャード数で振り分け直す。
+     * キューに入りきらない行は queueDropped に数えて捨てる。
+     */
+    public Restored restore(byte[] checkpoint) {
+        try (var in = new DataInputStream(new ByteArrayInputStream(checkpoint))) {
+            String token = readNullableUtf(in);
+            int lines = in.readInt();
+            for (int i = 0; i < lines; i++) {
+                RecvOutputDTO dto = readLine(in);
+                if (!queues.get(ShardedSink.shardOf(dto, queues.size())).offer(dto)) metrics.queueDropped();
+            }
+
+            int windowRows = 0;
+            int savedShards = in.readInt();
+            for (int s = 0; s < savedShards; s++) windowRows += readWindows(in);
+
+            int writerEntries = 0;
+            if (in.readBoolean()) {
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    String icao = in.readUTF();
+                    long fp = in.readLong(), bucketStart = in.readLong();
+                    long writtenAt = in.readLong(), touchedAt = in.readLong(), seenAt = in.readLong();
+                    if (suppress == null) continue;        // 今回は writer.suppress=off
+                    suppress.restoreEntry(icao, fp, bucketStart, writtenAt, touchedAt, seenAt);
+                    writerEntries++;
+                }
+            }
+            return new Restored(token, lines, windowRows, writerEntries);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode checkpoint", e);
+        }
+    }
+
+    /** 1シャード分の窓を読み、行を今のシャードへ振り分ける。イベント時刻モードでなくなっていれば読み捨てる */
+    private int readWindows(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return 0;
+        long maxEventMillis = in.readLong(), closedBefore = in.readLong();
+        int n = samplers.size();
+        for (var s : samplers) if (s.windows() != null) s.windows().restoreClock(maxEventMillis, closedBefore);
+        int rows = in.readInt();
+        int restored = 0;
+        for (int i = 0; i < rows; i++) {
+            long bucketStart = in.readLong();
+            String icao = in.readUTF();
+            long eventNanos = in.readLong();
+            RecvOutputDTO pending = in.readBoolean() ? readLine(in) : null;
+            int code = Icao24.encode(icao);
+            EventTimeWindows w = samplers.get(ShardedSampler.shardOf(code, icao, n)).windows();
+            if (w == null) continue;
+            w.restoreEntry(bucketStart, icao, eventNanos, pending);
+            restored++;
+        }
+        return restored;
+    }
+
+    private void writeLine(DataOutput out, RecvOutputDTO dto) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(codec.size(dto));
+        codec.write(dto, buf);
+        out.writeInt(buf.capacity());
+        out.write(buf.array());
+    }
+
+    private RecvOutputDTO readLine(DataInput in) throws IOException {
+        int len = in.readInt();
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return codec.read(ByteBuffer.wrap(b), len);
+    }
+
+    private static void writeNullableUtf(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readNullableUtf(DataInput in) throws IOException { return in.readBoolean() ? in.readUTF() : null; }
+
+    private static long epochNanos(Instant t) { return t.getEpochSecond() * 1_000_000_000L + t.getNano(); }
+}
@@ -0,0 +1,86 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 処理時刻の窓：flush 時点の壁時計で窓を決め、ICAO24 ごとの最新1行を書く。
+ * 書き込みに失敗した窓は投げる前に残しておき、次の flush の最初に（元の窓開始時刻のまま）書き直す。
+ */
+final class ProcessingTimeBucketing implements Bucketing {
+    private final long windowMillis;
+    private final DatabaseWriter dbWriter;
+    private final PipelineMetrics metrics;
+
+    // 以下は flush 間で使い回す作業領域
+    private final IcaoLatestMap<RecvOutputDTO> latestByCode = new IcaoLatestMap<>(4096);
+    private final Map<String, RecvOutputDTO> latestByOtherIcao = new HashMap<>(); // 6桁16進でない ICAO 用
+    private final IcaoLatestMap<Boolean> seenCodes = new IcaoLatestMap<>(4096);    // claim で採用済みの ICAO
+    private final Map<String, Boolean> seenOtherIcao = new HashMap<>();
+    private WindowSnapshot snapshot = new WindowSnapshot(4096);    // 1窓分（offerLatest・put の行は直接ここへ）
+    private WindowSnapshot failed = new WindowSnapshot(16);        // 書けなかった窓（空なら無し）
+
+    ProcessingTimeBucketing(long windowMillis, DatabaseWriter writer, PipelineMetrics metrics) {
+        this.windowMillis = windowMillis; this.dbWriter = writer; this.metrics = metrics;
+    }
+
+    /** 前回書けなかった窓を先に書き直す。また失敗したら投げ、今回の分は取り出さずに次回へ回す */
+    @Override public void begin(long nowMillis) {
+        if (!failed.isEmpty()) {
+            long t0 = System.nanoTime();
+            int written = failed.size();
+            dbWriter.upsertSnapshot(failed);
+            failed.clear(0);
+            metrics.sampled(0, written, System.nanoTime() - t0);
+        }
+        snapshot.clear(IntervalSampler.floorTo(windowMillis, nowMillis));
+    }
+
+    @Override public void offer(RecvOutputDTO msg) {
+        int code = msg.getIcao24Code();
+        if (code != Icao24.NONE) latestByCode.put(code, msg);      // 受信時に int 化済みのコードをキーにする
+        else msg.getIcao24().ifPresent(icao -> latestByOtherIcao.put(icao, msg));
+    }
+
+    @Override public void offerLatest(String icao, RecvOutputDTO dto) { snapshot.add(icao, dto); }
+
+    @Override public boolean claim(int code, String icao, long epochNanos) {
+        if (code != Icao24.NONE) {
+            if (seenCodes.get(code) != null) return false;
+            seenCodes.put(code, Boolean.TRUE);
+            return true;
+        }
+        return icao != null && seenOtherIcao.putIfAbsent(icao, Boolean.TRUE) == null;
+    }
+
+    @Override public void endClaims() {
+        seenCodes.clear();
+        seenOtherIcao.clear();
+    }
+
+    @Override public void put(int code, String icao, long epochNanos, RecvOutputDTO dto) {
+        snapshot.add(dto.getIcao24().get(), dto);
+    }
+
+    /** 1窓分を列形式にまとめて書き、DTO 参照を次回まで握らないよう空にする。失敗したら窓ごと failed へ移す */
+    @Override public void write(int inputs, long t0) {
+        latestByCode.forEachValue(dto -> snapshot.add(dto.getIcao24().get(), dto));
+        latestByOtherIcao.forEach(snapshot::add);
+        latestByCode.clear();
+        latestByOtherIcao.clear();
+        int written = snapshot.size();
+        try { dbWriter.upsertSnapshot(snapshot); }
+        catch (RuntimeException e) {
+            WindowSnapshot spare = failed; failed = snapshot; snapshot = spare;   // 入れ替えるだけでコピーしない
+            throw e;
+        }
+        finally { snapshot.clear(0); }
+        metrics.sampled(inputs, written, System.nanoTime() - t0);
+    }
+}
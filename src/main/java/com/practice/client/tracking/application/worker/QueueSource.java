@@ -0,0 +1,23 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * queue モードの受け渡し口。ingest.overflow=spill なら取り出すたびに、ディスクへ逃がした行を
+ * キューの空きへ記録順に戻す（戻した行は次の取り出しで読む。受信が止まっていても届く）。
+ */
+final class QueueSource extends DtoBatchSource {
+    private final BlockingQueue<RecvOutputDTO> queue;
+    private final SpillToDiskPolicy<RecvOutputDTO> spill;   // 無ければ null
+
+    QueueSource(BlockingQueue<RecvOutputDTO> queue, SpillToDiskPolicy<RecvOutputDTO> spill) {
+        this.queue = queue; this.spill = spill;
+    }
+
+    @Override int drainTo(ArrayList<RecvOutputDTO> into, int max) { return queue.drainTo(into, max); }
+    @Override int depth() { return queue.size(); }
+    @Override void afterDrain() { if (spill != null) spill.replay(queue); }
+}
@@ -0,0 +1,62 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
+import com.practice.client.tracking.infrastructure.persistence.token.TokenStore;
+
+/**
+ * フィードを extraParams（地域・フィルタ等）で分けた複数購読を並列に受信する。
+ * シャードごとに ReceiverWorker・接続・再開トークンを持ち、仮想スレッドで動かす。
+ * 受信結果は共通の IngestSink に合流する（sink は複数スレッドからの accept に耐えること）。
+ */
+public class ReceiverGroup implements AutoCloseable {
+    /** 1購読分の設定。tokenStore はシャード間で共有しないこと */
+    public record Shard(String name, RecvInputDTO input, TokenStore tokenStore) {}
+
+    private final List<Shard> shards;
+    private final Supplier<TrackingStreamClient> clientFactory;
+    private final IngestSink sink;
+    private final AtomicBoolean stop;
+    private final ReconnectPolicy reconnect;
+    private final List<TrackingStreamClient> clients = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    public ReceiverGroup(List<Shard> shards, Supplier<TrackingStreamClient> clientFactory,
+                         IngestSink sink, AtomicBoolean stop) {
+        this(shards, clientFactory, sink, stop, ReconnectPolicy.defaults());
+    }
+
+    public ReceiverGroup(List<Shard> shards, Supplier<TrackingStreamClient> clientFactory,
+                         IngestSink sink, AtomicBoolean stop, ReconnectPolicy reconnect) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("shards must not be empty");
+        this.shards = List.copyOf(shards); this.clientFactory = clientFactory; this.sink = sink; this.stop = stop;
+        this.reconnect = reconnect;
+    }
+
+    public synchronized void start() {
+        if (!threads.isEmpty()) throw new IllegalStateException("already started");
+        for (Shard s : shards) {
+            TrackingStreamClient client = clientFactory.get();   // 接続状態はシャードごとに別
+            clients.add(client);
+            var worker = new ReceiverWorker(client, s.input(), sink, stop, s.tokenStore(), reconnect);
+            threads.add(Thread.ofVirtual().name("stream-receiver-" + s.name()).start(worker));
+        }
+    }
+
+    public int size() { return shards.size(); }
+
+    /** 停止フラグを立て、各接続を閉じて読み込み待ちを解き、終了を待つ */
+    @Override public synchronized void close() {
+        stop.set(true);
+        clients.forEach(TrackingStreamClient::closeQuietly);
+        for (Thread t : threads) {
+            try { t.join(5_000); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+        }
+    }
+}
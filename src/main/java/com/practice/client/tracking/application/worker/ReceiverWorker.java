@@ -2,24 +2,49 @@ package com.practice.client.tracking.application.worker;
 
 import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.practice.client.tracking.domain.dto.RecvInputDTO;
 import com.practice.client.tracking.domain.dto.RecvOutputDTO;
 import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
 import com.practice.client.tracking.infrastructure.persistence.token.TokenStore;
 
 public class ReceiverWorker implements Runnable {
     private final TrackingStreamClient client;
-    private final BlockingQueue<RecvOutputDTO> outQueue;
+    private final IngestSink sink;
     private final AtomicBoolean stop;
     private RecvInputDTO ctx;
     private final TokenStore tokenStore;
+    private final ReconnectPolicy reconnect;
+    private final TrackingStreamClient.LineConsumer compactSink;   // sink が LineConsumer（compact モード）のときだけ
+
+    private int failures;                          // 連続失敗回数（stableMillis 以上つながってから切れたら数え直す）
+    private long disconnectedAtNanos;
+    private long connectedAtNanos = -1;            // 今の接続で最初の1行を受けた時刻（まだなら -1）
+    private volatile long reconnects;
+    private volatile long lastRecoveryMillis = -1;
 
     public ReceiverWorker(TrackingStreamClient client, RecvInputDTO initialCtx,
                    BlockingQueue<RecvOutputDTO> outQueue, AtomicBoolean stop, TokenStore store) {
-        this.client = client; this.ctx = initialCtx; this.outQueue = outQueue; this.stop = stop; this.tokenStore = store;
+        this(client, initialCtx, new DropOldestQueueSink(outQueue), stop, store);
+    }
+
+    /** 受け渡し先を差し替える版（例：LatestByIcaoBuffer で受信時に間引く） */
+    public ReceiverWorker(TrackingStreamClient client, RecvInputDTO initialCtx,
+                   IngestSink sink, AtomicBoolean stop, TokenStore store) {
+        this(client, initialCtx, sink, stop, store, ReconnectPolicy.defaults());
+    }
+
+    public ReceiverWorker(TrackingStreamClient client, RecvInputDTO initialCtx,
+                   IngestSink sink, AtomicBoolean stop, TokenStore store, ReconnectPolicy reconnect) {
+        this.client = client; this.ctx = initialCtx; this.sink = sink; this.stop = stop; this.tokenStore = store;
+        this.reconnect = reconnect;
+        this.compactSink = sink instanceof TrackingStreamClient.LineConsumer q ? (buf, off, len, at, f) -> {
+            if (f.positionToken() != null) savePosition(f.positionToken());
+            q.accept(buf, off, len, at, f);
+        } : null;
         // 起動時に保存済みトークンがあれば“続きから”
         tokenStore.load().ifPresent(t -> this.ctx = this.ctx.withPositionToken(t));
     }
@@ -29,22 +54,58 @@ public class ReceiverWorker implements Runnable {
             client.authenticate(ctx);
             while (!stop.get()) {
                 try {
-                    RecvOutputDTO out = client.receive(ctx);
-                    out.getPositionToken().ifPresent(t -> { tokenStore.save(t); ctx = ctx.withPositionToken(t); });
-
-                    // 有界キュー。満杯なら最古を捨てて最新を優先（“最新だけ使う”要件に整合）
-                    if (!outQueue.offer(out)) {
-                        if (outQueue instanceof LinkedBlockingDeque<RecvOutputDTO> deq) {
-                            deq.pollFirst();
-                            deq.offerLast(out);
-                        }
+                    if (compactSink != null) {
+                        // DTO を作らずに直接キューの配列へ詰める
+                        client.receiveInto(ctx, compactSink);
+                        if (connectedAtNanos < 0) connected();
+                        continue;
                     }
+                    RecvOutputDTO out = client.receive(ctx);
+                    if (connectedAtNanos < 0) connected();
+                    out.getPositionToken().ifPresent(this::savePosition);
+
+                    sink.accept(out);
                 } catch (IOException e) {
-                    Thread.sleep(1000); // 軽いリトライ（本番は指数＋ジッタ推奨）
+                    if (stop.get()) break;
+                    if (reconnect.isFatal(e)) throw e;
+                    disconnected();
+                    long delay = reconnect.delayMillis(failures, e);
+                    System.err.println("[Receiver] " + e.getMessage() + " -> reconnect #" + failures + " in " + delay + " ms");
+                    if (delay > 0) Thread.sleep(delay);
                 }
             }
         } catch (Exception e) {
             System.err.println("[Receiver] fatal: " + e.getMessage());
         } finally { client.closeQuietly(); }
     }
+
+    /** 保存に失敗しても受信は続ける（ctx は進めるので、この接続中の再開位置は失われない） */
+    private void savePosition(String token) {
+        try { tokenStore.save(token); }
+        catch (RuntimeException e) { System.err.println("[Receiver] token save failed: " + e.getMessage()); }
+        ctx = ctx.withPositionToken(token);
+    }
+
+    /** 接続後の最初の1行。切断後なら復旧として記録する（failures は切れたときに数え直す） */
+    private void connected() {
+        connectedAtNanos = System.nanoTime();
+        if (failures == 0) return;
+        lastRecoveryMillis = TimeUnit.NANOSECONDS.toMillis(connectedAtNanos - disconnectedAtNanos);
+        reconnects++;
+        PipelineMetrics.global().reconnected(lastRecoveryMillis);
+        System.err.println("[Receiver] recovered in " + lastRecoveryMillis + " ms after " + failures + " attempt(s)");
+    }
+
+    private void disconnected() {
+        long now = System.nanoTime();
+        long upMillis = connectedAtNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(now - connectedAtNanos);
+        failures = reconnect.attemptAfter(failures, upMillis);
+        if (failures == 1 || upMillis >= 0) disconnectedAtNanos = now;   // 復旧時間は直近に切れた時点から測る
+        connectedAtNanos = -1;
+    }
+
+    /** 切断から復旧した回数 */
+    public long getReconnects() { return reconnects; }
+    /** 直近の切断から最初の1行を受信するまでの時間（未切断なら -1） */
+    public long getLastRecoveryMillis() { return lastRecoveryMillis; }
 }
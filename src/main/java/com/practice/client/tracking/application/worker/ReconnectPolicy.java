@@ -0,0 +1,71 @@
+package com.practice.client.tracking.application.worker;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.practice.client.tracking.infrastructure.http.StreamStatusException;
+
+/**
+ * 切断後の再接続間隔を決める。
+ * <ul>
+ *   <li>張れていた接続が切れた直後の1回目は待たずに再接続（最後の position_token から再開）。
+ *       ただし stableMillis 未満で切れた接続は復旧とみなさず、失敗回数を続きから数えてバックオフする
+ *       （1行だけ返して切るサーバに待ちなしで繋ぎ直し続けないため）</li>
+ *   <li>以降は base×2^n（上限 max）の指数バックオフ。半分を固定・半分をランダムにして一斉再接続を避ける</li>
+ *   <li>429・5xx は即時再接続せずバックオフし、Retry-After があればそれ以上待つ</li>
+ *   <li>それ以外の 4xx（認証・URL誤り等）は致命的として再接続しない</li>
+ * </ul>
+ */
+public class ReconnectPolicy {
+    private final long baseMillis;
+    private final long maxMillis;
+    private final long stableMillis;
+
+    public ReconnectPolicy(long baseMillis, long maxMillis) {
+        this(baseMillis, maxMillis, 10_000);
+    }
+
+    public ReconnectPolicy(long baseMillis, long maxMillis, long stableMillis) {
+        if (baseMillis < 1) throw new IllegalArgumentException("baseMillis must be >= 1: " + baseMillis);
+        if (maxMillis < baseMillis) throw new IllegalArgumentException("maxMillis must be >= baseMillis: " + maxMillis);
+        if (stableMillis < 0) throw new IllegalArgumentException("stableMillis must be >= 0: " + stableMillis);
+        this.baseMillis = baseMillis; this.maxMillis = maxMillis; this.stableMillis = stableMillis;
+    }
+
+    public static ReconnectPolicy defaults() { return new ReconnectPolicy(500, 60_000); }
+
+    /** 再接続しても無駄な失敗か */
+    public boolean isFatal(Throwable cause) {
+        return cause instanceof StreamStatusException s && !s.isRetryable();
+    }
+
+    /**
+     * 切断時の連続失敗回数を返す（1始まり）。最初の1行から connectedMillis 以上つながっていれば 1 に数え直し、
+     * 1行も受けていない（-1）かすぐ切れた接続なら failures の続きにする
+     */
+    public int attemptAfter(int failures, long connectedMillis) {
+        return connectedMillis >= stableMillis ? 1 : failures + 1;
+    }
+
+    /** 連続 attempt 回目（1始まり）の失敗のあと、再接続までに待つ時間 */
+    public long delayMillis(int attempt, Throwable cause) {
+        if (cause instanceof StreamStatusException s) {
+            long floor = s.getRetryAfter().map(Duration::toMillis).orElse(0L);
+            return Math.max(floor, backoff(attempt));
+        }
+        if (attempt <= 1 && cause instanceof IOException) return 0;
+        return backoff(attempt - 1);
+    }
+
+    /** n 回目のバックオフ（n>=1）：[ceil/2, ceil] の一様乱数、ceil = min(max, base×2^(n-1)) */
+    private long backoff(int n) {
+        int shift = Math.min(Math.max(n - 1, 0), 30);
+        long ceil = Math.min(maxMillis, baseMillis << shift);
+        return ceil / 2 + ThreadLocalRandom.current().nextLong(ceil - ceil / 2 + 1);
+    }
+
+    public long getBaseMillis() { return baseMillis; }
+    public long getMaxMillis() { return maxMillis; }
+    public long getStableMillis() { return stableMillis; }
+}
@@ -0,0 +1,15 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.ArrayList;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/** ring モードの受け渡し口。ロックなしのリングから取り出し、queue モードと同じ間引きで書く */
+final class RingSource extends DtoBatchSource {
+    private final SpscRingBuffer<RecvOutputDTO> ring;
+
+    RingSource(SpscRingBuffer<RecvOutputDTO> ring) { this.ring = ring; }
+
+    @Override int drainTo(ArrayList<RecvOutputDTO> into, int max) { return ring.drainTo(into, max); }
+    @Override int depth() { return ring.size(); }
+}
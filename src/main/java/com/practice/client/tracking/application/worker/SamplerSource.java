@@ -0,0 +1,7 @@
+package com.practice.client.tracking.application.worker;
+
+/** IntervalSampler の受け渡し口（queue / ring / compact / conflate）。sampler スレッドから呼ぶ */
+interface SamplerSource {
+    /** 溜まっている分を取り出して buckets へ渡し、取り出した件数を返す（0 なら今回は書かない） */
+    int drainInto(Bucketing buckets);
+}
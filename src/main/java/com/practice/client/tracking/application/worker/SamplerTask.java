@@ -0,0 +1,28 @@
+package com.practice.client.tracking.application.worker;
+
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 間引き（IntervalSampler / ShardedSampler）を定期実行するときの包み。
+ * ScheduledExecutorService は例外で終わったタスクを二度と実行しないため、flush の失敗（DB 障害など）はここで数えて記録し、次の周期へ進む。
+ * 書けなかった行は各段が持ち越す（処理時刻モードは失敗した窓を、イベント時刻モードは未書き込みの差分を次の flush で書き直す）。
+ */
+public final class SamplerTask implements Runnable {
+    private final Runnable sampler;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    private SamplerTask(Runnable sampler) { this.sampler = sampler; }
+
+    public static SamplerTask guard(Runnable sampler) {
+        return sampler instanceof SamplerTask t ? t : new SamplerTask(sampler);
+    }
+
+    @Override public void run() {
+        try {
+            sampler.run();
+        } catch (RuntimeException e) {
+            metrics.flushFailed();
+            System.err.println("[Sampler] flush failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.practice.client.tracking.domain.Icao24;
+
+/**
+ * ICAO24 のハッシュで分けた N 個の IntervalSampler を並列に flush する（シャードごとに受け渡し口と作業領域を持つ）。
+ * 1回の run では全シャードに同じ nowMillis を渡すので、窓の境界（bucket_start）はシャード間で揃う。
+ * 全シャードが終わるまで戻らないため、FixedDelay で呼べば次の窓と重ならない。
+ * <p>
+ * シャード 0 は呼び出したスレッド（sampler）で、残りは専用のワーカーで処理する。
+ * 振り分けは {@link ShardedSink} が同じ {@link #shardOf} で行う。
+ */
+public class ShardedSampler implements Runnable, AutoCloseable {
+    private final IntervalSampler[] shards;
+    private final ExecutorService workers;
+    private final Future<?>[] pending;
+
+    public ShardedSampler(List<IntervalSampler> shards) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("shards must not be empty");
+        this.shards = shards.toArray(new IntervalSampler[0]);
+        this.pending = new Future<?>[this.shards.length];
+        AtomicInteger seq = new AtomicInteger(1);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, this.shards.length - 1), r -> {
+            Thread t = new Thread(r, "sampler-shard-" + seq.getAndIncrement());
+            t.setDaemon(true); return t;
+        });
+    }
+
+    public int shardCount() { return shards.length; }
+
+    @Override public void run() { flush(System.currentTimeMillis()); }
+
+    /** 全シャードを nowMillis の窓で flush する。失敗したシャードがあっても他は書き終えてから最初の例外を投げる */
+    public void flush(long nowMillis) {
+        for (int i = 1; i < shards.length; i++) {
+            IntervalSampler s = shards[i];
+            pending[i] = workers.submit(() -> s.flush(nowMillis));
+        }
+        RuntimeException failure = null;
+        try { shards[0].flush(nowMillis); } catch (RuntimeException e) { failure = e; }
+        for (int i = 1; i < shards.length; i++) {
+            try {
+                pending[i].get();
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException re ? re
+                        : new RuntimeException("Sampler shard " + i + " failed", e.getCause());
+                if (failure == null) failure = cause; else failure.addSuppressed(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < shards.length; j++) pending[j].cancel(true);
+                throw new IllegalStateException("Interrupted while waiting for sampler shards", e);
+            } finally {
+                pending[i] = null;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    @Override public void close() { workers.shutdownNow(); }
+
+    /** 間引きのキーと同じ単位（符号化できれば ICAO24 コード、できなければ文字列）で振り分ける。ICAO24 なしは 0 */
+    public static int shardOf(int icaoCode, String icao, int shards) {
+        if (shards == 1) return 0;
+        if (icaoCode != Icao24.NONE) return Math.floorMod(icaoCode * 0x9E3779B9, shards);
+        return icao == null ? 0 : Math.floorMod(icao.hashCode() * 0x9E3779B9, shards);
+    }
+}
@@ -0,0 +1,57 @@
+package com.practice.client.tracking.application.worker;
+
+import java.util.List;
+
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.http.AsyncTrackingStreamClient;
+import com.practice.client.tracking.infrastructure.http.NdjsonLineParser;
+import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
+
+/**
+ * 受信した行を ICAO24 のハッシュでシャードごとの受け渡し口へ振り分ける（{@link ShardedSampler} と対で使う）。
+ * ICAO24 を持たない行（position_token・status 等）はシャード 0 へ。
+ */
+public class ShardedSink implements IngestSink {
+    private final IngestSink[] shards;
+
+    ShardedSink(List<? extends IngestSink> shards) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("shards must not be empty");
+        this.shards = shards.toArray(new IngestSink[0]);
+    }
+
+    /** 全シャードが LineConsumer（compact モード）なら、DTO を作らない受信経路もそのまま振り分ける版を返す */
+    public static ShardedSink of(List<? extends IngestSink> shards) {
+        for (IngestSink s : shards) if (!(s instanceof TrackingStreamClient.LineConsumer)) return new ShardedSink(shards);
+        return new Lines(shards);
+    }
+
+    /** 非同期受信の下流を振り分ける（断られたら false をそのまま返す） */
+    public static AsyncTrackingStreamClient.Downstream route(List<AsyncTrackingStreamClient.Downstream> shards) {
+        var ds = shards.toArray(new AsyncTrackingStreamClient.Downstream[0]);
+        return msg -> ds[shardOf(msg, ds.length)].offer(msg);
+    }
+
+    @Override public void accept(RecvOutputDTO msg) { shards[shardOf(msg, shards.length)].accept(msg); }
+
+    public int shardCount() { return shards.length; }
+
+    static int shardOf(RecvOutputDTO msg, int n) {
+        int code = msg.getIcao24Code();
+        return ShardedSampler.shardOf(code, code == Icao24.NONE ? msg.getIcao24().orElse(null) : null, n);
+    }
+
+    /** compact モード用：解析済みの Fields で振り分けて各シャードの配列へ直接詰める */
+    static final class Lines extends ShardedSink implements TrackingStreamClient.LineConsumer {
+        private final TrackingStreamClient.LineConsumer[] lines;
+
+        Lines(List<? extends IngestSink> shards) {
+            super(shards);
+            lines = shards.toArray(new TrackingStreamClient.LineConsumer[0]);
+        }
+
+        @Override public void accept(byte[] buf, int off, int len, long receivedAtEpochNanos, NdjsonLineParser.Fields f) {
+            lines[ShardedSampler.shardOf(f.icaoCode(), f.icaoText(), lines.length)].accept(buf, off, len, receivedAtEpochNanos, f);
+        }
+    }
+}
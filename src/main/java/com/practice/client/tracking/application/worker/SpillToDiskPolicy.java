@@ -0,0 +1,187 @@
+package com.practice.client.tracking.application.worker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.BlockingQueue;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.http.NdjsonLineParser;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 満杯のキューに入らない行を mmap したファイルへ逃がし、空きができたら記録順にキューへ戻す方針。
+ * バーストや遅い消費者の分はヒープではなくディスクが受け持ち、行は失わず順序も変わらない。
+ * <p>
+ * ファイルは maxBytes の循環領域（レコード＝長さ int＋本体。末尾に入らなければ -1 を置いて先頭へ回る）。
+ * 逃がした行が残っている間は、新しい行もキューへ直接入れずに後ろへ足す（追い越さない）。
+ * 戻すのは次の offer の前と {@link #replay} を呼んだとき（消費者は取り出すたびに呼ぶ）。領域も一杯なら新しい方を捨てて queueDropped に数える。
+ * <p>
+ * 逃がした行が無い間の offer はロックを取らない。close 時に行が残っていれば、先頭のヘッダに読み書き位置を書いてファイルを残し、
+ * 次に同じファイル・同じ maxBytes で開いたときに続きから戻す（残っていなければファイルを消す）。
+ * ヘッダは開いた時点で無効にするので、close せずに落ちた後のファイルは戻さない。
+ */
+public final class SpillToDiskPolicy<E> implements OverflowPolicy<E>, AutoCloseable {
+    private static final int WRAP = -1;
+    private static final int MAGIC = 0x53504c31;   // "SPL1"
+    private static final int HEADER = 20;          // [magic][head][tail][used][pending]
+
+    /** 1件をバイト列にする方法。write は size バイトちょうどを書く */
+    public interface Codec<E> {
+        int size(E e);
+        void write(E e, ByteBuffer out);
+        /** in の position から len バイトを読んで戻す */
+        E read(ByteBuffer in, int len);
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer file0;          // ヘッダ＋データ領域
+    private final ByteBuffer map;                  // データ領域（位置は 0 起点）
+    private final int capacity;
+    private final Codec<E> codec;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private int head, tail, used;                  // 読み位置・書き位置・使用バイト数（this で保護）
+    private volatile int pending;                  // ファイルに残っている件数
+    private long spilled, replayed;
+
+    public SpillToDiskPolicy(Path file, int maxBytes, Codec<E> codec) throws IOException {
+        if (maxBytes < 1024) throw new IllegalArgumentException("maxBytes must be >= 1024: " + maxBytes);
+        this.file = file; this.capacity = maxBytes; this.codec = codec;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean sameSize = channel.size() == HEADER + (long) maxBytes;
+        if (!sameSize) channel.truncate(0);
+        this.file0 = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) maxBytes);   // 疎なファイル。書いた分だけディスクを使う
+        this.map = file0.slice(HEADER, maxBytes);
+        if (sameSize) restore();
+        file0.putInt(0, 0);                        // 以後は close までヘッダを信用しない
+    }
+
+    /** 前回 close 時に残した読み書き位置を戻す（ヘッダが壊れていれば空から始める） */
+    private void restore() {
+        int h = file0.getInt(4), t = file0.getInt(8), u = file0.getInt(12), n = file0.getInt(16);
+        if (file0.getInt(0) != MAGIC) return;
+        if (h < 0 || h > capacity || t < 0 || t > capacity || u < 0 || u > capacity || n < 0) {
+            System.err.println("[Spill] ignoring corrupt header: " + file);
+            return;
+        }
+        head = h; tail = t; used = u; pending = n;
+        if (n > 0) System.err.println("[Spill] replaying " + n + " lines left from the previous run: " + file);
+    }
+
+    @Override public boolean offer(BlockingQueue<E> queue, E e) {
+        if (pending == 0 && queue.offer(e)) return true;
+        synchronized (this) {
+            replayLocked(queue);
+            if (pending == 0 && queue.offer(e)) return true;
+            if (append(e)) return true;
+        }
+        metrics.queueDropped();
+        return false;
+    }
+
+    /** ファイルに残っている行を、キューに入る分だけ記録順に戻す。戻した件数を返す（消費者側から呼んでもよい） */
+    public int replay(BlockingQueue<E> queue) {
+        if (pending == 0) return 0;
+        synchronized (this) { return replayLocked(queue); }
+    }
+
+    /** ファイルに残っている件数 */
+    public int pending() { return pending; }
+    public synchronized int usedBytes() { return used; }
+    public synchronized long spilled() { return spilled; }
+    public synchronized long replayed() { return replayed; }
+
+    private int replayLocked(BlockingQueue<E> queue) {
+        int n = 0;
+        while (pending > 0 && queue.remainingCapacity() > 0) {
+            skipWrap();
+            int len = map.getInt(head);
+            ByteBuffer in = map.duplicate();
+            in.position(head + 4);
+            E e = codec.read(in, len);
+            if (!queue.offer(e)) break;                // 別の生産者に空きを取られた。次の機会に読み直す
+            head += 4 + len; used -= 4 + len;
+            pending--; replayed++; n++;
+        }
+        if (pending == 0) head = tail = used = 0;      // 空になったら先頭から使い直す
+        return n;
+    }
+
+    private boolean append(E e) {
+        int size = 4 + codec.size(e);
+        boolean wrap = tail + size > capacity;                      // 末尾に入らなければ先頭へ回る
+        int waste = wrap ? capacity - tail : 0;
+        if (used + waste + size > capacity) return false;
+        if (wrap) {
+            if (waste >= 4) map.putInt(tail, WRAP);
+            used += waste;
+            tail = 0;
+        }
+        map.putInt(tail, size - 4);
+        ByteBuffer out = map.duplicate();
+        out.position(tail + 4);
+        codec.write(e, out);
+        tail += size; used += size;
+        spilled++;
+        pending++;
+        metrics.queueSpilled();
+        return true;
+    }
+
+    /** 読み位置が末尾の余りにあれば先頭へ回す */
+    private void skipWrap() {
+        if (capacity - head < 4 || map.getInt(head) == WRAP) {
+            used -= capacity - head;
+            head = 0;
+        }
+    }
+
+    /** 行が残っていればヘッダを書いてファイルを残し（次に開いたときに戻す）、無ければファイルを消す */
+    @Override public synchronized void close() throws IOException {
+        if (pending == 0) {
+            try { channel.close(); }
+            finally { Files.deleteIfExists(file); }
+            return;
+        }
+        file0.putInt(4, head).putInt(8, tail).putInt(12, used).putInt(16, pending);
+        file0.force();
+        file0.putInt(0, MAGIC);                    // 位置を書き出してから有効にする
+        file0.force();
+        channel.close();
+        System.err.println("[Spill] kept " + pending + " lines for the next start: " + file);
+    }
+
+    /**
+     * 受信行の Codec：受信時刻（エポックナノ秒）と生の行だけを書き、戻すときに受信時と同じく
+     * NdjsonLineParser で解析し直す（DTO の他の項目は書かない）。
+     */
+    public static Codec<RecvOutputDTO> recvOutputCodec(TargetFields targetFields) {
+        NdjsonLineParser parser = new NdjsonLineParser(NdjsonLineParser.Mode.STREAMING, targetFields);
+        return new Codec<>() {
+            @Override public int size(RecvOutputDTO dto) { return 8 + raw(dto).length; }
+            @Override public void write(RecvOutputDTO dto, ByteBuffer out) {
+                Instant at = dto.getReceivedAt();
+                out.putLong(at.getEpochSecond() * 1_000_000_000L + at.getNano());
+                out.put(raw(dto));
+            }
+            @Override public RecvOutputDTO read(ByteBuffer in, int len) {
+                long nanos = in.getLong();
+                byte[] line = new byte[len - 8];
+                in.get(line);
+                var b = new RecvOutputDTO.Builder().rawJson(line, 0, line.length)
+                        .receivedAt(Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)));
+                parser.parse(line, 0, line.length, b);
+                return b.build();
+            }
+            private byte[] raw(RecvOutputDTO dto) { byte[] r = dto.getRawUtf8(); return r == null ? new byte[0] : r; }
+        };
+    }
+}
@@ -0,0 +1,130 @@
+package com.practice.client.tracking.application.worker;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 受信スレッド（生産者1本）→ 間引きスレッド（消費者1本）の受け渡し用、ロックなしの有界リングバッファ。
+ * 配列は起動時に確保し、1件ごとのノード生成もロックも無い。
+ * <p>
+ * 読み位置 head・書き位置 tail は単調増加の long。tail は生産者だけが進め、head は消費者が CAS で進める。
+ * 満杯で {@link #overwrite} されたときだけ、生産者も head を CAS で1つ進めて最古を捨ててから書く。
+ * 消費者は読んだ値を head の CAS に成功したときだけ採用するので、捨てた行を二重に渡すことも、
+ * 取り出した行を捨てたと数えることもない（捨てた件数＝overwritten() が正確）。
+ * <p>
+ * 取り出した枠の参照は次に上書きされるまで残る（最大 capacity 件）。
+ * head と tail は別のキャッシュラインに置く（前後を long で埋める）。
+ */
+public final class SpscRingBuffer<E> extends RingHeadPad {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final Object[] slots;
+    private final int mask;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    // 生産者だけが触る
+    private long headCache;                        // 最後に見た head（満杯に見えたときだけ読み直す）
+    private long overwritten;
+
+    /** capacity は 2 の冪に切り上げる */
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity must be >= 2: " + capacity);
+        int cap = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Object[cap];
+        this.mask = cap - 1;
+    }
+
+    public int capacity() { return slots.length; }
+
+    /** 満杯なら入れずに false（非同期受信の背圧用）。生産者スレッドから呼ぶ */
+    public boolean offer(E e) {
+        long t = tail;
+        if (t - headCache >= slots.length) {
+            headCache = (long) HEAD.getAcquire(this);
+            if (t - headCache >= slots.length) return false;
+        }
+        SLOTS.setRelease(slots, (int) t & mask, e);
+        TAIL.setRelease(this, t + 1);
+        return true;
+    }
+
+    /** 満杯なら最古の1件を捨てて入れる（常に成功）。生産者スレッドから呼ぶ */
+    public void overwrite(E e) {
+        long t = tail;
+        while (t - headCache >= slots.length) {
+            long h = (long) HEAD.getAcquire(this);
+            if (t - h < slots.length) { headCache = h; break; }
+            if (HEAD.compareAndSet(this, h, h + 1)) {  // 消費者が同時に取り出していれば失敗して読み直す
+                headCache = h + 1;
+                overwritten++;
+                metrics.queueDropped();
+            }
+        }
+        SLOTS.setRelease(slots, (int) t & mask, e);    // head を進めてから書くので、消費者が古い値と取り違えることはない
+        TAIL.setRelease(this, t + 1);
+    }
+
+    /**
+     * 溜まっている分（最大 max 件）を古い順に out へ足し、足した件数を返す。消費者スレッドから呼ぶ。
+     * 読んでいる間に生産者が最古を捨てた場合は、その回の分を捨てて読み直す（満杯時だけ起こる）。
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<? super E> out, int max) {
+        int before = out.size();
+        while (true) {
+            long h = (long) HEAD.getAcquire(this);
+            long t = (long) TAIL.getAcquire(this);
+            int n = (int) Math.min(t - h, max);
+            if (n <= 0) return 0;
+            for (int i = 0; i < n; i++) out.add((E) SLOTS.getAcquire(slots, (int) (h + i) & mask));
+            if (HEAD.compareAndSet(this, h, h + n)) return n;
+            out.subList(before, out.size()).clear();
+        }
+    }
+
+    public int drainTo(List<? super E> out) { return drainTo(out, Integer.MAX_VALUE); }
+
+    /** おおよその件数（監視用） */
+    public int size() {
+        long h = (long) HEAD.getAcquire(this), t = (long) TAIL.getAcquire(this);
+        return (int) Math.max(0, Math.min(t - h, slots.length));
+    }
+
+    /** overwrite で捨てた件数（生産者スレッドの値。他スレッドからは目安） */
+    public long overwritten() { return overwritten; }
+}
+
+/** false sharing 対策：tail の前を埋める */
+abstract class RingTailPad {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class RingTail extends RingTailPad {
+    static final VarHandle TAIL;
+    static {
+        try { TAIL = MethodHandles.lookup().findVarHandle(RingTail.class, "tail", long.class); }
+        catch (ReflectiveOperationException e) { throw new ExceptionInInitializerError(e); }
+    }
+    volatile long tail;
+}
+
+/** tail と head の間を埋める */
+abstract class RingMidPad extends RingTail {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class RingHead extends RingMidPad {
+    static final VarHandle HEAD;
+    static {
+        try { HEAD = MethodHandles.lookup().findVarHandle(RingHead.class, "head", long.class); }
+        catch (ReflectiveOperationException e) { throw new ExceptionInInitializerError(e); }
+    }
+    volatile long head;
+}
+
+/** head の後ろ（以降のフィールド）を埋める */
+abstract class RingHeadPad extends RingHead {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
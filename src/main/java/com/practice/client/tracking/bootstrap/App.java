@@ -1,58 +1,38 @@
 package com.practice.client.tracking.bootstrap;
 
 import java.nio.file.Path;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.practice.client.tracking.application.worker.IntervalSampler;
-import com.practice.client.tracking.application.worker.ReceiverWorker;
 import com.practice.client.tracking.config.AppConfig;
 import com.practice.client.tracking.domain.dto.RecvInputDTO;
-import com.practice.client.tracking.domain.dto.RecvOutputDTO;
-import com.practice.client.tracking.infrastructure.db.StdOutWriter;
-import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
-import com.practice.client.tracking.infrastructure.persistence.token.FileTokenStore;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
 
 public class App {
-    public static void main(String[] args) {
-        // プロパティ：sampling.window.millis=30000 を想定
+    public static void main(String[] args) throws InterruptedException {
+        // プロパティ：sampling.window.millis=30000、ingest.mode=queue|conflate、ingest.transport=blocking|async、stream.shards、db.url 等を想定
         AppConfig conf = AppConfig.load(Path.of("app.properties"));
 
+        PipelineMetrics.global().register();               // JMX（jconsole 等）で負荷を見られるようにする
+
+        // 受信・間引き・書き込みの組み立ては Pipeline（負荷試験・war 配備からも同じものを使う）
+        var pipeline = new Pipeline(conf, input());
+        pipeline.start();
+
+        // 終了フック
+        Runtime.getRuntime().addShutdownHook(new Thread(pipeline::close));
+
+        // 非同期受信・仮想スレッドは JVM を生かし続けないので、終了フックが走るまで main で待つ
+        if (pipeline.needsKeepAlive()) Thread.currentThread().join();
+    }
+
+    /** 購読先（war 配備時の PipelineContextListener も同じものを使う） */
+    public static RecvInputDTO input() {
         String url = "https://api.example.com/v2/targets/stream"; // 実URLへ
         String token = System.getenv("API_TOKEN");
 
-        RecvInputDTO input = new RecvInputDTO.Builder()
+        return new RecvInputDTO.Builder()
                 .streamUrl(url)
                 .bearerToken(token)
                 // .extraParams(Map.of("country", "JP"))
                 .build();
-
-        var client = new TrackingStreamClient();
-        // 有界キュー。LinkedBlockingDeque で“最古ドロップ”が書きやすい
-        var queue = new LinkedBlockingDeque<RecvOutputDTO>(10_000);
-        var stop  = new AtomicBoolean(false);
-        var tokenStore = new FileTokenStore(Path.of("position.token"));
-
-        // スレッド1：受信
-        var t1 = new Thread(new ReceiverWorker(client, input, queue, stop, tokenStore), "stream-receiver");
-        t1.start();
-
-        // スレッド2：間引き（プロパティの間隔で実行）
-        var sampler = new IntervalSampler(queue, conf.samplingWindowMillis, new StdOutWriter());
-        var sch = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread th = new Thread(r, "sampler");
-            th.setDaemon(true); return th;
-        });
-        // flushが長引いた場合の重複実行を避けるため“FixedDelay”推奨
-        sch.scheduleWithFixedDelay(sampler, conf.samplingWindowMillis, conf.samplingWindowMillis, TimeUnit.MILLISECONDS);
-
-        // 終了フック
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            stop.set(true);
-            sch.shutdownNow();
-            client.closeQuietly();
-        }));
     }
 }
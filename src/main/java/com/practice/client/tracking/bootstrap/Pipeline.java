@@ -0,0 +1,434 @@
+package com.practice.client.tracking.bootstrap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+import com.practice.client.tracking.application.query.IndexingWriter;
+import com.practice.client.tracking.application.query.LivePositionIndex;
+import com.practice.client.tracking.application.worker.AdaptiveFlushController;
+import com.practice.client.tracking.application.worker.ArchivingSink;
+import com.practice.client.tracking.application.worker.AsyncReceiver;
+import com.practice.client.tracking.application.worker.CompactMessageQueue;
+import com.practice.client.tracking.application.worker.EventTimeWindows;
+import com.practice.client.tracking.application.worker.IngestSink;
+import com.practice.client.tracking.application.worker.IntervalSampler;
+import com.practice.client.tracking.application.worker.LatestByIcaoBuffer;
+import com.practice.client.tracking.application.worker.OverflowPolicy;
+import com.practice.client.tracking.application.worker.OverflowQueueSink;
+import com.practice.client.tracking.application.worker.PipelineCheckpoint;
+import com.practice.client.tracking.application.worker.ReceiverGroup;
+import com.practice.client.tracking.application.worker.ReceiverWorker;
+import com.practice.client.tracking.application.worker.ReconnectPolicy;
+import com.practice.client.tracking.application.worker.SamplerTask;
+import com.practice.client.tracking.application.worker.ShardedSampler;
+import com.practice.client.tracking.application.worker.ShardedSink;
+import com.practice.client.tracking.application.worker.SpillToDiskPolicy;
+import com.practice.client.tracking.application.worker.SpscRingBuffer;
+import com.practice.client.tracking.config.AppConfig;
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.archive.SegmentArchiveWriter;
+import com.practice.client.tracking.infrastructure.db.ChangeSuppressingWriter;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.db.JdbcDatabaseWriter;
+import com.practice.client.tracking.infrastructure.db.StdOutWriter;
+import com.practice.client.tracking.infrastructure.db.WriteBehindWriter;
+import com.practice.client.tracking.infrastructure.http.AsyncTrackingStreamClient;
+import com.practice.client.tracking.infrastructure.http.NdjsonLineParser;
+import com.practice.client.tracking.infrastructure.http.RawLineFilter;
+import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+import com.practice.client.tracking.infrastructure.persistence.checkpoint.CheckpointFile;
+import com.practice.client.tracking.infrastructure.persistence.token.CoalescingTokenStore;
+import com.practice.client.tracking.infrastructure.persistence.token.FileTokenStore;
+import com.practice.client.tracking.infrastructure.persistence.token.MappedTokenStore;
+import com.practice.client.tracking.infrastructure.persistence.token.TokenStore;
+
+/**
+ * 受信→間引き→書き込みの一式。App の main から切り出したもので、負荷試験などから
+ * 同じ組み立てのまま起動・停止できる（書き込み先だけ差し替え可）。
+ */
+public class Pipeline implements AutoCloseable {
+    private final AppConfig conf;
+    private final RecvInputDTO input;
+    private final DatabaseWriter dbWriter;
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+    private final TokenStores tokenStores;
+    private WriteBehindWriter writeBehind;
+    private ShardedSampler shardedSampler;
+    private AdaptiveFlushController flushController;
+    private PipelineCheckpoint checkpoint;
+    private CheckpointFile checkpointFile;
+    private LivePositionIndex liveIndex;
+    private SegmentArchiveWriter archive;
+    private final List<SpillToDiskPolicy<RecvOutputDTO>> spills = new ArrayList<>();
+    private ScheduledExecutorService sch;
+    private Runnable closeReceiver;
+    private boolean started, closed;
+
+    public Pipeline(AppConfig conf, RecvInputDTO input) { this(conf, input, null); }
+
+    /** writer が null なら設定（db.url 等）から作る */
+    public Pipeline(AppConfig conf, RecvInputDTO input, DatabaseWriter writer) {
+        this.conf = conf; this.input = withServerFilter(input, conf.filterServerParams);
+        this.dbWriter = writer != null ? writer : createWriter(conf);
+        this.tokenStores = new TokenStores(conf);
+    }
+
+    public synchronized void start() {
+        if (started) throw new IllegalStateException("already started");
+        started = true;
+        var metrics = PipelineMetrics.global();
+
+        // 前回と同じ内容の機体は書かない／received_at だけ更新する（任意）。非同期段の内側に置く
+        ChangeSuppressingWriter suppress = "OFF".equals(conf.writerSuppress) ? null
+                : new ChangeSuppressingWriter(dbWriter, ChangeSuppressingWriter.Mode.valueOf(conf.writerSuppress),
+                        conf.writerSuppressMaxEntries, conf.writerSuppressTtlMillis, conf.writerSuppressRefreshMillis);
+        DatabaseWriter base = suppress != null ? suppress : dbWriter;
+
+        // DB が遅くても間引き周期を崩さないよう、書き込みを別スレッドへ逃がす（任意）
+        writeBehind = conf.writerAsyncWorkers <= 0 ? null
+                : new WriteBehindWriter(base, conf.writerAsyncWorkers, conf.writerAsyncMaxPending,
+                        WriteBehindWriter.OverflowPolicy.valueOf(conf.writerAsyncPolicy));
+        DatabaseWriter writer = writeBehind != null ? writeBehind : base;
+
+        // 機体ごとの最新位置をメモリの格子索引にも入れる（任意）。抑止で DB へ行かない行も入れるよう一番外側に置く
+        if (conf.queryIndex) {
+            liveIndex = new LivePositionIndex(conf.targetFields, conf.queryIndexLatitudeField, conf.queryIndexLongitudeField,
+                    conf.queryIndexCellDegrees, conf.queryIndexTtlMillis);
+            writer = new IndexingWriter(writer, liveIndex);
+        }
+
+        // 受信時刻で窓を決める場合は、窓より短い間隔で差分を書く（sampling.flush.millis）
+        // sampling.shards > 1 なら ICAO24 のハッシュで受け渡し口と間引きを分け、窓ごとに並列で flush する
+        int shardCount = Math.max(1, conf.samplingShards);
+        if (conf.ingestMode == AppConfig.IngestMode.RING && !conf.streamShards.isEmpty()) {
+            throw new IllegalArgumentException("ingest.mode=ring needs a single receiver (stream.shards must be empty)");
+        }
+        if (conf.ingestMode != AppConfig.IngestMode.QUEUE && !"DROP_OLDEST".equals(conf.ingestOverflow)) {
+            throw new IllegalArgumentException("ingest.overflow applies to ingest.mode=queue only: " + conf.ingestOverflow);
+        }
+        if (conf.checkpointPath != null && (conf.ingestMode != AppConfig.IngestMode.QUEUE || !conf.streamShards.isEmpty())) {
+            throw new IllegalArgumentException("checkpoint.path needs ingest.mode=queue and a single receiver (stream.shards must be empty)");
+        }
+        List<IntervalSampler> samplers = new ArrayList<>(shardCount);
+        List<IngestSink> sinks = new ArrayList<>(shardCount);                       // ブロッキング受信の受け渡し口
+        List<AsyncTrackingStreamClient.Downstream> downstreams = new ArrayList<>(shardCount);  // 非同期受信（false で受信を止める）
+        List<IntSupplier> depths = new ArrayList<>(shardCount);
+        List<BlockingQueue<RecvOutputDTO>> queues = new ArrayList<>(shardCount);      // queue モードのみ（チェックポイント用）
+        int capacity = (conf.ingestQueueCapacity + shardCount - 1) / shardCount;   // ingest.queue.capacity は全シャード合計
+        for (int i = 0; i < shardCount; i++) {
+            var sb = IntervalSampler.builder(writer);
+            if (conf.samplingTime == AppConfig.SamplingTime.EVENT) {
+                sb.eventTime(new EventTimeWindows(conf.samplingWindowMillis, conf.samplingLatenessMillis));
+            } else {
+                sb.windowMillis(conf.samplingWindowMillis);
+            }
+            if (conf.ingestMode == AppConfig.IngestMode.CONFLATE) {
+                // 受信時に ICAO24 ごと最新で上書き。メモリは機数に比例
+                var latest = new LatestByIcaoBuffer(16_384 / shardCount);
+                sinks.add(latest);
+                downstreams.add(msg -> { latest.accept(msg); return true; });
+                sb.conflated(latest);
+                depths.add(latest::size);
+            } else if (conf.ingestMode == AppConfig.IngestMode.COMPACT) {
+                // 全件キューと同じ最古ドロップだが、1行ごとの DTO を作らない（ブロッキング受信時）
+                var compact = new CompactMessageQueue(capacity, (4 << 20) / shardCount, conf.targetFields.size());
+                sinks.add(compact);
+                downstreams.add(compact::tryOffer);
+                sb.compact(compact);
+                depths.add(compact::size);
+            } else if (conf.ingestMode == AppConfig.IngestMode.RING) {
+                // 事前確保のリング。満杯なら最古を上書き（非同期受信では満杯で断って背圧）
+                var ring = new SpscRingBuffer<RecvOutputDTO>(capacity);
+                sinks.add(ring::overwrite);
+                downstreams.add(ring::offer);
+                sb.ring(ring);
+                depths.add(ring::size);
+            } else {
+                // 有界キュー。満杯時の扱いは ingest.overflow（既定は最古ドロップ）
+                var queue = new LinkedBlockingDeque<RecvOutputDTO>(capacity);
+                queues.add(queue);
+                var policy = overflowPolicy(i);
+                sinks.add(new OverflowQueueSink(queue, policy));
+                downstreams.add(queue::offer);             // 非同期受信では捨てずに背圧をかける
+                sb.queue(queue);
+                if (policy instanceof SpillToDiskPolicy<RecvOutputDTO> spill) sb.replayFrom(spill);   // 取り出した側から戻す
+                depths.add(queue::size);
+            }
+            samplers.add(sb.build());
+        }
+        Runnable sampler;
+        IngestSink sink;
+        AsyncTrackingStreamClient.Downstream downstream;
+        IntSupplier queueDepth;
+        if (shardCount == 1) {
+            sampler = samplers.get(0); sink = sinks.get(0); downstream = downstreams.get(0);
+            queueDepth = depths.get(0);
+        } else {
+            sampler = shardedSampler = new ShardedSampler(samplers);
+            sink = ShardedSink.of(sinks);
+            downstream = ShardedSink.route(downstreams);
+            queueDepth = () -> { int n = 0; for (var d : depths) n += d.getAsInt(); return n; };
+        }
+        metrics.bindQueueDepth(queueDepth);
+
+        // 間引き前の全行を記録（任意）。DB の埋め戻しや間引きロジック変更時の再計算に使う
+        if (conf.archiveDir != null) {
+            try {
+                archive = new SegmentArchiveWriter(Path.of(conf.archiveDir), conf.archiveSegmentBytes,
+                        conf.archiveBlockBytes, conf.archiveFlushMillis, conf.archiveRetentionSegments, conf.archiveRetentionMillis);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open archive: " + conf.archiveDir, e);
+            }
+            sink = new ArchivingSink(archive, sink);
+            downstream = ArchivingSink.wrap(archive, downstream);
+        }
+
+        // 購読の分割（stream.shards）。シャードごとに追加クエリと再開トークンを分ける
+        List<ReceiverGroup.Shard> shards = new ArrayList<>();
+        conf.streamShards.forEach((name, params) -> {
+            Map<String, String> merged = new LinkedHashMap<>(input.getExtraParams());
+            merged.putAll(params);
+            RecvInputDTO shardInput = new RecvInputDTO.Builder().streamUrl(input.getStreamUrl())
+                    .bearerToken(input.getBearerToken()).extraParams(merged).build();
+            shards.add(new ReceiverGroup.Shard(name, shardInput, tokenStores.open("position-" + name + ".token")));
+        });
+
+        // 前回のチェックポイントがあれば、受信を始める前に途中状態を戻し、その時点の再開トークンから受け直す（任意）
+        TokenStore tokenStore = shards.isEmpty() ? tokenStores.open("position.token") : null;
+        if (conf.checkpointPath != null) {
+            checkpoint = new PipelineCheckpoint(queues, samplers, suppress, conf.targetFields);
+            checkpointFile = new CheckpointFile(Path.of(conf.checkpointPath));
+            restoreCheckpoint(tokenStore);
+        }
+
+        // スレッド1：受信（無通信の検知と再接続の間隔は設定で調整）
+        var idleTimeout = Duration.ofMillis(conf.streamIdleTimeoutMillis);
+        var filter = lineFilter(conf);                     // サーバで絞れない条件は解析前に生の行で落とす
+        var reconnect = new ReconnectPolicy(conf.reconnectBackoffBaseMillis, conf.reconnectBackoffMaxMillis,
+                conf.reconnectStableMillis);
+        if (conf.ingestTransport == AppConfig.IngestTransport.ASYNC) {
+            // 非同期：1つの HttpClient で全購読を持つ（スレッドを専有しない）
+            var asyncClient = new AsyncTrackingStreamClient(NdjsonLineParser.Mode.STREAMING, idleTimeout, conf.targetFields, filter);
+            var receivers = new ArrayList<AsyncReceiver>();
+            if (shards.isEmpty()) {
+                receivers.add(new AsyncReceiver(asyncClient, input, downstream, tokenStore, reconnect));
+            }
+            for (var s : shards) receivers.add(new AsyncReceiver(asyncClient, s.input(), downstream, s.tokenStore(), reconnect));
+            receivers.forEach(AsyncReceiver::start);
+            closeReceiver = () -> { receivers.forEach(AsyncReceiver::close); asyncClient.close(); };
+        } else if (!shards.isEmpty()) {
+            // シャードごとに ReceiverWorker を仮想スレッドで並列起動し、同じ sink に合流させる
+            var group = new ReceiverGroup(shards,
+                    () -> new TrackingStreamClient(NdjsonLineParser.Mode.STREAMING, idleTimeout, conf.targetFields, filter),
+                    sink, stop, reconnect);
+            group.start();
+            closeReceiver = group::close;
+        } else {
+            var client = new TrackingStreamClient(NdjsonLineParser.Mode.STREAMING, idleTimeout, conf.targetFields, filter);
+            var t1 = new Thread(new ReceiverWorker(client, input, sink, stop, tokenStore, reconnect), "stream-receiver");
+            t1.start();
+            closeReceiver = client::closeQuietly;
+        }
+
+        // スレッド2：間引き（プロパティの間隔で実行。既定は窓と同じ間隔）
+        sch = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "sampler");
+            th.setDaemon(true); return th;
+        });
+        if (checkpoint != null) {
+            // 間引きと同じスレッドで flush の合間に写し、ファイルへは別スレッドで書く
+            sch.scheduleWithFixedDelay(this::checkpointAsync, conf.checkpointIntervalMillis, conf.checkpointIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (conf.samplingAdaptive) {
+            // キュー深さ・取りこぼし・flush 時間から間隔と件数を決め直す（窓の境界は固定）
+            IntConsumer batchSize = size -> {};
+            if (dbWriter instanceof JdbcDatabaseWriter jdbc) batchSize = jdbc::setBatchSize;
+            flushController = AdaptiveFlushController.builder(sampler)
+                    .windowMillis(conf.samplingWindowMillis)
+                    .queue(queueDepth, capacity * shardCount)
+                    .flushMillis(conf.samplingFlushMinMillis, conf.samplingFlushMillis, conf.samplingFlushMaxMillis)
+                    .drainChunk(conf.samplingDrainChunkMin, conf.samplingDrainChunkMax,
+                            chunk -> samplers.forEach(s -> s.setDrainChunk(Math.max(1, chunk / shardCount))))
+                    .writerBatch(conf.dbBatchSizeMin, conf.dbBatchSize, conf.dbBatchSizeMax, batchSize)
+                    .build();
+            flushController.start(sch);
+            return;
+        }
+        // flushが長引いた場合の重複実行を避けるため“FixedDelay”推奨
+        sch.scheduleWithFixedDelay(SamplerTask.guard(sampler), conf.samplingFlushMillis, conf.samplingFlushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** 最新位置の索引（query.index=false または start 前なら null） */
+    public synchronized LivePositionIndex liveIndex() { return liveIndex; }
+
+    /** 受信スレッドが JVM を生かし続けない構成か（非同期受信・仮想スレッド） */
+    public boolean needsKeepAlive() {
+        return conf.ingestTransport == AppConfig.IngestTransport.ASYNC || !conf.streamShards.isEmpty();
+    }
+
+    /** チェックポイントが新しければ戻し、再開トークンをその時点のものにする（古い・壊れていれば使わない） */
+    private void restoreCheckpoint(TokenStore tokenStore) {
+        var loaded = checkpointFile.load().orElse(null);
+        if (loaded == null) return;
+        long age = System.currentTimeMillis() - loaded.createdAtMillis();
+        if (age > conf.checkpointMaxAgeMillis) {
+            System.err.println("[Checkpoint] ignoring " + checkpointFile.path() + ": " + age + " ms old");
+            return;
+        }
+        long t0 = System.nanoTime();
+        try {
+            var r = checkpoint.restore(loaded.body());
+            if (r.positionToken() != null) tokenStore.save(r.positionToken());
+            System.err.println("[Checkpoint] restored " + r.queuedLines() + " queued lines, " + r.windowRows() + " window rows, "
+                    + r.writerEntries() + " writer entries in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) + " ms");
+        } catch (RuntimeException e) {
+            System.err.println("[Checkpoint] restore failed: " + e.getMessage());
+        }
+    }
+
+    private void checkpointAsync() {
+        try { checkpointFile.writeAsync(checkpoint.capture()); }
+        catch (RuntimeException e) { System.err.println("[Checkpoint] capture failed: " + e.getMessage()); }
+    }
+
+    /** queue モードの満杯時の扱い。spill はシャードごとに別ファイル（close 時に残った行は次の起動で戻す） */
+    private OverflowPolicy<RecvOutputDTO> overflowPolicy(int shard) {
+        return switch (conf.ingestOverflow) {
+            case "DROP_OLDEST" -> OverflowPolicy.dropOldest();
+            case "DROP_NEWEST" -> OverflowPolicy.dropNewest();
+            case "BLOCK" -> OverflowPolicy.block(conf.ingestOverflowBlockMillis);
+            case "CONFLATE" -> OverflowPolicy.conflate(m -> m.getIcao24().orElse(null));
+            case "SPILL" -> {
+                Path file = Path.of(conf.ingestOverflowSpillDir, "ingest-spill-" + shard + ".bin");
+                try {
+                    var spill = new SpillToDiskPolicy<>(file, conf.ingestOverflowSpillMaxBytes,
+                            SpillToDiskPolicy.recvOutputCodec(conf.targetFields));
+                    spills.add(spill);
+                    yield spill;
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to open spill file: " + file, e);
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown ingest.overflow: " + conf.ingestOverflow);
+        };
+    }
+
+    @Override public synchronized void close() {
+        if (!started || closed) return;
+        closed = true;
+        stop.set(true);
+        if (flushController != null) flushController.stop();
+        sch.shutdownNow();
+        if (checkpoint != null) awaitSampler();            // 最後のチェックポイントは実行中の flush が終わってから取る
+        if (shardedSampler != null) shardedSampler.close();
+        closeReceiver.run();
+        if (archive != null) {
+            try { archive.close(); } catch (IOException e) { System.err.println("[Archive] close failed: " + e.getMessage()); }
+        }
+        for (var spill : spills) {
+            try { spill.close(); } catch (IOException e) { System.err.println("[Spill] close failed: " + e.getMessage()); }
+        }
+        tokenStores.close();                               // 最新トークンを書き出してから終了
+        if (writeBehind != null) writeBehind.close();
+        if (checkpoint != null) {
+            checkpointFile.close();                        // 書き込み待ちの分を書いてから、最後の状態で上書きする
+            try { checkpointFile.write(checkpoint.capture()); }
+            catch (IOException | RuntimeException e) { System.err.println("[Checkpoint] final write failed: " + e.getMessage()); }
+        }
+    }
+
+    private void awaitSampler() {
+        try {
+            if (!sch.awaitTermination(5, TimeUnit.SECONDS)) System.err.println("[Checkpoint] sampler did not stop in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RawLineFilter lineFilter(AppConfig conf) {
+        var b = RawLineFilter.builder().types(conf.filterTypes).icaoPrefixes(conf.filterIcaoPrefixes);
+        if (conf.filterAltitude != null) b.altitude(conf.filterAltitudeField, conf.filterAltitude[0], conf.filterAltitude[1]);
+        if (conf.filterBbox != null) b.boundingBox(conf.filterBbox[0], conf.filterBbox[1], conf.filterBbox[2], conf.filterBbox[3]);
+        return b.build();
+    }
+
+    /** filter.server.params を購読のクエリに足す（同じキーは呼び出し側の指定を優先） */
+    private static RecvInputDTO withServerFilter(RecvInputDTO input, Map<String, String> serverParams) {
+        if (serverParams.isEmpty()) return input;
+        Map<String, String> merged = new LinkedHashMap<>(serverParams);
+        merged.putAll(input.getExtraParams());
+        return new RecvInputDTO.Builder().streamUrl(input.getStreamUrl()).bearerToken(input.getBearerToken())
+                .positionToken(input.getPositionToken().orElse(null)).extraParams(merged).build();
+    }
+
+    /** db.create.table なら表と足りない列を作り、そうでなければ target.fields の列が揃っているかを起動時に確かめる */
+    private static DatabaseWriter createWriter(AppConfig conf) {
+        if (conf.dbUrl == null) return new StdOutWriter();
+        var jdbc = new JdbcDatabaseWriter(() -> DriverManager.getConnection(conf.dbUrl, conf.dbUser, conf.dbPassword),
+                JdbcDatabaseWriter.Dialect.fromJdbcUrl(conf.dbUrl), conf.dbTable, conf.dbBatchSize, conf.targetFields);
+        if (conf.dbCreateTable) jdbc.createTableIfNotExists(); else jdbc.checkTargetColumns();
+        return jdbc;
+    }
+
+    /**
+     * 再開トークンの保存先を作る（token.dir 配下）。token.flush.millis > 0 なら受信ループはメモリ更新だけにし、
+     * 共有のフラッシュスレッドが一定間隔でまとめて書き出す（終了時にも書く）。
+     */
+    static final class TokenStores implements AutoCloseable {
+        private final AppConfig conf;
+        private final List<AutoCloseable> opened = new ArrayList<>();
+        private ScheduledExecutorService flusher;
+
+        TokenStores(AppConfig conf) { this.conf = conf; }
+
+        synchronized TokenStore open(String fileName) {
+            Path path = Path.of(conf.tokenDir).resolve(fileName);
+            TokenStore base;
+            if ("mmap".equals(conf.tokenStore)) {
+                try {
+                    var mapped = new MappedTokenStore(Path.of(path + ".mmap"), conf.tokenMmapMaxBytes);
+                    base = mapped;
+                    if (conf.tokenFlushMillis <= 0) opened.add(mapped);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to open token store: " + path, e);
+                }
+            } else {
+                base = new FileTokenStore(path);
+            }
+            if (conf.tokenFlushMillis <= 0) return base;
+            if (flusher == null) {
+                flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread th = new Thread(r, "token-flush");
+                    th.setDaemon(true); return th;
+                });
+            }
+            var coalescing = new CoalescingTokenStore(base, conf.tokenFlushMillis, flusher);
+            opened.add(coalescing);
+            return coalescing;
+        }
+
+        @Override public synchronized void close() {
+            for (AutoCloseable c : opened) {
+                try { c.close(); } catch (Exception e) { System.err.println("[TokenStore] close failed: " + e.getMessage()); }
+            }
+            if (flusher != null) flusher.shutdown();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.practice.client.tracking.bootstrap.servlet;
+
+import java.nio.file.Path;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import com.practice.client.tracking.application.query.LivePositionIndex;
+import com.practice.client.tracking.bootstrap.App;
+import com.practice.client.tracking.bootstrap.Pipeline;
+import com.practice.client.tracking.config.AppConfig;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * war として配備したときに Pipeline を起動・停止する（App#main の代わり）。
+ * 設定ファイルはコンテキストパラメータ tracking.config（既定は app.properties）。
+ * query.index=true なら索引を ServletContext の {@link LivePositionIndex#ATTRIBUTE} に置く（LivePositionServlet が使う）。
+ */
+@WebListener
+public class PipelineContextListener implements ServletContextListener {
+    public static final String CONFIG_PARAM = "tracking.config";
+
+    private Pipeline pipeline;
+
+    @Override public void contextInitialized(ServletContextEvent sce) {
+        ServletContext ctx = sce.getServletContext();
+        String path = ctx.getInitParameter(CONFIG_PARAM);
+        AppConfig conf = AppConfig.load(Path.of(path == null || path.isBlank() ? "app.properties" : path.trim()));
+
+        PipelineMetrics.global().register();
+        pipeline = new Pipeline(conf, App.input());
+        pipeline.start();
+        if (pipeline.liveIndex() != null) ctx.setAttribute(LivePositionIndex.ATTRIBUTE, pipeline.liveIndex());
+    }
+
+    @Override public void contextDestroyed(ServletContextEvent sce) {
+        sce.getServletContext().removeAttribute(LivePositionIndex.ATTRIBUTE);
+        if (pipeline != null) pipeline.close();
+    }
+}
@@ -3,13 +3,188 @@ package com.practice.client.tracking.config;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+
+import com.practice.client.tracking.domain.MessageType;
+import com.practice.client.tracking.domain.TargetFields;
 
 public class AppConfig {
+    /**
+     * 受信→間引きの受け渡し方式。QUEUE=全件キュー（既定）、CONFLATE=受信時に ICAO24 ごと最新で上書き、
+     * COMPACT=全件キューだが DTO を作らずプリミティブ配列に詰める（DTO は間引きで残った行だけ作る）、
+     * RING=全件をロックなしのリング（生産者1本。満杯なら最古を上書き）で渡す
+     */
+    public enum IngestMode { QUEUE, CONFLATE, COMPACT, RING }
+    /** 窓の割り当て。PROCESSING=flush 時点の壁時計（既定）、EVENT=各行の受信時刻（ウォーターマーク＋許容遅延） */
+    public enum SamplingTime { PROCESSING, EVENT }
+    /** 受信方式。BLOCKING=専用スレッドで send（既定）、ASYNC=sendAsync＋背圧付き BodySubscriber */
+    public enum IngestTransport { BLOCKING, ASYNC }
+
     public final long samplingWindowMillis;
+    /** 窓の割り当て方と、書き込み間隔（既定は窓と同じ）・遅着の許容時間（EVENT のみ） */
+    public final SamplingTime samplingTime;
+    public final long samplingFlushMillis, samplingLatenessMillis;
+    /** 間引きの並列数（sampling.shards。ICAO24 のハッシュで受け渡し口ごと分ける。1 なら従来どおり単一スレッド） */
+    public final int samplingShards;
+    /**
+     * 負荷に合わせた flush 間隔・取り出し件数・DB バッチ件数の自動調整（sampling.adaptive=true）。
+     * 間隔は sampling.flush.min.millis〜sampling.flush.max.millis（既定は flush.millis/10〜flush.millis）、
+     * 取り出し件数は sampling.drain.chunk.min〜max、バッチ件数は db.batch.size.min〜max の範囲で動かす。窓の境界は変えない
+     */
+    public final boolean samplingAdaptive;
+    public final long samplingFlushMinMillis, samplingFlushMaxMillis;
+    public final int samplingDrainChunkMin, samplingDrainChunkMax;
+    public final int dbBatchSizeMin, dbBatchSizeMax;
+    /** 受け渡し口の容量（ingest.queue.capacity。全シャード合計の件数） */
+    public final int ingestQueueCapacity;
+    public final IngestMode ingestMode;
+    public final IngestTransport ingestTransport;
+    /**
+     * queue モードで満杯のときの扱い（ingest.overflow=drop-oldest|drop-newest|block|conflate|spill、
+     * ブロッキング受信のみ。非同期受信は満杯で受信を止める）。block の待ち時間と、spill の置き場所・領域の上限
+     */
+    public final String ingestOverflow;
+    public final long ingestOverflowBlockMillis;
+    public final String ingestOverflowSpillDir;
+    public final int ingestOverflowSpillMaxBytes;
+    /** 書き込み先DB（db.url 未設定なら標準出力） */
+    public final String dbUrl, dbUser, dbPassword, dbTable;
+    public final int dbBatchSize;
+    /** true なら起動時にテーブルを作り、足りない target.fields の列を足す（既定は作らず、列が揃っているかだけ確かめる） */
+    public final boolean dbCreateTable;
+    /** 非同期書き込み段（writer.async.workers=0 なら同期書き込み） */
+    public final int writerAsyncWorkers, writerAsyncMaxPending;
+    public final String writerAsyncPolicy;
+    /**
+     * 内容が変わっていない行の書き込み抑止（writer.suppress=off|skip|touch）。記録する機体数の上限・
+     * 見かけなくなってから忘れるまで・変わっていなくても書き直す間隔（0 で書き直さない）
+     */
+    public final String writerSuppress;
+    public final int writerSuppressMaxEntries;
+    public final long writerSuppressTtlMillis, writerSuppressRefreshMillis;
+    /**
+     * 分割購読（stream.shards）。シャード名→追加クエリ。空なら1本で受信。
+     * 書式：{@code 名前:k=v&k=v;名前:k=v}（例：jp:country=JP;us:country=US）
+     */
+    public final Map<String, Map<String, String>> streamShards;
+    /** 再開トークンの保存（token.store=file|mmap、token.flush.millis=0 なら受信のたびに同期書き込み。置き場所は token.dir） */
+    public final String tokenStore, tokenDir;
+    public final long tokenFlushMillis;
+    public final int tokenMmapMaxBytes;
+    /**
+     * 無通信とみなして張り直すまでの時間（0 で監視しない）と、再接続バックオフの初期値・上限。
+     * reconnect.stable.millis 以上つながっていた接続が切れたときだけ失敗回数を数え直す
+     */
+    public final long streamIdleTimeoutMillis;
+    public final long reconnectBackoffBaseMillis, reconnectBackoffMaxMillis, reconnectStableMillis;
+    /**
+     * 受信した生の行の記録（archive.dir 未設定なら記録しない）。古いセグメントは archive.retention.segments 個を超えた分と
+     * archive.retention.millis より前に閉じた分を消す（0 なら消さない）
+     */
+    public final String archiveDir;
+    public final long archiveSegmentBytes, archiveFlushMillis;
+    public final int archiveBlockBytes;
+    public final int archiveRetentionSegments;
+    public final long archiveRetentionMillis;
+    /**
+     * 間引きの途中状態と再開トークンのチェックポイント（checkpoint.path 未設定なら取らない）。
+     * checkpoint.interval.millis ごとに取り、checkpoint.max.age.millis より古いものは起動時に使わない
+     */
+    public final String checkpointPath;
+    public final long checkpointIntervalMillis, checkpointMaxAgeMillis;
+    /**
+     * 機体ごとの最新位置のメモリ索引（query.index=true で作る。緯度経度は target.fields の
+     * query.index.latitude.field / query.index.longitude.field）。セルの大きさ（度。0.0055 以上）と、更新が無い機体を引かなくなるまでの時間
+     */
+    public final boolean queryIndex;
+    public final String queryIndexLatitudeField, queryIndexLongitudeField;
+    public final double queryIndexCellDegrees;
+    public final long queryIndexTtlMillis;
+    /**
+     * 解析前に生の行で落とすフィルタ（空なら落とさない。position_token は常に通す）。
+     * filter.types=target,status / filter.icao.prefixes=48,4b / filter.altitude=min,max（項目は filter.altitude.field）/
+     * filter.bbox=minLat,minLon,maxLat,maxLon
+     */
+    public final Set<MessageType> filterTypes;
+    public final List<String> filterIcaoPrefixes;
+    public final String filterAltitudeField;
+    public final double[] filterAltitude, filterBbox;         // 未設定なら null
+    /** サーバ側で絞れる条件はクエリで渡す（filter.server.params=k=v&k=v。購読の extraParams に足す） */
+    public final Map<String, String> filterServerParams;
+    /** 受信時に取り出す target の数値項目（target.fields。カンマ区切り、既定は取り出さない）。DB には同名の列で書く */
+    public final TargetFields targetFields;
 
-    private AppConfig(long samplingWindowMillis) {
-        this.samplingWindowMillis = samplingWindowMillis;
+    private AppConfig(Properties p) {
+        this.samplingWindowMillis = Long.parseLong(p.getProperty("sampling.window.millis", "30000"));
+        this.samplingTime = SamplingTime.valueOf(p.getProperty("sampling.time", "processing").trim().toUpperCase());
+        this.samplingFlushMillis = Long.parseLong(p.getProperty("sampling.flush.millis", String.valueOf(samplingWindowMillis)));
+        this.samplingLatenessMillis = Long.parseLong(p.getProperty("sampling.lateness.millis", "5000"));
+        this.samplingShards = Integer.parseInt(p.getProperty("sampling.shards", "1"));
+        this.samplingAdaptive = Boolean.parseBoolean(p.getProperty("sampling.adaptive", "false").trim());
+        this.samplingFlushMinMillis = Long.parseLong(p.getProperty("sampling.flush.min.millis",
+                String.valueOf(Math.max(100, samplingFlushMillis / 10))));
+        this.samplingFlushMaxMillis = Long.parseLong(p.getProperty("sampling.flush.max.millis", String.valueOf(samplingFlushMillis)));
+        this.ingestQueueCapacity = Integer.parseInt(p.getProperty("ingest.queue.capacity", "10000"));
+        this.samplingDrainChunkMin = Integer.parseInt(p.getProperty("sampling.drain.chunk.min", "256"));
+        this.samplingDrainChunkMax = Integer.parseInt(p.getProperty("sampling.drain.chunk.max", String.valueOf(ingestQueueCapacity)));
+        this.ingestMode = IngestMode.valueOf(p.getProperty("ingest.mode", "queue").trim().toUpperCase());
+        this.ingestTransport = IngestTransport.valueOf(p.getProperty("ingest.transport", "blocking").trim().toUpperCase());
+        this.ingestOverflow = p.getProperty("ingest.overflow", "drop-oldest").trim().toUpperCase().replace('-', '_');
+        this.ingestOverflowBlockMillis = Long.parseLong(p.getProperty("ingest.overflow.block.millis", "100"));
+        this.ingestOverflowSpillDir = p.getProperty("ingest.overflow.spill.dir", System.getProperty("java.io.tmpdir")).trim();
+        this.ingestOverflowSpillMaxBytes = Integer.parseInt(p.getProperty("ingest.overflow.spill.max.bytes", "268435456"));
+        this.dbUrl = blankToNull(p.getProperty("db.url"));
+        this.dbUser = p.getProperty("db.user", "");
+        this.dbPassword = p.getProperty("db.password", "");
+        this.dbTable = p.getProperty("db.table", "tracking_position");
+        this.dbBatchSize = Integer.parseInt(p.getProperty("db.batch.size", "500"));
+        this.dbCreateTable = Boolean.parseBoolean(p.getProperty("db.create.table", "false").trim());
+        this.dbBatchSizeMin = Integer.parseInt(p.getProperty("db.batch.size.min", String.valueOf(Math.min(100, dbBatchSize))));
+        this.dbBatchSizeMax = Integer.parseInt(p.getProperty("db.batch.size.max", String.valueOf(Math.max(5000, dbBatchSize))));
+        this.writerAsyncWorkers = Integer.parseInt(p.getProperty("writer.async.workers", "0"));
+        this.writerAsyncMaxPending = Integer.parseInt(p.getProperty("writer.async.max.pending", "4"));
+        this.writerAsyncPolicy = p.getProperty("writer.async.policy", "block").trim().toUpperCase();
+        this.writerSuppress = p.getProperty("writer.suppress", "off").trim().toUpperCase();
+        this.writerSuppressMaxEntries = Integer.parseInt(p.getProperty("writer.suppress.max.entries", "200000"));
+        this.writerSuppressTtlMillis = Long.parseLong(p.getProperty("writer.suppress.ttl.millis", "600000"));
+        this.writerSuppressRefreshMillis = Long.parseLong(p.getProperty("writer.suppress.refresh.millis", "300000"));
+        this.streamShards = parseShards(p.getProperty("stream.shards", ""));
+        this.tokenStore = p.getProperty("token.store", "file").trim().toLowerCase();
+        this.tokenDir = p.getProperty("token.dir", ".").trim();
+        this.tokenFlushMillis = Long.parseLong(p.getProperty("token.flush.millis", "1000"));
+        this.tokenMmapMaxBytes = Integer.parseInt(p.getProperty("token.mmap.max.bytes", "4096"));
+        this.streamIdleTimeoutMillis = Long.parseLong(p.getProperty("stream.idle.timeout.millis", "30000"));
+        this.reconnectBackoffBaseMillis = Long.parseLong(p.getProperty("reconnect.backoff.base.millis", "500"));
+        this.reconnectBackoffMaxMillis = Long.parseLong(p.getProperty("reconnect.backoff.max.millis", "60000"));
+        this.reconnectStableMillis = Long.parseLong(p.getProperty("reconnect.stable.millis", "10000"));
+        this.archiveDir = blankToNull(p.getProperty("archive.dir"));
+        this.archiveSegmentBytes = Long.parseLong(p.getProperty("archive.segment.bytes", "268435456"));
+        this.archiveBlockBytes = Integer.parseInt(p.getProperty("archive.block.bytes", "262144"));
+        this.archiveFlushMillis = Long.parseLong(p.getProperty("archive.flush.millis", "1000"));
+        this.archiveRetentionSegments = Integer.parseInt(p.getProperty("archive.retention.segments", "0"));
+        this.archiveRetentionMillis = Long.parseLong(p.getProperty("archive.retention.millis", "0"));
+        this.checkpointPath = blankToNull(p.getProperty("checkpoint.path"));
+        this.checkpointIntervalMillis = Long.parseLong(p.getProperty("checkpoint.interval.millis", "5000"));
+        this.checkpointMaxAgeMillis = Long.parseLong(p.getProperty("checkpoint.max.age.millis", "600000"));
+        this.queryIndex = Boolean.parseBoolean(p.getProperty("query.index", "false").trim());
+        this.queryIndexLatitudeField = p.getProperty("query.index.latitude.field", "latitude").trim();
+        this.queryIndexLongitudeField = p.getProperty("query.index.longitude.field", "longitude").trim();
+        this.queryIndexCellDegrees = Double.parseDouble(p.getProperty("query.index.cell.degrees", "1.0"));
+        this.queryIndexTtlMillis = Long.parseLong(p.getProperty("query.index.ttl.millis", "300000"));
+        this.targetFields = TargetFields.parse(p.getProperty("target.fields", ""));
+        this.filterTypes = parseTypes(p.getProperty("filter.types", ""));
+        this.filterIcaoPrefixes = csv(p.getProperty("filter.icao.prefixes", ""));
+        this.filterAltitudeField = p.getProperty("filter.altitude.field", "altitude_baro").trim();
+        this.filterAltitude = doubles("filter.altitude", p.getProperty("filter.altitude", ""), 2);
+        this.filterBbox = doubles("filter.bbox", p.getProperty("filter.bbox", ""), 4);
+        this.filterServerParams = parseParams(p.getProperty("filter.server.params", ""));
     }
 
     public static AppConfig load(Path propertiesPath) {
@@ -19,7 +194,59 @@ public class AppConfig {
         } catch (IOException e) {
             throw new RuntimeException("Failed to load properties: " + propertiesPath, e);
         }
-        long ms = Long.parseLong(p.getProperty("sampling.window.millis", "30000"));
-        return new AppConfig(ms);
+        return new AppConfig(p);
+    }
+
+    /** ファイルを介さずに作る（負荷試験・テスト用。未指定の項目は既定値） */
+    public static AppConfig of(Properties p) { return new AppConfig(p); }
+
+    private static Map<String, Map<String, String>> parseShards(String spec) {
+        Map<String, Map<String, String>> shards = new LinkedHashMap<>();
+        for (String shard : spec.split(";")) {
+            if (shard.isBlank()) continue;
+            int colon = shard.indexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Invalid stream.shards entry (name:k=v&...): " + shard);
+            String name = shard.substring(0, colon).trim();
+            if (shards.put(name, parseParams(shard.substring(colon + 1))) != null) {
+                throw new IllegalArgumentException("Duplicate stream.shards name: " + name);
+            }
+        }
+        return Collections.unmodifiableMap(shards);  // 定義順を保つ
+    }
+
+    /** k=v&k=v（定義順を保つ） */
+    private static Map<String, String> parseParams(String spec) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (String kv : spec.split("&")) {
+            if (kv.isBlank()) continue;
+            int eq = kv.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Invalid query param (k=v): " + kv);
+            params.put(kv.substring(0, eq).trim(), kv.substring(eq + 1).trim());
+        }
+        return Collections.unmodifiableMap(params);
     }
+
+    private static Set<MessageType> parseTypes(String spec) {
+        Set<MessageType> types = EnumSet.noneOf(MessageType.class);
+        for (String t : csv(spec)) {
+            MessageType type = MessageType.of(t.toLowerCase());
+            if (type == MessageType.UNKNOWN) throw new IllegalArgumentException("Unknown filter.types entry: " + t);
+            types.add(type);
+        }
+        return Collections.unmodifiableSet(types);
+    }
+
+    private static List<String> csv(String spec) {
+        return Arrays.stream(spec.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    /** 空なら null、そうでなければちょうど n 個の数値 */
+    private static double[] doubles(String key, String spec, int n) {
+        List<String> parts = csv(spec);
+        if (parts.isEmpty()) return null;
+        if (parts.size() != n) throw new IllegalArgumentException(key + " needs " + n + " comma-separated numbers: " + spec);
+        return parts.stream().mapToDouble(Double::parseDouble).toArray();
+    }
+
+    private static String blankToNull(String v) { return v == null || v.isBlank() ? null : v.trim(); }
 }
\ No newline at end of file
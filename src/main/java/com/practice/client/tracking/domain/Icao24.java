@@ -0,0 +1,46 @@
+package com.practice.client.tracking.domain;
+
+/**
+ * ICAO24（Mode S 24bitアドレス）の16進文字列 ⇔ int 変換。
+ * 6桁の16進で英字の大小が揃っているものだけを符号化し、大文字なら bit24 を立てる。
+ * これで文字列→int が単射になり、文字列キーで間引いていた頃と同じ粒度を保てる。
+ */
+public final class Icao24 {
+    /** 符号化できない（桁数違い・16進以外・大小混在）ことを表す */
+    public static final int NONE = -1;
+
+    private static final int UPPER_FLAG = 1 << 24;
+    private static final char[] LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] UPPER = "0123456789ABCDEF".toCharArray();
+
+    private Icao24() {}
+
+    public static int encode(CharSequence s) {
+        if (s == null || s.length() != 6) return NONE;
+        int v = 0;
+        boolean lower = false, upper = false;
+        for (int i = 0; i < 6; i++) {
+            char c = s.charAt(i);
+            int d;
+            if (c >= '0' && c <= '9') d = c - '0';
+            else if (c >= 'a' && c <= 'f') { d = c - 'a' + 10; lower = true; }
+            else if (c >= 'A' && c <= 'F') { d = c - 'A' + 10; upper = true; }
+            else return NONE;
+            v = (v << 4) | d;
+        }
+        if (lower && upper) return NONE;
+        return upper ? v | UPPER_FLAG : v;
+    }
+
+    /** encode の逆変換（元の文字列と一致する） */
+    public static String decode(int code) {
+        if (code < 0) throw new IllegalArgumentException("not an ICAO24 code: " + code);
+        char[] digits = (code & UPPER_FLAG) != 0 ? UPPER : LOWER;
+        char[] out = new char[6];
+        for (int i = 5, v = code; i >= 0; i--, v >>>= 4) out[i] = digits[v & 0xF];
+        return new String(out);
+    }
+
+    /** 24bitアドレス本体（大小フラグを除いた値） */
+    public static int address(int code) { return code & 0xFFFFFF; }
+}
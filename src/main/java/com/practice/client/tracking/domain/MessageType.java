@@ -0,0 +1,32 @@
+package com.practice.client.tracking.domain;
+
+/** 受信行の種別。キュー上では code()（1バイト）で持ち、文字列は DTO の表示用にだけ使う */
+public enum MessageType {
+    TARGET("target"),
+    STATUS("status"),
+    POSITION_TOKEN("position_token"),
+    /** 種別を判定できなかった行（DTO の messageType は空） */
+    UNKNOWN(null);
+
+    private static final MessageType[] BY_CODE = values();
+
+    private final String wireName;
+
+    MessageType(String wireName) { this.wireName = wireName; }
+
+    /** RecvOutputDTO#getMessageType の文字列（UNKNOWN は null） */
+    public String wireName() { return wireName; }
+    public byte code() { return (byte) ordinal(); }
+
+    public static MessageType ofCode(byte code) { return BY_CODE[code]; }
+
+    public static MessageType of(String wireName) {
+        if (wireName == null) return UNKNOWN;
+        return switch (wireName) {
+            case "target" -> TARGET;
+            case "status" -> STATUS;
+            case "position_token" -> POSITION_TOKEN;
+            default -> UNKNOWN;
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package com.practice.client.tracking.domain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * target メッセージから受信時に取り出す数値項目（target 直下のキー名）の並び。
+ * 値は並び順の添字で double 配列に持つ（無い・数値でない項目は NaN）。
+ * 名前は DB の列名にもなるので英数字と _ に限る。
+ */
+public final class TargetFields {
+    /** 何も取り出さない（既定） */
+    public static final TargetFields NONE = new TargetFields(List.of());
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final List<String> names;
+    private final Map<String, Integer> index = new HashMap<>();
+
+    private TargetFields(List<String> names) {
+        this.names = List.copyOf(names);
+        for (int i = 0; i < this.names.size(); i++) index.put(this.names.get(i), i);
+    }
+
+    public static TargetFields of(List<String> names) {
+        List<String> out = new ArrayList<>();
+        for (String n : names) {
+            if (!NAME.matcher(n).matches()) throw new IllegalArgumentException("Invalid target field name: " + n);
+            if (out.contains(n)) throw new IllegalArgumentException("Duplicate target field: " + n);
+            out.add(n);
+        }
+        return out.isEmpty() ? NONE : new TargetFields(out);
+    }
+
+    /** カンマ区切り（例：latitude,longitude,altitude_baro）。空なら NONE */
+    public static TargetFields parse(String csv) {
+        List<String> names = new ArrayList<>();
+        for (String s : csv.split(",")) if (!s.isBlank()) names.add(s.trim());
+        return of(names);
+    }
+
+    public int size() { return names.size(); }
+    public boolean isEmpty() { return names.isEmpty(); }
+    public String name(int i) { return names.get(i); }
+    public List<String> names() { return names; }
+    /** 項目の添字（対象外なら -1） */
+    public int indexOf(String name) { Integer i = index.get(name); return i == null ? -1 : i; }
+
+    @Override public String toString() { return String.join(",", names); }
+}
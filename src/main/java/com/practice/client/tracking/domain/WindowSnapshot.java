@@ -0,0 +1,88 @@
+package com.practice.client.tracking.domain;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * 1窓分の書き込み内容を列ごとの配列で持つ（行 i ＝ 1機体）。
+ * 数値項目は columns[項目][行] の double 列で、JDBC のバッチへは配列からそのまま流し込める。
+ * 行は DTO も参照するので、DTO 単位の書き込み（upsertAll）へは dtos() で渡せる。
+ * <p>
+ * サンプラーが窓ごとに clear して使い回す。書き込み側で保持する場合はコピーすること。
+ */
+public final class WindowSnapshot {
+    private long bucketStart;
+    private int size;
+    private String[] icao24;
+    private long[] receivedAtMillis;
+    private RecvOutputDTO[] dtos;
+    private double[][] columns = new double[0][];
+
+    public WindowSnapshot(int initialCapacity) {
+        int cap = Math.max(initialCapacity, 16);
+        icao24 = new String[cap];
+        receivedAtMillis = new long[cap];
+        dtos = new RecvOutputDTO[cap];
+    }
+
+    /** 空にして次の窓を始める（配列は使い回す） */
+    public void clear(long bucketStartMillis) {
+        Arrays.fill(icao24, 0, size, null);
+        Arrays.fill(dtos, 0, size, null);
+        bucketStart = bucketStartMillis;
+        size = 0;
+    }
+
+    /** 1機体分を追加する。数値項目の列数は DTO が持つ項目数に合わせて広げる */
+    public void add(String icao, RecvOutputDTO dto) {
+        if (size == icao24.length) grow();
+        int n = dto.getTargetValueCount();
+        if (n > columns.length) addColumns(n);
+        int i = size++;
+        icao24[i] = icao;
+        receivedAtMillis[i] = dto.getReceivedAt().toEpochMilli();
+        dtos[i] = dto;
+        for (int c = 0; c < columns.length; c++) columns[c][i] = c < n ? dto.getTargetValue(c) : Double.NaN;
+    }
+
+    public long bucketStart() { return bucketStart; }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public String icao24(int i) { return icao24[i]; }
+    public long receivedAtMillis(int i) { return receivedAtMillis[i]; }
+    public RecvOutputDTO dto(int i) { return dtos[i]; }
+    /** 数値項目の列数（TargetFields 未設定なら 0） */
+    public int columnCount() { return columns.length; }
+    /** 項目 c の列（先頭 size() 件が有効。欠損は NaN）。変更しないこと */
+    public double[] column(int c) { return columns[c]; }
+    public double value(int c, int i) { return columns[c][i]; }
+
+    /** 行の DTO を並び順で見せる（コピーしない。次の clear まで有効） */
+    public List<RecvOutputDTO> dtos() { return new DtoView(); }
+
+    private void grow() {
+        int cap = icao24.length * 2;
+        icao24 = Arrays.copyOf(icao24, cap);
+        receivedAtMillis = Arrays.copyOf(receivedAtMillis, cap);
+        dtos = Arrays.copyOf(dtos, cap);
+        for (int c = 0; c < columns.length; c++) columns[c] = Arrays.copyOf(columns[c], cap);
+    }
+
+    private void addColumns(int n) {
+        int old = columns.length;
+        columns = Arrays.copyOf(columns, n);
+        for (int c = old; c < n; c++) {
+            columns[c] = new double[icao24.length];
+            Arrays.fill(columns[c], 0, size, Double.NaN);
+        }
+    }
+
+    private final class DtoView extends AbstractList<RecvOutputDTO> implements RandomAccess {
+        @Override public RecvOutputDTO get(int i) { return dtos[i]; }
+        @Override public int size() { return size; }
+    }
+}
@@ -1,36 +1,78 @@
 package com.practice.client.tracking.domain.dto;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Optional;
 
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.MessageType;
+
 public class RecvOutputDTO {
-    private final String rawJson;
+    private static final double[] NO_VALUES = new double[0];
+
+    private String rawJson;                 // rawUtf8 から初回参照時にデコード
+    private final byte[] rawUtf8;           // バイト受信時の行（UTF-8）。文字列で受け取った場合は null
     private final Instant receivedAt;
     private final String messageType;       // "target" / "status" / "position_token" 等（推定）
+    private final MessageType type;         // messageType を受信時に1度だけ列挙値にしたもの
     private final String positionToken;     // 行から抽出できた場合
     private final String icao24;            // Mode S 24bitアドレス（抽出できた場合）
+    private final int icao24Code;           // icao24 を受信時に1度だけ int 化したもの（不可なら Icao24.NONE）
+    private final double[] targetValues;    // 受信時に取り出した target の数値項目（TargetFields 順。未設定なら空）
 
     private RecvOutputDTO(Builder b) {
         this.rawJson = b.rawJson;
+        this.rawUtf8 = b.rawUtf8;
         this.receivedAt = b.receivedAt == null ? Instant.now() : b.receivedAt;
         this.messageType = b.messageType;
+        this.type = MessageType.of(b.messageType);
         this.positionToken = b.positionToken;
         this.icao24 = b.icao24;
+        this.icao24Code = Icao24.encode(b.icao24);
+        this.targetValues = b.targetValues == null ? NO_VALUES : b.targetValues;
+    }
+    /** 受信行。バイトで受けた場合はここで初めて String 化する（不変値なので競合しても結果は同じ） */
+    public String getRawJson() {
+        String s = rawJson;
+        if (s == null && rawUtf8 != null) rawJson = s = new String(rawUtf8, StandardCharsets.UTF_8);
+        return s;
+    }
+    /** 受信行の UTF-8 バイト列（共有配列なので変更しないこと） */
+    public byte[] getRawUtf8() {
+        if (rawUtf8 != null) return rawUtf8;
+        return rawJson == null ? null : rawJson.getBytes(StandardCharsets.UTF_8);
     }
-    public String getRawJson() { return rawJson; }
     public Instant getReceivedAt() { return receivedAt; }
     public Optional<String> getMessageType() { return Optional.ofNullable(messageType); }
+    /** 種別の判定用（Optional・文字列比較なし） */
+    public MessageType getType() { return type; }
     public Optional<String> getPositionToken() { return Optional.ofNullable(positionToken); }
     public Optional<String> getIcao24() { return Optional.ofNullable(icao24); }
+    /** 間引き等のキー用。6桁16進でない ICAO は Icao24.NONE（その場合は getIcao24 を使う） */
+    public int getIcao24Code() { return icao24Code; }
+    /** 受信時に取り出した数値項目の数（TargetFields 未設定なら 0） */
+    public int getTargetValueCount() { return targetValues.length; }
+    /** i 番目の数値項目（TargetFields 順。無い・数値でなければ NaN） */
+    public double getTargetValue(int i) { return targetValues[i]; }
 
     public static class Builder {
         private String rawJson, messageType, positionToken, icao24;
+        private byte[] rawUtf8;
         private Instant receivedAt;
-        public Builder rawJson(String v) { this.rawJson = v; return this; }
+        private double[] targetValues;
+        public Builder rawJson(String v) { this.rawJson = v; this.rawUtf8 = null; return this; }
+        /** 再利用バッファのスライスを受け取る（ここでコピーするので呼び出し後にバッファを書き換えてよい） */
+        public Builder rawJson(byte[] buf, int off, int len) {
+            this.rawUtf8 = Arrays.copyOfRange(buf, off, off + len); this.rawJson = null; return this;
+        }
         public Builder receivedAt(Instant v) { this.receivedAt = v; return this; }
         public Builder messageType(String v) { this.messageType = v; return this; }
+        public Builder messageType(MessageType v) { this.messageType = v.wireName(); return this; }
         public Builder positionToken(String v) { this.positionToken = v; return this; }
         public Builder icao24(String v) { this.icao24 = v; return this; }
+        /** 数値項目（コピーして持つので呼び出し後に配列を書き換えてよい） */
+        public Builder targetValues(double[] v) { this.targetValues = v == null ? null : v.clone(); return this; }
         public RecvOutputDTO build() { return new RecvOutputDTO(this); }
     }
 }
\ No newline at end of file
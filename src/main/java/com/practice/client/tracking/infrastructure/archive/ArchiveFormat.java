@@ -0,0 +1,82 @@
+package com.practice.client.tracking.infrastructure.archive;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+/**
+ * 受信アーカイブのファイル形式（書き込み側と読み込み側で共有）。
+ * <pre>
+ * セグメント  seg-{最初のブロックの受信時刻:19桁}-{連番:6桁}.ndz = ブロックの並び
+ * ブロック    [magic:int][圧縮長:int][展開長:int][行数:int][最初の受信時刻:long][最後の受信時刻:long][crc32c:int] + Deflate 本体
+ * 本体(展開後) [受信時刻:long][長さ:int][行の UTF-8] の並び
+ * 索引        同名の .idx = ブロックごとに [最初の受信時刻:long][最後の受信時刻:long][オフセット:long][トークン長:short][トークン]
+ *             [件数:short][ハッシュ:int]...
+ *             トークンはそのブロックより前に受信した最新の position_token（無ければ長さ0）、
+ *             ハッシュはそのブロック内の position_token の String#hashCode（トークンから再開するとき、展開せずにブロックを飛ばす）
+ * </pre>
+ */
+final class ArchiveFormat {
+    static final int BLOCK_MAGIC = 0x4E444A5A;          // "NDJZ"
+    static final int BLOCK_HEADER = 4 + 4 + 4 + 4 + 8 + 8 + 4;
+    static final int RECORD_HEADER = 8 + 4;
+    static final String SEGMENT_SUFFIX = ".ndz";
+    static final String INDEX_SUFFIX = ".idx";
+    static final int UNKNOWN_HASHES = 0xFFFF;           // 索引のハッシュ件数がこの値ならブロック内のトークンは不明
+
+    private ArchiveFormat() {}
+
+    static String segmentName(long firstMillis, int seq) {
+        return String.format("seg-%019d-%06d%s", firstMillis, seq, SEGMENT_SUFFIX);
+    }
+
+    static Path indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    static int crc(byte[] buf, int off, int len) {
+        var c = new CRC32C();
+        c.update(buf, off, len);
+        return (int) c.getValue();
+    }
+
+    /** 索引の1エントリ。tokenHashes が null ならブロック内のトークンは分からない（索引が無く、ヘッダから補った場合） */
+    record IndexEntry(long firstMillis, long lastMillis, long offset, String tokenBefore, int[] tokenHashes) {
+        /** このブロックに token があり得るか（ハッシュが一致しても別のトークンのことがある） */
+        boolean mayContain(String token) {
+            if (tokenHashes == null) return true;
+            int h = token.hashCode();
+            for (int x : tokenHashes) if (x == h) return true;
+            return false;
+        }
+
+        ByteBuffer encode() {
+            byte[] tok = tokenBefore == null ? new byte[0] : tokenBefore.getBytes(StandardCharsets.UTF_8);
+            int hashes = tokenHashes.length < UNKNOWN_HASHES ? tokenHashes.length : 0;   // 数え切れなければ「不明」
+            ByteBuffer b = ByteBuffer.allocate(8 + 8 + 8 + 2 + tok.length + 2 + 4 * hashes);
+            b.putLong(firstMillis).putLong(lastMillis).putLong(offset).putShort((short) tok.length).put(tok);
+            b.putShort((short) (tokenHashes.length < UNKNOWN_HASHES ? hashes : UNKNOWN_HASHES));
+            for (int i = 0; i < hashes; i++) b.putInt(tokenHashes[i]);
+            return b.flip();
+        }
+
+        /** 途中で切れたエントリ（書き込み中のクラッシュ）なら null */
+        static IndexEntry decode(ByteBuffer b) {
+            if (b.remaining() < 26) return null;
+            long first = b.getLong(), last = b.getLong(), offset = b.getLong();
+            int len = Short.toUnsignedInt(b.getShort());
+            if (b.remaining() < len) return null;
+            byte[] tok = new byte[len];
+            b.get(tok);
+            if (b.remaining() < 2) return null;
+            int count = Short.toUnsignedInt(b.getShort());
+            if (b.remaining() < 4 * count) return null;
+            if (count == UNKNOWN_HASHES) return new IndexEntry(first, last, offset, len == 0 ? null : new String(tok, StandardCharsets.UTF_8), null);
+            int[] hashes = new int[count];
+            for (int i = 0; i < count; i++) hashes[i] = b.getInt();
+            return new IndexEntry(first, last, offset, len == 0 ? null : new String(tok, StandardCharsets.UTF_8), hashes);
+        }
+    }
+}
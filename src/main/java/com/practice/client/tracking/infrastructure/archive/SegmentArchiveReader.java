@@ -0,0 +1,161 @@
+package com.practice.client.tracking.infrastructure.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.http.NdjsonLineParser;
+
+/**
+ * SegmentArchiveWriter が書いたアーカイブを読み戻す。セグメントは mmap し、索引（.idx）で
+ * 対象時間帯のブロックだけを展開する（索引が無い・途中で切れている場合はブロックヘッダを順に辿る）。
+ * 読み戻した行は受信時と同じく NdjsonLineParser で DTO にし、receivedAt は記録時の受信時刻になる。
+ */
+public class SegmentArchiveReader {
+    private final Path dir;
+    private final NdjsonLineParser parser;
+
+    public SegmentArchiveReader(Path dir) { this(dir, TargetFields.NONE); }
+
+    /** 読み戻すときにも受信時と同じ数値項目を取り出す */
+    public SegmentArchiveReader(Path dir, TargetFields targetFields) {
+        this.dir = dir; this.parser = new NdjsonLineParser(NdjsonLineParser.Mode.STREAMING, targetFields);
+    }
+
+    /** 受信時刻が [fromMillis, toMillis) の行を記録順に渡す。渡した件数を返す */
+    public long replay(long fromMillis, long toMillis, Consumer<RecvOutputDTO> out) throws IOException {
+        long n = 0;
+        for (Path seg : segments()) {
+            try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.READ)) {
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                for (var e : blocks(seg, map)) {
+                    if (e.lastMillis() < fromMillis || e.firstMillis() >= toMillis) continue;
+                    n += decodeBlock(map, e.offset(), rec -> {
+                        long t = rec.getReceivedAt().toEpochMilli();
+                        return t < fromMillis || t >= toMillis || accept(out, rec);
+                    });
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * position_token の行より後に記録された行を、受信時刻 toMillis 未満まで渡す（トークンが見つからなければ 0）。
+     * トークンが見つかるまでは索引だけを見て、「ブロック前の最新トークン」が一致するブロックから読むか、
+     * ブロック内のトークンのハッシュが一致するブロックだけを展開して探す（それより前のブロックは展開しない）。
+     * 索引の無いブロックは展開して探す。
+     */
+    public long replayAfterToken(String token, long toMillis, Consumer<RecvOutputDTO> out) throws IOException {
+        boolean[] found = {false};
+        long n = 0;
+        for (Path seg : segments()) {
+            try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.READ)) {
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                for (var e : blocks(seg, map)) {
+                    if (!found[0]) {
+                        if (token.equals(e.tokenBefore())) found[0] = true;        // 直前のブロックで受信済み
+                        else if (!e.mayContain(token)) continue;                   // このブロックには無い
+                    }
+                    if (found[0] && e.firstMillis() >= toMillis) return n;
+                    n += decodeBlock(map, e.offset(), rec -> {
+                        if (!found[0]) {
+                            if (token.equals(rec.getPositionToken().orElse(null))) found[0] = true;
+                            return true;
+                        }
+                        return rec.getReceivedAt().toEpochMilli() >= toMillis || accept(out, rec);
+                    });
+                }
+            }
+        }
+        return n;
+    }
+
+    private static boolean accept(Consumer<RecvOutputDTO> out, RecvOutputDTO rec) { out.accept(rec); return false; }
+
+    /** アーカイブ中のセグメント（ファイル名＝開始時刻順） */
+    public List<Path> segments() throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(ArchiveFormat.SEGMENT_SUFFIX)).sorted().toList();
+        }
+    }
+
+    /** 索引を読む。索引が欠けていればヘッダを辿って補う（書き込み途中で落ちた末尾ブロックは捨てる） */
+    private static List<ArchiveFormat.IndexEntry> blocks(Path seg, ByteBuffer map) throws IOException {
+        List<ArchiveFormat.IndexEntry> entries = new ArrayList<>();
+        Path idx = ArchiveFormat.indexOf(seg);
+        if (Files.exists(idx)) {
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(idx));
+            for (ArchiveFormat.IndexEntry e; (e = ArchiveFormat.IndexEntry.decode(b)) != null;) entries.add(e);
+            // 索引だけ先に書けてセグメント本体が切れている場合
+            while (!entries.isEmpty() && nextBlock(map, entries.get(entries.size() - 1).offset()) < 0) entries.remove(entries.size() - 1);
+        }
+        long pos = entries.isEmpty() ? 0 : nextBlock(map, entries.get(entries.size() - 1).offset());
+        String lastToken = entries.isEmpty() ? null : entries.get(entries.size() - 1).tokenBefore();
+        while (pos >= 0 && pos + ArchiveFormat.BLOCK_HEADER <= map.limit()) {
+            int p = (int) pos;
+            if (map.getInt(p) != ArchiveFormat.BLOCK_MAGIC) break;
+            long next = nextBlock(map, pos);
+            if (next < 0) break;
+            entries.add(new ArchiveFormat.IndexEntry(map.getLong(p + 16), map.getLong(p + 24), pos, lastToken, null));
+            pos = next;
+        }
+        return entries;
+    }
+
+    /** pos のブロックの次の位置（ブロックが途中で切れていれば -1） */
+    private static long nextBlock(ByteBuffer map, long pos) {
+        int p = (int) pos;
+        if (p + ArchiveFormat.BLOCK_HEADER > map.limit()) return -1;
+        long next = pos + ArchiveFormat.BLOCK_HEADER + map.getInt(p + 4);
+        return next <= map.limit() ? next : -1;
+    }
+
+    /** 行ごとの判定。true を返すとその行は数えない */
+    private interface RecordFilter { boolean skip(RecvOutputDTO rec); }
+
+    /** ブロックを展開して1行ずつ filter に渡す。filter が受け取った（skip=false）件数を返す */
+    private long decodeBlock(ByteBuffer map, long offset, RecordFilter filter) throws IOException {
+        int p = (int) offset;
+        int clen = map.getInt(p + 4), rawLen = map.getInt(p + 8), crc = map.getInt(p + 32);
+        byte[] compressed = new byte[clen];
+        map.get(p + ArchiveFormat.BLOCK_HEADER, compressed);
+        if (ArchiveFormat.crc(compressed, 0, clen) != crc) throw new IOException("corrupt archive block at " + offset);
+        byte[] raw = new byte[rawLen];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < rawLen && !inflater.finished()) n += inflater.inflate(raw, n, rawLen - n);
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt archive block at " + offset, e);
+        } finally { inflater.end(); }
+
+        long accepted = 0;
+        ByteBuffer b = ByteBuffer.wrap(raw);
+        while (b.remaining() >= ArchiveFormat.RECORD_HEADER) {
+            long millis = b.getLong();
+            int len = b.getInt();
+            int off = b.position();
+            var builder = new RecvOutputDTO.Builder().rawJson(raw, off, len).receivedAt(Instant.ofEpochMilli(millis));
+            parser.parse(raw, off, len, builder);
+            b.position(off + len);
+            if (!filter.skip(builder.build())) accepted++;
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,223 @@
+package com.practice.client.tracking.infrastructure.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * 受信した生の行を追記専用のセグメントファイルへ残す（間引き前の全件。DB の埋め戻しや間引きロジック変更時の再計算用）。
+ * <p>
+ * append は行をメモリ上のブロックに詰めるだけ。blockBytes に達するか flushMillis 経つとブロックを閉じ、
+ * 書き込みスレッドが Deflate で圧縮して FileChannel へまとめて書く（ブロック単位の大きな write）。
+ * セグメントが segmentBytes を超えたら次のファイルへ切り替える。形式は ArchiveFormat を参照。
+ * 書き込みが追いつかない場合は、閉じたブロックの待ち行列（64個）に空きが出るまで受信側を待たせる（背圧。順序は保つ）。
+ * <p>
+ * 保持：セグメントを切り替えるたびに、書き込み中以外のセグメントが maxSegments 個を超えた分（古い順）と、
+ * 最後の書き込みから maxAgeMillis 経った分を索引ごと消す（どちらも 0 なら消さない）。
+ */
+public class SegmentArchiveWriter implements AutoCloseable {
+    private static final int MAX_PENDING_BLOCKS = 64;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int blockBytes;
+    private final int maxSegments;
+    private final long maxAgeMillis;
+    private final ThreadPoolExecutor writer;
+    private final ScheduledExecutorService ticker;
+
+    // 受信側（append）の状態：this で保護
+    private byte[] block;
+    private int blockLen, blockLines;
+    private long blockFirst, blockLast, blockOpenedNanos;
+    private String lastToken, tokenBeforeBlock;
+    private int[] blockTokens = new int[16];       // ブロック内の position_token のハッシュ（索引用）
+    private int blockTokenCount;
+    private boolean closed;
+
+    // 書き込みスレッドの状態（close 時の後始末と競合しないよう writeLock で保護）
+    private final Object writeLock = new Object();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private byte[] compressed = new byte[64 * 1024];
+    private FileChannel segment, index;
+    private long segmentPos;
+    private int segmentSeq;
+    private volatile IOException failure;
+
+    public SegmentArchiveWriter(Path dir, long segmentBytes, int blockBytes, long flushMillis) throws IOException {
+        this(dir, segmentBytes, blockBytes, flushMillis, 0, 0);
+    }
+
+    public SegmentArchiveWriter(Path dir, long segmentBytes, int blockBytes, long flushMillis,
+                                int maxSegments, long maxAgeMillis) throws IOException {
+        if (blockBytes < 1024) throw new IllegalArgumentException("blockBytes must be >= 1024: " + blockBytes);
+        if (maxSegments < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("retention must be >= 0: segments=" + maxSegments + ", millis=" + maxAgeMillis);
+        }
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes; this.blockBytes = blockBytes;
+        this.maxSegments = maxSegments; this.maxAgeMillis = maxAgeMillis;
+        this.block = new byte[blockBytes + 4096];
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_PENDING_BLOCKS), r -> {
+            Thread th = new Thread(r, "archive-writer");
+            th.setDaemon(true); return th;
+        }, (task, pool) -> {
+            try { pool.getQueue().put(task); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "archive-flush");
+            th.setDaemon(true); return th;
+        });
+        long tick = Math.max(10, flushMillis / 2);
+        ticker.scheduleWithFixedDelay(() -> flushOlderThan(TimeUnit.MILLISECONDS.toNanos(flushMillis)), tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 1行を追記する（複数の受信スレッドから呼んでよい）。
+     * 書き込みに失敗した後や close 後は記録せずに戻る（受信は止めない。失敗は close で報告する）。
+     */
+    public synchronized void append(RecvOutputDTO dto) {
+        if (closed || failure != null) return;
+        byte[] raw = dto.getRawUtf8();
+        if (raw == null) return;
+        long millis = dto.getReceivedAt().toEpochMilli();
+        int need = ArchiveFormat.RECORD_HEADER + raw.length;
+        if (blockLen + need > block.length) block = Arrays.copyOf(block, Math.max(block.length * 2, blockLen + need));
+        if (blockLines == 0) { blockFirst = blockLast = millis; blockOpenedNanos = System.nanoTime(); tokenBeforeBlock = lastToken; }
+        ByteBuffer.wrap(block, blockLen, need).putLong(millis).putInt(raw.length).put(raw);
+        blockLen += need;
+        blockLines++;
+        blockLast = Math.max(blockLast, millis);
+        String token = dto.getPositionToken().orElse(null);
+        if (token != null) {
+            lastToken = token;
+            if (blockTokenCount == blockTokens.length) blockTokens = Arrays.copyOf(blockTokens, blockTokenCount * 2);
+            blockTokens[blockTokenCount++] = token.hashCode();
+        }
+        if (blockLen >= blockBytes) seal();
+    }
+
+    /** 詰めかけのブロックを閉じて書き込みに回す */
+    public synchronized void flush() { if (blockLines > 0) seal(); }
+
+    private synchronized void flushOlderThan(long ageNanos) {
+        if (blockLines > 0 && System.nanoTime() - blockOpenedNanos >= ageNanos) seal();
+    }
+
+    private void seal() {
+        var b = new SealedBlock(block, blockLen, blockLines, blockFirst, blockLast, tokenBeforeBlock,
+                Arrays.copyOf(blockTokens, blockTokenCount));
+        block = new byte[blockBytes + 4096];
+        blockLen = blockLines = blockTokenCount = 0;
+        writer.execute(() -> write(b));
+    }
+
+    private record SealedBlock(byte[] raw, int len, int lines, long first, long last, String tokenBefore, int[] tokenHashes) {}
+
+    /** 書き込みスレッドで1ブロック書く */
+    private void write(SealedBlock b) {
+        synchronized (writeLock) {
+            if (failure == null) writeLocked(b);
+        }
+    }
+
+    private void writeLocked(SealedBlock b) {
+        try {
+            deflater.reset();
+            deflater.setInput(b.raw(), 0, b.len());
+            deflater.finish();
+            int clen = 0;
+            while (!deflater.finished()) {
+                if (clen == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                clen += deflater.deflate(compressed, clen, compressed.length - clen);
+            }
+            long total = ArchiveFormat.BLOCK_HEADER + clen;
+            if (segment == null || (segmentPos > 0 && segmentPos + total > segmentBytes)) rotate(b.first());
+
+            ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.BLOCK_HEADER)
+                    .putInt(ArchiveFormat.BLOCK_MAGIC).putInt(clen).putInt(b.len()).putInt(b.lines())
+                    .putLong(b.first()).putLong(b.last()).putInt(ArchiveFormat.crc(compressed, 0, clen)).flip();
+            ByteBuffer[] bufs = {header, ByteBuffer.wrap(compressed, 0, clen)};
+            while (bufs[1].hasRemaining()) segment.write(bufs);
+            ByteBuffer entry = new ArchiveFormat.IndexEntry(b.first(), b.last(), segmentPos, b.tokenBefore(), b.tokenHashes()).encode();
+            while (entry.hasRemaining()) index.write(entry);
+            segmentPos += total;
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("[Archive] write failed: " + e.getMessage());
+        }
+    }
+
+    private void rotate(long firstMillis) throws IOException {
+        closeSegment();
+        Path seg = dir.resolve(ArchiveFormat.segmentName(firstMillis, segmentSeq++));
+        segment = FileChannel.open(seg, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        index = FileChannel.open(ArchiveFormat.indexOf(seg), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentPos = 0;
+        if (maxSegments > 0 || maxAgeMillis > 0) expire(seg);
+    }
+
+    /** 保持の上限を超えた古いセグメントを消す（current は書き込み中なので残す）。消せなくても記録は続ける */
+    private void expire(Path current) {
+        List<Path> closed;
+        try (Stream<Path> s = Files.list(dir)) {
+            closed = s.filter(p -> p.getFileName().toString().endsWith(ArchiveFormat.SEGMENT_SUFFIX) && !p.equals(current))
+                    .sorted().toList();
+        } catch (IOException e) {
+            System.err.println("[Archive] retention skipped: " + e.getMessage());
+            return;
+        }
+        long cutoff = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+        int excess = maxSegments > 0 ? closed.size() + 1 - maxSegments : 0;      // 書き込み中の分も数える
+        for (int i = 0; i < closed.size(); i++) {
+            Path seg = closed.get(i);
+            try {
+                if (i >= excess && Files.getLastModifiedTime(seg).toMillis() >= cutoff) continue;
+                Files.deleteIfExists(ArchiveFormat.indexOf(seg));
+                Files.deleteIfExists(seg);
+            } catch (IOException e) {
+                System.err.println("[Archive] failed to delete " + seg + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment == null) return;
+        segment.force(false); segment.close();
+        index.force(false); index.close();
+        segment = index = null;
+    }
+
+    /** 詰めかけのブロックを書き切り、ファイルを閉じる */
+    @Override public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            flush();
+            closed = true;
+        }
+        ticker.shutdownNow();
+        writer.shutdown();
+        try { writer.awaitTermination(30, TimeUnit.SECONDS); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        synchronized (writeLock) {
+            closeSegment();
+            deflater.end();
+        }
+        if (failure != null) throw failure;
+    }
+}
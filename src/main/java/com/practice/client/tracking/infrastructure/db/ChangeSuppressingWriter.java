@@ -0,0 +1,189 @@
+package com.practice.client.tracking.infrastructure.db;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 前回書いた内容と変わらない機体の UPSERT を省く書き込み段。ICAO24 ごとに最後に書いた行の指紋・窓・時刻を
+ * LRU（maxEntries 件まで）で持ち、ttlMillis 見かけなかった機体（圏外に出た）は忘れる。
+ * <p>
+ * 指紋は target.fields の数値項目（設定が無ければ生の行全体）の 64bit ハッシュ。同じ指紋なら
+ * SKIP は書かず、TOUCH は前回書いた行の received_at だけを進める（delegate.touchAll）。
+ * 最後に書いてから refreshMillis 経った機体は変わっていなくても書き直す（0 なら書き直さない）。
+ * 時刻はすべて行の受信時刻で測る（アーカイブの再生でも同じ結果になる）。
+ * <p>
+ * 記録は delegate が成功してから更新するので、失敗した行は次の窓で改めて書かれる。
+ * WriteBehindWriter の内側（delegate 側）に置けば、表の更新だけをロックし DB 書き込みは並列のまま。
+ */
+public class ChangeSuppressingWriter implements DatabaseWriter {
+    public enum Mode {
+        /** 変わっていない行は書かない（その窓の行はできない） */
+        SKIP,
+        /** 変わっていない行は前回書いた行の received_at だけを更新する */
+        TOUCH
+    }
+
+    private final DatabaseWriter delegate;
+    private final Mode mode;
+    private final int maxEntries;
+    private final long ttlMillis, refreshMillis;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private final LinkedHashMap<String, Entry> lastWritten;   // アクセス順（先頭が最も長く見ていない機体）
+    private long nowMillis = Long.MIN_VALUE;                    // これまでに見た最大の受信時刻
+    private long skipped, touched, expired, evicted;
+
+    public ChangeSuppressingWriter(DatabaseWriter delegate, Mode mode, int maxEntries, long ttlMillis, long refreshMillis) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be >= 1: " + maxEntries);
+        if (ttlMillis <= 0) throw new IllegalArgumentException("ttlMillis must be > 0: " + ttlMillis);
+        if (refreshMillis < 0) throw new IllegalArgumentException("refreshMillis must be >= 0: " + refreshMillis);
+        this.delegate = delegate; this.mode = mode; this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis; this.refreshMillis = refreshMillis;
+        this.lastWritten = new LinkedHashMap<>(Math.min(maxEntries, 1 << 16), 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= ChangeSuppressingWriter.this.maxEntries) return false;
+                evicted++;
+                return true;
+            }
+        };
+    }
+
+    @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+        WindowSnapshot s = new WindowSnapshot(1);
+        s.clear(bucketStartMillis);
+        s.add(icao24, dto);
+        upsertSnapshot(s);
+    }
+
+    @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+        if (dtos.isEmpty()) return;
+        WindowSnapshot s = new WindowSnapshot(dtos.size());
+        s.clear(bucketStartMillis);
+        for (var dto : dtos) s.add(dto.getIcao24().orElseThrow(), dto);
+        upsertSnapshot(s);
+    }
+
+    /** 変わった行だけの snapshot を delegate へ渡し、（TOUCH なら）残りを touchAll する */
+    @Override public void upsertSnapshot(WindowSnapshot s) {
+        if (s.isEmpty()) return;
+        int n = s.size();
+        long bucket = s.bucketStart();
+        long[] fps = new long[n];
+        WindowSnapshot changed = new WindowSnapshot(n);
+        changed.clear(bucket);
+        int[] changedRows = new int[n];
+        String[] touchIcao = null;
+        long[] touchBucket = null, touchAt = null;
+        int c = 0, t = 0, same = 0;
+
+        synchronized (this) {
+            for (int i = 0; i < n; i++) {
+                String icao = s.icao24(i);
+                long at = s.receivedAtMillis(i);
+                if (at > nowMillis) nowMillis = at;
+                fps[i] = fingerprint(s, i);
+                Entry e = lastWritten.get(icao);
+                if (e == null || e.fingerprint != fps[i] || (refreshMillis > 0 && at - e.writtenAtMillis >= refreshMillis)) {
+                    changed.add(icao, s.dto(i));
+                    changedRows[c++] = i;
+                    continue;
+                }
+                e.seenAtMillis = Math.max(e.seenAtMillis, at);
+                same++;
+                if (mode == Mode.TOUCH && (e.touchedAtMillis < at)) {
+                    if (touchIcao == null) { touchIcao = new String[n]; touchBucket = new long[n]; touchAt = new long[n]; }
+                    touchIcao[t] = icao; touchBucket[t] = e.bucketStart; touchAt[t++] = at;
+                    e.touchedAtMillis = at;
+                }
+            }
+        }
+
+        if (c > 0) delegate.upsertSnapshot(changed);
+        if (t > 0) delegate.touchAll(t, touchIcao, touchBucket, touchAt);
+
+        synchronized (this) {
+            for (int k = 0; k < c; k++) {
+                int i = changedRows[k];
+                long at = s.receivedAtMillis(i);
+                Entry e = lastWritten.get(s.icao24(i));
+                if (e == null) lastWritten.put(s.icao24(i), e = new Entry());
+                e.fingerprint = fps[i]; e.bucketStart = bucket;
+                e.writtenAtMillis = e.touchedAtMillis = at;
+                e.seenAtMillis = Math.max(e.seenAtMillis, at);
+            }
+            skipped += same - t; touched += t;
+            expire();
+        }
+        metrics.writesSuppressed(same - t, t);
+    }
+
+    public synchronized int size() { return lastWritten.size(); }
+    /** 書かずに済ませた行（SKIP）と received_at だけ更新した行（TOUCH）の累計 */
+    public synchronized long skipped() { return skipped; }
+    public synchronized long touched() { return touched; }
+    /** ttl 切れで忘れた機体数と、maxEntries を超えて追い出した機体数 */
+    public synchronized long expired() { return expired; }
+    public synchronized long evicted() { return evicted; }
+
+    /** 1機体分の記録（指紋・書いた窓・書いた／received_at を更新した／最後に見た受信時刻） */
+    public interface EntryVisitor {
+        void accept(String icao24, long fingerprint, long bucketStart, long writtenAtMillis, long touchedAtMillis, long seenAtMillis);
+    }
+
+    /** チェックポイント用：記録を古い順（最も長く見ていない機体から）に渡す */
+    public synchronized void forEachEntry(EntryVisitor visitor) {
+        lastWritten.forEach((icao, e) -> visitor.accept(icao, e.fingerprint, e.bucketStart,
+                e.writtenAtMillis, e.touchedAtMillis, e.seenAtMillis));
+    }
+
+    /** チェックポイントから戻す（forEachEntry と同じ順に呼べば LRU の順序も戻る。ttl は最後に見た時刻から測る） */
+    public synchronized void restoreEntry(String icao24, long fingerprint, long bucketStart,
+                                          long writtenAtMillis, long touchedAtMillis, long seenAtMillis) {
+        Entry e = new Entry();
+        e.fingerprint = fingerprint; e.bucketStart = bucketStart;
+        e.writtenAtMillis = writtenAtMillis; e.touchedAtMillis = touchedAtMillis; e.seenAtMillis = seenAtMillis;
+        lastWritten.put(icao24, e);
+        if (seenAtMillis > nowMillis) nowMillis = seenAtMillis;
+    }
+
+    /** 先頭（最も長く見ていない機体）から ttl 切れを消す */
+    private void expire() {
+        for (Iterator<Entry> it = lastWritten.values().iterator(); it.hasNext();) {
+            if (nowMillis - it.next().seenAtMillis < ttlMillis) break;
+            it.remove();
+            expired++;
+        }
+    }
+
+    /** 数値項目があればその値だけ、無ければ生の行全体の 64bit ハッシュ（FNV-1a） */
+    static long fingerprint(WindowSnapshot s, int i) {
+        long h = 0xcbf29ce484222325L;
+        if (s.columnCount() > 0) {
+            for (int c = 0; c < s.columnCount(); c++) h = mix(h, Double.doubleToLongBits(s.value(c, i)));
+            return h;
+        }
+        byte[] raw = s.dto(i).getRawUtf8();
+        if (raw == null) return h;
+        for (byte b : raw) { h ^= b & 0xff; h *= 0x100000001b3L; }
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        for (int k = 0; k < 8; k++, v >>>= 8) { h ^= v & 0xff; h *= 0x100000001b3L; }
+        return h;
+    }
+
+    /** 1機体分の「最後に書いた行」 */
+    private static final class Entry {
+        long fingerprint, bucketStart, writtenAtMillis, touchedAtMillis, seenAtMillis = Long.MIN_VALUE;
+    }
+
+    /** テスト用：記録している ICAO24（古い順） */
+    synchronized List<String> icaos() { return List.copyOf(lastWritten.keySet()); }
+}
@@ -1,7 +1,31 @@
 package com.practice.client.tracking.infrastructure.db;
 
+import java.util.Collection;
+
+import com.practice.client.tracking.domain.WindowSnapshot;
 import com.practice.client.tracking.domain.dto.RecvOutputDTO;
 
 public interface DatabaseWriter {
     void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto);
-}
\ No newline at end of file
+
+    /** 1窓分（ICAO24 ごとに1件、icao24 抽出済み）をまとめて書く。既定は1件ずつ upsert */
+    default void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+        for (var dto : dtos) upsert(dto.getIcao24().orElseThrow(), bucketStartMillis, dto);
+    }
+
+    /**
+     * 列形式の1窓分を書く（サンプラーはこちらを呼ぶ）。既定は行の DTO で upsertAll。
+     * snapshot は呼び出し側で使い回すので、戻った後も参照する実装はコピーすること。
+     */
+    default void upsertSnapshot(WindowSnapshot snapshot) {
+        if (!snapshot.isEmpty()) upsertAll(snapshot.bucketStart(), snapshot.dtos());
+    }
+
+    /** 既存の行 (icao24, bucketStartMillis) の received_at だけを進める（内容が変わっていない機体用）。既定は何もしない */
+    default void touch(String icao24, long bucketStartMillis, long receivedAtMillis) {}
+
+    /** 先頭 n 件をまとめて touch する。既定は1件ずつ */
+    default void touchAll(int n, String[] icao24, long[] bucketStartMillis, long[] receivedAtMillis) {
+        for (int i = 0; i < n; i++) touch(icao24[i], bucketStartMillis[i], receivedAtMillis[i]);
+    }
+}
@@ -0,0 +1,265 @@
+package com.practice.client.tracking.infrastructure.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * JDBC 版の書き込み。1窓分を PreparedStatement のバッチ（batchSize 件ごとに executeBatch）で
+ * 1トランザクションにまとめて UPSERT する。キーは (icao24, bucket_start)。
+ * 呼び出しごとに接続を取るので、本番ではプール付きの DataSource を渡すこと。
+ * <p>
+ * TargetFields を渡すと、その項目名の DOUBLE 列も書く（受信時に取り出した値。欠損は NULL）。
+ */
+public class JdbcDatabaseWriter implements DatabaseWriter {
+    /** UPSERT 構文の方言 */
+    public enum Dialect {
+        /** H2：MERGE INTO ... KEY(...) */
+        H2,
+        /** PostgreSQL / SQLite：INSERT ... ON CONFLICT DO UPDATE */
+        POSTGRESQL,
+        SQLITE;
+
+        public static Dialect fromJdbcUrl(String url) {
+            if (url.startsWith("jdbc:h2:")) return H2;
+            if (url.startsWith("jdbc:sqlite:")) return SQLITE;
+            if (url.startsWith("jdbc:postgresql:")) return POSTGRESQL;
+            throw new IllegalArgumentException("Unsupported JDBC url: " + url);
+        }
+    }
+
+    /** 接続の取り出し口（DataSource でも DriverManager でもよい） */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+        static ConnectionFactory of(DataSource ds) { return ds::getConnection; }
+    }
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final ConnectionFactory connections;
+    private final Dialect dialect;
+    private final String table;
+    private final TargetFields targetFields;
+    private final String upsertSql, touchSql;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private volatile int batchSize;
+
+    public JdbcDatabaseWriter(ConnectionFactory connections, Dialect dialect, String table, int batchSize) {
+        this(connections, dialect, table, batchSize, TargetFields.NONE);
+    }
+
+    public JdbcDatabaseWriter(ConnectionFactory connections, Dialect dialect, String table, int batchSize,
+                              TargetFields targetFields) {
+        if (!TABLE_NAME.matcher(table).matches()) throw new IllegalArgumentException("Invalid table name: " + table);
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be >= 1: " + batchSize);
+        this.connections = connections; this.dialect = dialect; this.table = table; this.batchSize = batchSize;
+        this.targetFields = targetFields;
+        this.upsertSql = upsertSql(dialect, table, targetFields);
+        this.touchSql = "UPDATE " + table + " SET received_at = ? WHERE icao24 = ? AND bucket_start = ? AND received_at < ?";
+    }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = Math.max(1, batchSize); }
+
+    /**
+     * テーブルが無ければ作る（組み込みDB・検証用）。既にあれば、足りない target.fields の列を ALTER TABLE で足す
+     * （target.fields を増やして再起動した場合。ADD COLUMN IF NOT EXISTS は SQLite に無いので、列は実際の列名と比べる）。
+     */
+    public void createTableIfNotExists() {
+        String payloadType = dialect == Dialect.H2 ? "CLOB" : "TEXT";
+        String ddl = "CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "icao24 VARCHAR(16) NOT NULL, "
+                + "bucket_start BIGINT NOT NULL, "
+                + "received_at BIGINT NOT NULL, "
+                + "message_type VARCHAR(32), "
+                + "raw_json " + payloadType + ", "
+                + String.join("", targetFields.names().stream().map(n -> n + " DOUBLE PRECISION, ").toList())
+                + "PRIMARY KEY (icao24, bucket_start))";
+        try (Connection c = connections.open(); Statement st = c.createStatement()) {
+            st.execute(ddl);
+            for (String column : missingTargetColumns(st)) {
+                st.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " DOUBLE PRECISION");
+                System.err.println("[Jdbc] added column " + column + " to " + table);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to create table: " + table, e);
+        }
+    }
+
+    /**
+     * target.fields の列がテーブルに揃っているか確かめる（起動時用）。足りなければ IllegalStateException
+     * （target.fields を増やして再起動したとき、毎回の upsert で失敗させないため）。DB に繋がらなければ記録だけ残す。
+     */
+    public void checkTargetColumns() {
+        if (targetFields.size() == 0) return;
+        List<String> missing;
+        try (Connection c = connections.open(); Statement st = c.createStatement()) {
+            missing = missingTargetColumns(st);
+        } catch (SQLException e) {
+            System.err.println("[Jdbc] could not check columns of " + table + ": " + e.getMessage());
+            return;
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Table " + table + " has no column for target.fields " + missing
+                    + " (add them, or set db.create.table=true to add them at startup)");
+        }
+    }
+
+    /** target.fields のうちテーブルに無い列（大文字・小文字は区別しない。DB ごとに畳み方が違うため） */
+    private List<String> missingTargetColumns(Statement st) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        try (ResultSet rs = st.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+            ResultSetMetaData md = rs.getMetaData();
+            for (int i = 1; i <= md.getColumnCount(); i++) existing.add(md.getColumnName(i).toLowerCase(Locale.ROOT));
+        }
+        return targetFields.names().stream().filter(n -> !existing.contains(n.toLowerCase(Locale.ROOT))).toList();
+    }
+
+    @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+        write(bucketStartMillis, List.of(dto), icao24);
+    }
+
+    @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+        if (!dtos.isEmpty()) write(bucketStartMillis, dtos, null);
+    }
+
+    /** 列形式の窓：数値項目は列の配列から直接バインドする（DTO の JSON は読み直さない） */
+    @Override public void upsertSnapshot(WindowSnapshot s) {
+        if (s.isEmpty()) return;
+        int n = targetFields.size();
+        double[][] cols = new double[n][];
+        for (int c = 0; c < n; c++) cols[c] = c < s.columnCount() ? s.column(c) : null;
+        execute(upsertSql, s.size(), b -> {
+            for (int i = 0; i < s.size(); i++) {
+                bindCommon(b, s.icao24(i), s.bucketStart(), s.receivedAtMillis(i), s.dto(i));
+                for (int c = 0; c < n; c++) bindDouble(b, 6 + c, cols[c] == null ? Double.NaN : cols[c][i]);
+                addBatch(b);
+            }
+        });
+    }
+
+    @Override public void touch(String icao24, long bucketStartMillis, long receivedAtMillis) {
+        touchAll(1, new String[] {icao24}, new long[] {bucketStartMillis}, new long[] {receivedAtMillis});
+    }
+
+    /** received_at だけの UPDATE をバッチで流す（行が無い・既に新しければ何もしない） */
+    @Override public void touchAll(int n, String[] icao24, long[] bucketStartMillis, long[] receivedAtMillis) {
+        if (n <= 0) return;
+        execute(touchSql, n, b -> {
+            for (int i = 0; i < n; i++) {
+                b.ps.setLong(1, receivedAtMillis[i]);
+                b.ps.setString(2, icao24[i]);
+                b.ps.setLong(3, bucketStartMillis[i]);
+                b.ps.setLong(4, receivedAtMillis[i]);
+                addBatch(b);
+            }
+        });
+    }
+
+    /** icaoOverride が null なら各 DTO の icao24 を使う */
+    private void write(long bucketStart, Collection<RecvOutputDTO> dtos, String icaoOverride) {
+        int n = targetFields.size();
+        execute(upsertSql, dtos.size(), b -> {
+            for (var dto : dtos) {
+                bindCommon(b, icaoOverride != null ? icaoOverride : dto.getIcao24().orElseThrow(),
+                        bucketStart, dto.getReceivedAt().toEpochMilli(), dto);
+                for (int c = 0; c < n; c++) {
+                    bindDouble(b, 6 + c, c < dto.getTargetValueCount() ? dto.getTargetValue(c) : Double.NaN);
+                }
+                addBatch(b);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Binder { void bindAll(Batch b) throws SQLException; }
+
+    /** batchSize 件ごとに executeBatch する PreparedStatement の薄いラッパ */
+    private static final class Batch {
+        final PreparedStatement ps; final int limit; int pending;
+        Batch(PreparedStatement ps, int limit) { this.ps = ps; this.limit = limit; }
+    }
+
+    /** sql を rows 件分1トランザクションで流す。失敗したらロールバックして RuntimeException */
+    private void execute(String sql, int rows, Binder binder) {
+        long t0 = System.nanoTime();
+        try (Connection c = connections.open()) {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                var batch = new Batch(ps, batchSize);
+                binder.bindAll(batch);
+                if (batch.pending > 0) ps.executeBatch();
+                c.commit();
+                metrics.upserted(rows, System.nanoTime() - t0);
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            metrics.upsertFailed();
+            throw new RuntimeException("Failed to upsert " + rows + " rows into " + table, e);
+        } catch (RuntimeException e) {              // binder 内の失敗（ロールバック済み）も数える
+            metrics.upsertFailed();
+            throw e;
+        }
+    }
+
+    private static void bindCommon(Batch b, String icao, long bucketStart, long receivedAtMillis, RecvOutputDTO dto)
+            throws SQLException {
+        PreparedStatement ps = b.ps;
+        ps.setString(1, icao);
+        ps.setLong(2, bucketStart);
+        ps.setLong(3, receivedAtMillis);
+        String type = dto.getMessageType().orElse(null);
+        if (type == null) ps.setNull(4, Types.VARCHAR); else ps.setString(4, type);
+        ps.setString(5, dto.getRawJson());
+    }
+
+    private static void bindDouble(Batch b, int index, double v) throws SQLException {
+        if (Double.isNaN(v)) b.ps.setNull(index, Types.DOUBLE); else b.ps.setDouble(index, v);
+    }
+
+    private static void addBatch(Batch b) throws SQLException {
+        b.ps.addBatch();
+        if (++b.pending >= b.limit) { b.ps.executeBatch(); b.pending = 0; }
+    }
+
+    private static String upsertSql(Dialect dialect, String table, TargetFields fields) {
+        StringBuilder cols = new StringBuilder("icao24, bucket_start, received_at, message_type, raw_json");
+        StringBuilder params = new StringBuilder("?, ?, ?, ?, ?");
+        StringBuilder updates = new StringBuilder(" received_at = excluded.received_at,"
+                + " message_type = excluded.message_type,"
+                + " raw_json = excluded.raw_json");
+        for (String f : fields.names()) {
+            cols.append(", ").append(f);
+            params.append(", ?");
+            updates.append(", ").append(f).append(" = excluded.").append(f);
+        }
+        return switch (dialect) {
+            case H2 -> "MERGE INTO " + table + " (" + cols + ") KEY (icao24, bucket_start) VALUES (" + params + ")";
+            case POSTGRESQL, SQLITE -> "INSERT INTO " + table + " (" + cols + ") VALUES (" + params + ")"
+                    + " ON CONFLICT (icao24, bucket_start) DO UPDATE SET" + updates;
+        };
+    }
+}
@@ -8,4 +8,8 @@ public class StdOutWriter implements DatabaseWriter {
     @Override public void upsert(String icao24, long bucketStart, RecvOutputDTO dto) {
         System.out.println("UPSERT " + icao24 + " @ " + Instant.ofEpochMilli(bucketStart) + " | " + dto.getMessageType().orElse("?"));
     }
+
+    @Override public void touch(String icao24, long bucketStart, long receivedAtMillis) {
+        System.out.println("TOUCH  " + icao24 + " @ " + Instant.ofEpochMilli(bucketStart) + " | " + Instant.ofEpochMilli(receivedAtMillis));
+    }
 }
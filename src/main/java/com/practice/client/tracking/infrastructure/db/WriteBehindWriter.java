@@ -0,0 +1,250 @@
+package com.practice.client.tracking.infrastructure.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 非同期の書き込み段（write-behind）。upsertAll は窓のスナップショットを積むだけで戻り、
+ * 実際の書き込みは workers 本のレーンが delegate に対して行う。DB が遅くてもサンプラーの周期は崩れない。
+ * レーンは自分の分を専用の WindowSnapshot に詰めて delegate.upsertSnapshot へ渡す（列からのバインドはレーン側でも効く）。
+ * <p>
+ * ICAO24 のハッシュでレーンを固定するので、同じ機体の書き込み順は保たれる。
+ * 各レーンの未書き込みスナップショットは maxPending 個まで。溢れたときの扱いは OverflowPolicy で選ぶ。
+ */
+public class WriteBehindWriter implements DatabaseWriter, AutoCloseable {
+    public enum OverflowPolicy {
+        /** 空きが出るまでサンプラーを待たせる（取りこぼしなし） */
+        BLOCK,
+        /** 古いスナップショットの同一 ICAO 行を新しい方で置き換えて詰める（待たない。古い窓の行は欠ける） */
+        COALESCE
+    }
+
+    private final DatabaseWriter delegate;
+    private final OverflowPolicy policy;
+    private final int maxPending;
+    private final Lane[] lanes;
+    private final AtomicLong coalescedRows = new AtomicLong();
+    private final AtomicLong failedSnapshots = new AtomicLong();
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private volatile long lastWriteLagMillis;   // 直近に書き終えたスナップショットの 積まれてから完了まで
+    private volatile boolean closed;
+
+    public WriteBehindWriter(DatabaseWriter delegate, int workers, int maxPending, OverflowPolicy policy) {
+        if (workers < 1) throw new IllegalArgumentException("workers must be >= 1: " + workers);
+        if (maxPending < 1) throw new IllegalArgumentException("maxPending must be >= 1: " + maxPending);
+        this.delegate = delegate; this.policy = policy; this.maxPending = maxPending;
+        this.lanes = new Lane[workers];
+        for (int i = 0; i < workers; i++) {
+            lanes[i] = new Lane();
+            Thread t = new Thread(lanes[i]::runLoop, "db-writer-" + i);
+            t.setDaemon(true);
+            lanes[i].thread = t;
+            t.start();
+        }
+    }
+
+    @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+        enqueue(bucketStartMillis, List.of(dto), icao24);
+    }
+
+    @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+        enqueue(bucketStartMillis, dtos, null);
+    }
+
+    /** サンプラーの snapshot は使い回されるので、行をレーン別に取り出して積む（icao24 は snapshot の列を使う） */
+    @Override public void upsertSnapshot(WindowSnapshot snapshot) {
+        if (closed) throw new IllegalStateException("WriteBehindWriter is closed");
+        if (snapshot.isEmpty()) return;
+        long now = System.nanoTime();
+        Snapshot[] parts = new Snapshot[lanes.length];
+        for (int i = 0; i < snapshot.size(); i++) {
+            String icao = snapshot.icao24(i);
+            int lane = lanes.length == 1 ? 0 : Math.floorMod(icao.hashCode(), lanes.length);
+            if (parts[lane] == null) parts[lane] = new Snapshot(now);
+            parts[lane].rows.put(icao, new Row(snapshot.bucketStart(), snapshot.dto(i)));
+        }
+        offerAll(parts);
+    }
+
+    /** 渡されたコレクションは呼び出し側で再利用されるので、ここでレーン別にコピーしてから積む */
+    private void enqueue(long bucketStart, Collection<RecvOutputDTO> dtos, String icaoOverride) {
+        if (closed) throw new IllegalStateException("WriteBehindWriter is closed");
+        if (dtos.isEmpty()) return;
+        long now = System.nanoTime();
+        Snapshot[] parts = new Snapshot[lanes.length];
+        for (var dto : dtos) {
+            String icao = icaoOverride != null ? icaoOverride : dto.getIcao24().orElseThrow();
+            int lane = lanes.length == 1 ? 0 : Math.floorMod(icao.hashCode(), lanes.length);
+            if (parts[lane] == null) parts[lane] = new Snapshot(now);
+            parts[lane].rows.put(icao, new Row(bucketStart, dto));
+        }
+        offerAll(parts);
+    }
+
+    private void offerAll(Snapshot[] parts) {
+        try {
+            for (int i = 0; i < parts.length; i++) if (parts[i] != null) lanes[i].offer(parts[i]);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for write-behind capacity", e);
+        }
+    }
+
+    /** 最も古い未完了スナップショットの滞留時間（遅れの指標。0 なら追いついている） */
+    public long lagMillis() {
+        long now = System.nanoTime(), oldest = now;
+        for (Lane l : lanes) oldest = Math.min(oldest, l.oldestEnqueuedNanos());
+        return TimeUnit.NANOSECONDS.toMillis(now - oldest);
+    }
+    public long lastWriteLagMillis() { return lastWriteLagMillis; }
+    public int pendingSnapshots() { int n = 0; for (Lane l : lanes) n += l.pendingSnapshots(); return n; }
+    public int pendingRows() { int n = 0; for (Lane l : lanes) n += l.pendingRows(); return n; }
+    public long coalescedRows() { return coalescedRows.get(); }
+    public long failedSnapshots() { return failedSnapshots.get(); }
+
+    /** 新規受付を止め、積まれている分を書き切ってから戻る（最大 timeout 待つ） */
+    public void close(long timeout, TimeUnit unit) throws InterruptedException {
+        closed = true;
+        for (Lane l : lanes) l.wakeUp();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane l : lanes) l.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+    }
+
+    @Override public void close() {
+        try { close(30, TimeUnit.SECONDS); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    private record Row(long bucketStart, RecvOutputDTO dto) {}
+
+    private static final class Snapshot {
+        final long enqueuedNanos;
+        final LinkedHashMap<String, Row> rows = new LinkedHashMap<>();
+        Snapshot(long enqueuedNanos) { this.enqueuedNanos = enqueuedNanos; }
+    }
+
+    /** 1ワーカー分の待ち行列（ロック＋条件変数の有界キュー） */
+    private final class Lane {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final ArrayDeque<Snapshot> pending = new ArrayDeque<>();
+        private final WindowSnapshot window = new WindowSnapshot(256);   // このレーン専用（書き込みスレッドだけが触る）
+        private volatile long inFlightEnqueuedNanos = Long.MAX_VALUE;
+        private Thread thread;
+
+        void offer(Snapshot s) throws InterruptedException {
+            lock.lock();
+            try {
+                if (policy == OverflowPolicy.BLOCK) {
+                    while (pending.size() >= maxPending && !closed) notFull.await();
+                } else if (pending.size() >= maxPending) {
+                    coalesce(s);
+                }
+                pending.addLast(s);
+                notEmpty.signal();
+            } finally { lock.unlock(); }
+        }
+
+        /** 新しい方に含まれる ICAO の行を古い側から除き、なお満杯なら古い2つを1つにまとめる */
+        private void coalesce(Snapshot incoming) {
+            for (Iterator<Snapshot> it = pending.iterator(); it.hasNext();) {
+                Snapshot old = it.next();
+                int before = old.rows.size();
+                old.rows.keySet().removeAll(incoming.rows.keySet());
+                coalescedRows.addAndGet(before - old.rows.size());
+                if (old.rows.isEmpty()) it.remove();
+            }
+            while (pending.size() >= maxPending && pending.size() >= 2) {
+                Snapshot oldest = pending.pollFirst(), next = pending.pollFirst();
+                Snapshot merged = new Snapshot(oldest.enqueuedNanos);
+                merged.rows.putAll(oldest.rows);
+                int before = merged.rows.size() + next.rows.size();
+                merged.rows.putAll(next.rows);
+                coalescedRows.addAndGet(before - merged.rows.size());
+                pending.addFirst(merged);
+            }
+            if (pending.size() >= maxPending) {           // maxPending == 1：残る1つも新しい方へ吸収
+                Snapshot only = pending.pollFirst();
+                var rows = new LinkedHashMap<String, Row>(only.rows);
+                int before = rows.size() + incoming.rows.size();
+                rows.putAll(incoming.rows);
+                coalescedRows.addAndGet(before - rows.size());
+                incoming.rows.clear();
+                incoming.rows.putAll(rows);
+            }
+        }
+
+        void runLoop() {
+            while (true) {
+                Snapshot s;
+                lock.lock();
+                try {
+                    while (pending.isEmpty()) {
+                        if (closed) return;
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    s = pending.pollFirst();
+                    inFlightEnqueuedNanos = s.enqueuedNanos;
+                    notFull.signal();
+                } finally { lock.unlock(); }
+                try {
+                    write(s);
+                    lastWriteLagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - s.enqueuedNanos);
+                } catch (RuntimeException e) {
+                    failedSnapshots.incrementAndGet();
+                    metrics.writeBehindFailed();
+                    System.err.println("[WriteBehind] write failed (" + s.rows.size() + " rows): " + e.getMessage());
+                } finally {
+                    inFlightEnqueuedNanos = Long.MAX_VALUE;
+                }
+            }
+        }
+
+        /** バケットごとにレーンの WindowSnapshot へ詰めて delegate.upsertSnapshot */
+        private void write(Snapshot s) {
+            Map<Long, List<Map.Entry<String, Row>>> byBucket = new LinkedHashMap<>();
+            for (var e : s.rows.entrySet()) byBucket.computeIfAbsent(e.getValue().bucketStart(), k -> new ArrayList<>()).add(e);
+            try {
+                for (var bucket : byBucket.entrySet()) {
+                    window.clear(bucket.getKey());
+                    for (var e : bucket.getValue()) window.add(e.getKey(), e.getValue().dto());
+                    delegate.upsertSnapshot(window);
+                }
+            } finally {
+                window.clear(0);                             // DTO の参照を残さない
+            }
+        }
+
+        long oldestEnqueuedNanos() {
+            long oldest = inFlightEnqueuedNanos;
+            lock.lock();
+            try { Snapshot head = pending.peekFirst(); if (head != null) oldest = Math.min(oldest, head.enqueuedNanos); }
+            finally { lock.unlock(); }
+            return oldest;
+        }
+        int pendingSnapshots() { lock.lock(); try { return pending.size(); } finally { lock.unlock(); } }
+        int pendingRows() {
+            lock.lock();
+            try { int n = 0; for (Snapshot s : pending) n += s.rows.size(); return n; }
+            finally { lock.unlock(); }
+        }
+        void wakeUp() {
+            lock.lock();
+            try { notEmpty.signalAll(); notFull.signalAll(); } finally { lock.unlock(); }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+/**
+ * sendAsync + 自前 BodySubscriber による非ブロッキング受信。
+ * 購読ごとにスレッドを専有しないので、1プロセスで多数のストリームを持てる。
+ * HttpClient とパーサは購読間で共有する。
+ * idleTimeout の間データが来なければ購読を切り、done() を StreamStalledException で完了させる。
+ */
+public class AsyncTrackingStreamClient implements AutoCloseable {
+    /** 受け取り先。満杯なら false を返す（その間は受信を止めて背圧をかける） */
+    @FunctionalInterface
+    public interface Downstream {
+        boolean offer(RecvOutputDTO msg);
+    }
+
+    /** 1本の購読。done() はストリーム終了（サーバ切断・エラー・cancel）で完了する */
+    public static final class Subscription {
+        private final CompletableFuture<Void> done;
+        private volatile NdjsonBodySubscriber body;
+        private Subscription(CompletableFuture<Void> done) { this.done = done; }
+        public CompletableFuture<Void> done() { return done; }
+        public void cancel() {
+            var b = body;
+            if (b != null) b.cancel();
+            done.cancel(false);
+        }
+        private void abort(Throwable cause) {
+            done.completeExceptionally(cause);      // 切断で起きる下位の例外より先に理由を確定させる
+            var b = body;
+            if (b != null) b.cancel();
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final NdjsonLineParser parser;
+    private final RawLineFilter filter;
+    private final long idleTimeoutNanos;        // 0 なら監視しない
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread th = new Thread(r, "async-stream-retry");
+        th.setDaemon(true); return th;
+    });
+
+    public AsyncTrackingStreamClient() { this(NdjsonLineParser.Mode.STREAMING); }
+
+    public AsyncTrackingStreamClient(NdjsonLineParser.Mode parseMode) {
+        this(parseMode, TrackingStreamClient.DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public AsyncTrackingStreamClient(NdjsonLineParser.Mode parseMode, Duration idleTimeout) {
+        this(parseMode, idleTimeout, TargetFields.NONE);
+    }
+
+    /** target の数値項目 targetFields も受信時に取り出す */
+    public AsyncTrackingStreamClient(NdjsonLineParser.Mode parseMode, Duration idleTimeout, TargetFields targetFields) {
+        this(parseMode, idleTimeout, targetFields, RawLineFilter.ALL);
+    }
+
+    /** filter に通らない行は DTO にせず下流へも渡さない */
+    public AsyncTrackingStreamClient(NdjsonLineParser.Mode parseMode, Duration idleTimeout, TargetFields targetFields,
+                                     RawLineFilter filter) {
+        this.parser = new NdjsonLineParser(parseMode, targetFields);
+        this.filter = filter;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    public Subscription subscribe(RecvInputDTO dto, Downstream downstream) {
+        if (dto.getBearerToken() == null || dto.getBearerToken().isBlank()) {
+            throw new IllegalArgumentException("Bearer token is required");
+        }
+        HttpRequest req = HttpRequest.newBuilder(URI.create(TrackingStreamClient.buildUrl(dto)))
+                .header("Authorization", "Bearer " + dto.getBearerToken())
+                .GET().build();
+        var done = new CompletableFuture<Void>();
+        var sub = new Subscription(done);
+        client.sendAsync(req, info -> {
+                    if (info.statusCode() != 200) return HttpResponse.BodySubscribers.discarding();
+                    var body = new NdjsonBodySubscriber(parser, filter, downstream, scheduler);
+                    sub.body = body;
+                    return body;
+                })
+                .whenComplete((resp, err) -> {
+                    if (err != null) done.completeExceptionally(unwrap(err));
+                    else if (resp.statusCode() != 200) done.completeExceptionally(new StreamStatusException(resp.statusCode(), resp.headers()));
+                    else done.complete(null);
+                });
+        if (idleTimeoutNanos > 0) watch(sub);
+        return sub;
+    }
+
+    /** 応答ヘッダ待ちを含め、無通信が idleTimeout を超えたら購読を切る */
+    private void watch(Subscription sub) {
+        long startedAt = System.nanoTime();
+        long period = Math.max(idleTimeoutNanos / 4, TimeUnit.MILLISECONDS.toNanos(100));
+        ScheduledFuture<?> check = scheduler.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            var b = sub.body;
+            long idle = b != null ? b.idleNanos(now) : now - startedAt;
+            if (idle >= idleTimeoutNanos) sub.abort(new StreamStalledException(TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos)));
+        }, period, period, TimeUnit.NANOSECONDS);
+        sub.done.whenComplete((v, err) -> check.cancel(false));
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    @Override public void close() { scheduler.shutdownNow(); }
+}
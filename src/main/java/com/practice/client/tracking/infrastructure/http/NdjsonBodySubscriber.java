@@ -0,0 +1,119 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * 非同期受信の BodySubscriber。ByteBuffer のチャンクを NDJSON の行に切り、DTO にして下流へ渡す。
+ * 下流が満杯（offer が false）の間は次のチャンクを request しない＝TCP まで背圧が伝わる。
+ * 満杯時はスレッドを塞がず、少し待ってから scheduler 上で再送する。
+ */
+final class NdjsonBodySubscriber implements HttpResponse.BodySubscriber<Void> {
+    private static final long RETRY_MIN_MICROS = 200, RETRY_MAX_MICROS = 50_000;
+
+    private final NdjsonLineParser parser;
+    private final RawLineFilter filter;
+    private final AsyncTrackingStreamClient.Downstream downstream;
+    private final ScheduledExecutorService scheduler;
+    private final NdjsonLineFramer framer = new NdjsonLineFramer();
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private final CompletableFuture<Void> body = new CompletableFuture<>();
+
+    private Flow.Subscription subscription;
+    private RecvOutputDTO stalled;          // 下流に断られて保留中の1件
+    private boolean completed;              // onComplete 済み（残りを吐き切ったら終了）
+    private long retryMicros = RETRY_MIN_MICROS;
+    private long lastActivityNanos = System.nanoTime();
+
+    NdjsonBodySubscriber(NdjsonLineParser parser, RawLineFilter filter, AsyncTrackingStreamClient.Downstream downstream,
+                         ScheduledExecutorService scheduler) {
+        this.parser = parser; this.filter = filter; this.downstream = downstream; this.scheduler = scheduler;
+    }
+
+    @Override public CompletionStage<Void> getBody() { return body; }
+
+    @Override public synchronized void onSubscribe(Flow.Subscription s) {
+        this.subscription = s;
+        s.request(1);
+    }
+
+    @Override public synchronized void onNext(List<ByteBuffer> chunks) {
+        lastActivityNanos = System.nanoTime();
+        for (ByteBuffer c : chunks) framer.feed(c);
+        drain();
+    }
+
+    @Override public synchronized void onError(Throwable t) {
+        body.completeExceptionally(t);
+    }
+
+    /** 要求なしで来ることがある（保留中なら吐き切ってから完了する） */
+    @Override public synchronized void onComplete() {
+        completed = true;
+        framer.finish();
+        drain();
+    }
+
+    /** 受信を打ち切る（再接続やシャットダウン時） */
+    synchronized void cancel() {
+        if (subscription != null) subscription.cancel();
+        body.complete(null);
+    }
+
+    /** 最後にデータを受け取ってからの経過時間。下流待ちで受信を止めている間は 0（サーバ側の無通信ではない） */
+    synchronized long idleNanos(long nowNanos) {
+        if (stalled != null) { lastActivityNanos = nowNanos; return 0; }
+        return nowNanos - lastActivityNanos;
+    }
+
+    /** 行を下流へ流す。断られたら保留して再送を予約し、吐き切れたら次のチャンクを要求する */
+    private void drain() {
+        if (body.isDone()) return;
+        try {
+            if (stalled != null) {
+                if (!downstream.offer(stalled)) { scheduleRetry(); return; }
+                stalled = null;
+            }
+            while (framer.next()) {
+                metrics.lineReceived(framer.length());
+                if (!filter.test(framer.buffer(), framer.start(), framer.length())) { metrics.lineFiltered(); continue; }
+                RecvOutputDTO msg = toDto();
+                if (!downstream.offer(msg)) { stalled = msg; scheduleRetry(); return; }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (subscription != null) subscription.cancel();
+            body.completeExceptionally(e);
+            return;
+        }
+        retryMicros = RETRY_MIN_MICROS;
+        if (completed) body.complete(null);
+        else subscription.request(1);
+    }
+
+    private RecvOutputDTO toDto() {
+        byte[] buf = framer.buffer();
+        int off = framer.start(), len = framer.length();
+        var b = new RecvOutputDTO.Builder().rawJson(buf, off, len).receivedAt(Instant.now());
+        parser.parse(buf, off, len, b);
+        return b.build();
+    }
+
+    private void scheduleRetry() {
+        long delay = retryMicros;
+        retryMicros = Math.min(retryMicros * 2, RETRY_MAX_MICROS);
+        scheduler.schedule(this::retry, delay, TimeUnit.MICROSECONDS);
+    }
+
+    private synchronized void retry() { drain(); }
+}
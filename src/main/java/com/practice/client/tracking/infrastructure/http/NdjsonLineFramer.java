@@ -0,0 +1,107 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * InputStream を生バイトのまま改行で区切る（BufferedReader#readLine の置き換え）。
+ * バッファは使い回し、1行は buffer()[start(), start()+length()) のスライスとして渡す。
+ * スライスは次の next() / feed() 呼び出しまでしか有効でない。
+ * <p>
+ * 引数なしで作ると push 型になり、feed() で渡したチャンクから完成した行だけを next() で返す
+ * （非同期受信の BodySubscriber 用。終端は finish() で知らせる）。
+ */
+public final class NdjsonLineFramer implements Closeable {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final InputStream in;         // push 型では null
+    private byte[] buf;
+    private int lineStart, scan, limit;   // [lineStart, limit) が未処理、scan は改行探索の再開位置
+    private int start, length;            // 直近に返した行
+    private boolean skipLf;               // 直前の行が '\r' で終わった（続く '\n' を捨てる）
+    private boolean eof;
+
+    public NdjsonLineFramer(InputStream in) { this(in, DEFAULT_CAPACITY); }
+
+    /** push 型 */
+    public NdjsonLineFramer() { this(null, DEFAULT_CAPACITY); }
+
+    public NdjsonLineFramer(InputStream in, int initialCapacity) {
+        this.in = in;
+        this.buf = new byte[Math.max(initialCapacity, 256)];
+    }
+
+    /**
+     * 次の1行へ進む。終端（'\n' / '\r' / "\r\n"）は含まない。ストリーム終了なら false。
+     * push 型では完成した行が無ければ false（続きは feed() 後に再度呼ぶ）。
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (skipLf && lineStart < limit) {
+                if (buf[lineStart] == '\n') lineStart++;
+                scan = Math.max(scan, lineStart);
+                skipLf = false;
+            }
+            for (int i = scan; i < limit; i++) {
+                byte c = buf[i];
+                if (c == '\n' || c == '\r') {
+                    start = lineStart; length = i - lineStart;
+                    lineStart = scan = i + 1;
+                    skipLf = c == '\r';
+                    return true;
+                }
+            }
+            scan = limit;
+            if (eof || in == null || !fill()) {
+                if (eof && lineStart < limit) {    // 改行なしで終わった最終行
+                    start = lineStart; length = limit - lineStart;
+                    lineStart = scan = limit;
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    /** push 型：受信チャンクを末尾に追加する（chunk は読み切られる） */
+    public void feed(ByteBuffer chunk) {
+        compact();
+        int n = chunk.remaining();
+        if (limit + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, limit + n));
+        chunk.get(buf, limit, n);
+        limit += n;
+    }
+
+    /** push 型：これ以上データが来ないことを知らせる（改行なしの最終行を next() で返せるようになる） */
+    public void finish() { eof = true; }
+
+    /** 未処理（まだ行として返していない）バイト数 */
+    public int buffered() { return limit - lineStart; }
+
+    public byte[] buffer() { return buf; }
+    public int start() { return start; }
+    public int length() { return length; }
+
+    /** 未処理部分を先頭へ詰め、足りなければ拡張してから読み足す */
+    private boolean fill() throws IOException {
+        compact();
+        if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) { eof = true; return false; }
+        limit += n;
+        return true;
+    }
+
+    private void compact() {
+        if (lineStart > 0) {
+            int remaining = limit - lineStart;
+            System.arraycopy(buf, lineStart, buf, 0, remaining);
+            scan -= lineStart; limit = remaining; lineStart = 0;
+        }
+    }
+
+    @Override public void close() throws IOException { if (in != null) in.close(); }
+}
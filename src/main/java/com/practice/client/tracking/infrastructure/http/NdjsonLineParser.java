@@ -0,0 +1,205 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.MessageType;
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * NDJSON 1行から種別・position_token・ICAO24（と設定した target の数値項目）だけを取り出して Builder（または Fields）に詰める。
+ * TREE は従来どおり readTree、STREAMING は JsonParser で必要なキー以外を読み飛ばす（結果は同一）。
+ */
+public final class NdjsonLineParser {
+    public enum Mode { TREE, STREAMING }
+
+    /**
+     * 解析結果の入れ物。DTO を作らずにキューへ積む経路（CompactMessageQueue）で使い回す。
+     * ICAO24 は符号化できれば icaoCode、できなければ icaoText に入る。
+     */
+    public static final class Fields {
+        private MessageType type = MessageType.UNKNOWN;
+        private String positionToken;
+        private int icaoCode = Icao24.NONE;
+        private String icaoText;
+        private double[] values = new double[0];   // TargetFields の並び順。target 以外・欠損は NaN
+
+        public MessageType type() { return type; }
+        public String positionToken() { return positionToken; }
+        public int icaoCode() { return icaoCode; }
+        /** icaoCode が NONE のときの ICAO24 文字列（ICAO24 なしなら null） */
+        public String icaoText() { return icaoText; }
+        /** ICAO24 の文字列（符号化済みなら復元する。なしなら null） */
+        public String icao24() { return icaoCode != Icao24.NONE ? Icao24.decode(icaoCode) : icaoText; }
+        /** 取り出した数値項目の数（パーサの TargetFields#size） */
+        public int valueCount() { return values.length; }
+        /** i 番目の数値項目（無い・数値でなければ NaN） */
+        public double value(int i) { return values[i]; }
+
+        public void clear() {
+            type = MessageType.UNKNOWN; positionToken = null; icaoCode = Icao24.NONE; icaoText = null;
+            Arrays.fill(values, Double.NaN);
+        }
+
+        private void resize(int n) { if (values.length != n) { values = new double[n]; Arrays.fill(values, Double.NaN); } }
+
+        private void icao(String icao) {
+            if (icao == null) return;
+            icaoCode = Icao24.encode(icao);
+            icaoText = icaoCode == Icao24.NONE ? icao : null;
+        }
+    }
+
+    private static final ObjectMapper M = new ObjectMapper();
+    private static final JsonFactory F = M.getFactory();
+
+    private final Mode mode;
+    private final TargetFields targetFields;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    public NdjsonLineParser(Mode mode) { this(mode, TargetFields.NONE); }
+
+    /** target 直下の数値項目 targetFields も受信時に1度だけ取り出す（後段で JSON を読み直さない） */
+    public NdjsonLineParser(Mode mode, TargetFields targetFields) { this.mode = mode; this.targetFields = targetFields; }
+
+    public Mode mode() { return mode; }
+    public TargetFields targetFields() { return targetFields; }
+
+    /** 解析できない行は Builder を変更せずに返す（従来の catch-ignore と同じ挙動。件数だけ数える） */
+    public void parse(String line, RecvOutputDTO.Builder b) {
+        var f = new Fields();
+        f.resize(targetFields.size());
+        try {
+            if (mode == Mode.TREE) applyTree(M.readTree(line), f);
+            else try (JsonParser p = F.createParser(line)) { applyStreaming(p, f); }
+        } catch (Exception e) { metrics.parseFailed(); return; }
+        apply(f, b);
+    }
+
+    /** UTF-8 のバイトスライスを直接解析する（String を経由しない） */
+    public void parse(byte[] buf, int off, int len, RecvOutputDTO.Builder b) {
+        var f = new Fields();
+        if (parse(buf, off, len, f)) apply(f, b);
+    }
+
+    /** Fields 版。f は最初に clear される。解析できなければ false（f は UNKNOWN のまま） */
+    public boolean parse(byte[] buf, int off, int len, Fields f) {
+        f.resize(targetFields.size());
+        f.clear();
+        try {
+            if (mode == Mode.TREE) applyTree(M.readTree(buf, off, len), f);
+            else try (JsonParser p = F.createParser(buf, off, len)) { applyStreaming(p, f); }
+            return true;
+        } catch (Exception e) {
+            f.clear();
+            metrics.parseFailed();
+            return false;
+        }
+    }
+
+    private static void apply(Fields f, RecvOutputDTO.Builder b) {
+        switch (f.type) {
+            case POSITION_TOKEN -> b.messageType(MessageType.POSITION_TOKEN).positionToken(f.positionToken);
+            case TARGET -> {
+                b.messageType(MessageType.TARGET);
+                String icao = f.icao24();
+                if (icao != null) b.icao24(icao);
+                if (f.values.length > 0) b.targetValues(f.values);
+            }
+            case STATUS -> b.messageType(MessageType.STATUS);
+            default -> {}
+        }
+    }
+
+    private void applyTree(JsonNode n, Fields f) {
+        if (n == null) return;
+        if (n.has("position_token")) {
+            f.type = MessageType.POSITION_TOKEN;
+            f.positionToken = n.get("position_token").asText();
+        } else if (n.has("target")) {
+            f.type = MessageType.TARGET;
+            JsonNode t = n.get("target");
+            f.icao(firstNonBlank(
+                    textOrNull(t, "icao_address"),
+                    textOrNull(t, "hex"),
+                    textOrNull(t, "icao24")));
+            if (t != null && t.isObject()) {
+                for (int i = 0; i < f.values.length; i++) {
+                    JsonNode v = t.get(targetFields.name(i));
+                    if (v != null && v.isNumber()) f.values[i] = v.asDouble();
+                }
+            }
+        } else if (n.has("status")) {
+            f.type = MessageType.STATUS;
+        }
+    }
+
+    /**
+     * 先頭オブジェクトのトップレベルキーだけを見る。値は途中で Fields に書かず、
+     * オブジェクトを最後まで読み切れた場合のみ反映する（壊れた行で一部だけ埋まるのを防ぐ）。
+     * 数値項目だけは読みながら f に書くが、解析に失敗すれば parse が f ごと消す。
+     */
+    private void applyStreaming(JsonParser p, Fields f) throws Exception {
+        if (p.nextToken() != JsonToken.START_OBJECT) return;
+        boolean hasToken = false, hasTarget = false, hasStatus = false;
+        String token = null, icaoAddress = null, hex = null, icao24 = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken v = p.nextToken();
+            switch (name) {
+                case "position_token" -> { hasToken = true; token = asText(p, v); }
+                case "status" -> { hasStatus = true; p.skipChildren(); }
+                case "target" -> {
+                    hasTarget = true;
+                    icaoAddress = hex = icao24 = null;
+                    Arrays.fill(f.values, Double.NaN);           // 重複キーは後勝ち（readTree と同じ）
+                    if (v != JsonToken.START_OBJECT) { p.skipChildren(); break; }
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String k = p.currentName();
+                        JsonToken tv = p.nextToken();
+                        switch (k) {
+                            case "icao_address" -> icaoAddress = asText(p, tv);
+                            case "hex" -> hex = asText(p, tv);
+                            case "icao24" -> icao24 = asText(p, tv);
+                            default -> {
+                                int i = f.values.length == 0 ? -1 : targetFields.indexOf(k);
+                                if (i >= 0) f.values[i] = tv.isNumeric() ? p.getDoubleValue() : Double.NaN;
+                                p.skipChildren();
+                            }
+                        }
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+        if (hasToken || !hasTarget) Arrays.fill(f.values, Double.NaN);
+        if (hasToken) {
+            f.type = MessageType.POSITION_TOKEN;
+            f.positionToken = token;
+        } else if (hasTarget) {
+            f.type = MessageType.TARGET;
+            f.icao(firstNonBlank(icaoAddress, hex, icao24));
+        } else if (hasStatus) {
+            f.type = MessageType.STATUS;
+        }
+    }
+
+    /** JsonNode#asText と同じ文字列化（コンテナは空文字、null は "null"） */
+    private static String asText(JsonParser p, JsonToken v) throws Exception {
+        return switch (v) {
+            case START_OBJECT, START_ARRAY -> { p.skipChildren(); yield ""; }
+            case VALUE_NUMBER_FLOAT -> String.valueOf(p.getDoubleValue());
+            default -> p.getText();
+        };
+    }
+
+    private static String textOrNull(JsonNode n, String k) { return n != null && n.has(k) ? n.get(k).asText() : null; }
+    private static String firstNonBlank(String... xs) { for (var x : xs) if (x != null && !x.isBlank()) return x; return null; }
+}
@@ -0,0 +1,186 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.practice.client.tracking.domain.MessageType;
+
+/**
+ * 行切り直後に、JSON を解析せず生のバイト列だけを見て要らない行を落とす前段フィルタ（不変・スレッドセーフ）。
+ * 種別・ICAO24 の接頭辞・高度の範囲・緯度経度の矩形で絞る。落とした行は DTO もキューの領域も使わない。
+ * <p>
+ * position_token の行は再開に要るので常に通す。キーは行の中から引用符付きの名前で探す（入れ子のキーも拾う）ので、
+ * 判定は NdjsonLineParser より粗い（種別の判定順は同じ。position_token の取りこぼしは無い）。
+ * 高度・矩形を指定した場合、その値が無い・数値でない target は落とす。
+ */
+public final class RawLineFilter {
+    /** 何も落とさない */
+    public static final RawLineFilter ALL = new Builder().build();
+
+    private static final byte[] POSITION_TOKEN = key("position_token"), TARGET = key("target"), STATUS = key("status");
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private static final byte[][] ICAO_KEYS = {key("icao_address"), key("hex"), key("icao24")};  // 解析と同じ優先順
+
+    private final Set<MessageType> types;          // 空なら種別で絞らない
+    private final byte[][] icaoPrefixes;           // 小文字。空なら絞らない
+    private final byte[] altitudeKey;
+    private final double altitudeMin, altitudeMax;
+    private final byte[] latitudeKey, longitudeKey;
+    private final double minLat, minLon, maxLat, maxLon;
+    private final boolean passAll, targetChecks;
+
+    private RawLineFilter(Builder b) {
+        this.types = b.types.isEmpty() ? Set.of() : EnumSet.copyOf(b.types);
+        this.icaoPrefixes = b.icaoPrefixes.stream().map(p -> p.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII))
+                .toArray(byte[][]::new);
+        this.altitudeKey = b.altitudeField == null ? null : key(b.altitudeField);
+        this.altitudeMin = b.altitudeMin; this.altitudeMax = b.altitudeMax;
+        this.latitudeKey = b.bbox ? key(b.latitudeField) : null;
+        this.longitudeKey = b.bbox ? key(b.longitudeField) : null;
+        this.minLat = b.minLat; this.minLon = b.minLon; this.maxLat = b.maxLat; this.maxLon = b.maxLon;
+        this.targetChecks = icaoPrefixes.length > 0 || altitudeKey != null || latitudeKey != null;
+        this.passAll = types.isEmpty() && !targetChecks;
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    /** 条件が無い（test が常に true） */
+    public boolean isPassAll() { return passAll; }
+
+    /** buf[off, off+len) の1行を通すなら true */
+    public boolean test(byte[] buf, int off, int len) {
+        if (passAll) return true;
+        int end = off + len;
+        if (valueAt(buf, off, end, POSITION_TOKEN) >= 0) return true;
+        MessageType type = valueAt(buf, off, end, TARGET) >= 0 ? MessageType.TARGET
+                : valueAt(buf, off, end, STATUS) >= 0 ? MessageType.STATUS : MessageType.UNKNOWN;
+        if (!types.isEmpty() && !types.contains(type)) return false;
+        if (type != MessageType.TARGET || !targetChecks) return true;
+
+        if (icaoPrefixes.length > 0 && !icaoMatches(buf, off, end)) return false;
+        if (altitudeKey != null) {
+            double alt = number(buf, off, end, altitudeKey);
+            if (!(alt >= altitudeMin && alt <= altitudeMax)) return false;     // NaN も落とす
+        }
+        if (latitudeKey != null) {
+            double lat = number(buf, off, end, latitudeKey);
+            if (!(lat >= minLat && lat <= maxLat)) return false;
+            double lon = number(buf, off, end, longitudeKey);
+            if (!(minLon <= maxLon ? lon >= minLon && lon <= maxLon : lon >= minLon || lon <= maxLon)) return false;
+        }
+        return true;
+    }
+
+    /** 最初に見つかった空でない ICAO24 の文字列が、いずれかの接頭辞で始まるか（大文字小文字は区別しない） */
+    private boolean icaoMatches(byte[] buf, int off, int end) {
+        for (byte[] k : ICAO_KEYS) {
+            int v = valueAt(buf, off, end, k);
+            if (v < 0 || buf[v] != '"' || v + 1 < end && buf[v + 1] == '"') continue;
+            for (byte[] p : icaoPrefixes) if (startsWithIgnoreCase(buf, v + 1, end, p)) return true;
+            return false;
+        }
+        return false;
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] buf, int from, int end, byte[] lowerPrefix) {
+        if (end - from < lowerPrefix.length) return false;
+        for (int i = 0; i < lowerPrefix.length; i++) {
+            byte c = buf[from + i];
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            if (c != lowerPrefix[i]) return false;
+        }
+        return true;
+    }
+
+    /** "key" の後ろの空白・コロン・空白を飛ばした値の先頭位置。キーとして現れなければ -1 */
+    static int valueAt(byte[] buf, int off, int end, byte[] quotedKey) {
+        for (int i = indexOf(buf, off, end, quotedKey); i >= 0; i = indexOf(buf, i + 1, end, quotedKey)) {
+            int j = skipSpace(buf, i + quotedKey.length, end);
+            if (j < end && buf[j] == ':') {
+                j = skipSpace(buf, j + 1, end);
+                return j < end ? j : -1;
+            }
+        }
+        return -1;
+    }
+
+    /** キーの値を数値として読む（無い・数値でなければ NaN）。指数表記は Double.parseDouble に任せる */
+    static double number(byte[] buf, int off, int end, byte[] quotedKey) {
+        int i = valueAt(buf, off, end, quotedKey);
+        if (i < 0) return Double.NaN;
+        int start = i;
+        boolean neg = false;
+        if (buf[i] == '-') { neg = true; i++; }
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++, digits++) mantissa = mantissa * 10 + (buf[i] - '0');
+        if (i < end && buf[i] == '.') {
+            for (i++; i < end && buf[i] >= '0' && buf[i] <= '9'; i++, digits++, scale++) mantissa = mantissa * 10 + (buf[i] - '0');
+        }
+        if (digits == 0) return Double.NaN;
+        if (digits > 15 || i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            while (i < end && (buf[i] == 'e' || buf[i] == 'E' || buf[i] == '+' || buf[i] == '-' || buf[i] >= '0' && buf[i] <= '9')) i++;
+            try { return Double.parseDouble(new String(buf, start, i - start, StandardCharsets.US_ASCII)); }
+            catch (NumberFormatException e) { return Double.NaN; }
+        }
+        double v = scale == 0 ? mantissa : mantissa / POW10[scale];          // 15桁以内なら parseDouble と同じ値
+        return neg ? -v : v;
+    }
+
+    private static int indexOf(byte[] buf, int from, int end, byte[] pattern) {
+        byte first = pattern[0];
+        for (int i = from, last = end - pattern.length; i <= last; i++) {
+            if (buf[i] != first) continue;
+            int k = 1;
+            while (k < pattern.length && buf[i + k] == pattern[k]) k++;
+            if (k == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    private static int skipSpace(byte[] buf, int i, int end) {
+        while (i < end && (buf[i] == ' ' || buf[i] == '\t' || buf[i] == '\r' || buf[i] == '\n')) i++;
+        return i;
+    }
+
+    private static byte[] key(String name) { return ("\"" + name + "\"").getBytes(StandardCharsets.UTF_8); }
+
+    public static class Builder {
+        private final Set<MessageType> types = EnumSet.noneOf(MessageType.class);
+        private final List<String> icaoPrefixes = new ArrayList<>();
+        private String altitudeField;
+        private double altitudeMin, altitudeMax;
+        private boolean bbox;
+        private String latitudeField = "latitude", longitudeField = "longitude";
+        private double minLat, minLon, maxLat, maxLon;
+
+        /** 通す種別（position_token は指定しなくても通る） */
+        public Builder types(Collection<MessageType> v) { types.addAll(v); return this; }
+        /** target の ICAO24 がいずれかで始まるものだけ通す（16進。大文字小文字は区別しない） */
+        public Builder icaoPrefixes(Collection<String> v) {
+            for (String p : v) if (!p.isBlank()) icaoPrefixes.add(p.trim());
+            return this;
+        }
+        /** target の field（例：altitude_baro）が [min, max] のものだけ通す */
+        public Builder altitude(String field, double min, double max) {
+            if (min > max) throw new IllegalArgumentException("altitude min > max: " + min + " > " + max);
+            this.altitudeField = field; this.altitudeMin = min; this.altitudeMax = max; return this;
+        }
+        /** latitude/longitude が矩形内のものだけ通す（minLon > maxLon なら日付変更線をまたぐ矩形） */
+        public Builder boundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+            if (minLat > maxLat) throw new IllegalArgumentException("bbox minLat > maxLat: " + minLat + " > " + maxLat);
+            this.bbox = true;
+            this.minLat = minLat; this.minLon = minLon; this.maxLat = maxLat; this.maxLon = maxLon; return this;
+        }
+        /** 矩形判定に使う項目名（既定は latitude / longitude） */
+        public Builder positionFields(String latitude, String longitude) {
+            this.latitudeField = latitude; this.longitudeField = longitude; return this;
+        }
+        public RawLineFilter build() { return new RawLineFilter(this); }
+    }
+}
@@ -0,0 +1,10 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.io.IOException;
+
+/** 接続は生きているのに一定時間データが来なかったため、ウォッチドッグが接続を切った */
+public class StreamStalledException extends IOException {
+    public StreamStalledException(long idleMillis) {
+        super("Stream stalled: no data for " + idleMillis + " ms");
+    }
+}
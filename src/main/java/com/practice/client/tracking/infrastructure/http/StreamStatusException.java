@@ -0,0 +1,31 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.Optional;
+
+/** 接続時に 200 以外が返った。再試行の可否はステータスで判断する */
+public class StreamStatusException extends IOException {
+    private final int statusCode;
+    private final Duration retryAfter;      // Retry-After（秒指定のみ対応）。無ければ null
+
+    public StreamStatusException(int statusCode, HttpHeaders headers) {
+        super("Non-OK status: " + statusCode);
+        this.statusCode = statusCode;
+        this.retryAfter = headers.firstValue("Retry-After").flatMap(StreamStatusException::parseSeconds).orElse(null);
+    }
+
+    public int getStatusCode() { return statusCode; }
+    public Optional<Duration> getRetryAfter() { return Optional.ofNullable(retryAfter); }
+
+    /** 429・408・5xx は時間をおけば回復し得る。それ以外（認証・URL誤り等）はリトライしても無駄 */
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode == 408 || (statusCode >= 500 && statusCode <= 599);
+    }
+
+    private static Optional<Duration> parseSeconds(String v) {
+        try { return Optional.of(Duration.ofSeconds(Long.parseLong(v.trim()))); }
+        catch (NumberFormatException e) { return Optional.empty(); }
+    }
+}
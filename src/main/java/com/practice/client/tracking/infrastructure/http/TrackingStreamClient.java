@@ -1,9 +1,7 @@
 package com.practice.client.tracking.infrastructure.http;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -12,19 +10,63 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practice.client.tracking.domain.TargetFields;
 import com.practice.client.tracking.domain.dto.RecvInputDTO;
 import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
 
 public class TrackingStreamClient {
+    /** 無通信とみなすまでの既定時間（サーバは通常これより短い間隔で status 等を送ってくる） */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+    /** 全クライアント共通の無通信監視スレッド */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread th = new Thread(r, "stream-watchdog");
+        th.setDaemon(true); return th;
+    });
+
     private final HttpClient client = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(10))
             .build();
-    private BufferedReader currentReader;
+    private volatile NdjsonLineFramer currentReader;
     private RecvInputDTO currentCtx;
-    private static final ObjectMapper M = new ObjectMapper();
+    private final NdjsonLineParser parser;
+    private final RawLineFilter filter;
+    private final NdjsonLineParser.Fields scratch = new NdjsonLineParser.Fields();   // receiveInto 用
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private final long idleTimeoutNanos;           // 0 なら監視しない
+    private volatile long lastActivityNanos;
+    private volatile boolean stalled;              // ウォッチドッグが切った
+    private ScheduledFuture<?> watch;
+
+    public TrackingStreamClient() { this(NdjsonLineParser.Mode.STREAMING); }
+
+    /** 比較・切り戻し用に readTree 方式（TREE）も選べる */
+    public TrackingStreamClient(NdjsonLineParser.Mode parseMode) { this(parseMode, DEFAULT_IDLE_TIMEOUT); }
+
+    /** idleTimeout の間1行も届かなければ接続を切り、receive を StreamStalledException で返す（ZERO で無効） */
+    public TrackingStreamClient(NdjsonLineParser.Mode parseMode, Duration idleTimeout) {
+        this(parseMode, idleTimeout, TargetFields.NONE);
+    }
+
+    /** target の数値項目 targetFields も受信時に取り出す（DTO の getTargetValue / Fields#value で読める） */
+    public TrackingStreamClient(NdjsonLineParser.Mode parseMode, Duration idleTimeout, TargetFields targetFields) {
+        this(parseMode, idleTimeout, targetFields, RawLineFilter.ALL);
+    }
+
+    /** filter に通らない行は解析せずに読み飛ばす（receive / receiveInto は通った行だけを返す） */
+    public TrackingStreamClient(NdjsonLineParser.Mode parseMode, Duration idleTimeout, TargetFields targetFields,
+                                RawLineFilter filter) {
+        this.parser = new NdjsonLineParser(parseMode, targetFields);
+        this.filter = filter;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
 
     /** 認証：変更なし（トークン存在チェック等のフック） */
     public void authenticate(RecvInputDTO dto) {
@@ -33,34 +75,71 @@ public class TrackingStreamClient {
         }
     }
 
-    /** ご指定のシグネチャ：1行読み→RecvOutputDTO */
+    /** 1行分の受信結果を DTO を作らずに受け取る（buf のスライスは accept から戻るまでしか有効でない） */
+    @FunctionalInterface
+    public interface LineConsumer {
+        void accept(byte[] buf, int off, int len, long receivedAtEpochNanos, NdjsonLineParser.Fields fields);
+    }
+
+    /** ご指定のシグネチャ：1行読み→RecvOutputDTO。読めなければ接続を捨て、次回呼び出しで張り直す */
     public RecvOutputDTO receive(RecvInputDTO dto) throws IOException, InterruptedException {
+        NdjsonLineFramer reader = nextLine(dto);
+        // 行は再利用バッファ上のスライス。String 化は rawJson を参照した時点まで遅らせる
+        byte[] buf = reader.buffer();
+        int off = reader.start(), len = reader.length();
+        var b = new RecvOutputDTO.Builder().rawJson(buf, off, len).receivedAt(Instant.now());
+        parser.parse(buf, off, len, b);
+        return b.build();
+    }
+
+    /**
+     * receive の DTO を作らない版。解析結果は使い回しの Fields に入れて consumer に渡す。
+     * 受信1行あたりの割り当ては JSON 解析の分だけになる（受信スレッド専用。並行呼び出し不可）。
+     */
+    public void receiveInto(RecvInputDTO dto, LineConsumer consumer) throws IOException, InterruptedException {
+        NdjsonLineFramer reader = nextLine(dto);
+        byte[] buf = reader.buffer();
+        int off = reader.start(), len = reader.length();
+        parser.parse(buf, off, len, scratch);
+        consumer.accept(buf, off, len, epochNanos(), scratch);
+    }
+
+    private NdjsonLineFramer nextLine(RecvInputDTO dto) throws IOException, InterruptedException {
         ensureOpen(dto);
-        String line = currentReader.readLine();
-        if (line == null) throw new IOException("Stream closed by server");
-
-        var b = new RecvOutputDTO.Builder().rawJson(line).receivedAt(Instant.now());
-        try {
-            JsonNode n = M.readTree(line);
-            if (n.has("position_token")) {
-                b.messageType("position_token").positionToken(n.get("position_token").asText());
-            } else if (n.has("target")) {
-                b.messageType("target");
-                JsonNode t = n.get("target");
-                String icao = firstNonBlank(
-                        textOrNull(t, "icao_address"),
-                        textOrNull(t, "hex"),
-                        textOrNull(t, "icao24"));
-                if (icao != null) b.icao24(icao);
-            } else if (n.has("status")) {
-                b.messageType("status");
+        NdjsonLineFramer reader = currentReader;
+        while (true) {
+            boolean got;
+            try {
+                got = reader != null && reader.next();
+            } catch (IOException e) {
+                throw disconnect(e);
             }
-        } catch (Exception ignore) {}
-        return b.build();
+            if (!got) throw disconnect(new IOException("Stream closed by server"));
+            lastActivityNanos = System.nanoTime();
+            metrics.lineReceived(reader.length());
+            if (filter.test(reader.buffer(), reader.start(), reader.length())) return reader;
+            metrics.lineFiltered();                    // 落とした行も受信としては数える（無通信監視も更新済み）
+        }
+    }
+
+    private static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    /** 切断理由を確定して接続を閉じる（ウォッチドッグが切った場合は無通信として返す） */
+    private IOException disconnect(IOException cause) {
+        boolean wasStalled = stalled;
+        closeQuietly();
+        return wasStalled ? new StreamStalledException(TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos)) : cause;
     }
 
+    /**
+     * 購読条件（URL・認証・追加クエリ）が変わったときだけ張り直す。
+     * position_token の更新では張り直さない（再接続時に最新トークンから再開する）。
+     */
     private void ensureOpen(RecvInputDTO dto) throws IOException, InterruptedException {
-        if (currentReader != null && dto.equals(currentCtx)) return;
+        if (currentReader != null && sameSubscription(dto, currentCtx)) return;
         closeQuietly();
 
         String url = buildUrl(dto);
@@ -69,13 +148,34 @@ public class TrackingStreamClient {
                 .GET().build();
         HttpResponse<InputStream> resp = client.send(req, HttpResponse.BodyHandlers.ofInputStream());
         if (resp.statusCode() != 200) {
-            throw new IOException("Non-OK status: " + resp.statusCode());
+            try { resp.body().close(); } catch (IOException ignore) {}
+            throw new StreamStatusException(resp.statusCode(), resp.headers());
         }
-        currentReader = new BufferedReader(new InputStreamReader(resp.body(), StandardCharsets.UTF_8));
+        lastActivityNanos = System.nanoTime();
+        stalled = false;
+        currentReader = new NdjsonLineFramer(resp.body());
         currentCtx = dto;
+        if (idleTimeoutNanos > 0) {
+            long period = Math.max(idleTimeoutNanos / 4, TimeUnit.MILLISECONDS.toNanos(100));
+            watch = WATCHDOG.scheduleWithFixedDelay(this::checkIdle, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** 無通信が続いたら読み込み中のストリームを閉じ、ブロック中の read を解く */
+    private void checkIdle() {
+        NdjsonLineFramer reader = currentReader;
+        if (reader == null || stalled || System.nanoTime() - lastActivityNanos < idleTimeoutNanos) return;
+        stalled = true;
+        try { reader.close(); } catch (Exception ignore) {}
+    }
+
+    private static boolean sameSubscription(RecvInputDTO a, RecvInputDTO b) {
+        return b != null && a.getStreamUrl().equals(b.getStreamUrl())
+                && a.getBearerToken().equals(b.getBearerToken())
+                && Objects.equals(a.getExtraParams(), b.getExtraParams());
     }
 
-    private static String buildUrl(RecvInputDTO dto) {
+    static String buildUrl(RecvInputDTO dto) {
         StringBuilder sb = new StringBuilder(dto.getStreamUrl());
         char sep = dto.getStreamUrl().contains("?") ? '&' : '?';
         for (var e : dto.getExtraParams().entrySet()) {
@@ -87,11 +187,10 @@ public class TrackingStreamClient {
         return sb.toString();
     }
     private static String enc(String s) { return URLEncoder.encode(s, StandardCharsets.UTF_8); }
-    private static String textOrNull(JsonNode n, String k) { return n != null && n.has(k) ? n.get(k).asText() : null; }
-    private static String firstNonBlank(String... xs) { for (var x : xs) if (x != null && !x.isBlank()) return x; return null; }
 
     public void closeQuietly() {
+        if (watch != null) { watch.cancel(false); watch = null; }
         try { if (currentReader != null) currentReader.close(); } catch (Exception ignore) {}
-        currentReader = null; currentCtx = null;
+        currentReader = null; currentCtx = null; stalled = false;
     }
-}
\ No newline at end of file
+}
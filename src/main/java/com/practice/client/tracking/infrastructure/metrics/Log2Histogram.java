@@ -0,0 +1,52 @@
+package com.practice.client.tracking.infrastructure.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 2の冪で区切ったロックフリーのヒストグラム。バケット i は [2^(i-1), 2^i) を数える（0 はバケット0）。
+ * record はカウンタの加算だけなので受信・書き込みのホットパスから呼んでよい。
+ * 分位点は該当バケットの上限で返す近似（誤差は最大2倍）。
+ */
+public final class Log2Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucket(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long count() { return count.sum(); }
+    public long max() { return max.get(); }
+    public double mean() { long n = count.sum(); return n == 0 ? 0 : (double) sum.sum() / n; }
+
+    /** q（0〜1）分位点の近似値。記録なしなら 0 */
+    public long percentile(double q) {
+        long[] snap = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < snap.length; i++) total += snap[i] = buckets.get(i);
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        for (int i = 0; i < snap.length; i++) {
+            rank -= snap[i];
+            if (rank <= 0) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** 集計値を捨てる（記録中の値は一部残ることがある） */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+        count.reset(); sum.reset(); max.reset();
+    }
+
+    static int bucket(long v) { return 64 - Long.numberOfLeadingZeros(v); }
+    private static long upperBound(int bucket) { return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1; }
+}
@@ -0,0 +1,202 @@
+package com.practice.client.tracking.infrastructure.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 受信〜書き込みの負荷指標。カウンタは LongAdder（ストライプ化）、時間・件数の分布は Log2Histogram で持ち、
+ * 記録側はロックを取らない。register() で JMX（jconsole 等）から参照できるようにする。
+ * <p>
+ * 各段は global() を直接使う。テストでは new した別インスタンスで集計を確かめる。
+ */
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+    public static final String OBJECT_NAME = "com.practice.client.tracking:type=PipelineMetrics";
+    private static final PipelineMetrics GLOBAL = new PipelineMetrics();
+
+    public static PipelineMetrics global() { return GLOBAL; }
+
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder linesFiltered = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder queueDropped = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder queueSpilled = new LongAdder();
+    private final LongAdder samplerIn = new LongAdder();
+    private final LongAdder samplerOut = new LongAdder();
+    private final LongAdder lateDropped = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder upsertRows = new LongAdder();
+    private final LongAdder upsertFailures = new LongAdder();
+    private final LongAdder writeBehindFailures = new LongAdder();
+    private final LongAdder writesSkipped = new LongAdder();
+    private final LongAdder writesTouched = new LongAdder();
+    private final Log2Histogram batchSize = new Log2Histogram();
+    private final Log2Histogram flushMicros = new Log2Histogram();
+    private final Log2Histogram upsertMicros = new Log2Histogram();
+    private final Rate lineRate = new Rate(lines);
+    private final Rate byteRate = new Rate(bytes);
+
+    private volatile IntSupplier queueDepth = () -> 0;
+    private volatile int lastBatchSize, lastSampledRows, openWindows;
+    private volatile long flushIntervalMillis;
+    private volatile int drainChunk, writerBatchSize;
+    private volatile long watermarkMillis = Long.MIN_VALUE;
+    private volatile long lastRecoveryMillis = -1;
+
+    // ---- 記録（ホットパスから呼ぶ） ----
+
+    public void lineReceived(int byteLength) { lines.increment(); bytes.add(byteLength); }
+    public void parseFailed() { parseFailures.increment(); }
+    /** 前段フィルタ（RawLineFilter）で解析前に落とした */
+    public void lineFiltered() { linesFiltered.increment(); }
+    public void queueDropped() { queueDropped.increment(); }
+    /** conflate モードで同じ ICAO24 の未書き込み行を上書きした */
+    public void conflated() { conflated.increment(); }
+    /** 満杯のキューに入らずディスクへ逃がした（後で順に戻す） */
+    public void queueSpilled() { queueSpilled.increment(); }
+    public void reconnected(long recoveryMillis) { reconnects.increment(); lastRecoveryMillis = recoveryMillis; }
+
+    /** 間引き1回分：入力件数・書き込み行数・所要時間 */
+    public void sampled(int inputs, int rows, long elapsedNanos) {
+        samplerIn.add(inputs); samplerOut.add(rows);
+        lastBatchSize = inputs; lastSampledRows = rows;
+        batchSize.record(inputs);
+        flushMicros.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    /** flush が例外で終わった（次の周期で続ける） */
+    public void flushFailed() { flushFailures.increment(); }
+
+    /** イベント時刻モード：閉じた窓に属していたため捨てた行 */
+    public void lateDropped(long n) { if (n > 0) lateDropped.add(n); }
+    /** イベント時刻モード：開いている窓の数とウォーターマーク */
+    public void eventWindows(int open, long watermark) { openWindows = open; watermarkMillis = watermark; }
+
+    public void upserted(int rows, long elapsedNanos) {
+        upsertRows.add(rows);
+        upsertMicros.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+    public void upsertFailed() { upsertFailures.increment(); }
+    /** writer.async：書き込みスレッドでスナップショットの書き込みが失敗した（その分は書かれない） */
+    public void writeBehindFailed() { writeBehindFailures.increment(); }
+    /** 前回と同じ内容だったので書かなかった行・received_at だけ更新した行 */
+    public void writesSuppressed(int skipped, int touched) {
+        if (skipped > 0) writesSkipped.add(skipped);
+        if (touched > 0) writesTouched.add(touched);
+    }
+
+    /** sampling.adaptive：今の flush 間隔・1回に取り出す件数・DB のバッチ件数 */
+    public void adaptiveFlush(long flushMillis, int chunk, int batchSize) {
+        flushIntervalMillis = flushMillis; drainChunk = chunk; writerBatchSize = batchSize;
+    }
+
+    /** キュー深さの取り方を登録する（受け渡し方式が決まった時点で App から） */
+    public void bindQueueDepth(IntSupplier depth) { this.queueDepth = depth; }
+
+    // ---- JMX ----
+
+    /** プラットフォーム MBeanServer に登録する（登録済みなら置き換える） */
+    public ObjectName register() { return register(OBJECT_NAME); }
+
+    public ObjectName register(String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new RuntimeException("Failed to register MBean: " + objectName, e);
+        }
+    }
+
+    @Override public long getLinesReceived() { return lines.sum(); }
+    @Override public double getLinesPerSecond() { return lineRate.perSecond(); }
+    @Override public long getBytesReceived() { return bytes.sum(); }
+    @Override public double getBytesPerSecond() { return byteRate.perSecond(); }
+    @Override public long getParseFailures() { return parseFailures.sum(); }
+    @Override public long getLinesFiltered() { return linesFiltered.sum(); }
+    @Override public long getReconnects() { return reconnects.sum(); }
+    @Override public double getLastRecoveryMillis() { return lastRecoveryMillis; }
+
+    @Override public int getQueueDepth() { return queueDepth.getAsInt(); }
+    @Override public long getQueueDropped() { return queueDropped.sum(); }
+    @Override public long getConflated() { return conflated.sum(); }
+    @Override public long getQueueSpilled() { return queueSpilled.sum(); }
+
+    @Override public long getSamplerRuns() { return batchSize.count(); }
+    @Override public int getLastBatchSize() { return lastBatchSize; }
+    @Override public int getLastSampledRows() { return lastSampledRows; }
+    @Override public double getLastDedupeRatio() { return dedupe(lastBatchSize, lastSampledRows); }
+    @Override public double getDedupeRatio() { return dedupe(samplerIn.sum(), samplerOut.sum()); }
+    @Override public double getBatchSizeP50() { return batchSize.percentile(0.50); }
+    @Override public double getBatchSizeP99() { return batchSize.percentile(0.99); }
+    @Override public double getFlushMillisP50() { return millis(flushMicros.percentile(0.50)); }
+    @Override public double getFlushMillisP99() { return millis(flushMicros.percentile(0.99)); }
+    @Override public double getFlushMillisMax() { return millis(flushMicros.max()); }
+    @Override public long getFlushIntervalMillis() { return flushIntervalMillis; }
+    @Override public int getDrainChunk() { return drainChunk; }
+    @Override public int getWriterBatchSize() { return writerBatchSize; }
+    @Override public long getFlushFailures() { return flushFailures.sum(); }
+    @Override public long getLateDropped() { return lateDropped.sum(); }
+    @Override public int getOpenWindows() { return openWindows; }
+    @Override public double getWatermarkLagMillis() {
+        long wm = watermarkMillis;
+        return wm == Long.MIN_VALUE ? -1 : System.currentTimeMillis() - wm;
+    }
+
+    @Override public long getUpsertRows() { return upsertRows.sum(); }
+    @Override public long getUpsertFailures() { return upsertFailures.sum(); }
+    @Override public long getWriteBehindFailures() { return writeBehindFailures.sum(); }
+    @Override public long getWritesSkipped() { return writesSkipped.sum(); }
+    @Override public long getWritesTouched() { return writesTouched.sum(); }
+    @Override public double getUpsertMillisMean() { return upsertMicros.mean() / 1000.0; }
+    @Override public double getUpsertMillisP50() { return millis(upsertMicros.percentile(0.50)); }
+    @Override public double getUpsertMillisP99() { return millis(upsertMicros.percentile(0.99)); }
+    @Override public double getUpsertMillisMax() { return millis(upsertMicros.max()); }
+
+    @Override public void reset() {
+        for (LongAdder a : new LongAdder[] {lines, bytes, parseFailures, linesFiltered, reconnects, queueDropped, conflated, queueSpilled,
+                samplerIn, samplerOut, flushFailures, lateDropped, upsertRows, upsertFailures, writeBehindFailures, writesSkipped, writesTouched}) a.reset();
+        batchSize.reset(); flushMicros.reset(); upsertMicros.reset();
+        lastBatchSize = lastSampledRows = openWindows = 0; lastRecoveryMillis = -1; watermarkMillis = Long.MIN_VALUE;
+    }
+
+    /** 間引きで減った割合（0＝重複なし、0.9＝10件が1行に） */
+    private static double dedupe(long in, long out) { return in == 0 ? 0 : 1.0 - (double) out / in; }
+    private static double millis(long micros) { return micros / 1000.0; }
+
+    /** 読まれたときに、前回の更新から1秒以上経っていれば毎秒平均を更新する（専用スレッドは持たない） */
+    private static final class Rate {
+        private static final long MIN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+        private final LongAdder source;
+        private final AtomicReference<long[]> last;   // {nanoTime, 件数}
+        private volatile double perSecond;
+
+        Rate(LongAdder source) {
+            this.source = source;
+            this.last = new AtomicReference<>(new long[] {System.nanoTime(), 0});
+        }
+
+        double perSecond() {
+            long now = System.nanoTime();
+            long[] prev = last.get();
+            if (now - prev[0] >= MIN_INTERVAL_NANOS) {
+                long count = source.sum();
+                if (last.compareAndSet(prev, new long[] {now, count})) {
+                    perSecond = Math.max(0, count - prev[1]) * 1e9 / (now - prev[0]);
+                }
+            }
+            return perSecond;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.practice.client.tracking.infrastructure.metrics;
+
+/** JMX で公開する項目（時間はミリ秒、レートは直近の更新間隔での毎秒平均） */
+public interface PipelineMetricsMXBean {
+    // 受信
+    long getLinesReceived();
+    double getLinesPerSecond();
+    long getBytesReceived();
+    double getBytesPerSecond();
+    long getParseFailures();
+    /** 前段フィルタで解析前に落とした行 */
+    long getLinesFiltered();
+    long getReconnects();
+    double getLastRecoveryMillis();
+
+    // 受信→間引きの受け渡し
+    int getQueueDepth();
+    long getQueueDropped();
+    long getConflated();
+    /** ingest.overflow=spill でディスクへ逃がした行（累計） */
+    long getQueueSpilled();
+
+    // 間引き
+    long getSamplerRuns();
+    int getLastBatchSize();
+    int getLastSampledRows();
+    double getLastDedupeRatio();
+    double getDedupeRatio();
+    double getBatchSizeP50();
+    double getBatchSizeP99();
+    double getFlushMillisP50();
+    double getFlushMillisP99();
+    double getFlushMillisMax();
+    /** flush が例外で終わった回数（DB 障害など。間引きは次の周期で続ける） */
+    long getFlushFailures();
+    /** sampling.adaptive：今の flush 間隔・1回に取り出す件数・DB のバッチ件数（無効なら 0） */
+    long getFlushIntervalMillis();
+    int getDrainChunk();
+    int getWriterBatchSize();
+    /** イベント時刻モード：遅着で捨てた行・開いている窓・ウォーターマークの遅れ（処理時刻モードでは -1） */
+    long getLateDropped();
+    int getOpenWindows();
+    double getWatermarkLagMillis();
+
+    // DB 書き込み
+    long getUpsertRows();
+    long getUpsertFailures();
+    /** writer.async の書き込みスレッドで失敗したスナップショット（呼び出し元へは返らないのでここで数える） */
+    long getWriteBehindFailures();
+    /** 前回と同じ内容で書かなかった行（SKIP）・received_at だけ更新した行（TOUCH） */
+    long getWritesSkipped();
+    long getWritesTouched();
+    double getUpsertMillisMean();
+    double getUpsertMillisP50();
+    double getUpsertMillisP99();
+    double getUpsertMillisMax();
+
+    void reset();
+}
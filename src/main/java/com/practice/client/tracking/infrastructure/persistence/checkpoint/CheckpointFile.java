@@ -0,0 +1,124 @@
+package com.practice.client.tracking.infrastructure.persistence.checkpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+/**
+ * チェックポイント1つを置くファイル。[magic][version][作成時刻][本体長][本体の CRC32C][本体]。
+ * 一時ファイルに書いて rename で置き換えるので、書き込み中に落ちても前回分が残る。
+ * <p>
+ * {@link #writeAsync} は専用スレッドで書く。書き終わる前に次が来たら、古い方は書かずに新しい方だけ書く。
+ */
+public class CheckpointFile implements AutoCloseable {
+    private static final int MAGIC = 0x54434b50;   // "TCKP"
+    private static final int VERSION = 1;
+
+    /** 読み戻した本体と、書いた時刻 */
+    public record Loaded(long createdAtMillis, byte[] body) {}
+
+    private final Path path;
+    private final Path temp;
+    private final AtomicReference<byte[]> pending = new AtomicReference<>();
+    private final Object fileLock = new Object();   // write 同士（専用スレッドと呼び出し側）の排他
+    private ExecutorService writer;                // 最初の writeAsync で作る
+
+    public CheckpointFile(Path path) {
+        this.path = path;
+        this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    public Path path() { return path; }
+
+    /** 無い・壊れている（CRC 不一致・版違い）なら empty */
+    public Optional<Loaded> load() {
+        if (!Files.exists(path)) return Optional.empty();
+        try (var in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("bad magic");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("unsupported version " + version);
+            long createdAt = in.readLong();
+            int len = in.readInt();
+            int crc = in.readInt();
+            byte[] body = in.readNBytes(len);
+            if (body.length != len || crc(body) != crc) throw new IOException("truncated or corrupt body");
+            return Optional.of(new Loaded(createdAt, body));
+        } catch (IOException e) {
+            System.err.println("[Checkpoint] ignoring " + path + ": " + (e instanceof EOFException ? "truncated" : e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    /** 呼び出したスレッドで書く（終了時の最後の1回など） */
+    public void write(byte[] body) throws IOException {
+        synchronized (fileLock) { writeLocked(body); }
+    }
+
+    private void writeLocked(byte[] body) throws IOException {
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        try (OutputStream os = Files.newOutputStream(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+             var out = new DataOutputStream(os)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(body.length);
+            out.writeInt(crc(body));
+            out.write(body);
+        }
+        try { Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+        catch (AtomicMoveNotSupportedException e) { Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING); }
+    }
+
+    /** 専用スレッドで書く（呼び出し側はファイル I/O を待たない）。まだ書いていない前回分は捨てる */
+    public void writeAsync(byte[] body) {
+        if (pending.getAndSet(body) != null) return;   // 前回分の書き込み待ちがこの body を拾う
+        synchronized (this) {
+            if (writer == null) {
+                writer = Executors.newSingleThreadExecutor(r -> {
+                    Thread th = new Thread(r, "checkpoint-writer");
+                    th.setDaemon(true); return th;
+                });
+            }
+            writer.execute(this::writePending);
+        }
+    }
+
+    private void writePending() {
+        byte[] body = pending.getAndSet(null);
+        if (body == null) return;
+        try { write(body); }
+        catch (IOException e) { System.err.println("[Checkpoint] write failed: " + e.getMessage()); }
+    }
+
+    /** 書き込み待ちの分を書き終えてから止める */
+    @Override public synchronized void close() {
+        if (writer == null) return;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) writer.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static int crc(byte[] body) {
+        CRC32C c = new CRC32C();
+        c.update(body, 0, body.length);
+        return (int) c.getValue();
+    }
+}
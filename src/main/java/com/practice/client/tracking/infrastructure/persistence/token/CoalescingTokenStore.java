@@ -0,0 +1,69 @@
+package com.practice.client.tracking.infrastructure.persistence.token;
+
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * save() はメモリ上の最新トークンを差し替えるだけにし、永続化は一定間隔と close() 時にまとめて行う。
+ * 受信ループからファイルI/Oを外しつつ、再開時の巻き戻りは高々 flushInterval 分に抑える。
+ */
+public class CoalescingTokenStore implements TokenStore, AutoCloseable {
+    private final TokenStore delegate;
+    private final AtomicReference<String> latest = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final ScheduledFuture<?> task;
+    private volatile String persisted;      // 最後に delegate へ書いた値（同じ値を書き直さない）
+
+    /** 専用のフラッシュスレッドを持つ */
+    public CoalescingTokenStore(TokenStore delegate, long flushIntervalMillis) {
+        this(delegate, flushIntervalMillis, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "token-flush");
+            th.setDaemon(true); return th;
+        }), true);
+    }
+
+    /** 複数ストアでフラッシュスレッドを共有する */
+    public CoalescingTokenStore(TokenStore delegate, long flushIntervalMillis, ScheduledExecutorService scheduler) {
+        this(delegate, flushIntervalMillis, scheduler, false);
+    }
+
+    private CoalescingTokenStore(TokenStore delegate, long flushIntervalMillis,
+                                 ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        if (flushIntervalMillis <= 0) throw new IllegalArgumentException("flushIntervalMillis must be > 0");
+        this.delegate = delegate; this.scheduler = scheduler; this.ownsScheduler = ownsScheduler;
+        this.task = scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override public Optional<String> load() {
+        String t = latest.get();
+        return t != null ? Optional.of(t) : delegate.load();
+    }
+
+    @Override public void save(String token) { latest.set(token); }
+
+    /** 未永続化の最新値があれば書く（フラッシュスレッド・close から呼ばれる）。失敗したら最新値を残し、次の周期で書き直す */
+    public synchronized void flush() {
+        String t = latest.get();
+        if (t == null || t.equals(persisted)) return;
+        try {
+            delegate.save(t);
+            persisted = t;
+        } catch (RuntimeException e) {          // フラッシュスレッドを止めない
+            System.err.println("[TokenStore] save failed (will retry): " + e.getMessage());
+        }
+    }
+
+    @Override public void close() {
+        task.cancel(false);
+        if (ownsScheduler) scheduler.shutdown();
+        flush();
+        if (delegate instanceof AutoCloseable c) {
+            try { c.close(); } catch (Exception ignore) {}
+        }
+    }
+}
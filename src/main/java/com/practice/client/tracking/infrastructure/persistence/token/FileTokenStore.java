@@ -1,19 +1,42 @@
 package com.practice.client.tracking.infrastructure.persistence.token;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 
+/** 1ファイル1トークン。一時ファイルに書いて rename で置き換えるので、書き込み中に落ちても空にならない */
 public class FileTokenStore implements TokenStore {
     private final Path path;
-    public FileTokenStore(Path path) { this.path = path; }
+    private final Path temp;
+    public FileTokenStore(Path path) {
+        this.path = path;
+        this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+    }
     public Optional<String> load() {
-        try { return Files.exists(path) ? Optional.of(Files.readString(path)) : Optional.empty(); }
+        try {
+            if (!Files.exists(path)) return Optional.empty();
+            String t = Files.readString(path).trim();
+            return t.isEmpty() ? Optional.empty() : Optional.of(t);
+        }
         catch (Exception e) { return Optional.empty(); }
     }
+    /** 書けなければ UncheckedIOException（前の値は残る）。握りつぶすと呼び出し側が再試行できない */
     public void save(String token) {
-        try { Files.writeString(path, token, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING); }
-        catch (Exception ignore) {}
+        try {
+            Files.writeString(temp, token, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            moveIntoPlace();
+        }
+        catch (IOException e) { throw new UncheckedIOException("Failed to save token: " + path, e); }
+    }
+    private void moveIntoPlace() throws IOException {
+        try { Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+        catch (AtomicMoveNotSupportedException e) { Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING); }
     }
 }
@@ -0,0 +1,83 @@
+package com.practice.client.tracking.infrastructure.persistence.token;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * 固定長のメモリマップドファイルにトークンを置く。書き込みはページキャッシュへのコピーだけで済む
+ * （プロセスが落ちても OS が書き出す）。2スロットを交互に使い、各スロットは
+ * [seq:long][len:int][crc:int][token bytes...]。読み込み時は CRC が合う中で seq が最大のものを採る。
+ */
+public class MappedTokenStore implements TokenStore, AutoCloseable {
+    private static final int HEADER = 8 + 4 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int slotSize;
+    private long seq;
+
+    public MappedTokenStore(Path path, int maxTokenBytes) throws IOException {
+        this.slotSize = HEADER + maxTokenBytes;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotSize);
+        this.seq = Math.max(readSlot(0).seq, readSlot(1).seq);
+    }
+
+    @Override public synchronized Optional<String> load() {
+        Slot a = readSlot(0), b = readSlot(1);
+        Slot best = a.seq >= b.seq ? a : b;
+        return best.token == null || best.token.isEmpty() ? Optional.empty() : Optional.of(best.token);
+    }
+
+    /**
+     * 古い方のスロットへ書く。本体→長さ/CRC→seq の順なので、途中で落ちても他方のスロットが残る。
+     * スロットに入らないトークンは書かずに IllegalArgumentException（前の値が残る）。
+     */
+    @Override public synchronized void save(String token) {
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > slotSize - HEADER)
+            throw new IllegalArgumentException("token longer than " + (slotSize - HEADER) + " bytes: " + bytes.length);
+        long next = seq + 1;
+        int base = (int) (next & 1) * slotSize;
+        map.putLong(base, 0L);                       // 書き込み中は無効扱い
+        map.put(base + HEADER, bytes);
+        map.putInt(base + 8, bytes.length);
+        map.putInt(base + 12, crc(next, bytes, 0, bytes.length));
+        map.putLong(base, next);
+        seq = next;
+    }
+
+    /** ディスクまで書き出す（OS クラッシュにも備える場合） */
+    public synchronized void force() { map.force(); }
+
+    @Override public synchronized void close() throws IOException {
+        map.force();
+        channel.close();
+    }
+
+    private record Slot(long seq, String token) {}
+
+    private Slot readSlot(int index) {
+        int base = index * slotSize;
+        long s = map.getLong(base);
+        int len = map.getInt(base + 8);
+        if (s <= 0 || len < 0 || len > slotSize - HEADER) return new Slot(0, null);
+        byte[] bytes = new byte[len];
+        map.get(base + HEADER, bytes);
+        if (crc(s, bytes, 0, len) != map.getInt(base + 12)) return new Slot(0, null);
+        return new Slot(s, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static int crc(long seq, byte[] b, int off, int len) {
+        CRC32C c = new CRC32C();
+        for (int i = 0; i < 8; i++) c.update((int) (seq >>> (i * 8)) & 0xFF);
+        c.update(b, off, len);
+        return (int) c.getValue();
+    }
+}
@@ -2,6 +2,7 @@ package com.practice.client.tracking.infrastructure.persistence.token;
 
 import java.util.Optional;
 
+/** save() は書けなければ RuntimeException を投げる（前の値は残る） */
 public interface TokenStore {
 	Optional<String> load(); void save(String token);
 }
@@ -0,0 +1,78 @@
+package com.practice.client.tracking.infrastructure.servlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import com.practice.client.tracking.application.query.LivePositionIndex;
+import com.practice.client.tracking.application.query.PositionJsonWriter;
+
+/**
+ * 最新位置の索引を引く（DB を通さない）。
+ * <ul>
+ *   <li>GET /positions?bbox=minLat,minLon,maxLat,maxLon[&amp;limit=N] … 矩形内の機体（minLon &gt; maxLon で日付変更線をまたぐ）</li>
+ *   <li>GET /positions/{icao24} … 1機（無ければ 404）</li>
+ * </ul>
+ * raw=true で受信した行もそのまま入れる。索引は PipelineContextListener が ServletContext に置く（query.index=true）。
+ */
+@WebServlet(urlPatterns = {"/positions", "/positions/*"})
+public class LivePositionServlet extends HttpServlet {
+    private static final int DEFAULT_LIMIT = 10_000;
+
+    private transient LivePositionIndex index;
+    private transient PositionJsonWriter json;
+
+    @Override public void init() throws ServletException {
+        index = (LivePositionIndex) getServletContext().getAttribute(LivePositionIndex.ATTRIBUTE);
+        if (index == null) throw new ServletException("Live position index is not available (set query.index=true)");
+        json = new PositionJsonWriter(index);
+    }
+
+    @Override protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        long now = System.currentTimeMillis();
+        boolean raw = Boolean.parseBoolean(req.getParameter("raw"));
+        String path = req.getPathInfo();
+        if (path != null && path.length() > 1) {
+            Optional<LivePositionIndex.Position> p = index.get(path.substring(1), now);
+            if (p.isEmpty()) { resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown or stale icao24: " + path.substring(1)); return; }
+            startJson(resp);
+            json.writeOne(resp.getOutputStream(), p.get(), raw);
+            return;
+        }
+
+        List<LivePositionIndex.Position> found;
+        try {
+            double[] bbox = bbox(req.getParameter("bbox"));
+            int limit = req.getParameter("limit") == null ? DEFAULT_LIMIT : Integer.parseInt(req.getParameter("limit").trim());
+            if (limit < 1) throw new IllegalArgumentException("limit must be >= 1: " + limit);
+            found = index.within(bbox[0], bbox[1], bbox[2], bbox[3], now, limit);
+        } catch (IllegalArgumentException e) {          // NumberFormatException も含む
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        startJson(resp);
+        json.writeAll(resp.getOutputStream(), found, raw);
+    }
+
+    private static void startJson(HttpServletResponse resp) {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+    }
+
+    /** minLat,minLon,maxLat,maxLon */
+    private static double[] bbox(String spec) {
+        if (spec == null) throw new IllegalArgumentException("bbox=minLat,minLon,maxLat,maxLon is required");
+        String[] parts = spec.split(",");
+        if (parts.length != 4) throw new IllegalArgumentException("bbox needs 4 comma-separated numbers: " + spec);
+        double[] v = new double[4];
+        for (int i = 0; i < 4; i++) v[i] = Double.parseDouble(parts[i].trim());
+        return v;
+    }
+}
@@ -14,6 +14,7 @@ import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,14 +26,22 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.practice.client.tracking.application.worker.OverflowPolicy;
+import com.practice.client.tracking.application.worker.SpillToDiskPolicy;
+
 public class StreamWithRetry {
 
+	/** ICAO24 の抽出（conflate 用） */
+	private static final Pattern ICAO = Pattern.compile("\"(icao_address|hex|icao24)\"\\s*:\\s*\"([^\"]+)\"");
+
 	private final HttpClient client;
 
 	/** ベースURL */
 	private final String baseUrl;
-	/** 受信データ格納キュー */
-	private LinkedBlockingQueue<OutputDto> que = new LinkedBlockingQueue<>();
+	/** 受信データ格納キュー（有界） */
+	private final LinkedBlockingQueue<OutputDto> que;
+	/** キュー満杯時の扱い */
+	private final OverflowPolicy<OutputDto> overflow;
 	/** 認証トークン */
 	private String authToken;
 	/** 最大接続回数 */
@@ -71,6 +80,10 @@ public class StreamWithRetry {
         timeOut              = Long.parseLong(require(p, "stream.timeout").trim()); // ミリ秒
         positionTokenFilePath= require(p, "stream.positionTokenFile");
 
+        // 受信キュー（任意プロパティ。未設定なら 10000 件・最古ドロップ）
+        que      = new LinkedBlockingQueue<>(Integer.parseInt(p.getProperty("stream.queue.capacity", "10000").trim()));
+        overflow = overflowPolicy(p);
+
         // クライアント作成
         client = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofMillis(timeOut))
@@ -85,7 +98,50 @@ public class StreamWithRetry {
         return v;
     }
 
+	/**
+	 * キュー満杯時の扱い（stream.queue.overflow=drop-oldest|drop-newest|block|conflate|spill）。
+	 * conflate は ICAO24 が同じ行を置き換え、spill は溢れた行をファイルへ逃がして順に戻す。
+	 */
+	private static OverflowPolicy<OutputDto> overflowPolicy(Properties p) throws IOException {
+		String name = p.getProperty("stream.queue.overflow", "drop-oldest").trim().toLowerCase();
+		switch (name) {
+		case "drop-oldest":
+			return OverflowPolicy.dropOldest();
+		case "drop-newest":
+			return OverflowPolicy.dropNewest();
+		case "block":
+			return OverflowPolicy.block(Long.parseLong(p.getProperty("stream.queue.block-millis", "100").trim()));
+		case "conflate":
+			return OverflowPolicy.conflate(d -> {
+				Matcher m = ICAO.matcher(d.getResponseData());
+				return m.find() ? m.group(2) : null;
+			});
+		case "spill":
+			Path file = Path.of(p.getProperty("stream.queue.spill-file",
+					Path.of(System.getProperty("java.io.tmpdir"), "stream-spill.bin").toString()).trim());
+			int maxBytes = Integer.parseInt(p.getProperty("stream.queue.spill-max-bytes", "268435456").trim());
+			return new SpillToDiskPolicy<>(file, maxBytes, new SpillToDiskPolicy.Codec<OutputDto>() {
+				@Override public int size(OutputDto d) { return bytes(d).length; }
+				@Override public void write(OutputDto d, ByteBuffer out) { out.put(bytes(d)); }
+				@Override public OutputDto read(ByteBuffer in, int len) {
+					byte[] b = new byte[len];
+					in.get(b);
+					OutputDto d = new OutputDto();
+					d.setResponseData(new String(b, StandardCharsets.UTF_8));
+					return d;
+				}
+				private byte[] bytes(OutputDto d) {
+					return d.getResponseData() == null ? new byte[0] : d.getResponseData().getBytes(StandardCharsets.UTF_8);
+				}
+			});
+		default:
+			throw new IllegalArgumentException("不正なプロパティ値: stream.queue.overflow=" + name);
+		}
+	}
+
 	public OutputDto receive() throws InterruptedException {
+		// ファイルへ逃がした行があれば、空いた分だけ先に戻す（受信順を保つ）
+		if (overflow instanceof SpillToDiskPolicy<OutputDto> spill) spill.replay(que);
 		return que.poll();
 	}
 
@@ -157,12 +213,8 @@ public class StreamWithRetry {
 							OutputDto outDto = new OutputDto();
 							outDto.setResponseData(line);
 
-							// キューにDtoをセット
-							if (!que.offer(outDto)) {
-								// 満杯の場合は最初の要素を削除する
-								que.poll();
-								que.offer(outDto);
-							}
+							// キューにDtoをセット（満杯時は stream.queue.overflow の方針に従う）
+							overflow.offer(que, outDto);
 
 						}
 						// リトライ処理: 例外なくストリームが閉じる
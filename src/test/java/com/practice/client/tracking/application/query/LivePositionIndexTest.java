@@ -0,0 +1,146 @@
+package com.practice.client.tracking.application.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+
+public class LivePositionIndexTest {
+    private static final TargetFields FIELDS = TargetFields.parse("latitude,longitude,altitude_baro");
+
+    @Test
+    public void findsByBoundingBoxAndIcao() {
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 1.0, 60_000);
+        index.update("aaaaaa", 35.5, 139.7, 1_000, null);   // 東京
+        index.update("bbbbbb", 34.7, 135.5, 1_000, null);   // 大阪
+        index.update("cccccc", 51.5, -0.1, 1_000, null);    // ロンドン
+
+        assertEquals(Set.of("aaaaaa"), icaos(index.within(35, 139, 36, 140, 2_000, 100)));
+        assertEquals(Set.of("aaaaaa", "bbbbbb"), icaos(index.within(30, 130, 40, 145, 2_000, 100)));
+        assertEquals(3, index.within(-90, -180, 90, 180, 2_000, 100).size());     // 全セルより機体が少なければセルを順に見る
+        assertEquals(1, index.within(-90, -180, 90, 180, 2_000, 1).size());
+        assertEquals(135.5, index.get("bbbbbb", 2_000).orElseThrow().longitude());
+        assertFalse(index.get("dddddd", 2_000).isPresent());
+        assertThrows(IllegalArgumentException.class, () -> index.within(40, 0, 30, 10, 0, 1));
+    }
+
+    /** セル番号が int に収まる最小の cellDegrees までは使え、それより細かい格子は断る */
+    @Test
+    public void rejectsCellDegreesWhoseCellCountOverflowsInt() {
+        assertThrows(IllegalArgumentException.class, () -> new LivePositionIndex(FIELDS, "latitude", "longitude", 0.005, 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new LivePositionIndex(FIELDS, "latitude", "longitude", 1e-9, 60_000));
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 0.0055, 60_000);      // 32727 × 65455 セル
+        index.update("aaaaaa", 89.999, 179.999, 1_000, null);                                  // 最後のセル
+        index.update("bbbbbb", -89.999, -179.999, 1_000, null);
+        assertEquals(Set.of("aaaaaa"), icaos(index.within(89.99, 179.99, 90, 180, 2_000, 100)));
+        assertEquals(Set.of("bbbbbb"), icaos(index.within(-90, -180, -89.99, -179.99, 2_000, 100)));
+    }
+
+    /** 移動した機体は新しいセルにだけ現れる。古い受信時刻の行では戻らない */
+    @Test
+    public void movesBetweenCellsAndIgnoresOlderRows() {
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 0.5, 60_000);
+        index.update("aaaaaa", 35.1, 139.1, 1_000, null);
+        assertTrue(index.update("aaaaaa", 36.9, 139.9, 2_000, null));
+        assertFalse(index.update("aaaaaa", 35.1, 139.1, 1_500, null));
+        assertFalse(index.update("bbbbbb", Double.NaN, 139.1, 1_500, null));
+
+        assertEquals(Set.of(), icaos(index.within(35, 139, 35.5, 139.5, 3_000, 100)));
+        assertEquals(Set.of("aaaaaa"), icaos(index.within(36.5, 139.5, 37, 140, 3_000, 100)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void boundingBoxCrossingAntimeridian() {
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 1.0, 60_000);
+        index.update("aaaaaa", 10, 179.5, 0, null);
+        index.update("bbbbbb", 10, -179.5, 0, null);
+        index.update("cccccc", 10, 0, 0, null);
+        assertEquals(Set.of("aaaaaa", "bbbbbb"), icaos(index.within(0, 170, 20, -170, 0, 100)));
+        assertEquals(Set.of("aaaaaa", "bbbbbb", "cccccc"), icaos(index.within(0, 0.5, 20, 0.2, 0, 100)));   // 同じセルで折り返す
+    }
+
+    @Test
+    public void staleAircraftAreHiddenAndExpired() {
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 1.0, 10_000);
+        index.update("aaaaaa", 10, 10, 0, null);
+        index.update("bbbbbb", 10, 10, 8_000, null);
+        assertEquals(Set.of("bbbbbb"), icaos(index.within(0, 0, 20, 20, 12_000, 100)));
+        assertFalse(index.get("aaaaaa", 12_000).isPresent());
+        assertEquals(1, index.expire(12_000));
+        assertEquals(1, index.size());
+    }
+
+    /** 間引きの出力（target.fields の列）から入れ、そのまま下流へ渡す */
+    @Test
+    public void indexingWriterFeedsIndexFromSnapshots() {
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 1.0, Long.MAX_VALUE / 2);
+        List<String> written = new ArrayList<>();
+        DatabaseWriter db = (icao, bucket, dto) -> written.add(icao + "@" + bucket);
+        var w = new IndexingWriter(db, index);
+        var s = new WindowSnapshot(2);
+        s.clear(30_000);
+        s.add("aaaaaa", target("aaaaaa", 35.5, 139.7));
+        s.add("bbbbbb", target("bbbbbb", Double.NaN, Double.NaN));
+        w.upsertSnapshot(s);
+
+        assertEquals(List.of("aaaaaa@30000", "bbbbbb@30000"), written);
+        assertEquals(139.7, index.get("aaaaaa", 31_000).orElseThrow().longitude());
+        assertEquals(1, index.size());
+    }
+
+    /** 更新と並行に読んでも、各機体は1回だけ見える */
+    @Test
+    public void concurrentReadersSeeEachAircraftOnce() throws Exception {
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 0.25, 600_000, 4);
+        int aircraft = 200;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int round = 1; round <= 200; round++) {
+                for (int i = 0; i < aircraft; i++) {
+                    index.update(String.format("%06x", i), (i * 7 + round) % 20, (i * 13 + round) % 20, round, null);
+                }
+                Thread.yield();
+            }
+            done.set(true);
+        });
+        writer.start();
+        do {
+            var seen = new HashSet<String>();
+            for (var p : index.within(-1, -1, 21, 21, 0, Integer.MAX_VALUE)) {
+                if (!seen.add(p.icao24())) failure.compareAndSet(null, "seen twice: " + p.icao24());
+            }
+            Thread.yield();
+        } while (!done.get());
+        writer.join();
+        assertEquals(null, failure.get());
+        assertEquals(aircraft, index.within(-1, -1, 21, 21, 0, Integer.MAX_VALUE).size());
+    }
+
+    private static Set<String> icaos(List<LivePositionIndex.Position> ps) {
+        Set<String> s = new HashSet<>();
+        for (var p : ps) s.add(p.icao24());
+        return s;
+    }
+
+    private static RecvOutputDTO target(String icao, double lat, double lon) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson("{}")
+                .targetValues(new double[] {lat, lon, 35000}).receivedAt(Instant.ofEpochMilli(30_500)).build();
+    }
+}
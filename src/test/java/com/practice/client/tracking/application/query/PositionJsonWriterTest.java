@@ -0,0 +1,49 @@
+package com.practice.client.tracking.application.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+public class PositionJsonWriterTest {
+    private static final TargetFields FIELDS = TargetFields.parse("latitude,longitude,altitude_baro,speed");
+
+    @Test
+    public void writesPositionsWithTargetFieldsAndRawLine() throws Exception {
+        var index = new LivePositionIndex(FIELDS, "latitude", "longitude", 1.0, 60_000);
+        var dto = new RecvOutputDTO.Builder().messageType("target").icao24("4ca2b1")
+                .rawJson("{\"target\":{\"icao_address\":\"4CA2B1\",\"latitude\":35.5}}")
+                .targetValues(new double[] {35.5, 139.7, 35000, Double.NaN})
+                .receivedAt(Instant.parse("2025-09-21T00:00:01Z")).build();
+        var p = new LivePositionIndex.Position("4ca2b1", 35.5, 139.7, dto.getReceivedAt().toEpochMilli(), dto);
+        var json = new PositionJsonWriter(index);
+
+        var out = new ByteArrayOutputStream();
+        json.writeAll(out, List.of(p), true);
+        JsonNode root = new ObjectMapper().readTree(out.toByteArray());
+        assertEquals(1, root.get("count").asInt());
+        JsonNode first = root.get("positions").get(0);
+        assertEquals("4ca2b1", first.get("icao24").asText());
+        assertEquals(139.7, first.get("longitude").asDouble());
+        assertEquals("2025-09-21T00:00:01Z", first.get("received_at").asText());
+        assertEquals(35000.0, first.get("altitude_baro").asDouble());
+        assertTrue(first.get("speed").isNull());
+        assertEquals("4CA2B1", first.get("raw").get("target").get("icao_address").asText());
+
+        out.reset();
+        json.writeOne(out, p, false);
+        JsonNode one = new ObjectMapper().readTree(out.toByteArray());
+        assertEquals(35.5, one.get("latitude").asDouble());
+        assertFalse(one.has("raw"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveFlushControllerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicInteger chunk = new AtomicInteger(), batch = new AtomicInteger();
+
+    private AdaptiveFlushController controller() {
+        return AdaptiveFlushController.builder(() -> {})
+                .windowMillis(30_000)
+                .queue(() -> 0, 10_000)
+                .flushMillis(1_000, 8_000, 30_000)
+                .drainChunk(256, 10_000, chunk::set)
+                .writerBatch(100, 500, 5_000, batch::set)
+                .build();
+    }
+
+    /** 取りこぼし・キューの埋まりで短く、空いていれば上限まで長く。範囲の外には出ない */
+    @Test
+    public void intervalFollowsLoadWithinBounds() {
+        var c = controller();
+        c.adjust(6_000, 10 * MS, 0, 300);                          // 半分以上埋まっていた
+        assertEquals(4_000, c.getFlushMillis());
+        c.adjust(100, 10 * MS, 5, 300);                            // 取りこぼした
+        assertEquals(2_000, c.getFlushMillis());
+        for (int i = 0; i < 10; i++) c.adjust(9_000, 10 * MS, 0, 300);
+        assertEquals(1_000, c.getFlushMillis());                   // 下限
+        for (int i = 0; i < 50; i++) c.adjust(10, MS, 0, 300);
+        assertEquals(30_000, c.getFlushMillis());                  // 上限（鮮度）
+    }
+
+    /** 書き込みが間隔の半分以上かかるなら、間隔を延ばしてまとめて書く */
+    @Test
+    public void slowWriterLengthensInterval() {
+        var c = controller();
+        c.adjust(3_000, 5_000 * MS, 0, 4_000);
+        assertEquals(12_000, c.getFlushMillis());
+    }
+
+    /** 取り出し件数はキュー深さの 1/4、バッチ件数は書いた行数に合わせる（どちらも範囲内） */
+    @Test
+    public void chunkAndBatchAreClampedAndPushed() {
+        var c = controller();
+        c.adjust(4_000, MS, 0, 1_234);
+        assertEquals(1_000, chunk.get());
+        assertEquals(1_234, batch.get());
+        c.adjust(100_000, MS, 0, 50_000);
+        assertEquals(10_000, chunk.get());
+        assertEquals(5_000, batch.get());
+        c.adjust(0, MS, 0, 3);
+        assertEquals(256, chunk.get());
+        assertEquals(100, batch.get());
+        c.adjust(0, MS, 0, 0);                                     // 何も書かなかった回はバッチ件数を変えない
+        assertEquals(100, c.getWriterBatch());
+    }
+
+    /** 次の flush は窓の終わりを越えない（終わりの直前に1回書く） */
+    @Test
+    public void nextFlushNeverCrossesWindowEnd() {
+        var c = controller();                                      // 間隔 8,000ms、窓 30,000ms
+        long base = 1_758_412_800_000L;                            // 窓の始まり
+        assertEquals(8_000, c.nextDelayMillis(base + 1_000));
+        assertEquals(29_980 - 25_000, c.nextDelayMillis(base + 25_000));
+        long last = base + 29_980;                                 // 窓の最後の書き込み
+        assertEquals(8_000, c.nextDelayMillis(last));
+        for (long now = base; now < base + 90_000; now += 333) {
+            long next = now + c.nextDelayMillis(now);
+            long end = IntervalSampler.floorTo(30_000, now) + 30_000;
+            assertTrue(next < end || now >= end - 20, "crossed window end at " + now);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.archive.SegmentArchiveReader;
+import com.practice.client.tracking.infrastructure.archive.SegmentArchiveWriter;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+public class ArchiveReplayerTest {
+    @TempDir Path dir;
+
+    /** 1時間分（3機×毎秒）を再生すると、記録時刻の窓ごとに最新1行ずつ書かれる */
+    @Test
+    public void replayWritesOneRowPerAircraftPerRecordedWindow() throws IOException {
+        long t0 = 1_758_412_800_000L;
+        try (var w = new SegmentArchiveWriter(dir, 1 << 20, 16 * 1024, 60_000)) {
+            for (int s = 0; s < 3_600; s++) {
+                for (int a = 0; a < 3; a++) {
+                    String icao = "40000" + a;
+                    w.append(new RecvOutputDTO.Builder()
+                            .rawJson("{\"target\":{\"icao_address\":\"" + icao + "\",\"t\":" + s + "}}")
+                            .receivedAt(Instant.ofEpochMilli(t0 + s * 1_000L))
+                            .messageType("target").icao24(icao).build());
+                }
+            }
+        }
+        var writer = new IntervalSamplerTest.CapturingWriter();
+        long globalRuns = PipelineMetrics.global().getSamplerRuns();
+        var replayer = new ArchiveReplayer(new SegmentArchiveReader(dir), 60_000, writer);
+        long n = replayer.replay(t0, t0 + 3_600_000);
+
+        assertEquals(3 * 3_600, n);
+        assertEquals(60, replayer.metrics().getSamplerRuns());            // 受信中の指標には数えない
+        assertEquals(globalRuns, PipelineMetrics.global().getSamplerRuns());
+        assertEquals(60 * 3, writer.rows.size());
+        Map<Long, Integer> perBucket = new TreeMap<>();
+        for (var r : writer.rows) perBucket.merge(r.bucketStart(), 1, Integer::sum);
+        assertEquals(60, perBucket.size());
+        perBucket.values().forEach(c -> assertEquals(3, c.intValue()));
+        // 各窓の行はその窓の最後の秒のもの
+        var first = writer.rows.get(0);
+        assertEquals(t0, first.bucketStart());
+        assertEquals(t0 + 59_000, first.dto().getReceivedAt().toEpochMilli());
+    }
+}
@@ -0,0 +1,192 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.http.NdjsonLineParser;
+
+public class CompactMessageQueueTest {
+
+    /** toDto の結果が積んだ DTO と同じ内容になること */
+    @Test
+    public void dtoViewMatchesOriginal() {
+        var q = new CompactMessageQueue(1_000, 64 * 1024);
+        List<RecvOutputDTO> msgs = IntervalSamplerTest.generate(new Random(1), 500, 40);
+        Instant at = Instant.parse("2025-09-21T00:00:00.123456789Z");
+        msgs = msgs.stream().map(m -> copy(m, at)).toList();
+        msgs.forEach(q::accept);
+
+        CompactMessageQueue.Batch b = q.drain();
+        assertEquals(msgs.size(), b.size());
+        for (int i = 0; i < b.size(); i++) {
+            RecvOutputDTO expected = msgs.get(i), actual = b.toDto(i);
+            assertEquals(expected.getRawJson(), actual.getRawJson());
+            assertEquals(expected.getMessageType(), actual.getMessageType());
+            assertEquals(expected.getPositionToken(), actual.getPositionToken());
+            assertEquals(expected.getIcao24(), actual.getIcao24());
+            assertEquals(expected.getReceivedAt(), actual.getReceivedAt());
+            assertEquals(expected.getType(), b.type(i));
+        }
+        assertEquals(0, q.size());
+        assertTrue(q.drain().isEmpty());
+    }
+
+    /** 列挙にない種別（UNKNOWN）の行も元の messageType のまま戻る。最古を捨てて詰めた後も、残った分は全件キューの末尾と同じ */
+    @Test
+    public void unknownMessageTypeMatchesQueue() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var compact = new CompactMessageQueue(64, 64 * 1024);
+        for (int i = 0; i < 100; i++) {
+            var b = new RecvOutputDTO.Builder().rawJson("{\"n\":" + i + "}").receivedAt(Instant.ofEpochMilli(i));
+            switch (i % 4) {
+                case 0 -> b.messageType("aircraft_info").icao24("abc123");
+                case 1 -> b.messageType("target").icao24("abc123");
+                case 2 -> b.messageType("weather");
+                default -> {}                                             // 種別なし
+            }
+            RecvOutputDTO m = b.build();
+            queue.add(m);
+            compact.accept(m);
+        }
+        CompactMessageQueue.Batch batch = compact.drain();
+        List<RecvOutputDTO> all = new ArrayList<>(queue);
+        List<RecvOutputDTO> expected = all.subList(all.size() - batch.size(), all.size());
+        assertTrue(batch.size() < all.size());                          // 詰め直しを通っている
+        for (int i = 0; i < batch.size(); i++) {
+            RecvOutputDTO e = expected.get(i), a = batch.toDto(i);
+            assertEquals(e.getRawJson(), a.getRawJson());
+            assertEquals(e.getMessageType(), a.getMessageType(), e.getRawJson());
+            assertEquals(e.getType(), a.getType());
+            assertEquals(e.getIcao24(), a.getIcao24());
+        }
+    }
+
+    /** 件数・バイト数のどちらで満杯になっても最古から捨て、受信順を保つこと */
+    @Test
+    public void dropsOldestWhenFull() {
+        var byCount = new CompactMessageQueue(16, 64 * 1024);
+        for (int i = 0; i < 100; i++) byCount.accept(line(i, 10));
+        assertNewestInOrder(byCount.drain(), 99);
+
+        var byBytes = new CompactMessageQueue(1_000, 1024);
+        for (int i = 0; i < 100; i++) byBytes.accept(line(i, 100));
+        CompactMessageQueue.Batch b = byBytes.drain();
+        assertTrue(b.size() <= 1024 / 100, "size " + b.size());
+        assertNewestInOrder(b, 99);
+
+        // 領域より長い行も捨てずに入る
+        byBytes.accept(line(0, 5_000));
+        assertEquals(1, byBytes.drain().size());
+    }
+
+    @Test
+    public void tryOfferRefusesWhenFull() {
+        var q = new CompactMessageQueue(4, 64 * 1024);
+        for (int i = 0; i < 4; i++) assertTrue(q.tryOffer(line(i, 10)));
+        assertFalse(q.tryOffer(line(4, 10)));
+        assertEquals(4, q.size());
+        q.drain();
+        assertTrue(q.tryOffer(line(5, 10)));
+    }
+
+    /** 数値項目は列として持ち、サンプラーの窓（WindowSnapshot）の列にそのまま出ること */
+    @Test
+    public void targetValuesReachSnapshotColumns() {
+        var q = new CompactMessageQueue(100, 64 * 1024, 2);
+        var fields = new NdjsonLineParser.Fields();
+        var parser = new NdjsonLineParser(
+                NdjsonLineParser.Mode.STREAMING,
+                TargetFields.parse("latitude,speed"));
+        String[] lines = {
+                "{\"target\":{\"hex\":\"abc123\",\"latitude\":1.5,\"speed\":100}}",
+                "{\"target\":{\"hex\":\"abc124\",\"latitude\":2.5}}",
+                "{\"target\":{\"hex\":\"abc123\",\"latitude\":3.5,\"speed\":300}}",
+                "{\"position_token\":\"t\"}"};
+        for (String line : lines) {
+            byte[] b = line.getBytes(StandardCharsets.UTF_8);
+            parser.parse(b, 0, b.length, fields);
+            q.accept(b, 0, b.length, 0L, fields);
+        }
+        var captured = new ArrayList<WindowSnapshot>();
+        var sampler = IntervalSampler.builder(new DatabaseWriter() {
+            @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {}
+            @Override public void upsertSnapshot(WindowSnapshot s) {
+                assertEquals(2, s.columnCount());
+                assertEquals(2, s.size());
+                Map<String, String> got = new HashMap<>();
+                for (int i = 0; i < s.size(); i++) got.put(s.icao24(i), s.value(0, i) + "/" + s.value(1, i));
+                assertEquals(Map.of("abc123", "3.5/300.0", "abc124", "2.5/NaN"), got);
+                captured.add(s);
+            }
+        }).compact(q).windowMillis(30_000).build();
+        sampler.flush(60_000);
+        assertEquals(1, captured.size());
+    }
+
+    /** 間引きの結果（ICAO→採用行）が全件キュー方式と一致すること */
+    @Test
+    public void samplerMatchesQueueMode() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var compact = new CompactMessageQueue(50_000, 16 << 20);
+        var queueWriter = new IntervalSamplerTest.CapturingWriter();
+        var compactWriter = new IntervalSamplerTest.CapturingWriter();
+        var queueSampler = IntervalSampler.builder(queueWriter).queue(queue).windowMillis(30_000).build();
+        var compactSampler = IntervalSampler.builder(compactWriter).compact(compact).windowMillis(30_000).build();
+        Random r = new Random(42);
+        for (int[] w : new int[][] {{10_000, 800}, {0, 0}, {20_000, 9_000}, {5_000, 3}}) {
+            List<RecvOutputDTO> msgs = IntervalSamplerTest.generate(r, w[0], w[1]);
+            queue.addAll(msgs);
+            msgs.forEach(compact::accept);
+            queueWriter.rows.clear(); compactWriter.rows.clear();
+            queueSampler.flush(1_000_000L);
+            compactSampler.flush(1_000_000L);
+            assertEquals(rawByIcao(queueWriter), rawByIcao(compactWriter));
+            assertEquals(0, compact.size());
+        }
+    }
+
+    private static Map<String, String> rawByIcao(IntervalSamplerTest.CapturingWriter w) {
+        Map<String, String> m = new HashMap<>();
+        for (var row : w.rows) {
+            assertEquals(1_000_000L - 1_000_000L % 30_000, row.bucketStart());
+            assertTrue(m.put(row.icao(), row.dto().getRawJson()) == null, "duplicate upsert " + row.icao());
+        }
+        return m;
+    }
+
+    private static void assertNewestInOrder(CompactMessageQueue.Batch b, int newest) {
+        for (int i = 0; i < b.size(); i++) {
+            assertTrue(b.rawJson(i).startsWith("{\"n\":" + (newest - b.size() + 1 + i) + ","), b.rawJson(i));
+        }
+    }
+
+    private static RecvOutputDTO line(int n, int bytes) {
+        String head = "{\"n\":" + n + ",\"p\":\"";
+        String raw = head + "x".repeat(Math.max(0, bytes - head.length() - 2)) + "\"}";
+        return new RecvOutputDTO.Builder().rawJson(raw.getBytes(), 0, raw.length()).messageType("target").icao24("abc123").build();
+    }
+
+    private static RecvOutputDTO copy(RecvOutputDTO m, Instant at) {
+        var b = new RecvOutputDTO.Builder().rawJson(m.getRawJson()).receivedAt(at);
+        m.getMessageType().ifPresent(b::messageType);
+        m.getPositionToken().ifPresent(b::positionToken);
+        m.getIcao24().ifPresent(b::icao24);
+        return b.build();
+    }
+}
@@ -0,0 +1,150 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+
+public class EventTimeWindowsTest {
+    private static final long W = 30_000;
+
+    /** 1回の drain に窓をまたぐ行があっても、各行は自分の受信時刻の窓に入る */
+    @Test
+    public void assignsRowsToTheirReceiveTimeWindow() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var writer = new IntervalSamplerTest.CapturingWriter();
+        var sampler = IntervalSampler.builder(writer).queue(queue).eventTime(new EventTimeWindows(W, 5_000)).build();
+        queue.add(target("aaaaaa", 29_000, "a1"));
+        queue.add(target("aaaaaa", 31_000, "a2"));
+        queue.add(target("bbbbbb", 59_999, "b1"));
+        sampler.flush(200_000);                        // 壁時計は関係ない
+
+        assertEquals(Map.of("aaaaaa@0", "a1", "aaaaaa@30000", "a2", "bbbbbb@30000", "b1"), rows(writer));
+    }
+
+    /** 短い間隔で呼ぶと、前回から変わった行だけを同じキーで書き直す */
+    @Test
+    public void incrementalFlushWritesOnlyChangedRows() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var writer = new IntervalSamplerTest.CapturingWriter();
+        var sampler = IntervalSampler.builder(writer).queue(queue).eventTime(new EventTimeWindows(W, 5_000)).build();
+        queue.add(target("aaaaaa", 1_000, "a1"));
+        queue.add(target("bbbbbb", 1_500, "b1"));
+        sampler.flush(0);
+        assertEquals(Map.of("aaaaaa@0", "a1", "bbbbbb@0", "b1"), rows(writer));
+
+        writer.rows.clear();
+        queue.add(target("aaaaaa", 6_000, "a2"));
+        sampler.flush(0);
+        assertEquals(Map.of("aaaaaa@0", "a2"), rows(writer));
+
+        writer.rows.clear();
+        sampler.flush(0);                              // 何も来ていなければ書かない
+        assertEquals(Map.of(), rows(writer));
+    }
+
+    /** ウォーターマークを過ぎた窓は閉じ、その窓の行は遅着として捨てる。許容内の遅れは元の窓に入る */
+    @Test
+    public void dropsRowsForClosedWindows() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var writer = new IntervalSamplerTest.CapturingWriter();
+        var windows = new EventTimeWindows(W, 5_000);
+        var sampler = IntervalSampler.builder(writer).queue(queue).eventTime(windows).build();
+        queue.add(target("aaaaaa", 10_000, "a1"));
+        queue.add(target("aaaaaa", 33_000, "a2"));     // ウォーターマーク 28,000：窓 0 はまだ開いている
+        sampler.flush(0);
+        assertEquals(2, windows.openBuckets());
+
+        writer.rows.clear();
+        queue.add(target("bbbbbb", 29_000, "b-late-ok"));
+        queue.add(target("aaaaaa", 36_000, "a3"));     // ウォーターマーク 31,000 → 窓 0 を閉じる
+        sampler.flush(0);
+        assertEquals(Map.of("bbbbbb@0", "b-late-ok", "aaaaaa@30000", "a3"), rows(writer));
+        assertEquals(1, windows.openBuckets());
+
+        writer.rows.clear();
+        queue.add(target("bbbbbb", 29_500, "b-too-late"));
+        sampler.flush(0);
+        assertEquals(Map.of(), rows(writer));
+        assertEquals(1L, windows.lateDropped());
+    }
+
+    /** 同じ窓に古い受信時刻の行が後から来ても、新しい方を残す */
+    @Test
+    public void keepsNewestByEventTimeWithinWindow() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var writer = new IntervalSamplerTest.CapturingWriter();
+        var sampler = IntervalSampler.builder(writer).queue(queue).eventTime(new EventTimeWindows(W, 5_000)).build();
+        queue.add(target("aaaaaa", 5_000, "new"));
+        sampler.flush(0);
+        writer.rows.clear();
+        queue.add(target("aaaaaa", 4_000, "old"));
+        sampler.flush(0);
+        assertEquals(Map.of(), rows(writer));
+    }
+
+    /** queue / compact / conflate のどれでも、最終的な (icao, 窓) → 行 は同じ */
+    @Test
+    public void ingestModesAgreeOnFinalState() {
+        Random r = new Random(9);
+        List<List<RecvOutputDTO>> drains = new ArrayList<>();
+        long t = 0;
+        for (int d = 0; d < 20; d++) {
+            List<RecvOutputDTO> batch = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                t += r.nextInt(40);
+                batch.add(target(String.format("%06x", r.nextInt(50)), t, "d" + d + "-" + i));
+            }
+            drains.add(batch);
+        }
+
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var compact = new CompactMessageQueue(10_000, 1 << 20);
+        var conflated = new LatestByIcaoBuffer(64);
+        var qw = new LastWriteWins(); var cw = new LastWriteWins(); var lw = new LastWriteWins();
+        var qs = IntervalSampler.builder(qw).queue(queue).eventTime(new EventTimeWindows(W, 60_000)).build();
+        var cs = IntervalSampler.builder(cw).compact(compact).eventTime(new EventTimeWindows(W, 60_000)).build();
+        var ls = IntervalSampler.builder(lw).conflated(conflated).eventTime(new EventTimeWindows(W, 60_000)).build();
+        for (var batch : drains) {
+            queue.addAll(batch);
+            batch.forEach(compact::accept);
+            qs.flush(0); cs.flush(0);
+        }
+        assertEquals(qw.state, cw.state);
+        assertTrue(qw.state.size() > 50, "windows x aircraft: " + qw.state.size());
+
+        // conflate は flush 間隔内で窓をまたいだ古い方を失うので、1行ずつ flush して比べる
+        for (var batch : drains) for (var msg : batch) { conflated.accept(msg); ls.flush(0); }
+        assertEquals(qw.state, lw.state);
+    }
+
+    private static Map<String, String> rows(IntervalSamplerTest.CapturingWriter w) {
+        Map<String, String> m = new HashMap<>();
+        for (var row : w.rows) m.put(row.icao() + "@" + row.bucketStart(), row.dto().getRawJson());
+        return m;
+    }
+
+    private static RecvOutputDTO target(String icao, long receivedAtMillis, String raw) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson(raw)
+                .receivedAt(Instant.ofEpochMilli(receivedAtMillis)).build();
+    }
+
+    /** 書かれた順に上書きした DB の最終状態 */
+    private static final class LastWriteWins implements DatabaseWriter {
+        final Map<String, String> state = new HashMap<>();
+        @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+            state.put(icao24 + "@" + bucketStartMillis, dto.getRawJson());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+
+public class IntervalSamplerTest {
+
+    /** 従来の HashMap<String, RecvOutputDTO> 実装と窓ごとの出力（ICAO→DTO、バケット）が一致すること */
+    @Test
+    public void sameOutputAsStringKeyedDedupe() { assertMatchesLegacy(0); }
+
+    /** 取り出しを小分けにしても（sampling.adaptive の drain chunk）1窓分の結果は同じ */
+    @Test
+    public void chunkedDrainGivesSameOutput() { assertMatchesLegacy(97); }
+
+    private void assertMatchesLegacy(int drainChunk) {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var writer = new CapturingWriter();
+        var sampler = IntervalSampler.builder(writer).queue(queue).windowMillis(30_000).build();
+        sampler.setDrainChunk(drainChunk);
+        Random r = new Random(42);
+
+        // 窓ごとに件数・機数を変え、マップの再利用と拡張の両方を通す
+        int[][] windows = {{10_000, 800}, {200, 50}, {20_000, 9_000}, {0, 0}, {5_000, 3}};
+        for (int[] w : windows) {
+            List<RecvOutputDTO> msgs = generate(r, w[0], w[1]);
+            queue.addAll(msgs);
+            writer.rows.clear();
+            sampler.run();
+
+            Map<String, RecvOutputDTO> expected = legacyDedupe(msgs);
+            assertEquals(expected.size(), writer.rows.size(), "row count");
+            Map<String, RecvOutputDTO> actual = new HashMap<>();
+            for (Row row : writer.rows) {
+                assertTrue(actual.put(row.icao, row.dto) == null, "duplicate upsert " + row.icao);
+            }
+            assertEquals(expected.keySet(), actual.keySet());
+            expected.forEach((icao, dto) -> assertTrue(actual.get(icao) == dto, "latest for " + icao));
+            assertTrue(new HashSet<>(writer.rows.stream().map(Row::bucketStart).toList()).size() <= 1, "one bucket per window");
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    /** 書けなかった窓は失われず、次の flush で元の窓開始時刻のまま先に書き直される */
+    @Test
+    public void failedWindowIsRetriedOnNextFlush() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var writer = new CapturingWriter();
+        var sampler = IntervalSampler.builder(writer).queue(queue).windowMillis(30_000).build();
+        queue.add(target("aaaaaa", 1));
+        queue.add(target("bbbbbb", 2));
+        writer.failures = 2;
+        assertThrows(RuntimeException.class, () -> sampler.flush(10_000));
+        queue.add(target("aaaaaa", 3));
+        assertThrows(RuntimeException.class, () -> sampler.flush(40_000));   // 書き直しも失敗：新しい窓は取り出さない
+        assertEquals(1, queue.size());
+        assertTrue(writer.rows.isEmpty());
+
+        sampler.flush(70_000);
+        assertEquals(List.of("aaaaaa@0", "bbbbbb@0", "aaaaaa@60000"),
+                writer.rows.stream().map(r -> r.icao() + "@" + r.bucketStart()).toList());
+        assertEquals("{\"n\":3}", writer.rows.get(2).dto().getRawJson());
+        writer.rows.clear();
+        sampler.flush(100_000);                                         // 書き直しは1回だけ
+        assertTrue(writer.rows.isEmpty());
+    }
+
+    /** 受け渡し口と窓の決め方はちょうど1つずつ */
+    @Test
+    public void builderRequiresOneHandoffAndOneWindowMode() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var writer = new CapturingWriter();
+        assertThrows(IllegalArgumentException.class, () -> IntervalSampler.builder(writer).windowMillis(30_000).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> IntervalSampler.builder(writer).queue(queue).ring(new SpscRingBuffer<>(16)).windowMillis(30_000).build());
+        assertThrows(IllegalArgumentException.class, () -> IntervalSampler.builder(writer).queue(queue).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> IntervalSampler.builder(writer).queue(queue).windowMillis(30_000).eventTime(new EventTimeWindows(30_000, 0)).build());
+        assertThrows(IllegalArgumentException.class, () -> IntervalSampler.builder(writer).windowMillis(0));
+    }
+
+    private static RecvOutputDTO target(String icao, int n) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson("{\"n\":" + n + "}").build();
+    }
+
+    private static Map<String, RecvOutputDTO> legacyDedupe(List<RecvOutputDTO> batch) {
+        Map<String, RecvOutputDTO> latestByIcao = new HashMap<>();
+        for (var msg : batch) {
+            if (!"target".equals(msg.getMessageType().orElse(""))) continue;
+            msg.getIcao24().ifPresent(icao -> latestByIcao.put(icao, msg));
+        }
+        return latestByIcao;
+    }
+
+    /** 大文字・小文字・大小混在・非16進・ICAOなし・target 以外を混ぜる */
+    static List<RecvOutputDTO> generate(Random r, int count, int aircraft) {
+        List<RecvOutputDTO> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = r.nextInt(100);
+            var b = new RecvOutputDTO.Builder().rawJson("{\"n\":" + i + "}");
+            if (kind < 3) b.messageType("position_token").positionToken("tok-" + i);
+            else if (kind < 5) b.messageType("status");
+            else if (kind < 6) b.messageType("target");                      // ICAO なし
+            else {
+                String hex = String.format("%06x", 0x800000 + r.nextInt(Math.max(aircraft, 1)));
+                String icao = switch (r.nextInt(10)) {
+                    case 0 -> hex.toUpperCase();
+                    case 1 -> "~" + hex.substring(1);                        // TIS-B 等の非ICAO
+                    case 2 -> Character.toUpperCase(hex.charAt(0)) + hex.substring(1) + "a"; // 7桁
+                    case 3 -> hex.substring(0, 3).toUpperCase() + hex.substring(3);  // 大小混在になり得る
+                    default -> hex;
+                };
+                b.messageType("target").icao24(icao);
+            }
+            out.add(b.build());
+        }
+        return out;
+    }
+
+    record Row(String icao, long bucketStart, RecvOutputDTO dto) {}
+
+    static final class CapturingWriter implements DatabaseWriter {
+        final List<Row> rows = new ArrayList<>();
+        int failures;                                   // この回数だけ upsertAll を失敗させる
+        @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+            rows.add(new Row(icao24, bucketStartMillis, dto));
+        }
+        @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+            if (failures > 0) { failures--; throw new RuntimeException("db down"); }
+            DatabaseWriter.super.upsertAll(bucketStartMillis, dtos);
+        }
+    }
+}
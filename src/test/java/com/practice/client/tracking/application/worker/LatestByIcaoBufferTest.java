@@ -0,0 +1,57 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+public class LatestByIcaoBufferTest {
+
+    @Test
+    public void keepsOnlyLatestTargetPerIcao() {
+        var buf = new LatestByIcaoBuffer(16);
+        buf.accept(target("abc123", 1));
+        buf.accept(target("abc123", 2));
+        buf.accept(target("def456", 3));
+        buf.accept(new RecvOutputDTO.Builder().messageType("status").rawJson("{}").build());
+        buf.accept(new RecvOutputDTO.Builder().messageType("target").rawJson("{}").build());
+
+        Map<String, RecvOutputDTO> snap = buf.swap();
+        assertEquals(2, snap.size());
+        assertEquals("2", snap.get("abc123").getRawJson());
+        assertEquals(0, buf.swap().size());
+    }
+
+    /** 受信中に swap しても、各機体の最後の更新がどこかの窓に必ず残ること */
+    @Test
+    public void concurrentSwapLosesNoFinalUpdate() throws Exception {
+        var buf = new LatestByIcaoBuffer(1024);
+        int aircraft = 500, perAircraft = 400;
+        Thread producer = new Thread(() -> {
+            for (int n = 0; n < perAircraft; n++)
+                for (int a = 0; a < aircraft; a++) buf.accept(target(String.format("%06x", a), n));
+        });
+        producer.start();
+
+        Map<String, Integer> lastSeen = new HashMap<>();
+        while (producer.isAlive()) collect(buf.swap(), lastSeen);
+        producer.join();
+        collect(buf.swap(), lastSeen);
+
+        assertEquals(aircraft, lastSeen.size());
+        lastSeen.values().forEach(v -> assertTrue(v == perAircraft - 1, "final update lost: " + v));
+    }
+
+    private static void collect(Map<String, RecvOutputDTO> snap, Map<String, Integer> lastSeen) {
+        snap.forEach((icao, dto) -> lastSeen.merge(icao, Integer.parseInt(dto.getRawJson()), Math::max));
+    }
+
+    private static RecvOutputDTO target(String icao, int seq) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson(String.valueOf(seq)).build();
+    }
+}
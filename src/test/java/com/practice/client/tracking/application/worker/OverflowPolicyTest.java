@@ -0,0 +1,168 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+public class OverflowPolicyTest {
+    @TempDir Path dir;
+
+    /** Deque でないキューでも最古が捨てられる */
+    @Test
+    public void dropOldestWorksOnAnyBlockingQueue() {
+        var q = new ArrayBlockingQueue<Integer>(3);
+        OverflowPolicy<Integer> p = OverflowPolicy.dropOldest();
+        for (int i = 0; i < 5; i++) assertTrue(p.offer(q, i));
+        assertEquals(List.of(2, 3, 4), new ArrayList<>(q));
+    }
+
+    @Test
+    public void dropNewestAndBlockKeepQueuedItems() {
+        var q = new LinkedBlockingQueue<Integer>(2);
+        OverflowPolicy<Integer> newest = OverflowPolicy.dropNewest(), block = OverflowPolicy.block(20);
+        assertTrue(newest.offer(q, 0));
+        assertTrue(newest.offer(q, 1));
+        assertFalse(newest.offer(q, 2));
+        long t0 = System.nanoTime();
+        assertFalse(block.offer(q, 3));                              // 消費者がいないので待ってから捨てる
+        assertTrue(System.nanoTime() - t0 >= 15_000_000L);
+        assertEquals(List.of(0, 1), new ArrayList<>(q));
+    }
+
+    /** 同じ機体の古い行だけが消え、最新は末尾に入る。同じ機体が無ければ最古を捨てる */
+    @Test
+    public void conflateReplacesSameKey() {
+        var q = new LinkedBlockingQueue<String>(3);
+        OverflowPolicy<String> p = OverflowPolicy.conflate(s -> s.substring(0, 1));
+        for (String s : List.of("a1", "b1", "c1", "b2")) assertTrue(p.offer(q, s));
+        assertEquals(List.of("a1", "c1", "b2"), new ArrayList<>(q));
+        assertTrue(p.offer(q, "d1"));
+        assertEquals(List.of("c1", "b2", "d1"), new ArrayList<>(q));
+    }
+
+    /** 溢れた分はファイルを経由して、折り返しをまたいでも受信順のまま全件届く（戻すのは間引きの取り出し側） */
+    @Test
+    public void spillReplaysInOrderWithoutLoss() throws IOException {
+        var q = new LinkedBlockingDeque<RecvOutputDTO>(4);
+        var writer = new IntervalSamplerTest.CapturingWriter();
+        try (var spill = new SpillToDiskPolicy<>(dir.resolve("spill.bin"), 16_384, SpillToDiskPolicy.recvOutputCodec(TargetFields.NONE))) {
+            var sampler = IntervalSampler.builder(writer).queue(q).replayFrom(spill).windowMillis(30_000).build();
+            List<Integer> out = new ArrayList<>();
+            int next = 0;
+            for (int round = 0; round < 60; round++) {
+                int burst = round < 30 ? 7 : 3;                           // 前半は消費より速く積み、後半で追いつく
+                for (int i = 0; i < burst; i++) assertTrue(spill.offer(q, line(next++)));
+                out.addAll(flush(sampler, writer));
+            }
+            while (spill.pending() > 0 || !q.isEmpty()) out.addAll(flush(sampler, writer));
+            assertEquals(next, out.size());
+            for (int i = 0; i < next; i++) assertEquals(i, (int) out.get(i));
+            assertTrue(spill.spilled() > 100, "spilled=" + spill.spilled());
+            assertEquals(0, spill.usedBytes());
+        }
+        assertFalse(Files.exists(dir.resolve("spill.bin")));            // 空で閉じたら消す
+    }
+
+    /** close 時に残った行はファイルに残し、次に開いたときに続きから戻す */
+    @Test
+    public void spillKeepsPendingLinesAcrossRestart() throws IOException {
+        Path file = dir.resolve("restart.bin");
+        var q = new ArrayBlockingQueue<String>(2);
+        try (var spill = new SpillToDiskPolicy<>(file, 2048, STRINGS)) {
+            for (int i = 0; i < 10; i++) assertTrue(spill.offer(q, "line-" + i));
+            assertEquals(8, spill.pending());
+        }
+        assertTrue(Files.exists(file));
+        q.clear();
+        List<String> out = new ArrayList<>();
+        try (var spill = new SpillToDiskPolicy<>(file, 2048, STRINGS)) {
+            assertEquals(8, spill.pending());
+            assertTrue(spill.offer(q, "line-10"));                       // 残っている行を追い越さない
+            while (spill.replay(q) > 0 || !q.isEmpty()) out.add(q.poll());
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 2; i <= 10; i++) expected.add("line-" + i);
+        assertEquals(expected, out);
+        // 開いたままプロセスが落ちた（close しない）ファイルは戻さない
+        try (var spill = new SpillToDiskPolicy<>(file, 2048, STRINGS)) {
+            for (int i = 0; i < 5; i++) spill.offer(q, "x" + i);
+            try (var crashed = new SpillToDiskPolicy<>(dir.resolve("restart.bin"), 2048, STRINGS)) {
+                assertEquals(0, crashed.pending());
+            }
+        }
+    }
+
+    /** 1回 flush して書かれた行の番号（ICAO24 は行番号の16進）を行番号順に返す */
+    private static List<Integer> flush(IntervalSampler sampler, IntervalSamplerTest.CapturingWriter writer) {
+        writer.rows.clear();
+        sampler.run();
+        List<Integer> ids = new ArrayList<>();
+        for (var row : writer.rows) ids.add(Integer.parseInt(row.icao(), 16));
+        ids.sort(null);                                                  // 1窓内の書き込み順は決めない
+        return ids;
+    }
+
+    private static RecvOutputDTO line(int n) {
+        String icao = String.format("%06x", n);
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao)
+                .rawJson("{\"target\":{\"icao_address\":\"" + icao + "\"}}").receivedAt(Instant.now()).build();
+    }
+
+    /** 領域も一杯なら新しい方を捨てる（それまでの分は失わない） */
+    @Test
+    public void spillDropsNewestWhenFileIsFull() throws IOException {
+        var q = new ArrayBlockingQueue<String>(1);
+        try (var spill = new SpillToDiskPolicy<>(dir.resolve("full.bin"), 1024, STRINGS)) {
+            String big = "x".repeat(300);
+            assertTrue(spill.offer(q, "first"));
+            for (int i = 0; i < 3; i++) assertTrue(spill.offer(q, big + i));
+            assertFalse(spill.offer(q, big + "lost"));
+            assertEquals("first", q.poll());
+            for (int i = 0; i < 3; i++) { spill.replay(q); assertEquals(big + i, q.poll()); }
+            assertEquals(0, spill.pending());
+        }
+    }
+
+    /** 受信行の Codec は受信時刻と生の行を保ち、解析し直した項目も戻る */
+    @Test
+    public void recvOutputCodecRoundTrips() {
+        var codec = SpillToDiskPolicy.recvOutputCodec(TargetFields.NONE);
+        RecvOutputDTO dto = new RecvOutputDTO.Builder().rawJson("{\"target\":{\"icao_address\":\"4CA2B1\"}}")
+                .receivedAt(Instant.ofEpochSecond(1_758_412_800L, 123_456_789)).build();
+        ByteBuffer buf = ByteBuffer.allocate(codec.size(dto));
+        codec.write(dto, buf);
+        buf.flip();
+        RecvOutputDTO back = codec.read(buf, buf.remaining());
+        assertEquals(dto.getRawJson(), back.getRawJson());
+        assertEquals(dto.getReceivedAt(), back.getReceivedAt());
+        assertEquals("4CA2B1", back.getIcao24().orElse(null));
+    }
+
+    private static final SpillToDiskPolicy.Codec<String> STRINGS = new SpillToDiskPolicy.Codec<>() {
+        @Override public int size(String s) { return s.getBytes(StandardCharsets.UTF_8).length; }
+        @Override public void write(String s, ByteBuffer out) { out.put(s.getBytes(StandardCharsets.UTF_8)); }
+        @Override public String read(ByteBuffer in, int len) {
+            byte[] b = new byte[len];
+            in.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    };
+}
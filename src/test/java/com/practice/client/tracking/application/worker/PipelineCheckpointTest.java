@@ -0,0 +1,136 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.ChangeSuppressingWriter;
+
+public class PipelineCheckpointTest {
+    private static final long W = 30_000;
+
+    /** キューの行は最後の position_token までを残し、そのトークンから受け直す */
+    @Test
+    public void keepsQueuedLinesUpToLastToken() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        queue.add(target("aaaaaa", 1_000));
+        queue.add(token("tok-1", 1_001));
+        queue.add(target("bbbbbb", 1_002));            // トークンより後：再開後に受け直す
+        var before = new PipelineCheckpoint(List.of(queue), List.of(sampler(queue, null)), null, TargetFields.NONE);
+        byte[] cp = before.capture();
+
+        var restoredQueue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var after = new PipelineCheckpoint(List.of(restoredQueue), List.of(sampler(restoredQueue, null)), null, TargetFields.NONE);
+        var r = after.restore(cp);
+
+        assertEquals("tok-1", r.positionToken());
+        assertEquals(2, r.queuedLines());
+        RecvOutputDTO first = restoredQueue.poll();
+        assertEquals("aaaaaa", first.getIcao24().orElse(null));
+        assertEquals(Instant.ofEpochMilli(1_000), first.getReceivedAt());
+        assertEquals("tok-1", restoredQueue.poll().getPositionToken().orElse(null));
+        assertNull(restoredQueue.poll());
+    }
+
+    /** トークンが間引き済みなら、キューの行はすべてその後なので残さない。トークンが無ければ全行を残す */
+    @Test
+    public void usesSampledTokenWhenQueueHasNone() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var sampler = sampler(queue, null);
+        var cp = new PipelineCheckpoint(List.of(queue), List.of(sampler), null, TargetFields.NONE);
+        queue.add(target("aaaaaa", 1_000));
+        assertNull(restoreInto(cp.capture()).positionToken());
+        assertEquals(1, restoreInto(cp.capture()).queuedLines());
+
+        queue.add(token("tok-1", 1_001));
+        sampler.flush(0);
+        queue.add(target("bbbbbb", 1_002));
+        var r = restoreInto(cp.capture());
+        assertEquals("tok-1", r.positionToken());
+        assertEquals(0, r.queuedLines());
+    }
+
+    /** 窓の時刻（古い行は採らない・閉じた窓は遅着）と書き込み抑止の記録が再起動後も効く */
+    @Test
+    public void restoresEventWindowsAndSuppressedWrites() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        var db = new IntervalSamplerTest.CapturingWriter();
+        var suppress = new ChangeSuppressingWriter(db, ChangeSuppressingWriter.Mode.SKIP, 100, 600_000, 0);
+        var sampler = IntervalSampler.builder(suppress).queue(queue).eventTime(new EventTimeWindows(W, 5_000)).build();
+        queue.add(target("aaaaaa", 10_000));
+        queue.add(target("bbbbbb", 40_000));           // ウォーターマーク 35,000 → 窓 0 を閉じる
+        sampler.flush(0);
+        queue.add(target("aaaaaa", 42_000));
+        sampler.flush(0);
+        byte[] cp = new PipelineCheckpoint(List.of(queue), List.of(sampler), suppress, TargetFields.NONE).capture();
+
+        var db2 = new IntervalSamplerTest.CapturingWriter();
+        var suppress2 = new ChangeSuppressingWriter(db2, ChangeSuppressingWriter.Mode.SKIP, 100, 600_000, 0);
+        var windows2 = new EventTimeWindows(W, 5_000);
+        var queue2 = new LinkedBlockingDeque<RecvOutputDTO>();
+        var sampler2 = IntervalSampler.builder(suppress2).queue(queue2).eventTime(windows2).build();
+        var r = new PipelineCheckpoint(List.of(queue2), List.of(sampler2), suppress2, TargetFields.NONE).restore(cp);
+        assertEquals(2, r.windowRows());
+        assertEquals(2, r.writerEntries());
+
+        queue2.add(target("aaaaaa", 20_000));          // 閉じた窓 0
+        queue2.add(target("bbbbbb", 39_000));          // 窓 30,000 の記録より古い
+        sampler2.flush(0);
+        assertEquals(List.of(), db2.rows);
+        assertEquals(1L, windows2.lateDropped());
+
+        suppress2.upsert("aaaaaa", 30_000, target("aaaaaa", 42_000));   // 前回書いた内容と同じ
+        assertEquals(List.of(), db2.rows);
+        assertEquals(1L, suppress2.skipped());
+    }
+
+    /** シャード数を変えて戻しても、行と窓は今のシャードへ振り分け直す */
+    @Test
+    public void reroutesToCurrentShards() {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        for (int i = 0; i < 20; i++) queue.add(target(String.format("%06x", i * 7919), 1_000 + i));
+        byte[] cp = new PipelineCheckpoint(List.of(queue), List.of(sampler(queue, null)), null, TargetFields.NONE).capture();
+
+        List<BlockingQueue<RecvOutputDTO>> queues = List.of(new LinkedBlockingDeque<>(), new LinkedBlockingDeque<>());
+        List<IntervalSampler> samplers = new ArrayList<>();
+        for (var q : queues) samplers.add(sampler(q, null));
+        new PipelineCheckpoint(queues, samplers, null, TargetFields.NONE).restore(cp);
+
+        assertEquals(20, queues.get(0).size() + queues.get(1).size());
+        for (int k = 0; k < 2; k++) {
+            for (var dto : queues.get(k)) assertEquals(k, ShardedSink.shardOf(dto, 2));
+        }
+    }
+
+    private static PipelineCheckpoint.Restored restoreInto(byte[] cp) {
+        var q = new LinkedBlockingDeque<RecvOutputDTO>();
+        return new PipelineCheckpoint(List.of(q), List.of(sampler(q, null)), null, TargetFields.NONE).restore(cp);
+    }
+
+    private static IntervalSampler sampler(BlockingQueue<RecvOutputDTO> queue, EventTimeWindows windows) {
+        var writer = new IntervalSamplerTest.CapturingWriter();
+        var b = IntervalSampler.builder(writer).queue(queue);
+        return (windows != null ? b.eventTime(windows) : b.windowMillis(W)).build();
+    }
+
+    private static RecvOutputDTO target(String icao, long receivedAtMillis) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao)
+                .rawJson("{\"target\":{\"icao_address\":\"" + icao + "\"}}")
+                .receivedAt(Instant.ofEpochMilli(receivedAtMillis)).build();
+    }
+
+    private static RecvOutputDTO token(String token, long receivedAtMillis) {
+        return new RecvOutputDTO.Builder().messageType("position_token").positionToken(token)
+                .rawJson("{\"position_token\":\"" + token + "\"}")
+                .receivedAt(Instant.ofEpochMilli(receivedAtMillis)).build();
+    }
+}
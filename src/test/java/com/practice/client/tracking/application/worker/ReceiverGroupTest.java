@@ -0,0 +1,94 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
+import com.practice.client.tracking.infrastructure.persistence.token.TokenStore;
+import com.sun.net.httpserver.HttpServer;
+
+public class ReceiverGroupTest {
+    private static final int PER_SHARD = 200;
+
+    private HttpServer server;
+    private String url;
+
+    /** region クエリごとに別の機体群とトークンを返すスタンドイン */
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stream", ex -> {
+            String q = ex.getRequestURI().getQuery();
+            String region = q.replaceAll(".*region=([a-z]+).*", "$1");
+            int base = switch (region) { case "eu" -> 0x100000; case "na" -> 0x200000; default -> 0x300000; };
+            ex.sendResponseHeaders(200, 0);
+            try (OutputStream out = ex.getResponseBody()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < PER_SHARD; i++) {
+                    sb.append("{\"target\":{\"icao_address\":\"").append(Integer.toHexString(base + i)).append("\"}}\n");
+                }
+                sb.append("{\"position_token\":\"").append(region).append("-1\"}\n");
+                out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stream";
+    }
+
+    @AfterEach
+    public void tearDown() { server.stop(0); }
+
+    @Test
+    public void shardsRunOnVirtualThreadsAndMergeIntoOneSink() throws Exception {
+        Set<String> icaos = ConcurrentHashMap.newKeySet();
+        AtomicBoolean allVirtual = new AtomicBoolean(true);
+        IngestSink sink = msg -> {
+            if (!Thread.currentThread().isVirtual()) allVirtual.set(false);
+            msg.getIcao24().ifPresent(icaos::add);
+        };
+
+        Map<String, MemoryTokenStore> stores = new ConcurrentHashMap<>();
+        List<ReceiverGroup.Shard> shards = new ArrayList<>();
+        for (String region : List.of("eu", "na", "ap")) {
+            var store = new MemoryTokenStore();
+            stores.put(region, store);
+            var input = new RecvInputDTO.Builder().streamUrl(url).bearerToken("t")
+                    .extraParams(Map.of("region", region)).build();
+            shards.add(new ReceiverGroup.Shard(region, input, store));
+        }
+
+        var group = new ReceiverGroup(shards, TrackingStreamClient::new, sink, new AtomicBoolean(false));
+        group.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (icaos.size() < 3 * PER_SHARD && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        while (stores.values().stream().anyMatch(s -> s.token == null) && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        group.close();
+
+        assertEquals(3 * PER_SHARD, icaos.size());
+        assertTrue(allVirtual.get(), "receivers should run on virtual threads");
+        stores.forEach((region, store) -> assertEquals(region + "-1", store.token));
+    }
+
+    static final class MemoryTokenStore implements TokenStore {
+        volatile String token;
+        @Override public Optional<String> load() { return Optional.ofNullable(token); }
+        @Override public void save(String t) { token = t; }
+    }
+}
@@ -0,0 +1,70 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.infrastructure.http.StreamStalledException;
+import com.practice.client.tracking.infrastructure.http.StreamStatusException;
+
+public class ReconnectPolicyTest {
+    private final ReconnectPolicy policy = new ReconnectPolicy(100, 1_000);
+
+    @Test
+    public void firstRetryAfterDropIsImmediate() {
+        assertEquals(0, policy.delayMillis(1, new IOException("Stream closed by server")));
+        assertEquals(0, policy.delayMillis(1, new StreamStalledException(30_000)));
+    }
+
+    /** 2回目以降は [ceil/2, ceil] に収まり、ceil は倍々で max に張り付く */
+    @Test
+    public void backoffGrowsWithJitterAndIsCapped() {
+        long[] ceilings = {100, 200, 400, 800, 1_000, 1_000};
+        for (int i = 0; i < ceilings.length; i++) {
+            for (int n = 0; n < 200; n++) {
+                long d = policy.delayMillis(i + 2, new IOException("x"));
+                assertTrue(d >= ceilings[i] / 2 && d <= ceilings[i], "attempt " + (i + 2) + ": " + d);
+            }
+        }
+    }
+
+    /** すぐ切れた接続は復旧とみなさず、失敗回数を続きから数える（1行返して切るサーバに待ちなしで繋ぎ直さない） */
+    @Test
+    public void shortLivedConnectionKeepsCountingFailures() {
+        var p = new ReconnectPolicy(100, 1_000, 5_000);
+        assertEquals(1, p.attemptAfter(0, -1));                    // 初回接続に失敗
+        assertEquals(2, p.attemptAfter(1, 50));                    // 1行受けてすぐ切れた
+        assertEquals(3, p.attemptAfter(2, 4_999));
+        assertTrue(p.delayMillis(p.attemptAfter(1, 50), new IOException("Stream closed by server")) >= 50);
+        assertEquals(1, p.attemptAfter(3, 5_000));                 // 十分つながっていた：数え直して即時再接続
+        assertEquals(0, p.delayMillis(p.attemptAfter(3, 5_000), new IOException("Stream closed by server")));
+    }
+
+    @Test
+    public void throttledStatusHonoursRetryAfter() {
+        var tooMany = status(429, "5");
+        assertFalse(policy.isFatal(tooMany));
+        assertTrue(policy.delayMillis(1, tooMany) >= 5_000);
+        long d = policy.delayMillis(1, status(503, null));
+        assertTrue(d >= 50 && d <= 100, "503 without Retry-After: " + d);
+    }
+
+    @Test
+    public void clientErrorsAreFatal() {
+        assertTrue(policy.isFatal(status(401, null)));
+        assertTrue(policy.isFatal(status(404, null)));
+        assertFalse(policy.isFatal(new IOException("reset")));
+    }
+
+    private static StreamStatusException status(int code, String retryAfter) {
+        Map<String, List<String>> h = retryAfter == null ? Map.of() : Map.of("Retry-After", List.of(retryAfter));
+        return new StreamStatusException(code, HttpHeaders.of(h, (k, v) -> true));
+    }
+}
@@ -0,0 +1,58 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+public class SamplerTaskTest {
+
+    /** 書き込みが1回失敗しても、定期実行は止まらず次の flush が失敗した窓を書き直してから続きを書く */
+    @Test
+    public void nextFlushRunsAfterWriterThrows() throws Exception {
+        var queue = new LinkedBlockingDeque<RecvOutputDTO>();
+        AtomicInteger calls = new AtomicInteger();
+        List<String> written = new CopyOnWriteArrayList<>();
+        DatabaseWriter writer = (icao, bucket, dto) -> {
+            if (calls.incrementAndGet() == 1) throw new RuntimeException("Failed to upsert 1 rows into t");
+            written.add(icao);
+        };
+        long failuresBefore = PipelineMetrics.global().getFlushFailures();
+        var sch = Executors.newSingleThreadScheduledExecutor();
+        try {
+            queue.add(target("aaaaaa"));
+            sch.scheduleWithFixedDelay(SamplerTask.guard(IntervalSampler.builder(writer).queue(queue).windowMillis(30_000).build()), 0, 5, TimeUnit.MILLISECONDS);
+            await(() -> calls.get() >= 1);
+            queue.add(target("bbbbbb"));
+            await(() -> written.contains("bbbbbb"));
+        } finally {
+            sch.shutdownNow();
+        }
+        assertTrue(PipelineMetrics.global().getFlushFailures() > failuresBefore);
+        assertEquals(List.of("aaaaaa", "bbbbbb"), written);
+    }
+
+    private static void await(BooleanSupplier cond) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!cond.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    private static RecvOutputDTO target(String icao) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson("{}").build();
+    }
+}
@@ -0,0 +1,99 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.Icao24;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.http.TrackingStreamClient;
+
+public class ShardedSamplerTest {
+
+    /** シャードに分けても、窓ごとの出力（ICAO→最新の DTO）と bucket_start は単一の間引きと同じ */
+    @Test
+    public void sameOutputAsSingleSampler() {
+        Random r = new Random(7);
+        var single = new LinkedBlockingDeque<RecvOutputDTO>();
+        var singleWriter = new SyncWriter();
+        var reference = IntervalSampler.builder(singleWriter).queue(single).windowMillis(30_000).build();
+
+        var shardWriter = new SyncWriter();
+        List<IngestSink> sinks = new ArrayList<>();
+        List<IntervalSampler> samplers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            var q = new LinkedBlockingDeque<RecvOutputDTO>();
+            sinks.add(q::add);
+            samplers.add(IntervalSampler.builder(shardWriter).queue(q).windowMillis(30_000).build());
+        }
+        var sink = ShardedSink.of(sinks);
+        try (var sharded = new ShardedSampler(samplers)) {
+            long now = 1_000_000;
+            for (int w = 0; w < 5; w++, now += 30_000) {
+                List<RecvOutputDTO> msgs = IntervalSamplerTest.generate(r, 20_000, 2_000);
+                single.addAll(msgs);
+                msgs.forEach(sink::accept);
+                singleWriter.rows.clear(); shardWriter.rows.clear();
+                reference.flush(now);
+                sharded.flush(now);
+                assertEquals(singleWriter.byIcao(), shardWriter.byIcao());
+                assertEquals(Set.of(IntervalSampler.floorTo(30_000, now)), shardWriter.buckets());
+            }
+        }
+    }
+
+    /** 同じ ICAO24 はいつも同じシャードへ。compact の Fields 経路と DTO 経路でも一致する */
+    @Test
+    public void shardOfIsStableAndSpreads() {
+        int[] perShard = new int[8];
+        for (int code = 0; code < 80_000; code++) perShard[ShardedSampler.shardOf(code, null, 8)]++;
+        for (int n : perShard) assertTrue(n > 8_000 && n < 12_000, "uneven: " + n);
+        assertEquals(ShardedSampler.shardOf(0x4840d6, null, 8), ShardedSampler.shardOf(0x4840d6, null, 8));
+        assertEquals(0, ShardedSampler.shardOf(Icao24.NONE, null, 8));
+        assertTrue(ShardedSink.of(List.of(new CompactMessageQueue(10, 1024), new CompactMessageQueue(10, 1024)))
+                instanceof TrackingStreamClient.LineConsumer);
+    }
+
+    /** 1つのシャードが失敗しても他は書き終え、例外は呼び出し側へ届く */
+    @Test
+    public void failureInOneShardIsRethrownAfterOthersFinish() {
+        var ok = new SyncWriter();
+        DatabaseWriter broken = (icao, bucket, dto) -> { throw new RuntimeException("db down"); };
+        var q0 = new LinkedBlockingDeque<RecvOutputDTO>();
+        var q1 = new LinkedBlockingDeque<RecvOutputDTO>();
+        q0.addAll(IntervalSamplerTest.generate(new Random(1), 1_000, 100));
+        q1.addAll(IntervalSamplerTest.generate(new Random(2), 1_000, 100));
+        try (var sharded = new ShardedSampler(List.of(IntervalSampler.builder(ok).queue(q0).windowMillis(30_000).build(),
+                IntervalSampler.builder(broken).queue(q1).windowMillis(30_000).build()))) {
+            var e = assertThrows(RuntimeException.class, () -> sharded.flush(0));
+            assertEquals("db down", e.getMessage());
+            assertTrue(!ok.rows.isEmpty());
+        }
+    }
+
+    /** 複数シャードから同時に呼ばれる記録用の writer */
+    private static final class SyncWriter implements DatabaseWriter {
+        final List<IntervalSamplerTest.Row> rows = new ArrayList<>();
+        @Override public synchronized void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+            rows.add(new IntervalSamplerTest.Row(icao24, bucketStartMillis, dto));
+        }
+        Map<String, RecvOutputDTO> byIcao() {
+            Map<String, RecvOutputDTO> m = new HashMap<>();
+            for (var row : rows) assertTrue(m.put(row.icao(), row.dto()) == null, "duplicate upsert " + row.icao());
+            return m;
+        }
+        Set<Long> buckets() { return new HashSet<>(rows.stream().map(IntervalSamplerTest.Row::bucketStart).toList()); }
+    }
+}
@@ -0,0 +1,92 @@
+package com.practice.client.tracking.application.worker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class SpscRingBufferTest {
+
+    @Test
+    public void offerRefusesWhenFullAndDrainsInOrder() {
+        var ring = new SpscRingBuffer<Integer>(5);                 // 8 に切り上げ
+        assertEquals(8, ring.capacity());
+        for (int i = 0; i < 8; i++) assertTrue(ring.offer(i));
+        assertFalse(ring.offer(8));
+        assertEquals(8, ring.size());
+
+        List<Integer> out = new ArrayList<>();
+        assertEquals(3, ring.drainTo(out, 3));
+        assertEquals(List.of(0, 1, 2), out);
+        for (int i = 8; i < 11; i++) assertTrue(ring.offer(i));       // 周回して書く
+        out.clear();
+        assertEquals(8, ring.drainTo(out));
+        assertEquals(List.of(3, 4, 5, 6, 7, 8, 9, 10), out);
+        assertEquals(0, ring.drainTo(out));
+    }
+
+    @Test
+    public void overwriteDropsExactlyTheOldest() {
+        var ring = new SpscRingBuffer<Integer>(4);
+        for (int i = 0; i < 10; i++) ring.overwrite(i);
+        assertEquals(6L, ring.overwritten());
+        List<Integer> out = new ArrayList<>();
+        ring.drainTo(out);
+        assertEquals(List.of(6, 7, 8, 9), out);
+    }
+
+    /** 生産者と消費者を同時に走らせても、受け取った列は昇順で重複なく、受け取り＋上書き＝送信数 */
+    @Test
+    public void concurrentOverwriteIsExact() throws Exception {
+        var ring = new SpscRingBuffer<Long>(64);
+        final long total = 500_000;
+        var done = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            for (long i = 0; i < total; i++) ring.overwrite(i);
+            done.set(true);
+        });
+        List<Long> batch = new ArrayList<>();
+        long received = 0, last = -1;
+        producer.start();
+        while (true) {
+            boolean finished = done.get();
+            batch.clear();
+            if (ring.drainTo(batch, 17) == 0) Thread.yield();     // 1コアでも生産者に譲る
+            for (long v : batch) {
+                assertTrue(v > last, "out of order: " + v + " after " + last);
+                last = v;
+            }
+            received += batch.size();
+            if (finished && batch.isEmpty()) break;
+        }
+        producer.join();
+        assertEquals(total - 1, last);                               // 最新は必ず残る
+        assertEquals(total, received + ring.overwritten());
+        assertTrue(received > 0);
+    }
+
+    /** offer（背圧）では1件も失わない */
+    @Test
+    public void concurrentOfferLosesNothing() throws Exception {
+        var ring = new SpscRingBuffer<Long>(32);
+        final long total = 200_000;
+        Thread producer = new Thread(() -> {
+            for (long i = 0; i < total; i++) while (!ring.offer(i)) Thread.yield();
+        });
+        producer.start();
+        List<Long> batch = new ArrayList<>();
+        long expected = 0;
+        while (expected < total) {
+            batch.clear();
+            if (ring.drainTo(batch) == 0) Thread.yield();
+            for (long v : batch) assertEquals(expected++, v);
+        }
+        producer.join();
+        assertEquals(0L, ring.overwritten());
+    }
+}
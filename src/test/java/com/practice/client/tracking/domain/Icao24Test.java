@@ -0,0 +1,25 @@
+package com.practice.client.tracking.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class Icao24Test {
+
+    @Test
+    public void roundTripsCanonicalForms() {
+        for (String s : new String[] {"000000", "abc123", "ABC123", "ffffff", "FFFFFF", "123456", "00beef"}) {
+            int code = Icao24.encode(s);
+            assertEquals(s, Icao24.decode(code));
+        }
+        assertEquals(0xABC123, Icao24.address(Icao24.encode("ABC123")));
+        assertEquals(Icao24.address(Icao24.encode("abc123")), Icao24.address(Icao24.encode("ABC123")));
+    }
+
+    @Test
+    public void rejectsNonCanonicalForms() {
+        for (String s : new String[] {null, "", "abc12", "abc1234", "AbC123", "~abc12", "ghijkl", " abc12"}) {
+            assertEquals(Icao24.NONE, Icao24.encode(s), String.valueOf(s));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.practice.client.tracking.infrastructure.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+public class SegmentArchiveTest {
+    private static final long T0 = 1_758_412_800_000L;   // 2025-09-21T00:00:00Z
+    private static final int LINES = 20_000;
+
+    @TempDir Path dir;
+
+    /** 10ms おきに 20,000 行（100行ごとに position_token）。小さいブロック・セグメントで回転させる */
+    private void record() throws IOException {
+        try (var w = new SegmentArchiveWriter(dir, 64 * 1024, 4 * 1024, 60_000)) {
+            for (int i = 0; i < LINES; i++) w.append(line(i));
+        }
+    }
+
+    private static RecvOutputDTO line(int i) {
+        String json = i % 100 == 99 ? "{\"position_token\":\"tok-" + i + "\"}"
+                : "{\"target\":{\"icao_address\":\"" + String.format("%06X", 0x400000 + i % 300) + "\",\"seq\":" + i + "}}";
+        var b = new RecvOutputDTO.Builder().rawJson(json).receivedAt(Instant.ofEpochMilli(T0 + i * 10L));
+        if (i % 100 == 99) b.messageType("position_token").positionToken("tok-" + i);
+        else b.messageType("target").icao24(String.format("%06X", 0x400000 + i % 300));
+        return b.build();
+    }
+
+    @Test
+    public void replaysTimeRangeAcrossRotatedSegments() throws IOException {
+        record();
+        var reader = new SegmentArchiveReader(dir);
+        assertTrue(reader.segments().size() > 1, "segments=" + reader.segments().size());
+
+        List<RecvOutputDTO> out = new ArrayList<>();
+        long n = reader.replay(T0 + 50_000, T0 + 60_000, out::add);   // i = 5000..5999
+        assertEquals(1_000, n);
+        assertEquals(1_000, out.size());
+        for (int k = 0; k < out.size(); k++) {
+            RecvOutputDTO expected = line(5_000 + k), actual = out.get(k);
+            assertEquals(expected.getRawJson(), actual.getRawJson());
+            assertEquals(expected.getReceivedAt(), actual.getReceivedAt());
+            assertEquals(expected.getIcao24(), actual.getIcao24());
+            assertEquals(expected.getPositionToken(), actual.getPositionToken());
+        }
+    }
+
+    @Test
+    public void replaysAfterPositionToken() throws IOException {
+        record();
+        List<RecvOutputDTO> out = new ArrayList<>();
+        long n = new SegmentArchiveReader(dir).replayAfterToken("tok-12399", T0 + 130_000, out::add);
+        assertEquals(600, n);                                            // i = 12400..12999
+        assertTrue(out.get(0).getRawJson().contains("\"seq\":12400"), out.get(0).getRawJson());
+        assertEquals(0, new SegmentArchiveReader(dir).replayAfterToken("unknown", Long.MAX_VALUE, m -> {}));
+    }
+
+    /** トークンより前のブロックは索引だけで飛ばす（壊れていても展開しないので読める） */
+    @Test
+    public void seeksToTokenBlockWithoutDecodingEarlierBlocks() throws IOException {
+        record();
+        var reader = new SegmentArchiveReader(dir);
+        Path first = reader.segments().get(0);
+        try (var ch = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 0}), ArchiveFormat.BLOCK_HEADER + 8);   // 先頭ブロックの本体を壊す
+        }
+        assertThrows(IOException.class, () -> reader.replay(Long.MIN_VALUE, Long.MAX_VALUE, m -> {}));
+        List<RecvOutputDTO> out = new ArrayList<>();
+        assertEquals(600, reader.replayAfterToken("tok-12399", T0 + 130_000, out::add));
+        assertTrue(out.get(0).getRawJson().contains("\"seq\":12400"), out.get(0).getRawJson());
+    }
+
+    /** 保持数を超えたセグメントは切り替えのたびに索引ごと消え、残りは新しい方 */
+    @Test
+    public void retentionKeepsNewestSegments() throws IOException {
+        try (var w = new SegmentArchiveWriter(dir, 8 * 1024, 4 * 1024, 60_000, 3, 0)) {
+            for (int i = 0; i < LINES; i++) w.append(line(i));
+        }
+        var reader = new SegmentArchiveReader(dir);
+        assertEquals(3, reader.segments().size());
+        try (var files = Files.list(dir)) { assertEquals(6, files.count()); }                // .ndz と .idx
+        List<RecvOutputDTO> out = new ArrayList<>();
+        reader.replay(Long.MIN_VALUE, Long.MAX_VALUE, out::add);
+        assertTrue(out.size() < LINES, "replayed " + out.size());
+        assertEquals("tok-19999", out.get(out.size() - 1).getPositionToken().orElse(null));   // 最新の行は残る
+    }
+
+    /** 索引が無くても、末尾ブロックが途中で切れていても、残っているブロックは読める */
+    @Test
+    public void toleratesMissingIndexAndTruncatedTail() throws IOException {
+        record();
+        var reader = new SegmentArchiveReader(dir);
+        List<Path> segments = reader.segments();
+        Path last = segments.get(segments.size() - 1);
+        Files.delete(ArchiveFormat.indexOf(last));
+        try (var ch = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 10);
+        }
+        long all = reader.replay(Long.MIN_VALUE, Long.MAX_VALUE, m -> {});
+        assertTrue(all < LINES && all > LINES - 1_000, "replayed " + all);
+
+        Path first = segments.get(0);                                  // 索引はあるが本体が切れている
+        try (var ch = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 10);
+        }
+        long rest = reader.replay(Long.MIN_VALUE, Long.MAX_VALUE, m -> {});
+        assertTrue(rest < all && rest > all - 1_000, "replayed " + rest);
+    }
+}
@@ -0,0 +1,118 @@
+package com.practice.client.tracking.infrastructure.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+public class ChangeSuppressingWriterTest {
+
+    @Test
+    public void skipsUnchangedAndWritesChangedRows() {
+        var db = new Recording();
+        var w = new ChangeSuppressingWriter(db, ChangeSuppressingWriter.Mode.SKIP, 100, 600_000, 0);
+        w.upsertSnapshot(window(0, row("aaaaaa", 1_000, 35000), row("bbbbbb", 1_000, 12000)));
+        w.upsertSnapshot(window(30_000, row("aaaaaa", 31_000, 35000), row("bbbbbb", 31_000, 12500)));
+
+        assertEquals(List.of("aaaaaa@0", "bbbbbb@0", "bbbbbb@30000"), db.upserts);
+        assertEquals(1L, w.skipped());
+        assertEquals(List.of(), db.touches);
+    }
+
+    @Test
+    public void touchModeAdvancesReceivedAtOfLastWrittenRow() {
+        var db = new Recording();
+        var w = new ChangeSuppressingWriter(db, ChangeSuppressingWriter.Mode.TOUCH, 100, 600_000, 0);
+        w.upsertSnapshot(window(0, row("aaaaaa", 1_000, 35000)));
+        w.upsertSnapshot(window(30_000, row("aaaaaa", 31_000, 35000)));
+        w.upsertSnapshot(window(60_000, row("aaaaaa", 61_000, 35000)));
+
+        assertEquals(List.of("aaaaaa@0"), db.upserts);
+        assertEquals(List.of("aaaaaa@0=31000", "aaaaaa@0=61000"), db.touches);   // 行は最後に書いた窓のまま
+        assertEquals(2L, w.touched());
+    }
+
+    @Test
+    public void forcedRefreshRewritesUnchangedRows() {
+        var db = new Recording();
+        var w = new ChangeSuppressingWriter(db, ChangeSuppressingWriter.Mode.SKIP, 100, 600_000, 60_000);
+        for (int k = 0; k < 5; k++) w.upsertSnapshot(window(k * 30_000L, row("aaaaaa", k * 30_000L + 1_000, 35000)));
+        assertEquals(List.of("aaaaaa@0", "aaaaaa@60000", "aaaaaa@120000"), db.upserts);
+    }
+
+    @Test
+    public void lruAndTtlForgetAircraft() {
+        var db = new Recording();
+        var w = new ChangeSuppressingWriter(db, ChangeSuppressingWriter.Mode.SKIP, 2, 60_000, 0);
+        w.upsertSnapshot(window(0, row("aaaaaa", 1_000, 1), row("bbbbbb", 1_000, 1), row("cccccc", 1_000, 1)));
+        assertEquals(2, w.size());
+        assertEquals(1L, w.evicted());
+        assertEquals(List.of("bbbbbb", "cccccc"), w.icaos());
+
+        w.upsertSnapshot(window(30_000, row("bbbbbb", 40_000, 1)));                  // bbbbbb を見た（変化なし）
+        w.upsertSnapshot(window(90_000, row("bbbbbb", 100_000, 1)));                 // cccccc は 99 秒見ていない
+        assertEquals(List.of("bbbbbb"), w.icaos());
+        assertEquals(1L, w.expired());
+
+        db.upserts.clear();
+        w.upsertSnapshot(window(120_000, row("cccccc", 121_000, 1)));               // 忘れた機体は書き直す
+        assertEquals(List.of("cccccc@120000"), db.upserts);
+    }
+
+    @Test
+    public void failedWritesAreRetriedNextWindow() {
+        var db = new Recording();
+        var w = new ChangeSuppressingWriter(db, ChangeSuppressingWriter.Mode.SKIP, 100, 600_000, 0);
+        db.fail = true;
+        assertThrows(RuntimeException.class, () -> w.upsertSnapshot(window(0, row("aaaaaa", 1_000, 1))));
+        db.fail = false;
+        w.upsertSnapshot(window(30_000, row("aaaaaa", 31_000, 1)));
+        assertEquals(List.of("aaaaaa@30000"), db.upserts);
+    }
+
+    @Test
+    public void withoutTargetFieldsTheRawLineIsCompared() {
+        var db = new Recording();
+        var w = new ChangeSuppressingWriter(db, ChangeSuppressingWriter.Mode.SKIP, 100, 600_000, 0);
+        w.upsertAll(0, List.of(raw("aaaaaa", 1_000, "{\"target\":{\"hex\":\"aaaaaa\",\"alt\":1}}")));
+        w.upsertAll(30_000, List.of(raw("aaaaaa", 31_000, "{\"target\":{\"hex\":\"aaaaaa\",\"alt\":1}}")));
+        w.upsertAll(60_000, List.of(raw("aaaaaa", 61_000, "{\"target\":{\"hex\":\"aaaaaa\",\"alt\":2}}")));
+        assertEquals(List.of("aaaaaa@0", "aaaaaa@60000"), db.upserts);
+    }
+
+    private static WindowSnapshot window(long bucket, RecvOutputDTO... rows) {
+        var s = new WindowSnapshot(rows.length);
+        s.clear(bucket);
+        for (var r : rows) s.add(r.getIcao24().get(), r);
+        return s;
+    }
+
+    private static RecvOutputDTO row(String icao, long receivedAtMillis, double altitude) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson("{\"t\":" + receivedAtMillis + "}")
+                .receivedAt(Instant.ofEpochMilli(receivedAtMillis)).targetValues(new double[] {altitude}).build();
+    }
+
+    private static RecvOutputDTO raw(String icao, long receivedAtMillis, String json) {
+        return new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson(json)
+                .receivedAt(Instant.ofEpochMilli(receivedAtMillis)).build();
+    }
+
+    private static final class Recording implements DatabaseWriter {
+        final List<String> upserts = new ArrayList<>(), touches = new ArrayList<>();
+        boolean fail;
+        @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+            if (fail) throw new RuntimeException("db down");
+            upserts.add(icao24 + "@" + bucketStartMillis);
+        }
+        @Override public void touch(String icao24, long bucketStartMillis, long receivedAtMillis) {
+            touches.add(icao24 + "@" + bucketStartMillis + "=" + receivedAtMillis);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.practice.client.tracking.infrastructure.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/** 組み込み H2 に対してバッチ UPSERT を確認する */
+public class JdbcDatabaseWriterTest {
+    private static final String URL = "jdbc:h2:mem:writer_test;DB_CLOSE_DELAY=-1";
+
+    private Connection keepAlive;
+    private JdbcDatabaseWriter writer;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        keepAlive = DriverManager.getConnection(URL);
+        writer = new JdbcDatabaseWriter(() -> DriverManager.getConnection(URL),
+                JdbcDatabaseWriter.Dialect.fromJdbcUrl(URL), "tracking_position", 100);
+        writer.createTableIfNotExists();
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        try (Statement st = keepAlive.createStatement()) { st.execute("DROP TABLE tracking_position"); }
+        keepAlive.close();
+    }
+
+    @Test
+    public void upsertAllInsertsThenUpdatesByIcaoAndBucket() throws SQLException {
+        writer.upsertAll(60_000, targets(1_234, "v1"));          // バッチ境界をまたぐ件数
+        assertEquals(1_234, count("1=1"));
+
+        writer.upsertAll(60_000, targets(1_234, "v2"));          // 同じキー → 更新
+        assertEquals(1_234, count("1=1"));
+        assertEquals(1_234, count("raw_json LIKE '%v2%'"));
+
+        writer.upsertAll(90_000, targets(10, "v3"));             // 別バケット → 追加
+        assertEquals(1_244, count("1=1"));
+        assertEquals(10, count("bucket_start = 90000"));
+    }
+
+    @Test
+    public void singleUpsertUsesGivenIcao() throws SQLException {
+        var dto = new RecvOutputDTO.Builder().messageType("target").icao24("abc123")
+                .rawJson("{}").receivedAt(Instant.ofEpochMilli(1234)).build();
+        writer.upsert("ABC123", 0, dto);
+        assertEquals(1, count("icao24 = 'ABC123' AND received_at = 1234 AND message_type = 'target'"));
+    }
+
+    /** touch は既存行の received_at だけを進める（無い行・古い時刻は何もしない） */
+    @Test
+    public void touchAdvancesReceivedAtOnly() throws SQLException {
+        var dto = new RecvOutputDTO.Builder().messageType("target").icao24("abc123")
+                .rawJson("{\"v\":1}").receivedAt(Instant.ofEpochMilli(1_000)).build();
+        writer.upsert("abc123", 0, dto);
+        writer.touchAll(3, new String[] {"abc123", "abc123", "def456"}, new long[] {0, 0, 0}, new long[] {5_000, 4_000, 5_000});
+        assertEquals(1, count("icao24 = 'abc123' AND received_at = 5000 AND raw_json LIKE '%\"v\":1%'"));
+        assertEquals(0, count("icao24 = 'def456'"));
+    }
+
+    /** 列形式の窓から数値項目の列も書く（欠損は NULL） */
+    @Test
+    public void snapshotWritesTargetFieldColumns() throws SQLException {
+        var fields = TargetFields.parse("latitude,altitude_baro");
+        var typed = new JdbcDatabaseWriter(() -> DriverManager.getConnection(URL),
+                JdbcDatabaseWriter.Dialect.H2, "tracking_fields", 2, fields);
+        typed.createTableIfNotExists();
+        try {
+            var snapshot = new WindowSnapshot(4);
+            snapshot.clear(30_000);
+            for (int i = 0; i < 5; i++) {
+                var dto = new RecvOutputDTO.Builder().messageType("target").icao24(String.format("%06x", i))
+                        .rawJson("{}").targetValues(new double[] {35.0 + i, i == 3 ? Double.NaN : 1000.0 * i}).build();
+                snapshot.add(dto.getIcao24().get(), dto);
+            }
+            typed.upsertSnapshot(snapshot);
+            try (Statement st = keepAlive.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT icao24, latitude, altitude_baro FROM tracking_fields"
+                         + " WHERE bucket_start = 30000 ORDER BY icao24")) {
+                for (int i = 0; i < 5; i++) {
+                    rs.next();
+                    assertEquals(35.0 + i, rs.getDouble(2));
+                    rs.getDouble(3);
+                    assertEquals(i == 3, rs.wasNull(), "altitude_baro null for row " + i);
+                }
+            }
+        } finally {
+            try (Statement st = keepAlive.createStatement()) { st.execute("DROP TABLE tracking_fields"); }
+        }
+    }
+
+    /** 既存のテーブルに無い target.fields の列は起動時に足す（既存の行は NULL） */
+    @Test
+    public void addsMissingTargetColumnsToExistingTable() throws SQLException {
+        writer.upsert("abc123", 0, new RecvOutputDTO.Builder().messageType("target").icao24("abc123").rawJson("{}").build());
+        var typed = new JdbcDatabaseWriter(() -> DriverManager.getConnection(URL),
+                JdbcDatabaseWriter.Dialect.H2, "tracking_position", 100, TargetFields.parse("latitude,altitude_baro"));
+        typed.createTableIfNotExists();
+        typed.createTableIfNotExists();                          // 2回目は何も足さない
+        var dto = new RecvOutputDTO.Builder().messageType("target").icao24("def456").rawJson("{}")
+                .targetValues(new double[] {35.5, 12000}).build();
+        typed.upsert("def456", 0, dto);
+        assertEquals(1, count("icao24 = 'def456' AND latitude = 35.5 AND altitude_baro = 12000"));
+        assertEquals(1, count("icao24 = 'abc123' AND latitude IS NULL"));
+    }
+
+    /** バインド中の RuntimeException もロールバックし、失敗として数える */
+    @Test
+    public void binderFailureIsRolledBackAndCounted() throws SQLException {
+        long before = PipelineMetrics.global().getUpsertFailures();
+        var noIcao = new RecvOutputDTO.Builder().messageType("target").rawJson("{}").build();
+        assertThrows(RuntimeException.class, () -> writer.upsertAll(0, List.of(targets(1, "v1").get(0), noIcao)));
+        assertEquals(before + 1, PipelineMetrics.global().getUpsertFailures());
+        assertEquals(0, count("1 = 1"));
+    }
+
+    /** 列が足りなければ起動時の確認で失敗させ、足したあとは通す */
+    @Test
+    public void checkTargetColumnsRejectsTableWithoutThem() {
+        var typed = new JdbcDatabaseWriter(() -> DriverManager.getConnection(URL),
+                JdbcDatabaseWriter.Dialect.H2, "tracking_position", 100, TargetFields.parse("latitude"));
+        var e = assertThrows(IllegalStateException.class, typed::checkTargetColumns);
+        assertTrue(e.getMessage().contains("latitude"));
+        typed.createTableIfNotExists();
+        typed.checkTargetColumns();
+        writer.checkTargetColumns();                             // target.fields なしなら確かめない
+    }
+
+    private int count(String where) throws SQLException {
+        try (Statement st = keepAlive.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM tracking_position WHERE " + where)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static List<RecvOutputDTO> targets(int n, String version) {
+        List<RecvOutputDTO> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String icao = String.format("%06x", i);
+            out.add(new RecvOutputDTO.Builder().messageType("target").icao24(icao)
+                    .rawJson("{\"target\":{\"icao_address\":\"" + icao + "\",\"v\":\"" + version + "\"}}").build());
+        }
+        return out;
+    }
+}
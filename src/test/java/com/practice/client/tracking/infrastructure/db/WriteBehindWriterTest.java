@@ -0,0 +1,143 @@
+package com.practice.client.tracking.infrastructure.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.WindowSnapshot;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+public class WriteBehindWriterTest {
+
+    @Test
+    public void blockPolicyWritesEverySnapshotInOrderPerIcao() {
+        var db = new RecordingWriter(2);
+        var wb = new WriteBehindWriter(db, 3, 2, WriteBehindWriter.OverflowPolicy.BLOCK);
+        for (int w = 0; w < 20; w++) wb.upsertAll(w * 1_000L, window(200, w));
+        wb.close();
+
+        assertEquals(20 * 200, db.rows.get());
+        assertEquals(200, db.latest.size());
+        db.latest.values().forEach(v -> assertEquals("19", v));      // 同じ ICAO は積んだ順に書かれる
+        assertEquals(0, wb.pendingSnapshots());
+    }
+
+    @Test
+    public void coalescePolicyNeverBlocksAndKeepsLatestPerIcao() throws Exception {
+        var gate = new CountDownLatch(1);
+        var db = new RecordingWriter(0) {
+            @Override public void upsertAll(long bucket, Collection<RecvOutputDTO> dtos) {
+                try { gate.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                super.upsertAll(bucket, dtos);
+            }
+        };
+        var wb = new WriteBehindWriter(db, 1, 2, WriteBehindWriter.OverflowPolicy.COALESCE);
+        long t0 = System.nanoTime();
+        for (int w = 0; w < 50; w++) wb.upsertAll(w * 1_000L, window(100, w));   // DB は止まっている
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) < 1_000, "enqueue must not block");
+        assertTrue(wb.pendingSnapshots() <= 2);
+        assertTrue(wb.coalescedRows() > 0);
+        Thread.sleep(20);
+        assertTrue(wb.lagMillis() >= 20, "lag should grow while the DB is stalled");
+
+        gate.countDown();
+        wb.close();
+        assertEquals(100, db.latest.size());
+        db.latest.values().forEach(v -> assertEquals("49", v));
+    }
+
+    private static List<RecvOutputDTO> window(int aircraft, int version) {
+        List<RecvOutputDTO> out = new ArrayList<>(aircraft);
+        for (int i = 0; i < aircraft; i++) {
+            out.add(new RecvOutputDTO.Builder().messageType("target").icao24(String.format("%06x", i))
+                    .rawJson(String.valueOf(version)).build());
+        }
+        return out;
+    }
+
+    /** 書き込みスレッドでの失敗は PipelineMetrics に数え、後続のスナップショットは書き続ける */
+    @Test
+    public void backgroundFailuresAreCounted() {
+        var db = new RecordingWriter(0);
+        var calls = new AtomicInteger();
+        DatabaseWriter flaky = new DatabaseWriter() {
+            @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) { db.upsert(icao24, bucketStartMillis, dto); }
+            @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+                if (calls.incrementAndGet() == 1) throw new RuntimeException("Failed to upsert " + dtos.size() + " rows");
+                db.upsertAll(bucketStartMillis, dtos);
+            }
+        };
+        long before = PipelineMetrics.global().getWriteBehindFailures();
+        var wb = new WriteBehindWriter(flaky, 1, 4, WriteBehindWriter.OverflowPolicy.BLOCK);
+        for (int w = 0; w < 3; w++) wb.upsertAll(w * 1_000L, window(10, w));
+        wb.close();
+
+        assertEquals(1, wb.failedSnapshots());
+        assertEquals(before + 1, PipelineMetrics.global().getWriteBehindFailures());
+        assertEquals(2 * 10, db.rows.get());
+    }
+
+    /** サンプラーの列形式の窓は、レーンごとの WindowSnapshot として delegate.upsertSnapshot に届く */
+    @Test
+    public void snapshotsReachDelegateAsColumnsPerLane() {
+        Map<String, Double> altitude = new ConcurrentHashMap<>();
+        AtomicInteger fallbacks = new AtomicInteger();
+        DatabaseWriter columnar = new DatabaseWriter() {
+            @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) { fallbacks.incrementAndGet(); }
+            @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) { fallbacks.incrementAndGet(); }
+            @Override public void upsertSnapshot(WindowSnapshot s) {
+                assertEquals(5_000L, s.bucketStart());
+                for (int i = 0; i < s.size(); i++) altitude.put(s.icao24(i), s.value(0, i));
+            }
+        };
+        var wb = new WriteBehindWriter(columnar, 3, 4, WriteBehindWriter.OverflowPolicy.BLOCK);
+        var snapshot = new WindowSnapshot(16);
+        snapshot.clear(5_000);
+        for (int i = 0; i < 100; i++) {
+            String icao = String.format("%06x", i);
+            snapshot.add(icao, new RecvOutputDTO.Builder().messageType("target").icao24(icao).rawJson("{}")
+                    .receivedAt(Instant.ofEpochMilli(5_000 + i)).targetValues(new double[] {i * 100}).build());
+        }
+        wb.upsertSnapshot(snapshot);
+        snapshot.clear(10_000);                                   // サンプラーは戻った直後に使い回す
+        wb.close();
+
+        assertEquals(0, fallbacks.get());
+        assertEquals(100, altitude.size());
+        for (int i = 0; i < 100; i++) assertEquals(i * 100.0, altitude.get(String.format("%06x", i)));
+    }
+
+    /** ICAO ごとの最後に書かれた値と総行数を記録（任意の遅延つき） */
+    static class RecordingWriter implements DatabaseWriter {
+        final Map<String, String> latest = new ConcurrentHashMap<>();
+        final AtomicInteger rows = new AtomicInteger();
+        private final long delayMillis;
+        RecordingWriter(long delayMillis) { this.delayMillis = delayMillis; }
+
+        @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) {
+            latest.compute(icao24, (k, prev) -> {
+                if (prev != null && Integer.parseInt(prev) > Integer.parseInt(dto.getRawJson()))
+                    throw new AssertionError("out of order write for " + k);
+                return dto.getRawJson();
+            });
+            rows.incrementAndGet();
+        }
+
+        @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+            if (delayMillis > 0) try { Thread.sleep(delayMillis); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            DatabaseWriter.super.upsertAll(bucketStartMillis, dtos);
+        }
+    }
+}
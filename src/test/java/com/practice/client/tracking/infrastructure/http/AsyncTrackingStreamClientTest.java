@@ -0,0 +1,126 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.sun.net.httpserver.HttpServer;
+
+/** JDK 内蔵の HttpServer を実APIの代わりに立てて非同期受信を確認する */
+public class AsyncTrackingStreamClientTest {
+    private static final int LINES = 20_000;
+
+    private HttpServer server;
+    private AsyncTrackingStreamClient client;
+    private String baseUrl;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stream", ex -> {
+            ex.sendResponseHeaders(200, 0);                       // chunked
+            try (OutputStream out = ex.getResponseBody()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < LINES; i++) {
+                    sb.append(i % 100 == 0 ? "{\"position_token\":\"tok-" + i + "\"}"
+                            : "{\"target\":{\"icao_address\":\"" + String.format("%06x", i) + "\",\"seq\":" + i + "}}")
+                      .append(i % 3 == 0 ? "\r\n" : "\n");
+                    if (sb.length() > 3_000) { out.write(sb.toString().getBytes(StandardCharsets.UTF_8)); out.flush(); sb.setLength(0); }
+                }
+                out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/silent", ex -> {
+            ex.sendResponseHeaders(200, 0);
+            ex.getResponseBody().write("{\"status\":\"connected\"}\n".getBytes(StandardCharsets.UTF_8));
+            ex.getResponseBody().flush();
+            try { release.await(10, TimeUnit.SECONDS); } catch (InterruptedException ignore) {}
+            ex.close();
+        });
+        server.createContext("/busy", ex -> { ex.sendResponseHeaders(503, -1); ex.close(); });
+        server.setExecutor(handlers);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = new AsyncTrackingStreamClient();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        release.countDown();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    /** 小さい下流キューをゆっくり消費しても、行は欠けず順序どおりに届く（背圧で待たされる） */
+    @Test
+    public void deliversEveryLineInOrderThroughSmallQueue() throws Exception {
+        var queue = new ArrayBlockingQueue<RecvOutputDTO>(8);
+        var sub = client.subscribe(input("/stream"), queue::offer);
+
+        List<RecvOutputDTO> received = new ArrayList<>(LINES);
+        while (received.size() < LINES) {
+            RecvOutputDTO m = queue.poll(10, TimeUnit.SECONDS);
+            if (m == null) break;
+            received.add(m);
+            if (received.size() % 2_000 == 0) Thread.sleep(20);  // 遅い消費者
+        }
+        sub.done().get(10, TimeUnit.SECONDS);
+
+        assertEquals(LINES, received.size());
+        for (int i = 0; i < LINES; i++) {
+            RecvOutputDTO m = received.get(i);
+            if (i % 100 == 0) assertEquals("tok-" + i, m.getPositionToken().orElse(null));
+            else assertEquals(String.format("%06x", i), m.getIcao24().orElse(null));
+        }
+    }
+
+    @Test
+    public void nonOkStatusFailsTheSubscription() throws Exception {
+        var sub = client.subscribe(input("/busy"), m -> true);
+        try {
+            sub.done().get(10, TimeUnit.SECONDS);
+            throw new AssertionError("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage().contains("503"));
+        }
+    }
+
+    /** 接続が黙ったら idleTimeout で購読が StreamStalledException で終わる */
+    @Test
+    public void silentStreamIsAbortedAsStalled() throws Exception {
+        var stallClient = new AsyncTrackingStreamClient(NdjsonLineParser.Mode.STREAMING, Duration.ofMillis(300));
+        try {
+            var sub = stallClient.subscribe(input("/silent"), m -> true);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> sub.done().get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof StreamStalledException, String.valueOf(e.getCause()));
+        } finally { stallClient.close(); }
+    }
+
+    private RecvInputDTO input(String path) {
+        return new RecvInputDTO.Builder().streamUrl(baseUrl + path).bearerToken("test").build();
+    }
+}
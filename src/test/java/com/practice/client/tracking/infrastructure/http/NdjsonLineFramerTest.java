@@ -0,0 +1,78 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class NdjsonLineFramerTest {
+
+    @Test
+    public void matchesReadLineForAllTerminators() throws IOException {
+        String body = "{\"a\":1}\n{\"b\":\"日本語\"}\r\n\n{\"c\":3}\r{\"d\":4}\r\r\n{\"e\":5}";
+        assertEquals(readLines(body), frame(body, 256, 1));
+    }
+
+    /** 小さいバッファ・細切れの read で行がバッファ境界や "\r\n" の間で割れても同じ結果になること */
+    @Test
+    public void matchesReadLineAcrossChunkBoundaries() throws IOException {
+        Random r = new Random(3);
+        String[] terminators = {"\n", "\r\n", "\r"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            sb.append("{\"target\":{\"icao_address\":\"").append(Integer.toHexString(r.nextInt(0xFFFFFF)))
+              .append("\",\"pad\":\"").append("x".repeat(r.nextInt(600))).append("\"}}")
+              .append(terminators[r.nextInt(terminators.length)]);
+        }
+        String body = sb.toString();
+        List<String> expected = readLines(body);
+        for (int chunk : new int[] {1, 7, 64, 4096}) {
+            assertEquals(expected, frame(body, 256, chunk), "chunk=" + chunk);
+        }
+    }
+
+    @Test
+    public void emptyStreamHasNoLines() throws IOException {
+        assertEquals(List.of(), frame("", 256, 16));
+    }
+
+    private static List<String> readLines(String body) throws IOException {
+        List<String> out = new ArrayList<>();
+        try (var br = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) out.add(line);
+        }
+        return out;
+    }
+
+    private static List<String> frame(String body, int capacity, int maxChunk) throws IOException {
+        List<String> out = new ArrayList<>();
+        try (var f = new NdjsonLineFramer(new ChunkedInputStream(body.getBytes(StandardCharsets.UTF_8), maxChunk), capacity)) {
+            while (f.next()) out.add(new String(f.buffer(), f.start(), f.length(), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    /** 1回の read で高々 maxChunk バイトしか返さない（ネットワーク受信の再現） */
+    private static final class ChunkedInputStream extends InputStream {
+        private final byte[] data; private final int maxChunk; private int pos;
+        ChunkedInputStream(byte[] data, int maxChunk) { this.data = data; this.maxChunk = maxChunk; }
+        @Override public int read() { return pos < data.length ? data[pos++] & 0xFF : -1; }
+        @Override public int read(byte[] b, int off, int len) {
+            if (pos >= data.length) return -1;
+            int n = Math.min(Math.min(len, maxChunk), data.length - pos);
+            System.arraycopy(data, pos, b, off, n); pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+
+public class NdjsonLineParserTest {
+
+    private static final NdjsonLineParser TREE = new NdjsonLineParser(NdjsonLineParser.Mode.TREE);
+    private static final NdjsonLineParser STREAMING = new NdjsonLineParser(NdjsonLineParser.Mode.STREAMING);
+
+    /** 境界ケース：キー順・重複キー・型違い・壊れた行など */
+    private static final List<String> EDGE_LINES = List.of(
+            "{\"target\":{\"icao_address\":\"A1B2C3\",\"latitude\":35.1,\"longitude\":139.7}}",
+            "{\"target\":{\"hex\":\"abc123\",\"alt\":[1,2,{\"x\":3}]}}",
+            "{\"target\":{\"icao24\":\"00beef\"}}",
+            "{\"target\":{\"icao_address\":\" \",\"hex\":\"\",\"icao24\":\"c0ffee\"}}",
+            "{\"target\":{\"icao_address\":null}}",
+            "{\"target\":{\"icao_address\":12345}}",
+            "{\"target\":{\"icao_address\":1.50}}",
+            "{\"target\":{\"icao_address\":{\"a\":1}}}",
+            "{\"target\":null}",
+            "{\"target\":\"abc\"}",
+            "{\"target\":{\"hex\":\"aaaaaa\"},\"target\":{\"hex\":\"bbbbbb\"}}",
+            "{\"status\":{\"code\":\"ok\"},\"target\":{\"hex\":\"ffffff\"}}",
+            "{\"target\":{\"hex\":\"ffffff\"},\"position_token\":\"tok-1\"}",
+            "{\"position_token\":\"tok-2\"}",
+            "{\"position_token\":42}",
+            "{\"position_token\":null}",
+            "{\"status\":\"connected\"}",
+            "{\"other\":{\"target\":{\"hex\":\"x\"}}}",
+            "{\"target\":{\"hex\":\"abc123\"}} trailing",
+            "{\"target\":{\"hex\":\"abc123\"},",
+            "{\"target\":{\"hex\":\"abc123\"",
+            "[{\"target\":{}}]",
+            "\"target\"",
+            "123",
+            "",
+            "   ",
+            "not json");
+
+    @Test
+    public void streamingMatchesTreeOnEdgeCases() {
+        for (String line : EDGE_LINES) {
+            assertSame(parse(TREE, line), parse(STREAMING, line), line);
+        }
+    }
+
+    @Test
+    public void streamingMatchesTreeOnGeneratedFeed() {
+        for (String line : generateFeed(5_000, 1_000, 7L)) {
+            assertSame(parse(TREE, line), parse(STREAMING, line), line);
+        }
+    }
+
+    /** バイトスライス入力（前後に別の行が詰まったバッファ）でも String 入力と同じ結果になること */
+    @Test
+    public void byteSliceMatchesString() {
+        for (String line : EDGE_LINES) {
+            byte[] utf8 = line.getBytes(StandardCharsets.UTF_8);
+            byte[] buf = new byte[utf8.length + 8];
+            Arrays.fill(buf, (byte) '{');
+            System.arraycopy(utf8, 0, buf, 4, utf8.length);
+            for (NdjsonLineParser p : List.of(TREE, STREAMING)) {
+                var b = new RecvOutputDTO.Builder().rawJson(buf, 4, utf8.length);
+                p.parse(buf, 4, utf8.length, b);
+                RecvOutputDTO fromBytes = b.build();
+                assertSame(parse(p, line), fromBytes, line);
+                assertEquals(line, fromBytes.getRawJson());
+            }
+        }
+    }
+
+    /** 数値項目は TREE/STREAMING で同じ値になり、無い・数値でない・target 以外は NaN */
+    @Test
+    public void extractsTargetFieldsIdentically() {
+        var fields = TargetFields.parse("latitude,longitude,altitude_baro,speed,heading,alt");
+        var tree = new NdjsonLineParser(NdjsonLineParser.Mode.TREE, fields);
+        var streaming = new NdjsonLineParser(NdjsonLineParser.Mode.STREAMING, fields);
+        List<String> lines = new ArrayList<>(EDGE_LINES);
+        lines.addAll(generateFeed(2_000, 100, 5L));
+        lines.add("{\"target\":{\"latitude\":1,\"latitude\":\"x\"}}");
+        lines.add("{\"target\":{\"speed\":1},\"target\":{\"heading\":2}}");
+        for (String line : lines) {
+            byte[] utf8 = line.getBytes(StandardCharsets.UTF_8);
+            var a = new NdjsonLineParser.Fields();
+            var b = new NdjsonLineParser.Fields();
+            tree.parse(utf8, 0, utf8.length, a);
+            streaming.parse(utf8, 0, utf8.length, b);
+            assertEquals(fields.size(), b.valueCount());
+            for (int i = 0; i < fields.size(); i++) {
+                assertEquals(Double.doubleToLongBits(a.value(i)), Double.doubleToLongBits(b.value(i)), fields.name(i) + ": " + line);
+            }
+        }
+
+        String line = "{\"target\":{\"hex\":\"abc123\",\"latitude\":35.5,\"altitude_baro\":12000,\"speed\":\"fast\"}}";
+        var b = new RecvOutputDTO.Builder().rawJson(line);
+        streaming.parse(line, b);
+        RecvOutputDTO dto = b.build();
+        assertEquals(35.5, dto.getTargetValue(0));
+        assertTrue(Double.isNaN(dto.getTargetValue(1)));
+        assertEquals(12000.0, dto.getTargetValue(2));
+        assertTrue(Double.isNaN(dto.getTargetValue(3)));
+        assertEquals(0, parse(STREAMING, line).getTargetValueCount());
+    }
+
+    private static RecvOutputDTO parse(NdjsonLineParser p, String line) {
+        var b = new RecvOutputDTO.Builder().rawJson(line).receivedAt(Instant.EPOCH);
+        p.parse(line, b);
+        return b.build();
+    }
+
+    private static void assertSame(RecvOutputDTO expected, RecvOutputDTO actual, String line) {
+        assertEquals(expected.getMessageType(), actual.getMessageType(), "messageType: " + line);
+        assertEquals(expected.getPositionToken(), actual.getPositionToken(), "positionToken: " + line);
+        assertEquals(expected.getIcao24(), actual.getIcao24(), "icao24: " + line);
+    }
+
+    /** 実フィードに近い形の target/status/position_token 行を生成する */
+    static List<String> generateFeed(int count, int aircraft, long seed) {
+        Random r = new Random(seed);
+        List<String> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = r.nextInt(100);
+            if (kind < 2) {
+                out.add("{\"position_token\":\"tok-" + i + "\"}");
+            } else if (kind < 4) {
+                out.add("{\"status\":{\"code\":\"ok\",\"message\":\"heartbeat\"}}");
+            } else {
+                int icao = 0x400000 + r.nextInt(aircraft);
+                out.add("{\"target\":{\"icao_address\":\"" + Integer.toHexString(icao).toUpperCase()
+                        + "\",\"timestamp\":\"2025-09-21T00:00:" + String.format("%02d", i % 60) + "Z\""
+                        + ",\"latitude\":" + (r.nextDouble() * 180 - 90)
+                        + ",\"longitude\":" + (r.nextDouble() * 360 - 180)
+                        + ",\"altitude_baro\":" + r.nextInt(45_000)
+                        + ",\"speed\":" + r.nextInt(600)
+                        + ",\"heading\":" + r.nextInt(360)
+                        + ",\"flight_number\":\"JL" + r.nextInt(1000) + "\""
+                        + ",\"callsign\":\"JAL" + r.nextInt(1000) + "\""
+                        + ",\"squawk\":\"" + r.nextInt(7777) + "\""
+                        + ",\"on_ground\":false,\"vertical_rate\":" + (r.nextInt(4000) - 2000)
+                        + ",\"collection_type\":\"terrestrial\",\"ingestion_time\":\"2025-09-21T00:00:00Z\"}}");
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,96 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.MessageType;
+
+public class RawLineFilterTest {
+    private static final String TOKEN = "{\"position_token\":\"tok-1\"}";
+    private static final String STATUS = "{\"status\":{\"code\":\"ok\"}}";
+
+    @Test
+    public void passAllAcceptsEverything() {
+        assertTrue(RawLineFilter.ALL.isPassAll());
+        assertTrue(test(RawLineFilter.ALL, "not json"));
+    }
+
+    /** 種別で絞っても position_token は通す */
+    @Test
+    public void filtersByTypeButAlwaysKeepsPositionTokens() {
+        var f = RawLineFilter.builder().types(List.of(MessageType.TARGET)).build();
+        assertTrue(test(f, target("4840d6", 35.5, 139.5, 10_000)));
+        assertTrue(test(f, TOKEN));
+        assertFalse(test(f, STATUS));
+        assertFalse(test(f, "{\"other\":1}"));
+        // キーの前後に空白があっても同じ
+        assertTrue(test(f, "{ \"target\" : {\"hex\":\"abc\"}}"));
+        assertFalse(test(f, "{\"status\":\"target\"}"));                // 値としての "target" はキーではない
+    }
+
+    @Test
+    public void filtersByIcaoPrefixIgnoringCase() {
+        var f = RawLineFilter.builder().icaoPrefixes(List.of("48", "4B")).build();
+        assertTrue(test(f, target("4840D6", 0, 0, 0)));
+        assertTrue(test(f, target("4bab12", 0, 0, 0)));
+        assertFalse(test(f, target("a1b2c3", 0, 0, 0)));
+        assertFalse(test(f, "{\"target\":{\"latitude\":1}}"));                      // ICAO24 なし
+        assertTrue(test(f, "{\"target\":{\"icao_address\":\"\",\"hex\":\"48aaaa\"}}")); // 空なら次のキー（解析と同じ）
+        assertTrue(test(f, STATUS));                                                 // target 以外は種別の条件だけ
+    }
+
+    @Test
+    public void filtersByAltitudeAndBoundingBox() {
+        var f = RawLineFilter.builder().altitude("altitude_baro", 1_000, 20_000)
+                .boundingBox(34.0, 138.0, 36.5, 140.5).build();
+        assertTrue(test(f, target("4840d6", 35.68, 139.77, 12_000)));
+        assertFalse(test(f, target("4840d6", 35.68, 139.77, 25_000)));
+        assertFalse(test(f, target("4840d6", 33.9, 139.77, 12_000)));
+        assertFalse(test(f, target("4840d6", 35.68, 141.0, 12_000)));
+        assertTrue(test(f, target("4840d6", 36.5, 138.0, 1_000)));                  // 境界は含む
+        assertFalse(test(f, "{\"target\":{\"hex\":\"4840d6\",\"latitude\":35.6}}"));  // 値が無ければ落とす
+        assertFalse(test(f, "{\"target\":{\"hex\":\"4840d6\",\"latitude\":\"35.6\",\"longitude\":139.7,\"altitude_baro\":5000}}"));
+        assertTrue(test(f, "{\"target\":{\"hex\":\"4840d6\",\"latitude\":3.568E1,\"longitude\":1.3977e2,\"altitude_baro\":5e3}}"));
+        assertFalse(test(f, "{\"target\":{\"hex\":\"4840d6\",\"latitude\":3.568E1,\"longitude\":-1.3977e2,\"altitude_baro\":5e3}}"));
+        assertTrue(test(f, TOKEN));
+
+        var dateline = RawLineFilter.builder().boundingBox(-10, 170, 10, -170).build();
+        assertTrue(test(dateline, target("aaaaaa", 0, 175, 0)));
+        assertTrue(test(dateline, target("aaaaaa", 0, -175, 0)));
+        assertFalse(test(dateline, target("aaaaaa", 0, 0, 0)));
+    }
+
+    /** 生のバイトから読んだ数値が Double.parseDouble と一致する */
+    @Test
+    public void numberMatchesParseDouble() {
+        Random r = new Random(3);
+        byte[] key = "\"v\"".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < 10_000; i++) {
+            String v = switch (i % 4) {
+                case 0 -> String.valueOf(r.nextInt(100_000) - 50_000);
+                case 1 -> String.valueOf(r.nextDouble() * 360 - 180);
+                case 2 -> String.format("%.6f", r.nextDouble() * 90);
+                default -> String.valueOf(r.nextGaussian() * 1e-7);
+            };
+            byte[] line = ("{\"v\": " + v + "}").getBytes(StandardCharsets.US_ASCII);
+            assertEquals(Double.parseDouble(v), RawLineFilter.number(line, 0, line.length, key), v);
+        }
+    }
+
+    private static boolean test(RawLineFilter f, String line) {
+        byte[] padded = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);    // スライスの範囲外は見ない
+        return f.test(padded, 2, padded.length - 4);
+    }
+
+    private static String target(String icao, double lat, double lon, double alt) {
+        return "{\"target\":{\"icao_address\":\"" + icao + "\",\"latitude\":" + lat + ",\"longitude\":" + lon
+                + ",\"altitude_baro\":" + alt + ",\"collection_type\":\"terrestrial\"}}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.practice.client.tracking.infrastructure.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.practice.client.tracking.domain.TargetFields;
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.sun.net.httpserver.HttpServer;
+
+/** 接続の維持・無通信検知・ステータス判定を JDK 内蔵の HttpServer で確認する */
+public class TrackingStreamClientTest {
+    private HttpServer server;
+    private ExecutorService handlers;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private String baseUrl;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        // 数行送ったあと、接続を閉じずに黙る
+        server.createContext("/silent", ex -> {
+            requests.add(ex.getRequestURI().toString());
+            ex.sendResponseHeaders(200, 0);
+            OutputStream out = ex.getResponseBody();
+            out.write(("{\"target\":{\"hex\":\"abc123\"}}\n{\"position_token\":\"tok-1\"}\n"
+                    + "{\"target\":{\"hex\":\"abc124\"}}\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try { release.await(10, TimeUnit.SECONDS); } catch (InterruptedException ignore) {}
+            ex.close();
+        });
+        server.createContext("/busy", ex -> {
+            requests.add(ex.getRequestURI().toString());
+            ex.getResponseHeaders().add("Retry-After", "2");
+            ex.sendResponseHeaders(503, -1);
+            ex.close();
+        });
+        server.createContext("/forbidden", ex -> { ex.sendResponseHeaders(403, -1); ex.close(); });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    /** position_token を受け取って ctx が変わっても張り直さない */
+    @Test
+    public void keepsConnectionWhenOnlyPositionTokenChanges() throws Exception {
+        var client = new TrackingStreamClient(NdjsonLineParser.Mode.STREAMING, Duration.ofSeconds(5));
+        RecvInputDTO ctx = input("/silent");
+        for (int i = 0; i < 3; i++) {
+            RecvOutputDTO out = client.receive(ctx);
+            if (out.getPositionToken().isPresent()) ctx = ctx.withPositionToken(out.getPositionToken().get());
+        }
+        assertEquals(1, requests.size());
+        client.closeQuietly();
+    }
+
+    /** receiveInto は DTO を作らずに receive と同じ項目を渡す */
+    @Test
+    public void receiveIntoPassesParsedFieldsAndRawSlice() throws Exception {
+        var client = new TrackingStreamClient(NdjsonLineParser.Mode.STREAMING, Duration.ofSeconds(5));
+        RecvInputDTO ctx = input("/silent");
+        List<String> got = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            client.receiveInto(ctx, (buf, off, len, at, f) -> got.add(f.type() + "|" + f.icao24() + "|"
+                    + f.positionToken() + "|" + new String(buf, off, len, StandardCharsets.UTF_8)));
+        }
+        assertEquals(List.of(
+                "TARGET|abc123|null|{\"target\":{\"hex\":\"abc123\"}}",
+                "POSITION_TOKEN|null|tok-1|{\"position_token\":\"tok-1\"}",
+                "TARGET|abc124|null|{\"target\":{\"hex\":\"abc124\"}}"), got);
+        client.closeQuietly();
+    }
+
+    /** フィルタに通らない行は読み飛ばし、position_token は常に通す */
+    @Test
+    public void skipsLinesRejectedByRawFilter() throws Exception {
+        var filter = RawLineFilter.builder().icaoPrefixes(List.of("ABC124")).build();
+        var client = new TrackingStreamClient(NdjsonLineParser.Mode.STREAMING, Duration.ofSeconds(5),
+                TargetFields.NONE, filter);
+        RecvInputDTO ctx = input("/silent");
+        assertEquals("tok-1", client.receive(ctx).getPositionToken().orElse(null));
+        assertEquals("abc124", client.receive(ctx).getIcao24().orElse(null));
+        client.closeQuietly();
+    }
+
+    /** 無通信が続くと StreamStalledException で戻り、次の receive は最新トークン付きで張り直す */
+    @Test
+    public void detectsStallAndResumesFromLastToken() throws Exception {
+        var client = new TrackingStreamClient(NdjsonLineParser.Mode.STREAMING, Duration.ofMillis(300));
+        RecvInputDTO ctx = input("/silent");
+        for (int i = 0; i < 3; i++) {
+            RecvOutputDTO out = client.receive(ctx);
+            if (out.getPositionToken().isPresent()) ctx = ctx.withPositionToken(out.getPositionToken().get());
+        }
+        long t0 = System.nanoTime();
+        final RecvInputDTO stalledCtx = ctx;
+        assertThrows(StreamStalledException.class, () -> client.receive(stalledCtx));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        assertTrue(waited >= 250 && waited < 3_000, "stall detected after " + waited + " ms");
+
+        assertEquals("abc123", client.receive(ctx).getIcao24().orElse(null));
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).contains("position_token=tok-1"), requests.get(1));
+        client.closeQuietly();
+    }
+
+    @Test
+    public void nonOkStatusCarriesRetryHints() {
+        var client = new TrackingStreamClient();
+        var busy = assertThrows(StreamStatusException.class, () -> client.receive(input("/busy")));
+        assertEquals(503, busy.getStatusCode());
+        assertTrue(busy.isRetryable());
+        assertEquals(Duration.ofSeconds(2), busy.getRetryAfter().orElse(null));
+
+        var forbidden = assertThrows(StreamStatusException.class, () -> client.receive(input("/forbidden")));
+        assertFalse(forbidden.isRetryable());
+    }
+
+    private RecvInputDTO input(String path) {
+        return new RecvInputDTO.Builder().streamUrl(baseUrl + path).bearerToken("test").build();
+    }
+}
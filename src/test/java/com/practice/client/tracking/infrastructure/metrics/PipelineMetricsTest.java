@@ -0,0 +1,72 @@
+package com.practice.client.tracking.infrastructure.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+public class PipelineMetricsTest {
+
+    /** 分位点はバケット上限で返る（真値以上・2倍未満） */
+    @Test
+    public void histogramPercentilesAreWithinOneBucket() {
+        var h = new Log2Histogram();
+        for (int v = 1; v <= 1_000; v++) h.record(v);
+        assertEquals(1_000, h.count());
+        assertEquals(1_000, h.max());
+        assertEquals(500.5, h.mean(), 1e-9);
+        long p50 = h.percentile(0.5), p99 = h.percentile(0.99);
+        assertTrue(p50 >= 500 && p50 < 1_000, "p50=" + p50);
+        assertTrue(p99 >= 990 && p99 <= 1_000, "p99=" + p99);
+        assertEquals(0, new Log2Histogram().percentile(0.5));
+    }
+
+    @Test
+    public void countersAreExactUnderContention() throws Exception {
+        var m = new PipelineMetrics();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 100_000; i++) { m.lineReceived(10); m.upserted(1, 1_000); }
+            }));
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(800_000, m.getLinesReceived());
+        assertEquals(8_000_000, m.getBytesReceived());
+        assertEquals(800_000, m.getUpsertRows());
+        assertEquals(0.001, m.getUpsertMillisMean(), 1e-9);
+    }
+
+    @Test
+    public void samplerDedupeRatio() {
+        var m = new PipelineMetrics();
+        m.sampled(100, 10, 2_000_000);
+        m.sampled(100, 40, 4_000_000);
+        assertEquals(0.6, m.getLastDedupeRatio(), 1e-9);
+        assertEquals(0.75, m.getDedupeRatio(), 1e-9);
+        assertEquals(2, m.getSamplerRuns());
+        assertTrue(m.getFlushMillisMax() >= 4.0);
+        m.reset();
+        assertEquals(0, m.getSamplerRuns());
+    }
+
+    @Test
+    public void attributesAreReadableOverJmx() throws Exception {
+        var m = new PipelineMetrics();
+        m.bindQueueDepth(() -> 42);
+        m.queueDropped();
+        ObjectName name = m.register("com.practice.client.tracking:type=PipelineMetrics,name=test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(42, server.getAttribute(name, "QueueDepth"));
+            assertEquals(1L, server.getAttribute(name, "QueueDropped"));
+        } finally { server.unregisterMBean(name); }
+    }
+}
@@ -0,0 +1,57 @@
+package com.practice.client.tracking.infrastructure.persistence.checkpoint;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CheckpointFileTest {
+    @TempDir Path dir;
+
+    @Test
+    public void roundTripsAndReplacesAtomically() throws Exception {
+        var file = new CheckpointFile(dir.resolve("sampler.ckpt"));
+        assertEquals(Optional.empty(), file.load());
+        file.write(bytes("first"));
+        file.write(bytes("second"));
+        var loaded = file.load().orElseThrow();
+        assertArrayEquals(bytes("second"), loaded.body());
+        assertTrue(Math.abs(System.currentTimeMillis() - loaded.createdAtMillis()) < 60_000);
+        assertFalse(Files.exists(dir.resolve("sampler.ckpt.tmp")));
+    }
+
+    /** 書き込み待ちの間に来た分は、最新だけが残る。close は書き終えるまで待つ */
+    @Test
+    public void asyncWriteKeepsLatest() {
+        var file = new CheckpointFile(dir.resolve("sampler.ckpt"));
+        for (int i = 0; i < 100; i++) file.writeAsync(bytes("cp-" + i));
+        file.close();
+        assertArrayEquals(bytes("cp-99"), file.load().orElseThrow().body());
+    }
+
+    /** 本体が壊れていれば使わない */
+    @Test
+    public void ignoresCorruptBody() throws Exception {
+        Path p = dir.resolve("sampler.ckpt");
+        var file = new CheckpointFile(p);
+        file.write(bytes("state"));
+        try (var raf = new RandomAccessFile(p.toFile(), "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write('X');
+        }
+        assertEquals(Optional.empty(), file.load());
+        Files.write(p, new byte[] {1, 2, 3});
+        assertEquals(Optional.empty(), file.load());
+    }
+
+    private static byte[] bytes(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+}
@@ -0,0 +1,128 @@
+package com.practice.client.tracking.infrastructure.persistence.token;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TokenStoreTest {
+    @TempDir Path dir;
+
+    @Test
+    public void fileStoreReplacesAtomically() {
+        var store = new FileTokenStore(dir.resolve("position.token"));
+        assertEquals(Optional.empty(), store.load());
+        store.save("tok-1");
+        store.save("tok-2");
+        assertEquals(Optional.of("tok-2"), store.load());
+        assertFalse(Files.exists(dir.resolve("position.token.tmp")));
+    }
+
+    @Test
+    public void coalescingStoreWritesOnlyLatestOnFlushAndClose() {
+        AtomicInteger writes = new AtomicInteger();
+        var file = new FileTokenStore(dir.resolve("position.token"));
+        TokenStore counting = new TokenStore() {
+            @Override public Optional<String> load() { return file.load(); }
+            @Override public void save(String token) { writes.incrementAndGet(); file.save(token); }
+        };
+        var store = new CoalescingTokenStore(counting, 60_000);
+        for (int i = 0; i < 1_000; i++) store.save("tok-" + i);
+        assertEquals(0, writes.get());                           // 受信ループ中はI/Oなし
+        assertEquals(Optional.of("tok-999"), store.load());
+
+        store.flush();
+        store.flush();                                           // 変化なしなら書かない
+        assertEquals(1, writes.get());
+        store.save("tok-1000");
+        store.close();
+        assertEquals(2, writes.get());
+        assertEquals(Optional.of("tok-1000"), file.load());
+    }
+
+    /** delegate が失敗しても最新値を持ち続け、次の flush で書き直す */
+    @Test
+    public void coalescingStoreRetriesAfterDelegateFailure() {
+        AtomicInteger attempts = new AtomicInteger();
+        var file = new FileTokenStore(dir.resolve("position.token"));
+        TokenStore flaky = new TokenStore() {
+            @Override public Optional<String> load() { return file.load(); }
+            @Override public void save(String token) {
+                if (attempts.incrementAndGet() == 1) throw new IllegalStateException("disk full");
+                file.save(token);
+            }
+        };
+        var store = new CoalescingTokenStore(flaky, 60_000);
+        store.save("tok-1");
+        store.flush();
+        assertEquals(Optional.empty(), file.load());
+        store.flush();
+        assertEquals(2, attempts.get());
+        assertEquals(Optional.of("tok-1"), file.load());
+        store.close();
+    }
+
+    /** 実ファイルの書き込み失敗でも最新値を持ち続け、書けるようになった次の flush / close で書き直す */
+    @Test
+    public void coalescingStoreRetriesWhenFileStoreCannotWrite() throws Exception {
+        Path blocked = dir.resolve("tokens");
+        Files.writeString(blocked, "not a directory");          // ディレクトリの位置にファイルがあるので書けない
+        var file = new FileTokenStore(blocked.resolve("position.token"));
+        assertThrows(UncheckedIOException.class, () -> file.save("tok-0"));
+
+        var store = new CoalescingTokenStore(file, 60_000);
+        store.save("tok-1");
+        store.flush();
+        assertEquals(Optional.empty(), file.load());
+
+        Files.delete(blocked);
+        Files.createDirectory(blocked);
+        store.close();                                           // 最後の値は close で書き直される
+        assertEquals(Optional.of("tok-1"), file.load());
+    }
+
+    /** スロットより長いトークンは書かずに投げ、前の値を残す */
+    @Test
+    public void mappedStoreKeepsPreviousTokenWhenTooLong() throws Exception {
+        try (var store = new MappedTokenStore(dir.resolve("position.token.mmap"), 8)) {
+            store.save("tok-1");
+            assertThrows(IllegalArgumentException.class, () -> store.save("tok-longer-than-slot"));
+            assertEquals(Optional.of("tok-1"), store.load());
+        }
+    }
+
+    @Test
+    public void mappedStoreSurvivesReopenAndTornSlot() throws Exception {
+        Path p = dir.resolve("position.token.mmap");
+        try (var store = new MappedTokenStore(p, 256)) {
+            assertEquals(Optional.empty(), store.load());
+            store.save("tok-1");
+            store.save("tok-2");
+            store.save("tok-3");
+        }
+        try (var store = new MappedTokenStore(p, 256)) {
+            assertEquals(Optional.of("tok-3"), store.load());
+        }
+        // 最新スロット（seq=3 → スロット1）の本体を壊すと、1つ前の値に戻る
+        try (var raf = new RandomAccessFile(p.toFile(), "rw")) {
+            raf.seek((8 + 4 + 4 + 256) + 16);
+            raf.write('X');
+        }
+        try (var store = new MappedTokenStore(p, 256)) {
+            assertEquals(Optional.of("tok-2"), store.load());
+            store.save("tok-4");
+            assertEquals(Optional.of("tok-4"), store.load());
+        }
+        assertTrue(Files.size(p) == 2L * (8 + 4 + 4 + 256));
+    }
+}
@@ -0,0 +1,124 @@
+package com.practice.client.tracking.loadgen;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.practice.client.tracking.bootstrap.Pipeline;
+import com.practice.client.tracking.config.AppConfig;
+import com.practice.client.tracking.domain.dto.RecvInputDTO;
+import com.practice.client.tracking.domain.dto.RecvOutputDTO;
+import com.practice.client.tracking.infrastructure.db.DatabaseWriter;
+import com.practice.client.tracking.infrastructure.metrics.Log2Histogram;
+import com.practice.client.tracking.infrastructure.metrics.PipelineMetrics;
+
+/**
+ * SyntheticFeedServer に対して App と同じ Pipeline を動かし、持続スループットと
+ * 送信→書き込みの遅延（間引き窓の待ちを含む）を測る。
+ * <p>
+ * ./gradlew loadTest -Dloadgen.rate=50000 -Dloadgen.seconds=30 -Dloadgen.app.ingest.mode=conflate のように使う。
+ * loadgen.app.* は Pipeline の設定（app.properties と同じキー）としてそのまま渡す。
+ */
+public final class LoadDriver {
+
+    public record Result(long millis, long sentLines, long receivedLines, long rowsWritten,
+                         long latencyP50Millis, long latencyP99Millis, long latencyMaxMillis,
+                         long connections, long resumedConnections, long queueDropped) {
+        public double linesPerSecond() { return receivedLines * 1000.0 / Math.max(1, millis); }
+        public double rowsPerSecond() { return rowsWritten * 1000.0 / Math.max(1, millis); }
+        public String summary() {
+            return String.format("%,d ms: sent=%,d received=%,d (%,.0f lines/s) rows=%,d (%,.0f rows/s) "
+                    + "e2e p50=%d ms p99=%d ms max=%d ms connections=%d resumed=%d dropped=%,d",
+                    millis, sentLines, receivedLines, linesPerSecond(), rowsWritten, rowsPerSecond(),
+                    latencyP50Millis, latencyP99Millis, latencyMaxMillis, connections, resumedConnections, queueDropped);
+        }
+    }
+
+    private LoadDriver() {}
+
+    /** warmup 後の duration の間を計測する。appProps は Pipeline の設定（token.dir は一時ディレクトリに差し替える） */
+    public static Result run(SyntheticFeedServer.Builder feed, Properties appProps,
+                             Duration warmup, Duration duration) throws IOException, InterruptedException {
+        var props = new Properties();
+        props.putAll(appProps);
+        props.setProperty("token.dir", Files.createTempDirectory("loadgen-token").toString());
+        props.putIfAbsent("sampling.window.millis", "1000");
+        AppConfig conf = AppConfig.of(props);
+        var metrics = PipelineMetrics.global();
+        var writer = new LatencyRecordingWriter();
+
+        try (var server = feed.start()) {
+            RecvInputDTO input = new RecvInputDTO.Builder().streamUrl(server.url()).bearerToken("loadgen").build();
+            var pipeline = new Pipeline(conf, input, writer);
+            try {
+                pipeline.start();
+                Thread.sleep(warmup.toMillis());
+                writer.latencyMicros.reset();
+                long sent0 = server.sentLines(), recv0 = metrics.getLinesReceived(), rows0 = writer.rows.sum();
+                long conn0 = server.connections(), resumed0 = server.resumedConnections(), drop0 = metrics.getQueueDropped();
+                long t0 = System.nanoTime();
+                Thread.sleep(duration.toMillis());
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+                return new Result(millis, server.sentLines() - sent0, metrics.getLinesReceived() - recv0,
+                        writer.rows.sum() - rows0,
+                        writer.latencyMicros.percentile(0.50) / 1000, writer.latencyMicros.percentile(0.99) / 1000,
+                        writer.latencyMicros.max() / 1000,
+                        server.connections() - conn0, server.resumedConnections() - resumed0,
+                        metrics.getQueueDropped() - drop0);
+            } finally {
+                pipeline.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var feed = new SyntheticFeedServer.Builder()
+                .rate(Double.parseDouble(System.getProperty("loadgen.rate", "20000")))
+                .aircraft(Integer.getInteger("loadgen.aircraft", 5_000))
+                .tokenEvery(Integer.getInteger("loadgen.token.every", 100))
+                .disconnectEvery(Long.getLong("loadgen.disconnect.every", 0L))
+                .stallEvery(Long.getLong("loadgen.stall.every", 0L), Long.getLong("loadgen.stall.millis", 0L));
+        String burst = System.getProperty("loadgen.burst");   // 周期ms:長さms:倍率
+        if (burst != null && !burst.isBlank()) {
+            String[] b = burst.split(":");
+            feed.burst(Long.parseLong(b[0]), Long.parseLong(b[1]), Double.parseDouble(b[2]));
+        }
+        var appProps = new Properties();
+        System.getProperties().stringPropertyNames().stream().filter(k -> k.startsWith("loadgen.app."))
+                .forEach(k -> appProps.setProperty(k.substring("loadgen.app.".length()), System.getProperty(k)));
+
+        Result r = run(feed, appProps,
+                Duration.ofSeconds(Long.getLong("loadgen.warmup.seconds", 5L)),
+                Duration.ofSeconds(Long.getLong("loadgen.seconds", 30L)));
+        System.out.println("[LoadDriver] " + r.summary());
+        System.exit(0);                                   // 受信スレッドの後始末を待たない
+    }
+
+    /** 書き込まずに、行の sent_at_nanos から送信→書き込みの遅延だけを記録する */
+    static final class LatencyRecordingWriter implements DatabaseWriter {
+        private static final String KEY = "\"sent_at_nanos\":";
+        final Log2Histogram latencyMicros = new Log2Histogram();
+        final LongAdder rows = new LongAdder();
+
+        @Override public void upsert(String icao24, long bucketStartMillis, RecvOutputDTO dto) { record(System.nanoTime(), dto); }
+
+        @Override public void upsertAll(long bucketStartMillis, Collection<RecvOutputDTO> dtos) {
+            long now = System.nanoTime();
+            for (var dto : dtos) record(now, dto);
+        }
+
+        private void record(long now, RecvOutputDTO dto) {
+            rows.increment();
+            String raw = dto.getRawJson();
+            int i = raw.indexOf(KEY);
+            if (i < 0) return;
+            int from = i + KEY.length(), to = from;
+            while (to < raw.length() && (Character.isDigit(raw.charAt(to)) || raw.charAt(to) == '-')) to++;
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(now - Long.parseLong(raw, from, to, 10)));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.practice.client.tracking.loadgen;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/** 負荷試験の短い通し確認。数秒かかるので通常の test からは外し、./gradlew loadTest の前に流す */
+@Tag("load")
+public class LoadDriverTest {
+
+    @Test
+    public void pipelineKeepsUpWithModerateFeed() throws Exception {
+        var feed = new SyntheticFeedServer.Builder().rate(5_000).aircraft(500);
+        var props = new Properties();
+        props.setProperty("sampling.window.millis", "200");
+        var r = LoadDriver.run(feed, props, Duration.ofMillis(500), Duration.ofSeconds(2));
+        assertTrue(r.receivedLines() > r.sentLines() * 0.8, r.summary());
+        assertTrue(r.rowsWritten() > 0, r.summary());
+        assertTrue(r.latencyP99Millis() < 2_000, r.summary());
+    }
+
+    /** 切断・無通信があっても最後の position_token から再開して流れ続ける */
+    @Test
+    public void resumesFromPositionTokenAfterDisconnectsAndStalls() throws Exception {
+        var feed = new SyntheticFeedServer.Builder().rate(5_000).aircraft(500)
+                .disconnectEvery(2_000).stallEvery(3_000, 1_000);
+        var props = new Properties();
+        props.setProperty("sampling.window.millis", "200");
+        props.setProperty("stream.idle.timeout.millis", "300");
+        var r = LoadDriver.run(feed, props, Duration.ofMillis(200), Duration.ofSeconds(3));
+        assertTrue(r.resumedConnections() >= 2, r.summary());
+        assertTrue(r.rowsWritten() > 0, r.summary());
+    }
+}
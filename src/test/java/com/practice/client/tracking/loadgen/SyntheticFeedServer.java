@@ -0,0 +1,170 @@
+package com.practice.client.tracking.loadgen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 実APIの代わりに NDJSON（target / status / position_token）を流すローカルサーバ（JDK 内蔵 HttpServer）。
+ * <ul>
+ *   <li>rate 行/秒で送る（0 なら上限なし）。burst で周期的に rate を何倍かに上げる</li>
+ *   <li>target の ICAO24 は aircraft 機のどれか。行には通し番号 seq と送信時刻 sent_at_nanos を入れる</li>
+ *   <li>tokenEvery 行ごとに position_token（"seq-番号"）を送り、再接続時に渡されたら続きの番号から送る</li>
+ *   <li>disconnectEvery 行ごとに接続を切る。stallEvery 行ごとに接続を保ったまま stallMillis 黙る</li>
+ * </ul>
+ * sent_at_nanos は System.nanoTime なので、同じ JVM 内の受信側でしか比較できない。
+ */
+public final class SyntheticFeedServer implements AutoCloseable {
+    private final Builder conf;
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool(r -> {
+        Thread th = new Thread(r, "synthetic-feed");
+        th.setDaemon(true); return th;
+    });
+    private final AtomicLong sentLines = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private volatile boolean closed;
+
+    private SyntheticFeedServer(Builder b) throws IOException {
+        this.conf = b;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(handlers);
+        server.createContext("/stream", this::handle);
+        server.start();
+    }
+
+    public String url() { return "http://127.0.0.1:" + server.getAddress().getPort() + "/stream"; }
+    public long sentLines() { return sentLines.get(); }
+    public long connections() { return connections.get(); }
+    /** position_token 付きで張り直された回数 */
+    public long resumedConnections() { return resumed.get(); }
+
+    @Override public void close() {
+        closed = true;
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        connections.incrementAndGet();
+        long seq = 0;
+        String token = queryParam(ex.getRequestURI().getRawQuery(), "position_token");
+        if (token != null && token.startsWith("seq-")) {
+            seq = Long.parseLong(token.substring(4)) + 1;
+            resumed.incrementAndGet();
+        }
+        ex.sendResponseHeaders(200, 0);                   // chunked
+        try (OutputStream out = ex.getResponseBody()) {
+            StringBuilder sb = new StringBuilder(64 * 1024);
+            long start = System.nanoTime(), sentHere = 0;
+            double due = 0;                               // この接続で今までに送っているべき行数
+            long lastTick = start;
+            while (!closed) {
+                long now = System.nanoTime();
+                if (conf.rate > 0) {
+                    due += conf.rate * rateFactor(now - start) * (now - lastTick) / 1e9;
+                    lastTick = now;
+                } else {
+                    due = sentHere + 1_000;
+                }
+                while (sentHere < due && sb.length() < 60 * 1024) {
+                    appendLine(sb, seq++);
+                    sentHere++;
+                    if (conf.disconnectEvery > 0 && sentHere % conf.disconnectEvery == 0) {
+                        flush(out, sb);
+                        return;                           // 接続を切る（クライアントは最後のトークンから再開）
+                    }
+                    if (conf.stallEvery > 0 && sentHere % conf.stallEvery == 0) {
+                        flush(out, sb);
+                        sleepMillis(conf.stallMillis);    // 接続は保ったまま黙る
+                        lastTick = System.nanoTime();
+                        due = sentHere;
+                    }
+                }
+                flush(out, sb);
+                if (sentHere >= due) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        } catch (IOException e) {
+            // クライアント側の切断
+        }
+    }
+
+    private void appendLine(StringBuilder sb, long seq) {
+        if (conf.tokenEvery > 0 && seq % conf.tokenEvery == conf.tokenEvery - 1) {
+            sb.append("{\"position_token\":\"seq-").append(seq).append("\"}\n");
+        } else if (conf.statusEvery > 0 && seq % conf.statusEvery == conf.statusEvery - 1) {
+            sb.append("{\"status\":{\"code\":\"ok\",\"message\":\"heartbeat\"}}\n");
+        } else {
+            int icao = 0x400000 + (int) Math.floorMod(seq * 0x9E3779B97F4A7C15L, (long) conf.aircraft);
+            sb.append("{\"target\":{\"icao_address\":\"").append(Integer.toHexString(icao).toUpperCase())
+              .append("\",\"seq\":").append(seq)
+              .append(",\"sent_at_nanos\":").append(System.nanoTime())
+              .append(",\"latitude\":").append(35 + (seq % 1000) / 1000.0)
+              .append(",\"longitude\":").append(139 + (seq % 997) / 997.0)
+              .append(",\"altitude_baro\":").append(seq % 45_000)
+              .append(",\"heading\":").append(seq % 360)
+              .append(",\"collection_type\":\"terrestrial\"}}\n");
+        }
+    }
+
+    /** burstPeriodMillis ごとに先頭 burstMillis の間だけ burstFactor 倍 */
+    private double rateFactor(long elapsedNanos) {
+        if (conf.burstPeriodMillis <= 0) return 1.0;
+        long inPeriod = TimeUnit.NANOSECONDS.toMillis(elapsedNanos) % conf.burstPeriodMillis;
+        return inPeriod < conf.burstMillis ? conf.burstFactor : 1.0;
+    }
+
+    private void flush(OutputStream out, StringBuilder sb) throws IOException {
+        if (sb.isEmpty()) return;
+        int lines = 0;
+        for (int i = 0; i < sb.length(); i++) if (sb.charAt(i) == '\n') lines++;
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        sentLines.addAndGet(lines);
+        sb.setLength(0);
+    }
+
+    private static void sleepMillis(long millis) {
+        try { Thread.sleep(millis); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    private static String queryParam(String rawQuery, String name) {
+        if (rawQuery == null) return null;
+        for (String kv : rawQuery.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq > 0 && kv.substring(0, eq).equals(name)) return URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    public static final class Builder {
+        private double rate = 10_000;
+        private int aircraft = 5_000;
+        private int tokenEvery = 100, statusEvery = 500;
+        private long burstPeriodMillis, burstMillis;
+        private double burstFactor = 1.0;
+        private long disconnectEvery, stallEvery, stallMillis;
+
+        public Builder rate(double linesPerSecond) { this.rate = linesPerSecond; return this; }
+        public Builder aircraft(int v) { this.aircraft = Math.max(1, v); return this; }
+        public Builder tokenEvery(int lines) { this.tokenEvery = lines; return this; }
+        public Builder statusEvery(int lines) { this.statusEvery = lines; return this; }
+        public Builder burst(long periodMillis, long lengthMillis, double factor) {
+            this.burstPeriodMillis = periodMillis; this.burstMillis = lengthMillis; this.burstFactor = factor; return this;
+        }
+        public Builder disconnectEvery(long lines) { this.disconnectEvery = lines; return this; }
+        public Builder stallEvery(long lines, long millis) { this.stallEvery = lines; this.stallMillis = millis; return this; }
+        public SyntheticFeedServer start() throws IOException { return new SyntheticFeedServer(this); }
+    }
+}